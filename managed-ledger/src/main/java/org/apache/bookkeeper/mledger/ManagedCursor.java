@@ -20,6 +20,8 @@ package org.apache.bookkeeper.mledger;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Range;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +32,7 @@ import org.apache.bookkeeper.mledger.AsyncCallbacks.MarkDeleteCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.SkipEntriesCallback;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
 
 /**
  * A ManangedCursor is a persisted cursor inside a ManagedLedger.
@@ -315,6 +318,37 @@ public interface ManagedCursor {
      */
     void asyncDelete(Iterable<Position> position, DeleteCallback callback, Object ctx);
 
+    /**
+     * Delete some of the messages of a batched entry asynchronously.
+     *
+     * <p/>
+     * The deleted indexes are kept along with the individually deleted messages. Once all the messages of the entry
+     * are deleted, the entry itself is deleted as in {@link #asyncDelete(Position, DeleteCallback, Object)}.
+     *
+     * @param position
+     *            the position of the batched entry
+     * @param batchSize
+     *            the number of messages in the entry
+     * @param batchIndexes
+     *            the indexes of the messages to delete
+     * @param callback
+     *            callback object
+     * @param ctx
+     *            opaque context
+     */
+    void asyncDeleteBatchIndexes(Position position, int batchSize, BitSet batchIndexes, DeleteCallback callback,
+            Object ctx);
+
+    /**
+     * Get the indexes of the deleted messages of a partially deleted batched entry.
+     *
+     * @param position
+     *            the position of the batched entry
+     * @return the words of the bitset of the deleted indexes, which must not be modified, or null if no message of
+     *         the entry was deleted on its own
+     */
+    long[] getDeletedBatchIndexesAsLongArray(Position position);
+
     /**
      * Get the read position. This points to the next message to be read from the cursor.
      *
@@ -434,6 +468,27 @@ public interface ManagedCursor {
     void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
             FindEntryCallback callback, Object ctx);
 
+    /**
+     * Find the newest entry with a timestamp lower or equal to the given one.
+     *
+     * When the managed ledger keeps a time index, only the entries next to the timestamp are read. Otherwise the
+     * search is the same as {@link #asyncFindNewestMatching(FindPositionConstraint, Predicate, FindEntryCallback,
+     * Object)}.
+     *
+     * @param constraint
+     *            search only active entries or all entries
+     * @param condition
+     *            predicate that reads an entry and checks whether its timestamp is lower or equal to the given one
+     * @param timestamp
+     *            the timestamp used by the predicate, consistent with the timestamps of the time index
+     * @param callback
+     *            callback object returning the resultant position
+     * @param ctx
+     *            opaque context
+     */
+    void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition, long timestamp,
+            FindEntryCallback callback, Object ctx);
+
     /**
      * reset the cursor to specified position to enable replay of messages.
      *
@@ -481,6 +536,23 @@ public interface ManagedCursor {
     Set<? extends Position> asyncReplayEntries(
         Set<? extends Position> positions, ReadEntriesCallback callback, Object ctx);
 
+    /**
+     * Read the specified ranges of consecutive entries from ManagedLedger, with a single read per range.
+     *
+     * <p/>The callback is not called if all the positions are already acknowledged.
+     *
+     * @param ranges
+     *            closed ranges of positions, each within a single ledger, in ascending order
+     * @param callback
+     *            callback object returning the list of entries, in ascending order
+     * @param ctx
+     *            opaque context
+     * @return skipped positions
+     *              set of positions which are already deleted/acknowledged and skipped while replaying them
+     */
+    Set<? extends Position> asyncReplayEntryRanges(
+        List<Range<PositionImpl>> ranges, ReadEntriesCallback callback, Object ctx);
+
     /**
      * Close the cursor and releases the associated resources.
      *
@@ -22,11 +22,16 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Charsets;
+import io.netty.buffer.ByteBuf;
 import java.time.Clock;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import org.apache.bookkeeper.client.api.DigestType;
 
+import org.apache.bookkeeper.mledger.impl.BitSetIndividualAckSet;
+import org.apache.bookkeeper.mledger.impl.IndividualAckSet;
 import org.apache.bookkeeper.mledger.impl.NullLedgerOffloader;
 
 /**
@@ -38,6 +43,17 @@ public class ManagedLedgerConfig {
     private boolean createIfMissing = true;
     private int maxUnackedRangesToPersist = 10000;
     private int maxUnackedRangesToPersistInZk = 1000;
+    private int maxBatchDeletedIndexToPersist = 10000;
+    private boolean persistIndividualAckAsBitmap = false;
+    private int individualAckSnapshotInterval = 100;
+    private boolean readAheadEnabled = false;
+    private int readAheadMaxOutstandingReads = 4;
+    private long readAheadMaxBufferSizeBytes = 8 * 1024 * 1024;
+    private boolean groupCommitEnabled = false;
+    private int groupCommitMaxEntries = 100;
+    private long groupCommitMaxSizeBytes = 128 * 1024;
+    private long groupCommitMaxDelayMicros = 1000;
+    private int timeIndexIntervalEntries = 0;
     private int maxEntriesPerLedger = 50000;
     private int maxSizePerLedgerMb = 100;
     private int minimumRolloverTimeMs = 0;
@@ -61,6 +77,8 @@ public class ManagedLedgerConfig {
     private DigestType digestType = DigestType.CRC32C;
     private byte[] password = "".getBytes(Charsets.UTF_8);
     private LedgerOffloader ledgerOffloader = NullLedgerOffloader.INSTANCE;
+    private Supplier<IndividualAckSet> individualAckSetFactory = BitSetIndividualAckSet::new;
+    private ToLongFunction<ByteBuf> entryTimestampExtractor = null;
     private Clock clock = Clock.systemUTC();
 
     public boolean isCreateIfMissing() {
@@ -473,6 +491,226 @@ public class ManagedLedgerConfig {
         this.maxUnackedRangesToPersistInZk = maxUnackedRangesToPersistInZk;
     }
 
+    /**
+     * @return max number of partially acknowledged batch entries whose deleted indexes will be persisted and
+     *         recovered
+     */
+    public int getMaxBatchDeletedIndexToPersist() {
+        return maxBatchDeletedIndexToPersist;
+    }
+
+    /**
+     * @param maxBatchDeletedIndexToPersist
+     *            max number of partially acknowledged batch entries whose deleted indexes will be persisted and
+     *            recovered. The indexes of the following entries are only tracked in memory.
+     */
+    public ManagedLedgerConfig setMaxBatchDeletedIndexToPersist(int maxBatchDeletedIndexToPersist) {
+        this.maxBatchDeletedIndexToPersist = maxBatchDeletedIndexToPersist;
+        return this;
+    }
+
+    /**
+     * @return whether the individually deleted messages are persisted in the cursor ledger as bitmaps
+     */
+    public boolean isPersistIndividualAckAsBitmap() {
+        return persistIndividualAckAsBitmap;
+    }
+
+    /**
+     * Persist the individually deleted messages in the cursor ledger as compressed bitmaps, written as deltas with
+     * periodic full snapshots. The whole acknowledgment state is recovered, regardless of
+     * {@link #getMaxUnackedRangesToPersist()}.
+     *
+     * <p/>Brokers that don't support this format only recover the mark-delete position.
+     *
+     * @param persistIndividualAckAsBitmap
+     *            whether to persist the individually deleted messages as bitmaps
+     */
+    public ManagedLedgerConfig setPersistIndividualAckAsBitmap(boolean persistIndividualAckAsBitmap) {
+        this.persistIndividualAckAsBitmap = persistIndividualAckAsBitmap;
+        return this;
+    }
+
+    /**
+     * @return the number of cursor ledger writes between two full snapshots of the individually deleted messages
+     */
+    public int getIndividualAckSnapshotInterval() {
+        return individualAckSnapshotInterval;
+    }
+
+    /**
+     * @param individualAckSnapshotInterval
+     *            the number of cursor ledger writes between two full snapshots of the individually deleted messages,
+     *            when they are persisted as bitmaps
+     */
+    public ManagedLedgerConfig setIndividualAckSnapshotInterval(int individualAckSnapshotInterval) {
+        this.individualAckSnapshotInterval = individualAckSnapshotInterval;
+        return this;
+    }
+
+    /**
+     * @return whether cursors catching up with the backlog read entries ahead
+     */
+    public boolean isReadAheadEnabled() {
+        return readAheadEnabled;
+    }
+
+    /**
+     * Enable read-ahead for cursors catching up with the backlog. After a few sequential reads, the following batches
+     * of entries are requested from the bookies in advance, so that the reads of the cursor don't wait for a full
+     * round trip each time.
+     *
+     * @param readAheadEnabled
+     *            whether to read entries ahead for cursors reading sequentially
+     */
+    public ManagedLedgerConfig setReadAheadEnabled(boolean readAheadEnabled) {
+        this.readAheadEnabled = readAheadEnabled;
+        return this;
+    }
+
+    /**
+     * @return the max number of read-ahead requests in flight for each cursor
+     */
+    public int getReadAheadMaxOutstandingReads() {
+        return readAheadMaxOutstandingReads;
+    }
+
+    /**
+     * @param readAheadMaxOutstandingReads
+     *            the max number of read-ahead requests in flight for each cursor
+     */
+    public ManagedLedgerConfig setReadAheadMaxOutstandingReads(int readAheadMaxOutstandingReads) {
+        this.readAheadMaxOutstandingReads = readAheadMaxOutstandingReads;
+        return this;
+    }
+
+    /**
+     * @return the max size of the entries read ahead and not yet consumed, for each cursor
+     */
+    public long getReadAheadMaxBufferSizeBytes() {
+        return readAheadMaxBufferSizeBytes;
+    }
+
+    /**
+     * @param readAheadMaxBufferSizeBytes
+     *            the max size of the entries read ahead and not yet consumed, for each cursor
+     */
+    public ManagedLedgerConfig setReadAheadMaxBufferSizeBytes(long readAheadMaxBufferSizeBytes) {
+        this.readAheadMaxBufferSizeBytes = readAheadMaxBufferSizeBytes;
+        return this;
+    }
+
+    /**
+     * @return whether the entries added to new ledgers are grouped into fewer bookkeeper entries
+     */
+    public boolean isGroupCommitEnabled() {
+        return groupCommitEnabled;
+    }
+
+    /**
+     * Group the entries added within a short window into a single bookkeeper entry. Each entry still gets its own
+     * position and is read back as a separate entry.
+     *
+     * The setting applies to the ledgers created after it is changed.
+     *
+     * @param groupCommitEnabled
+     *            whether the entries added to new ledgers are grouped into fewer bookkeeper entries
+     */
+    public ManagedLedgerConfig setGroupCommitEnabled(boolean groupCommitEnabled) {
+        this.groupCommitEnabled = groupCommitEnabled;
+        return this;
+    }
+
+    /**
+     * @return the max number of entries in a group
+     */
+    public int getGroupCommitMaxEntries() {
+        return groupCommitMaxEntries;
+    }
+
+    /**
+     * @param groupCommitMaxEntries
+     *            the max number of entries in a group
+     */
+    public ManagedLedgerConfig setGroupCommitMaxEntries(int groupCommitMaxEntries) {
+        this.groupCommitMaxEntries = groupCommitMaxEntries;
+        return this;
+    }
+
+    /**
+     * @return the size in bytes of the entries after which a group is written
+     */
+    public long getGroupCommitMaxSizeBytes() {
+        return groupCommitMaxSizeBytes;
+    }
+
+    /**
+     * @param groupCommitMaxSizeBytes
+     *            the size in bytes of the entries after which a group is written
+     */
+    public ManagedLedgerConfig setGroupCommitMaxSizeBytes(long groupCommitMaxSizeBytes) {
+        this.groupCommitMaxSizeBytes = groupCommitMaxSizeBytes;
+        return this;
+    }
+
+    /**
+     * @return the max time in microseconds an entry waits for other entries to be grouped with
+     */
+    public long getGroupCommitMaxDelayMicros() {
+        return groupCommitMaxDelayMicros;
+    }
+
+    /**
+     * @param groupCommitMaxDelayMicros
+     *            the max time in microseconds an entry waits for other entries to be grouped with
+     */
+    public ManagedLedgerConfig setGroupCommitMaxDelayMicros(long groupCommitMaxDelayMicros) {
+        this.groupCommitMaxDelayMicros = groupCommitMaxDelayMicros;
+        return this;
+    }
+
+    /**
+     * @return the number of entries between two timestamps of the time index of the ledgers, 0 if disabled
+     */
+    public int getTimeIndexIntervalEntries() {
+        return timeIndexIntervalEntries;
+    }
+
+    /**
+     * Keep a sparse index of the entry timestamps in the metadata of each ledger, used to find an entry by time
+     * without searching through the ledgers. The index requires an entry timestamp extractor to be set.
+     *
+     * A smaller interval makes the metadata bigger, and a larger interval makes each search read more entries.
+     *
+     * @param timeIndexIntervalEntries
+     *            the number of entries between two timestamps of the index, 0 to disable the index
+     */
+    public ManagedLedgerConfig setTimeIndexIntervalEntries(int timeIndexIntervalEntries) {
+        checkArgument(timeIndexIntervalEntries >= 0);
+        this.timeIndexIntervalEntries = timeIndexIntervalEntries;
+        return this;
+    }
+
+    /**
+     * @return the function reading the timestamp of an entry, or null if not set
+     */
+    public ToLongFunction<ByteBuf> getEntryTimestampExtractor() {
+        return entryTimestampExtractor;
+    }
+
+    /**
+     * Set the function reading the timestamp of an entry, for the time index of the ledgers.
+     *
+     * The timestamps must be consistent with the ones used to search the entries by time.
+     *
+     * @param entryTimestampExtractor
+     *            function reading the timestamp from the content of an entry
+     */
+    public ManagedLedgerConfig setEntryTimestampExtractor(ToLongFunction<ByteBuf> entryTimestampExtractor) {
+        this.entryTimestampExtractor = entryTimestampExtractor;
+        return this;
+    }
+
     /**
      * Get ledger offloader which will be used to offload ledgers to longterm storage.
      *
@@ -494,6 +732,28 @@ public class ManagedLedgerConfig {
         return this;
     }
 
+    /**
+     * Get the factory of the sets used by cursors to track individually deleted messages.
+     *
+     * @return the individual ack set factory
+     */
+    public Supplier<IndividualAckSet> getIndividualAckSetFactory() {
+        return individualAckSetFactory;
+    }
+
+    /**
+     * Set the factory of the sets used by cursors to track individually deleted messages.
+     *
+     * The default factory creates sets keeping a bitset per ledger in direct memory, bounded in size. Sets keeping an
+     * unbounded tree of ranges on the heap can be used instead with <code>TreeRangeIndividualAckSet::new</code>.
+     *
+     * @param individualAckSetFactory the individual ack set factory to use
+     */
+    public ManagedLedgerConfig setIndividualAckSetFactory(Supplier<IndividualAckSet> individualAckSetFactory) {
+        this.individualAckSetFactory = individualAckSetFactory;
+        return this;
+    }
+
     /**
      * Get clock to use to time operations
      *
@@ -34,6 +34,40 @@ public class ManagedLedgerFactoryConfig {
      */
     private double cacheEvictionWatermark = 0.90;
 
+    /**
+     * Whether to store cached entries in per-ledger segments indexed by entry id, instead of a single sorted map.
+     */
+    private boolean segmentedEntryCacheEnabled = false;
+
+    /**
+     * Whether reads of entries missing from the cache can share the bookie reads already in flight for the same range.
+     */
+    private boolean readCoalescingEnabled = false;
+
+    /**
+     * Whether to evict the cached entries based on how often and how recently they are read (segmented LRU), instead of
+     * evicting proportionally from the biggest caches.
+     */
+    private boolean segmentedLruCacheEvictionEnabled = false;
+
+    /**
+     * With the segmented LRU eviction, reads by cursors more than this number of entries behind the last added entry
+     * are not accounted as cache accesses, so that replaying a backlog doesn't keep cold entries in the cache.
+     */
+    private long cacheAdmissionMaxBacklogEntries = 10000;
+
+    /**
+     * Whether to recover the cursors of a managed ledger while its ledgers are being recovered, instead of waiting for
+     * the ledgers recovery to complete before reading the cursors metadata and ledgers.
+     */
+    private boolean pipelinedRecoveryEnabled = false;
+
+    /**
+     * Max number of cursors reading their recovery data at the same time, across all the managed ledgers. 0 means no
+     * limit.
+     */
+    private int maxConcurrentCursorRecoveries = 0;
+
     private int numManagedLedgerWorkerThreads = Runtime.getRuntime().availableProcessors();
     private int numManagedLedgerSchedulerThreads = Runtime.getRuntime().availableProcessors();
 
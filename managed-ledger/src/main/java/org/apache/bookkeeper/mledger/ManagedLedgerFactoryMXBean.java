@@ -61,4 +61,55 @@ public interface ManagedLedgerFactoryMXBean {
      * Get the number of cache evictions during the last minute.
      */
     long getNumberOfCacheEvictions();
+
+    /**
+     * Get the number of entries per second retrieved by sharing a bookkeeper read already in flight.
+     */
+    double getCacheCoalescedReadsRate();
+
+    /**
+     * Get the amount of data retrieved by sharing a bookkeeper read already in flight in byte/s.
+     */
+    double getCacheCoalescedReadsThroughput();
+
+    /**
+     * Get the number of entries per second retrieved from the protected segment of the segmented LRU cache eviction.
+     */
+    double getCacheProtectedHitsRate();
+
+    /**
+     * Get the number of entries per second retrieved from the probation segment of the segmented LRU cache eviction.
+     */
+    double getCacheProbationHitsRate();
+
+    /**
+     * Get the number of entries per second read by cursors far behind the tail, which are not accounted by the
+     * segmented LRU cache eviction.
+     */
+    double getCacheBacklogReadsRate();
+
+    /**
+     * Get the average time in milliseconds to recover a managed ledger when opening it.
+     */
+    double getRecoveryAvgLatencyMs();
+
+    /**
+     * Get the average time in milliseconds spent reading the managed ledger metadata when opening it.
+     */
+    double getRecoveryMetadataAvgLatencyMs();
+
+    /**
+     * Get the average time in milliseconds spent recovering the ledgers of a managed ledger, after reading its metadata.
+     */
+    double getRecoveryLedgersAvgLatencyMs();
+
+    /**
+     * Get the average time in milliseconds spent recovering the cursors of a managed ledger.
+     */
+    double getRecoveryCursorsAvgLatencyMs();
+
+    /**
+     * Get the number of cursors waiting to start their recovery.
+     */
+    int getPendingCursorRecoveries();
 }
@@ -41,6 +41,11 @@ public interface ManagedLedgerMXBean {
      */
     long getNumberOfMessagesInBacklog();
 
+    /**
+     * @return the approximate memory used by all the consumers to track individually deleted messages
+     */
+    long getIndividualAckSetMemorySize();
+
     /**
      * @return the msg/s rate of messages added
      */
@@ -66,6 +71,36 @@ public interface ManagedLedgerMXBean {
      */
     double getMarkDeleteRate();
 
+    /**
+     * @return the rate of reads/s of catching up cursors that were served by read-ahead
+     */
+    double getReadAheadHitsRate();
+
+    /**
+     * @return the rate of reads/s of catching up cursors that were not served by read-ahead
+     */
+    double getReadAheadMissesRate();
+
+    /**
+     * @return the ratio of the reads of catching up cursors that were served by read-ahead
+     */
+    double getReadAheadHitRatio();
+
+    /**
+     * @return the size in bytes of the entries read ahead and not yet consumed by the cursors
+     */
+    long getReadAheadBufferSize();
+
+    /**
+     * @return the rate of bookkeeper entries/s written by group-commit
+     */
+    double getGroupCommitRate();
+
+    /**
+     * @return the average number of entries per bookkeeper entry written by group-commit
+     */
+    double getGroupCommitAvgEntries();
+
     /**
      * @return the number of addEntry requests that succeeded
      */
@@ -0,0 +1,441 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.createManagedLedgerException;
+import static org.apache.bookkeeper.mledger.util.SafeRun.safeRun;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+import com.google.common.primitives.Longs;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.util.RangeCache.Weighter;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base of the entry cache implementations: copies the inserted entries into buffers owned by the cache, serves the
+ * reads and keeps the cache manager accounting and the access statistics up to date.
+ *
+ * <p/>Subclasses only provide the storage of the cached entries.
+ */
+public abstract class AbstractEntryCache implements EntryCache {
+
+    protected final EntryCacheManager manager;
+    protected final ManagedLedgerImpl ml;
+    // Reads in flight to the bookies, shared between concurrent reads of the same range. Null if disabled
+    private final PendingReadsManager pendingReads;
+    // Access statistics of the cached entries, used by the segmented LRU eviction policy. Null if not enabled
+    private final EntryCacheAccessTracker accessTracker;
+
+    private static final double MB = 1024 * 1024;
+
+    protected static final Weighter<EntryImpl> entryWeighter = EntryImpl::getLength;
+
+    protected AbstractEntryCache(EntryCacheManager manager, ManagedLedgerImpl ml) {
+        this.manager = manager;
+        this.ml = ml;
+        this.pendingReads = manager.isReadCoalescingEnabled() ? new PendingReadsManager(ml, manager.mlFactoryMBean)
+                : null;
+        this.accessTracker = manager.isAccessTrackingEnabled() ? new EntryCacheAccessTracker(this) : null;
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Initialized managed-ledger entry cache", ml.getName());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return ml.getName();
+    }
+
+    public final static PooledByteBufAllocator ALLOCATOR = new PooledByteBufAllocator(true, // preferDirect
+            0, // nHeapArenas,
+            PooledByteBufAllocator.defaultNumDirectArena(), // nDirectArena
+            PooledByteBufAllocator.defaultPageSize(), // pageSize
+            PooledByteBufAllocator.defaultMaxOrder(), // maxOrder
+            PooledByteBufAllocator.defaultTinyCacheSize(), // tinyCacheSize
+            PooledByteBufAllocator.defaultSmallCacheSize(), // smallCacheSize
+            PooledByteBufAllocator.defaultNormalCacheSize(), // normalCacheSize,
+            true // Use cache for all threads
+    );
+
+    @Override
+    public boolean insert(EntryImpl entry) {
+        if (!manager.hasSpaceInCache()) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Skipping cache while doing eviction: {} - size: {}", ml.getName(), entry.getPosition(),
+                        entry.getLength());
+            }
+            return false;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Adding entry to cache: {} - size: {}", ml.getName(), entry.getPosition(),
+                    entry.getLength());
+        }
+
+        // Copy the entry into a buffer owned by the cache. The reason is that the incoming entry is retaining a buffer
+        // from netty, usually allocated in 64Kb chunks. So if we just retain the entry without copying it, we might
+        // retain actually the full 64Kb even for a small entry
+        int size = entry.getLength();
+        ByteBuf cachedData = null;
+        try {
+            cachedData = ALLOCATOR.directBuffer(size, size);
+        } catch (Throwable t) {
+            log.warn("[{}] Failed to allocate buffer for entry cache: {}", ml.getName(), t.getMessage(), t);
+            return false;
+        }
+
+        if (size > 0) {
+            ByteBuf entryBuf = entry.getDataBuffer();
+            int readerIdx = entryBuf.readerIndex();
+            cachedData.writeBytes(entryBuf);
+            entryBuf.readerIndex(readerIdx);
+        }
+
+        PositionImpl position = entry.getPosition();
+        EntryImpl cacheEntry = EntryImpl.create(position, cachedData);
+        cachedData.release();
+        if (putEntry(position, cacheEntry)) {
+            manager.entryAdded(entry.getLength());
+            if (accessTracker != null) {
+                accessTracker.recordInsert(position);
+            }
+            return true;
+        } else {
+            // entry was not inserted into cache, we need to discard it
+            cacheEntry.release();
+            return false;
+        }
+    }
+
+    @Override
+    public void invalidateEntries(final PositionImpl lastPosition) {
+        Pair<Integer, Long> removed = removeEntriesUpTo(lastPosition);
+        int entriesRemoved = removed.getLeft();
+        long sizeRemoved = removed.getRight();
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Invalidated entries up to {} - Entries removed: {} - Size removed: {}", ml.getName(),
+                    lastPosition, entriesRemoved, sizeRemoved);
+        }
+
+        manager.entriesRemoved(sizeRemoved);
+        if (accessTracker != null) {
+            accessTracker.removeUpTo(lastPosition);
+        }
+    }
+
+    @Override
+    public void invalidateAllEntries(long ledgerId) {
+        Pair<Integer, Long> removed = removeLedgerEntries(ledgerId);
+        int entriesRemoved = removed.getLeft();
+        long sizeRemoved = removed.getRight();
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Invalidated all entries on ledger {} - Entries removed: {} - Size removed: {}",
+                    ml.getName(), ledgerId, entriesRemoved, sizeRemoved);
+        }
+
+        manager.entriesRemoved(sizeRemoved);
+        if (accessTracker != null) {
+            accessTracker.removeLedger(ledgerId);
+        }
+    }
+
+    @Override
+    public void asyncReadEntry(ReadHandle lh, PositionImpl position, final ReadEntryCallback callback,
+            final Object ctx) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Reading entry ledger {}: {}", ml.getName(), lh.getId(), position.getEntryId());
+        }
+        EntryImpl entry = getEntry(position);
+        if (entry != null) {
+            EntryImpl cachedEntry = EntryImpl.create(entry);
+            entry.release();
+            manager.mlFactoryMBean.recordCacheHit(cachedEntry.getLength());
+            recordAccess(position.getLedgerId(), position.getEntryId(), position.getEntryId(), 1,
+                    cachedEntry.getLength());
+            callback.readEntryComplete(cachedEntry, ctx);
+        } else {
+            lh.readAsync(position.getEntryId(), position.getEntryId()).whenCompleteAsync(
+                    (ledgerEntries, exception) -> {
+                        if (exception != null) {
+                            ml.invalidateLedgerHandle(lh, exception);
+                            callback.readEntryFailed(createManagedLedgerException(exception), ctx);
+                            return;
+                        }
+
+                        try {
+                            Iterator<LedgerEntry> iterator = ledgerEntries.iterator();
+                            if (iterator.hasNext()) {
+                                LedgerEntry ledgerEntry = iterator.next();
+                                EntryImpl returnEntry = EntryImpl.create(ledgerEntry);
+
+                                manager.mlFactoryMBean.recordCacheMiss(1, returnEntry.getLength());
+                                ml.mbean.addReadEntriesSample(1, returnEntry.getLength());
+                                callback.readEntryComplete(returnEntry, ctx);
+                            } else {
+                                // got an empty sequence
+                                callback.readEntryFailed(new ManagedLedgerException("Could not read given position"),
+                                                         ctx);
+                            }
+                        } finally {
+                            ledgerEntries.close();
+                        }
+                    }, ml.getExecutor().chooseThread(ml.getName()));
+        }
+    }
+
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void asyncReadEntry(ReadHandle lh, long firstEntry, long lastEntry, boolean isSlowestReader,
+            final ReadEntriesCallback callback, Object ctx) {
+        final long ledgerId = lh.getId();
+        final int entriesToRead = (int) (lastEntry - firstEntry) + 1;
+        final PositionImpl firstPosition = PositionImpl.get(lh.getId(), firstEntry);
+        final PositionImpl lastPosition = PositionImpl.get(lh.getId(), lastEntry);
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Reading entries range ledger {}: {} to {}", ml.getName(), ledgerId, firstEntry, lastEntry);
+        }
+
+        Collection<EntryImpl> cachedEntries = getEntries(firstPosition, lastPosition);
+
+        if (cachedEntries.size() == entriesToRead) {
+            long totalCachedSize = 0;
+            final List<EntryImpl> entriesToReturn = Lists.newArrayListWithExpectedSize(entriesToRead);
+
+            // All entries found in cache
+            for (EntryImpl entry : cachedEntries) {
+                entriesToReturn.add(EntryImpl.create(entry));
+                totalCachedSize += entry.getLength();
+                entry.release();
+            }
+
+            manager.mlFactoryMBean.recordCacheHits(entriesToReturn.size(), totalCachedSize);
+            recordAccess(ledgerId, firstEntry, lastEntry, entriesToReturn.size(), totalCachedSize);
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Ledger {} -- Found in cache entries: {}-{}", ml.getName(), ledgerId, firstEntry,
+                        lastEntry);
+            }
+
+            callback.readEntriesComplete((List) entriesToReturn, ctx);
+
+        } else {
+            if (!cachedEntries.isEmpty()) {
+                cachedEntries.forEach(entry -> entry.release());
+            }
+            recordAccess(ledgerId, firstEntry, lastEntry, 0, 0);
+
+            if (pendingReads != null) {
+                pendingReads.readEntries(lh, firstEntry, lastEntry, callback, ctx);
+                return;
+            }
+
+            // Read all the entries from bookkeeper
+            lh.readAsync(firstEntry, lastEntry).whenCompleteAsync(
+                    (ledgerEntries, exception) -> {
+                        if (exception != null) {
+                            if (exception instanceof BKException
+                                && ((BKException)exception).getCode() == BKException.Code.TooManyRequestsException) {
+                                callback.readEntriesFailed(createManagedLedgerException(exception), ctx);
+                            } else {
+                                ml.invalidateLedgerHandle(lh, exception);
+                                ManagedLedgerException mlException = createManagedLedgerException(exception);
+                                callback.readEntriesFailed(mlException, ctx);
+                            }
+                            return;
+                        }
+
+                        checkNotNull(ml.getName());
+                        checkNotNull(ml.getExecutor());
+
+                        try {
+                            // We got the entries, we need to transform them to a List<> type
+                            long totalSize = 0;
+                            final List<EntryImpl> entriesToReturn
+                                = Lists.newArrayListWithExpectedSize(entriesToRead);
+                            for (LedgerEntry e : ledgerEntries) {
+                                EntryImpl entry = EntryImpl.create(e);
+
+                                entriesToReturn.add(entry);
+                                totalSize += entry.getLength();
+                            }
+
+                            manager.mlFactoryMBean.recordCacheMiss(entriesToReturn.size(), totalSize);
+                            ml.getMBean().addReadEntriesSample(entriesToReturn.size(), totalSize);
+
+                            callback.readEntriesComplete((List) entriesToReturn, ctx);
+                        } finally {
+                            ledgerEntries.close();
+                        }
+                    }, ml.getExecutor().chooseThread(ml.getName()));
+        }
+    }
+
+    @Override
+    public void clear() {
+        long removedSize = clearEntries();
+        manager.entriesRemoved(removedSize);
+        if (accessTracker != null) {
+            accessTracker.clear();
+        }
+    }
+
+    @Override
+    public int compareTo(EntryCache other) {
+        return Longs.compare(getSize(), other.getSize());
+    }
+
+    @Override
+    public Pair<Integer, Long> evictEntries(long sizeToFree) {
+        checkArgument(sizeToFree > 0);
+        Pair<Integer, Long> evicted = evictLeastAccessedEntries(sizeToFree);
+        int evictedEntries = evicted.getLeft();
+        long evictedSize = evicted.getRight();
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "[{}] Doing cache eviction of at least {} Mb -- Deleted {} entries - Total size deleted: {} Mb "
+                            + " -- Current Size: {} Mb",
+                    ml.getName(), sizeToFree / MB, evictedEntries, evictedSize / MB, getSize() / MB);
+        }
+        manager.entriesRemoved(evictedSize);
+        return evicted;
+    }
+
+    /**
+     * Evict the entries between first and last positions (inclusive).
+     *
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    Pair<Integer, Long> evictEntries(PositionImpl firstPosition, PositionImpl lastPosition) {
+        Pair<Integer, Long> evicted = removeEntries(firstPosition, lastPosition);
+        manager.entriesRemoved(evicted.getRight());
+        return evicted;
+    }
+
+    EntryCacheAccessTracker getAccessTracker() {
+        return accessTracker;
+    }
+
+    /**
+     * Account a read in the access statistics, unless it comes from a cursor far behind the tail of the ledger: a
+     * backlog read is served from the cache if the entries are there, but it doesn't make them more likely to stay
+     * cached.
+     *
+     * @param hitCount
+     *            the number of entries found in the cache, 0 if the read was a miss
+     */
+    private void recordAccess(long ledgerId, long firstEntry, long lastEntry, int hitCount, long hitSize) {
+        if (accessTracker == null) {
+            return;
+        }
+
+        if (isBacklogRead(ledgerId, lastEntry)) {
+            manager.mlFactoryMBean.recordCacheBacklogReads((int) (lastEntry - firstEntry + 1));
+            return;
+        }
+
+        boolean wasProtected = accessTracker.recordAccess(ledgerId, firstEntry, lastEntry);
+        if (hitCount > 0) {
+            manager.mlFactoryMBean.recordCacheSegmentHits(wasProtected, hitCount, hitSize);
+        }
+    }
+
+    private boolean isBacklogRead(long ledgerId, long lastEntry) {
+        PositionImpl lastConfirmedEntry = (PositionImpl) ml.getLastConfirmedEntry();
+        if (lastConfirmedEntry == null) {
+            return false;
+        }
+
+        long entriesBehind;
+        if (lastConfirmedEntry.getLedgerId() == ledgerId) {
+            entriesBehind = lastConfirmedEntry.getEntryId() - lastEntry;
+        } else if (lastConfirmedEntry.getLedgerId() > ledgerId) {
+            entriesBehind = ml.getNumberOfEntries(
+                    Range.openClosed(PositionImpl.get(ledgerId, lastEntry), lastConfirmedEntry));
+        } else {
+            entriesBehind = 0;
+        }
+        return entriesBehind > manager.getCacheAdmissionMaxBacklogEntries();
+    }
+
+    /**
+     * Store an entry in the cache storage.
+     *
+     * @return whether the entry was stored
+     */
+    protected abstract boolean putEntry(PositionImpl position, EntryImpl entry);
+
+    /**
+     * @return the cached entry, retained, or null if not present
+     */
+    protected abstract EntryImpl getEntry(PositionImpl position);
+
+    /**
+     * @return the retained entries found in the cache between first and last positions (inclusive)
+     */
+    protected abstract Collection<EntryImpl> getEntries(PositionImpl firstPosition, PositionImpl lastPosition);
+
+    /**
+     * Remove all the entries up to lastPosition (inclusive).
+     *
+     * @return a pair containing the number of entries removed and their total size
+     */
+    protected abstract Pair<Integer, Long> removeEntriesUpTo(PositionImpl lastPosition);
+
+    /**
+     * Remove the entries between first and last positions (inclusive).
+     *
+     * @return a pair containing the number of entries removed and their total size
+     */
+    protected abstract Pair<Integer, Long> removeEntries(PositionImpl firstPosition, PositionImpl lastPosition);
+
+    /**
+     * Remove all the entries of a ledger.
+     *
+     * @return a pair containing the number of entries removed and their total size
+     */
+    protected abstract Pair<Integer, Long> removeLedgerEntries(long ledgerId);
+
+    /**
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    protected abstract Pair<Integer, Long> evictLeastAccessedEntries(long sizeToFree);
+
+    /**
+     * @return the size of the removed entries
+     */
+    protected abstract long clearEntries();
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractEntryCache.class);
+}
@@ -0,0 +1,634 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.collect.Range;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * {@link IndividualAckSet} keeping, for each ledger, a bitset over the entry ids stored in pooled direct memory.
+ *
+ * <p/>The memory used by each ledger is 1 bit per entry between the lowest and the highest deleted entries of the
+ * ledger (rounded to 64 bits), independently of how fragmented the acknowledgments are. Bits up to the mark-delete
+ * position are discarded as the cursor moves forward, and the buffers are returned to the pool when their ledger is
+ * removed from the set and when the set is closed.
+ *
+ * <p/>The bitsets of a set never use more than <code>maxMemorySize</code> bytes. When an acknowledgment would need
+ * more, for instance when a few entries are deleted far apart from each other, the set moves its content to a
+ * {@link RunLengthIndividualAckSet}, bounded by the same memory size, and keeps using it until it gets empty again.
+ *
+ * <p/>Ranges never span across ledgers: the first range of a ledger starting at entry 0 is reported as
+ * <code>(ledgerId:-1, ledgerId:upperEntryId]</code>.
+ */
+public class BitSetIndividualAckSet implements IndividualAckSet {
+
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 1024 * 1024;
+
+    private final NavigableMap<Long, LedgerBitSet> ledgers = new TreeMap<>();
+    private final long maxMemorySize;
+
+    // Sum of the ranges and of the memory of all the ledger bitsets
+    private int numRanges = 0;
+    private long memorySize = 0;
+
+    // Set holding the content instead of the bitsets once they would have exceeded maxMemorySize. Null if not used
+    private RunLengthIndividualAckSet overflowRanges = null;
+
+    public BitSetIndividualAckSet() {
+        this(DEFAULT_MAX_MEMORY_SIZE);
+    }
+
+    /**
+     * @param maxMemorySize
+     *            maximum size, in bytes, of the bitsets of the set
+     */
+    public BitSetIndividualAckSet(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    @Override
+    public void addOpenClosed(long lowerLedgerId, long lowerEntryId, long upperLedgerId, long upperEntryId) {
+        if (overflowRanges != null) {
+            overflowRanges.addOpenClosed(lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId);
+            return;
+        }
+
+        long firstEntryId = lowerLedgerId == upperLedgerId ? lowerEntryId + 1 : 0;
+        if (upperEntryId < firstEntryId) {
+            return;
+        }
+
+        LedgerBitSet bitSet = ledgers.get(upperLedgerId);
+        long requiredMemorySize = bitSet == null ? LedgerBitSet.newBitSetMemorySize(firstEntryId, upperEntryId)
+                : bitSet.requiredMemorySize(firstEntryId, upperEntryId) - bitSet.getMemorySize();
+        if (memorySize + requiredMemorySize > maxMemorySize) {
+            switchToRanges();
+            overflowRanges.addOpenClosed(lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId);
+            return;
+        }
+
+        if (bitSet == null) {
+            bitSet = new LedgerBitSet(firstEntryId, upperEntryId);
+            ledgers.put(upperLedgerId, bitSet);
+            memorySize += bitSet.getMemorySize();
+        }
+
+        numRanges -= bitSet.rangeCount;
+        memorySize -= bitSet.getMemorySize();
+        if (firstEntryId == upperEntryId) {
+            bitSet.set(upperEntryId);
+        } else {
+            bitSet.set(firstEntryId, upperEntryId);
+        }
+        numRanges += bitSet.rangeCount;
+        memorySize += bitSet.getMemorySize();
+    }
+
+    @Override
+    public boolean contains(long ledgerId, long entryId) {
+        if (overflowRanges != null) {
+            return overflowRanges.contains(ledgerId, entryId);
+        }
+
+        LedgerBitSet bitSet = ledgers.get(ledgerId);
+        return bitSet != null && bitSet.get(entryId);
+    }
+
+    @Override
+    public Range<PositionImpl> rangeContaining(long ledgerId, long entryId) {
+        if (overflowRanges != null) {
+            return overflowRanges.rangeContaining(ledgerId, entryId);
+        }
+
+        LedgerBitSet bitSet = ledgers.get(ledgerId);
+        if (bitSet == null || !bitSet.get(entryId)) {
+            return null;
+        }
+
+        long lowerEntryId = bitSet.previousClearBit(entryId);
+        long upperEntryId = bitSet.nextClearBit(entryId) - 1;
+        return Range.openClosed(new PositionImpl(ledgerId, lowerEntryId), new PositionImpl(ledgerId, upperEntryId));
+    }
+
+    @Override
+    public void removeAtMost(long ledgerId, long entryId) {
+        if (overflowRanges != null) {
+            overflowRanges.removeAtMost(ledgerId, entryId);
+            if (overflowRanges.isEmpty()) {
+                overflowRanges = null;
+            }
+            return;
+        }
+
+        NavigableMap<Long, LedgerBitSet> previousLedgers = ledgers.headMap(ledgerId, false);
+        for (LedgerBitSet bitSet : previousLedgers.values()) {
+            numRanges -= bitSet.rangeCount;
+            memorySize -= bitSet.getMemorySize();
+            bitSet.release();
+        }
+        previousLedgers.clear();
+
+        LedgerBitSet bitSet = ledgers.get(ledgerId);
+        if (bitSet != null) {
+            numRanges -= bitSet.rangeCount;
+            memorySize -= bitSet.getMemorySize();
+            bitSet.clearUpTo(entryId);
+            if (bitSet.rangeCount == 0) {
+                ledgers.remove(ledgerId);
+                bitSet.release();
+            } else {
+                numRanges += bitSet.rangeCount;
+                memorySize += bitSet.getMemorySize();
+            }
+        }
+    }
+
+    @Override
+    public void removeLedger(long ledgerId) {
+        if (overflowRanges != null) {
+            overflowRanges.removeLedger(ledgerId);
+            if (overflowRanges.isEmpty()) {
+                overflowRanges = null;
+            }
+            return;
+        }
+
+        LedgerBitSet bitSet = ledgers.remove(ledgerId);
+        if (bitSet != null) {
+            numRanges -= bitSet.rangeCount;
+            memorySize -= bitSet.getMemorySize();
+            bitSet.release();
+        }
+    }
+
+    @Override
+    public Range<PositionImpl> firstRange() {
+        if (overflowRanges != null) {
+            return overflowRanges.firstRange();
+        }
+        if (ledgers.isEmpty()) {
+            return null;
+        }
+
+        Map.Entry<Long, LedgerBitSet> first = ledgers.firstEntry();
+        long ledgerId = first.getKey();
+        LedgerBitSet bitSet = first.getValue();
+        long firstEntryId = bitSet.nextSetBit(bitSet.firstEntryId());
+        long upperEntryId = bitSet.nextClearBit(firstEntryId) - 1;
+        return Range.openClosed(new PositionImpl(ledgerId, firstEntryId - 1),
+                new PositionImpl(ledgerId, upperEntryId));
+    }
+
+    @Override
+    public Range<PositionImpl> span() {
+        if (overflowRanges != null) {
+            return overflowRanges.span();
+        }
+        if (ledgers.isEmpty()) {
+            return null;
+        }
+
+        Map.Entry<Long, LedgerBitSet> first = ledgers.firstEntry();
+        Map.Entry<Long, LedgerBitSet> last = ledgers.lastEntry();
+        long firstEntryId = first.getValue().nextSetBit(first.getValue().firstEntryId());
+        long lastEntryId = last.getValue().previousSetBit(last.getValue().lastEntryId());
+        return Range.openClosed(new PositionImpl(first.getKey(), firstEntryId - 1),
+                new PositionImpl(last.getKey(), lastEntryId));
+    }
+
+    @Override
+    public void forEach(RangeProcessor processor) {
+        if (overflowRanges != null) {
+            overflowRanges.forEach(processor);
+            return;
+        }
+
+        for (Map.Entry<Long, LedgerBitSet> entry : ledgers.entrySet()) {
+            long ledgerId = entry.getKey();
+            LedgerBitSet bitSet = entry.getValue();
+            long lastEntryId = bitSet.lastEntryId();
+            long entryId = bitSet.nextSetBit(bitSet.firstEntryId());
+            while (entryId >= 0 && entryId <= lastEntryId) {
+                long endEntryId = bitSet.nextClearBit(entryId);
+                if (!processor.process(ledgerId, entryId - 1, ledgerId, endEntryId - 1)) {
+                    return;
+                }
+                entryId = bitSet.nextSetBit(endEntryId);
+            }
+        }
+    }
+
+    @Override
+    public void forEach(long ledgerId, long fromEntryId, long toEntryId, RangeProcessor processor) {
+        if (overflowRanges != null) {
+            overflowRanges.forEach(ledgerId, fromEntryId, toEntryId, processor);
+            return;
+        }
+
+        LedgerBitSet bitSet = ledgers.get(ledgerId);
+        if (bitSet == null) {
+            return;
+        }
+
+        long lastEntryId = Math.min(toEntryId, bitSet.lastEntryId());
+        long entryId = bitSet.nextSetBit(fromEntryId);
+        while (entryId >= 0 && entryId <= lastEntryId) {
+            long endEntryId = Math.min(bitSet.nextClearBit(entryId), lastEntryId + 1);
+            if (!processor.process(ledgerId, entryId - 1, ledgerId, endEntryId - 1)) {
+                return;
+            }
+            entryId = bitSet.nextSetBit(endEntryId);
+        }
+    }
+
+    @Override
+    public int size() {
+        return overflowRanges != null ? overflowRanges.size() : numRanges;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return overflowRanges != null ? overflowRanges.isEmpty() : ledgers.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        if (overflowRanges != null) {
+            overflowRanges.close();
+            overflowRanges = null;
+        }
+        releaseBitSets();
+    }
+
+    @Override
+    public long getMemorySize() {
+        return overflowRanges != null ? overflowRanges.getMemorySize() : memorySize;
+    }
+
+    /**
+     * @return whether the content of the set is held in ranges because the bitsets would have exceeded the maximum
+     *         memory size
+     */
+    public boolean isOverflowed() {
+        return overflowRanges != null;
+    }
+
+    /**
+     * @return the number of ranges dropped since the set holds its content in ranges, because they didn't fit in the
+     *         max memory size
+     */
+    public long getDroppedRanges() {
+        return overflowRanges != null ? overflowRanges.getDroppedRanges() : 0;
+    }
+
+    private void switchToRanges() {
+        RunLengthIndividualAckSet ranges = new RunLengthIndividualAckSet(maxMemorySize);
+        forEach((lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId) -> {
+            ranges.addOpenClosed(lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId);
+            return true;
+        });
+        releaseBitSets();
+        overflowRanges = ranges;
+    }
+
+    private void releaseBitSets() {
+        ledgers.values().forEach(LedgerBitSet::release);
+        ledgers.clear();
+        numRanges = 0;
+        memorySize = 0;
+    }
+
+    @Override
+    public String toString() {
+        if (overflowRanges != null) {
+            return overflowRanges.toString();
+        }
+
+        StringBuilder sb = new StringBuilder("[");
+        forEach((lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append('(').append(lowerLedgerId).append(':').append(lowerEntryId).append("..").append(upperLedgerId)
+                    .append(':').append(upperEntryId).append(']');
+            return true;
+        });
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Bitset over the entry ids of a single ledger, stored in a pooled direct buffer that must be released.
+     *
+     * <p/>Bit <code>i</code> of word <code>w</code> is the entry <code>baseEntryId + w * 64 + i</code>. All the words
+     * before <code>firstWord</code> are empty.
+     */
+    private static final class LedgerBitSet {
+        private static final int MIN_WORDS = 2;
+
+        private ByteBuf words;
+        private int numWords;
+        private long baseEntryId;
+        private int firstWord = 0;
+        int rangeCount = 0;
+
+        LedgerBitSet(long firstEntryId, long lastEntryId) {
+            this.baseEntryId = firstEntryId & ~63L;
+            this.numWords = Math.max(MIN_WORDS, wordIndex(lastEntryId) + 1);
+            this.words = allocate(numWords);
+        }
+
+        /**
+         * @return the memory size of a new bitset covering the entries between from and to
+         */
+        static long newBitSetMemorySize(long fromEntryId, long toEntryId) {
+            return Math.max(MIN_WORDS, ((toEntryId - (fromEntryId & ~63L)) >>> 6) + 1) * 8;
+        }
+
+        /**
+         * @return the memory size of the bitset once it covers the entries between from and to
+         */
+        long requiredMemorySize(long fromEntryId, long toEntryId) {
+            if (fromEntryId >= baseEntryId && toEntryId < baseEntryId + numWords * 64L) {
+                return getMemorySize();
+            }
+
+            long newBaseEntryId = Math.min(fromEntryId, firstEntryId()) & ~63L;
+            long lastEntryId = Math.max(toEntryId, previousSetBit(lastEntryId()));
+            long requiredWords = ((lastEntryId - newBaseEntryId) >>> 6) + 1;
+            return Math.max(MIN_WORDS, Long.highestOneBit(requiredWords - 1) << 1) * 8;
+        }
+
+        long getMemorySize() {
+            return numWords * 8L;
+        }
+
+        void release() {
+            words.release();
+        }
+
+        long firstEntryId() {
+            return baseEntryId + firstWord * 64L;
+        }
+
+        long lastEntryId() {
+            return baseEntryId + numWords * 64L - 1;
+        }
+
+        boolean get(long entryId) {
+            long idx = entryId - baseEntryId;
+            if (idx < 0 || idx >= numWords * 64L) {
+                return false;
+            }
+            return (getWord((int) (idx >>> 6)) & (1L << idx)) != 0;
+        }
+
+        void set(long entryId) {
+            if (get(entryId)) {
+                return;
+            }
+
+            boolean previousSet = get(entryId - 1);
+            boolean nextSet = get(entryId + 1);
+            if (!previousSet && !nextSet) {
+                ++rangeCount;
+            } else if (previousSet && nextSet) {
+                --rangeCount;
+            }
+
+            ensureCapacity(entryId, entryId);
+            long idx = entryId - baseEntryId;
+            int w = (int) (idx >>> 6);
+            setWord(w, getWord(w) | (1L << idx));
+        }
+
+        void set(long fromEntryId, long toEntryId) {
+            ensureCapacity(fromEntryId, toEntryId);
+            long fromIdx = fromEntryId - baseEntryId;
+            long toIdx = toEntryId - baseEntryId;
+            int fromWord = (int) (fromIdx >>> 6);
+            int toWord = (int) (toIdx >>> 6);
+            // Only the ranges starting in the modified words, or right after them, can change
+            int countToWord = Math.min(toWord + 1, numWords - 1);
+            rangeCount -= countRanges(fromWord, countToWord);
+            long firstMask = -1L << fromIdx;
+            long lastMask = -1L >>> (63 - (toIdx & 63));
+            if (fromWord == toWord) {
+                setWord(fromWord, getWord(fromWord) | (firstMask & lastMask));
+            } else {
+                setWord(fromWord, getWord(fromWord) | firstMask);
+                for (int w = fromWord + 1; w < toWord; w++) {
+                    setWord(w, -1L);
+                }
+                setWord(toWord, getWord(toWord) | lastMask);
+            }
+            rangeCount += countRanges(fromWord, countToWord);
+        }
+
+        void clearUpTo(long entryId) {
+            long idx = entryId - baseEntryId;
+            if (idx < 0) {
+                return;
+            }
+
+            int lastWord = (int) Math.min(idx >>> 6, numWords);
+            for (int w = firstWord; w < lastWord; w++) {
+                setWord(w, 0L);
+            }
+            if (lastWord < numWords) {
+                // Clear the bits up to idx (inclusive) in the last word
+                setWord(lastWord, getWord(lastWord) & ~(-1L >>> (63 - (idx & 63))));
+            }
+            firstWord = Math.max(firstWord, lastWord);
+            rangeCount = countRanges();
+            compact();
+        }
+
+        long nextSetBit(long fromEntryId) {
+            long idx = Math.max(fromEntryId - baseEntryId, firstWord * 64L);
+            int capacity = numWords;
+            int w = (int) (idx >>> 6);
+            if (w >= capacity) {
+                return -1;
+            }
+
+            long word = getWord(w) & (-1L << idx);
+            while (true) {
+                if (word != 0) {
+                    return baseEntryId + w * 64L + Long.numberOfTrailingZeros(word);
+                }
+                if (++w == capacity) {
+                    return -1;
+                }
+                word = getWord(w);
+            }
+        }
+
+        long nextClearBit(long fromEntryId) {
+            long idx = fromEntryId - baseEntryId;
+            int capacity = numWords;
+            int w = (int) (idx >>> 6);
+            if (idx < 0 || w >= capacity) {
+                return fromEntryId;
+            }
+
+            long word = ~getWord(w) & (-1L << idx);
+            while (true) {
+                if (word != 0) {
+                    return baseEntryId + w * 64L + Long.numberOfTrailingZeros(word);
+                }
+                if (++w == capacity) {
+                    return baseEntryId + capacity * 64L;
+                }
+                word = ~getWord(w);
+            }
+        }
+
+        /**
+         * @return the greatest clear bit before the given entry, possibly <code>baseEntryId - 1</code>
+         */
+        long previousClearBit(long fromEntryId) {
+            long idx = fromEntryId - baseEntryId;
+            if (idx < 0 || idx >= numWords * 64L) {
+                return fromEntryId;
+            }
+
+            int w = (int) (idx >>> 6);
+            long word = ~getWord(w) & (-1L >>> (63 - (idx & 63)));
+            while (true) {
+                if (word != 0) {
+                    return baseEntryId + w * 64L + 63 - Long.numberOfLeadingZeros(word);
+                }
+                if (w-- == 0) {
+                    return baseEntryId - 1;
+                }
+                word = ~getWord(w);
+            }
+        }
+
+        long previousSetBit(long fromEntryId) {
+            long idx = Math.min(fromEntryId - baseEntryId, numWords * 64L - 1);
+            if (idx < 0) {
+                return -1;
+            }
+
+            int w = (int) (idx >>> 6);
+            long word = getWord(w) & (-1L >>> (63 - (idx & 63)));
+            while (true) {
+                if (word != 0) {
+                    return baseEntryId + w * 64L + 63 - Long.numberOfLeadingZeros(word);
+                }
+                if (w-- <= firstWord) {
+                    return -1;
+                }
+                word = getWord(w);
+            }
+        }
+
+        private int countRanges() {
+            return countRanges(firstWord, numWords - 1);
+        }
+
+        /**
+         * @return the number of ranges starting in the words between from and to (inclusive)
+         */
+        private int countRanges(int fromWord, int toWord) {
+            int count = 0;
+            long previousWord = fromWord > 0 ? getWord(fromWord - 1) : 0;
+            for (int w = fromWord; w <= toWord; w++) {
+                long word = getWord(w);
+                // A range starts at each set bit whose previous bit is clear
+                long starts = word & ~((word << 1) | (previousWord >>> 63));
+                count += Long.bitCount(starts);
+                previousWord = word;
+            }
+            return count;
+        }
+
+        /**
+         * Make sure the bitset covers the entries between from and to, moving the base down or growing the buffer
+         * if needed.
+         */
+        private void ensureCapacity(long fromEntryId, long toEntryId) {
+            if (fromEntryId >= baseEntryId && toEntryId < baseEntryId + numWords * 64L) {
+                firstWord = Math.min(firstWord, (int) ((fromEntryId - baseEntryId) >>> 6));
+                return;
+            }
+
+            long lastSetEntryId = previousSetBit(lastEntryId());
+            relocate(Math.min(fromEntryId, firstEntryId()), Math.max(toEntryId, lastSetEntryId));
+        }
+
+        /**
+         * Move the content to a new buffer sized to cover the entries between from and to.
+         */
+        private void relocate(long fromEntryId, long toEntryId) {
+            long newBaseEntryId = fromEntryId & ~63L;
+            int requiredWords = (int) ((toEntryId - newBaseEntryId) >>> 6) + 1;
+            int newCapacity = Math.max(MIN_WORDS, Integer.highestOneBit(requiredWords - 1) << 1);
+            ByteBuf newWords = allocate(newCapacity);
+
+            long lastSetEntryId = previousSetBit(lastEntryId());
+            if (lastSetEntryId >= 0) {
+                int lastWord = (int) ((lastSetEntryId - baseEntryId) >>> 6);
+                int offset = (int) ((baseEntryId - newBaseEntryId) >> 6);
+                newWords.setBytes((firstWord + offset) * 8, words, firstWord * 8, (lastWord - firstWord + 1) * 8);
+            }
+
+            words.release();
+            words = newWords;
+            numWords = newCapacity;
+            baseEntryId = newBaseEntryId;
+            firstWord = 0;
+        }
+
+        /**
+         * Release the memory of the cleared words at the beginning of the buffer, once they are the majority.
+         */
+        private void compact() {
+            if (firstWord > MIN_WORDS && firstWord >= numWords / 2) {
+                long lastSetEntryId = previousSetBit(lastEntryId());
+                if (lastSetEntryId >= 0) {
+                    relocate(firstEntryId(), lastSetEntryId);
+                }
+            }
+        }
+
+        private long getWord(int w) {
+            return words.getLong(w << 3);
+        }
+
+        private void setWord(int w, long word) {
+            words.setLong(w << 3, word);
+        }
+
+        private static ByteBuf allocate(int numWords) {
+            ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(numWords * 8, numWords * 8);
+            // Pooled buffers are not zeroed
+            return buf.setZero(0, numWords * 8);
+        }
+
+        private int wordIndex(long entryId) {
+            return (int) ((entryId - baseEntryId) >>> 6);
+        }
+    }
+}
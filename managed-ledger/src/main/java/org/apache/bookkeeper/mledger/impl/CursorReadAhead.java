@@ -0,0 +1,306 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static java.lang.Math.min;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-ahead buffer for a cursor catching up with the backlog.
+ *
+ * <p/>Once a cursor has done a few sequential reads, the following batches of the ledger it is reading are requested
+ * in advance, with up to <code>maxOutstandingReads</code> reads in flight. The next reads of the cursor are then served
+ * from memory, or attached to a read already in flight, instead of waiting for a full bookie round trip each time.
+ *
+ * <p/>Prefetching stops when the entries held in the buffer reach <code>maxBufferSizeBytes</code>, and the buffer is
+ * discarded as soon as the cursor reads from a different position.
+ */
+class CursorReadAhead {
+
+    // Number of consecutive sequential reads after which a cursor is considered to be catching up
+    static final int SEQUENTIAL_READS_THRESHOLD = 2;
+
+    private final ManagedLedgerImpl ledger;
+    private final int maxOutstandingReads;
+    private final long maxBufferSizeBytes;
+
+    // Prefetched batches of the ledger being read, in order
+    private final ArrayDeque<PrefetchRead> reads = new ArrayDeque<>();
+    private ReadHandle readHandle = null;
+    private long lastEntryInLedger = -1;
+    private long nextEntryToPrefetch = -1;
+    private int batchSize = 1;
+    private int outstandingReads = 0;
+    private long bufferSize = 0;
+
+    // Position where the next read starts if the cursor reads sequentially
+    private long expectedLedgerId = -1;
+    private long expectedEntryId = -1;
+    private int sequentialReads = 0;
+
+    CursorReadAhead(ManagedLedgerImpl ledger, int maxOutstandingReads, long maxBufferSizeBytes) {
+        this.ledger = ledger;
+        this.maxOutstandingReads = maxOutstandingReads;
+        this.maxBufferSizeBytes = maxBufferSizeBytes;
+    }
+
+    /**
+     * Read the entries between firstEntry and lastEntry, serving them from the read-ahead buffer when possible. Fewer
+     * entries than requested can be returned.
+     */
+    void asyncReadEntries(ReadHandle lh, long firstEntry, long lastEntry, long lastEntryInLedger,
+            ReadEntriesCallback callback, Object ctx) {
+        PrefetchRead read = null;
+        boolean catchingUp;
+        List<PrefetchRead> newReads;
+        synchronized (this) {
+            if (lh.getId() == expectedLedgerId && firstEntry == expectedEntryId
+                    || lh.getId() > expectedLedgerId && expectedLedgerId != -1 && firstEntry == 0) {
+                ++sequentialReads;
+            } else {
+                sequentialReads = 0;
+            }
+            catchingUp = sequentialReads >= SEQUENTIAL_READS_THRESHOLD;
+
+            PrefetchRead head = reads.peekFirst();
+            if (head != null && head.lh.getId() == lh.getId() && head.firstEntryId == firstEntry
+                    && head.callback == null) {
+                read = head;
+                read.callback = callback;
+                read.ctx = ctx;
+                read.lastRequestedEntryId = lastEntry;
+            } else {
+                if (readHandle == null || readHandle.getId() != lh.getId() || head != null) {
+                    clear();
+                    readHandle = lh;
+                }
+                expectedLedgerId = lh.getId();
+                expectedEntryId = lastEntry + 1;
+            }
+
+            newReads = Collections.emptyList();
+            if (catchingUp) {
+                this.lastEntryInLedger = lastEntryInLedger;
+                this.batchSize = (int) (lastEntry - firstEntry + 1);
+                if (nextEntryToPrefetch <= lastEntry) {
+                    nextEntryToPrefetch = lastEntry + 1;
+                }
+                newReads = schedulePrefetches();
+            }
+        }
+
+        if (read != null) {
+            ledger.mbean.recordReadAheadHit();
+            completeIfReady(read);
+        } else {
+            if (catchingUp) {
+                ledger.mbean.recordReadAheadMiss();
+            }
+            ledger.entryCache.asyncReadEntry(lh, firstEntry, lastEntry, false, callback, ctx);
+        }
+        issue(newReads);
+    }
+
+    /**
+     * Discard the buffered entries. The read a cursor is waiting for, if any, is still completed.
+     */
+    synchronized void clear() {
+        PrefetchRead waited = null;
+        for (PrefetchRead read : reads) {
+            if (read.callback != null) {
+                waited = read;
+                continue;
+            }
+
+            read.cancelled = true;
+            if (read.entries != null) {
+                bufferSize -= read.size;
+                read.entries.forEach(Entry::release);
+                read.entries = null;
+            } else if (read.exception == null) {
+                --outstandingReads;
+            }
+        }
+        reads.clear();
+        if (waited != null) {
+            reads.add(waited);
+        }
+        nextEntryToPrefetch = -1;
+    }
+
+    synchronized long getBufferSize() {
+        return bufferSize;
+    }
+
+    private List<PrefetchRead> schedulePrefetches() {
+        List<PrefetchRead> newReads = Collections.emptyList();
+        while (readHandle != null && outstandingReads < maxOutstandingReads && bufferSize < maxBufferSizeBytes
+                && nextEntryToPrefetch >= 0 && nextEntryToPrefetch <= lastEntryInLedger) {
+            long lastEntryId = min(nextEntryToPrefetch + batchSize - 1, lastEntryInLedger);
+            PrefetchRead read = new PrefetchRead(readHandle, nextEntryToPrefetch, lastEntryId);
+            if (newReads.isEmpty()) {
+                newReads = Lists.newArrayList();
+            }
+            newReads.add(read);
+            reads.addLast(read);
+            ++outstandingReads;
+            nextEntryToPrefetch = lastEntryId + 1;
+        }
+        return newReads;
+    }
+
+    private void issue(List<PrefetchRead> newReads) {
+        for (PrefetchRead read : newReads) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Reading ahead entries from ledger {} - first={} last={}", ledger.getName(),
+                        read.lh.getId(), read.firstEntryId, read.lastEntryId);
+            }
+            ledger.entryCache.asyncReadEntry(read.lh, read.firstEntryId, read.lastEntryId, false,
+                    new ReadEntriesCallback() {
+                        @Override
+                        public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                            prefetchComplete(read, entries, null);
+                        }
+
+                        @Override
+                        public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                            prefetchComplete(read, null, exception);
+                        }
+                    }, null);
+        }
+    }
+
+    private void prefetchComplete(PrefetchRead read, List<Entry> entries, ManagedLedgerException exception) {
+        List<PrefetchRead> newReads;
+        synchronized (this) {
+            if (read.cancelled) {
+                if (entries != null) {
+                    entries.forEach(Entry::release);
+                }
+                return;
+            }
+
+            --outstandingReads;
+            if (entries != null) {
+                read.entries = entries;
+                for (Entry entry : entries) {
+                    read.size += entry.getLength();
+                }
+                bufferSize += read.size;
+            } else {
+                read.exception = exception;
+            }
+            newReads = schedulePrefetches();
+        }
+
+        completeIfReady(read);
+        issue(newReads);
+    }
+
+    /**
+     * Hand over the entries of a prefetched read to the cursor waiting for them, if both are ready.
+     */
+    private void completeIfReady(PrefetchRead read) {
+        ReadEntriesCallback callback;
+        Object ctx;
+        List<Entry> entries = null;
+        long lastRequestedEntryId;
+        synchronized (this) {
+            if (read.callback == null || (read.entries == null && read.exception == null)) {
+                return;
+            }
+
+            callback = read.callback;
+            ctx = read.ctx;
+            lastRequestedEntryId = read.lastRequestedEntryId;
+            read.callback = null;
+            read.ctx = null;
+
+            if (read.exception != null) {
+                // Drop the buffer and fall back to a regular read
+                reads.remove(read);
+                clear();
+            } else {
+                int count = (int) min(read.entries.size(), lastRequestedEntryId - read.firstEntryId + 1);
+                if (count == read.entries.size()) {
+                    entries = read.entries;
+                    reads.remove(read);
+                    bufferSize -= read.size;
+                } else {
+                    // Keep the remaining entries for the next read
+                    entries = Lists.newArrayList(read.entries.subList(0, count));
+                    read.entries = Lists.newArrayList(read.entries.subList(count, read.entries.size()));
+                    long deliveredSize = 0;
+                    for (Entry entry : entries) {
+                        deliveredSize += entry.getLength();
+                    }
+                    read.size -= deliveredSize;
+                    bufferSize -= deliveredSize;
+                    read.firstEntryId += count;
+                }
+                PositionImpl lastPosition = (PositionImpl) entries.get(entries.size() - 1).getPosition();
+                expectedLedgerId = lastPosition.getLedgerId();
+                expectedEntryId = lastPosition.getEntryId() + 1;
+            }
+        }
+
+        if (entries != null) {
+            callback.readEntriesComplete(entries, ctx);
+        } else {
+            ledger.entryCache.asyncReadEntry(read.lh, read.firstEntryId, lastRequestedEntryId, false, callback, ctx);
+        }
+    }
+
+    /**
+     * A batch of entries read in advance.
+     */
+    private static final class PrefetchRead {
+        final ReadHandle lh;
+        long firstEntryId;
+        final long lastEntryId;
+
+        List<Entry> entries = null;
+        long size = 0;
+        ManagedLedgerException exception = null;
+        boolean cancelled = false;
+
+        // Cursor read waiting for this batch
+        ReadEntriesCallback callback = null;
+        Object ctx = null;
+        long lastRequestedEntryId;
+
+        PrefetchRead(ReadHandle lh, long firstEntryId, long lastEntryId) {
+            this.lh = lh;
+            this.firstEntryId = firstEntryId;
+            this.lastEntryId = lastEntryId;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(CursorReadAhead.class);
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.apache.bookkeeper.mledger.util.SafeRun.safeRun;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Limits the number of cursors reading their recovery data at the same time, across all the managed ledgers of a
+ * factory. When a whole bundle of topics is loaded at once, this bounds the number of cursor ledgers being opened and
+ * read from the bookies instead of issuing all of them together.
+ */
+class CursorRecoveryLimiter {
+    private final int maxConcurrentRecoveries;
+    private final Executor executor;
+
+    private int runningRecoveries = 0;
+    private final Queue<Runnable> pendingRecoveries = new ArrayDeque<>();
+
+    /**
+     * @param maxConcurrentRecoveries
+     *            the max number of concurrent recoveries, 0 for no limit
+     * @param executor
+     *            the executor used to start the recoveries that had to wait for a slot
+     */
+    CursorRecoveryLimiter(int maxConcurrentRecoveries, Executor executor) {
+        this.maxConcurrentRecoveries = maxConcurrentRecoveries;
+        this.executor = executor;
+    }
+
+    /**
+     * Start a recovery as soon as a slot is available. The recovery must call {@link #release()} exactly once when it
+     * is done reading.
+     */
+    void execute(Runnable recovery) {
+        if (maxConcurrentRecoveries > 0) {
+            synchronized (this) {
+                if (runningRecoveries >= maxConcurrentRecoveries) {
+                    pendingRecoveries.add(recovery);
+                    return;
+                }
+                ++runningRecoveries;
+            }
+        }
+
+        recovery.run();
+    }
+
+    /**
+     * Release the slot of a recovery, starting the next pending one if any.
+     */
+    void release() {
+        if (maxConcurrentRecoveries <= 0) {
+            return;
+        }
+
+        Runnable next;
+        synchronized (this) {
+            next = pendingRecoveries.poll();
+            if (next == null) {
+                --runningRecoveries;
+                return;
+            }
+        }
+
+        // The slot is handed over to the next recovery
+        executor.execute(safeRun(next));
+    }
+
+    synchronized int getPendingRecoveries() {
+        return pendingRecoveries.size();
+    }
+}
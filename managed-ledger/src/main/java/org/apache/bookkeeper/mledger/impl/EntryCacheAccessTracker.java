@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Tracks how often and how recently the entries of an {@link AbstractEntryCache} are read, grouped in ranges of
+ * {@link #RANGE_SIZE} consecutive entries of a ledger.
+ *
+ * <p/>The statistics are used by {@link EntryCacheSegmentedLruEvictionPolicy} to pick the ranges to evict. Frequencies
+ * are small saturating counters that are halved at each eviction cycle, so that the ranges that were popular in the
+ * past lose their priority over time. Adding entries to a range only refreshes its recency.
+ */
+class EntryCacheAccessTracker {
+
+    static final int RANGE_SIZE = 128;
+
+    // Ranges read at least this number of times are in the protected segment
+    static final int PROTECTED_MIN_FREQUENCY = 2;
+
+    private static final int MAX_FREQUENCY = 15;
+
+    private final AbstractEntryCache cache;
+
+    // Ranges sorted by the position of their first entry
+    private final ConcurrentNavigableMap<PositionImpl, CachedRange> ranges = new ConcurrentSkipListMap<>();
+
+    // Range that received the last inserted entry, to avoid a map lookup for each new entry
+    private volatile CachedRange lastInsertedRange = null;
+
+    EntryCacheAccessTracker(AbstractEntryCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Record that an entry was stored in the cache.
+     */
+    void recordInsert(PositionImpl position) {
+        CachedRange range = lastInsertedRange;
+        if (range != null && !range.removed && range.contains(position.getLedgerId(), position.getEntryId())) {
+            return;
+        }
+
+        range = ranges.computeIfAbsent(rangeStart(position.getLedgerId(), position.getEntryId()),
+                start -> new CachedRange(this, start.getLedgerId(), start.getEntryId()));
+        lastInsertedRange = range;
+    }
+
+    /**
+     * Record a read of the entries of a ledger between <code>firstEntryId</code> and <code>lastEntryId</code>
+     * (inclusive).
+     *
+     * @return whether the first cached range of the read was in the protected segment before the read
+     */
+    boolean recordAccess(long ledgerId, long firstEntryId, long lastEntryId) {
+        long now = System.nanoTime();
+        Boolean wasProtected = null;
+        for (long start = firstEntryId - firstEntryId % RANGE_SIZE; start <= lastEntryId; start += RANGE_SIZE) {
+            CachedRange range = ranges.get(PositionImpl.get(ledgerId, start));
+            if (range != null) {
+                boolean rangeWasProtected = range.recordAccess(now);
+                if (wasProtected == null) {
+                    wasProtected = rangeWasProtected;
+                }
+            }
+        }
+        return wasProtected != null && wasProtected;
+    }
+
+    /**
+     * Stop tracking the ranges whose entries are all before or at <code>lastPosition</code>.
+     */
+    void removeUpTo(PositionImpl lastPosition) {
+        for (Map.Entry<PositionImpl, CachedRange> entry : ranges.headMap(lastPosition, true).entrySet()) {
+            CachedRange range = entry.getValue();
+            if (range.ledgerId < lastPosition.getLedgerId() || range.lastEntryId <= lastPosition.getEntryId()) {
+                remove(range);
+            }
+        }
+    }
+
+    /**
+     * Stop tracking all the ranges of a ledger.
+     */
+    void removeLedger(long ledgerId) {
+        ranges.subMap(PositionImpl.get(ledgerId, 0), PositionImpl.get(ledgerId + 1, 0)).values()
+                .forEach(this::remove);
+    }
+
+    void clear() {
+        ranges.values().forEach(this::remove);
+    }
+
+    /**
+     * Halve the frequency of all the ranges.
+     */
+    void age() {
+        ranges.values().forEach(CachedRange::age);
+    }
+
+    Collection<CachedRange> getRanges() {
+        return ranges.values();
+    }
+
+    /**
+     * Evict the cached entries of a range and stop tracking it.
+     *
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    Pair<Integer, Long> evict(CachedRange range) {
+        remove(range);
+        return cache.evictEntries(PositionImpl.get(range.ledgerId, range.firstEntryId),
+                PositionImpl.get(range.ledgerId, range.lastEntryId));
+    }
+
+    private void remove(CachedRange range) {
+        range.removed = true;
+        ranges.remove(PositionImpl.get(range.ledgerId, range.firstEntryId), range);
+    }
+
+    private static PositionImpl rangeStart(long ledgerId, long entryId) {
+        return PositionImpl.get(ledgerId, entryId - entryId % RANGE_SIZE);
+    }
+
+    /**
+     * Access statistics of a range of entries.
+     */
+    static class CachedRange {
+        private final EntryCacheAccessTracker tracker;
+        final long ledgerId;
+        final long firstEntryId;
+        final long lastEntryId;
+
+        private volatile int frequency = 0;
+        private volatile long lastAccessTimestamp;
+        private volatile boolean removed = false;
+
+        CachedRange(EntryCacheAccessTracker tracker, long ledgerId, long firstEntryId) {
+            this.tracker = tracker;
+            this.ledgerId = ledgerId;
+            this.firstEntryId = firstEntryId;
+            this.lastEntryId = firstEntryId + RANGE_SIZE - 1;
+            this.lastAccessTimestamp = System.nanoTime();
+        }
+
+        boolean contains(long ledgerId, long entryId) {
+            return this.ledgerId == ledgerId && entryId >= firstEntryId && entryId <= lastEntryId;
+        }
+
+        /**
+         * @return whether the range was in the protected segment before this access
+         */
+        boolean recordAccess(long timestamp) {
+            lastAccessTimestamp = timestamp;
+            while (true) {
+                int current = frequency;
+                if (current >= MAX_FREQUENCY || FREQUENCY_UPDATER.compareAndSet(this, current, current + 1)) {
+                    return current >= PROTECTED_MIN_FREQUENCY;
+                }
+            }
+        }
+
+        void age() {
+            while (true) {
+                int current = frequency;
+                if (FREQUENCY_UPDATER.compareAndSet(this, current, current >> 1)) {
+                    return;
+                }
+            }
+        }
+
+        boolean isProtected() {
+            return frequency >= PROTECTED_MIN_FREQUENCY;
+        }
+
+        int getFrequency() {
+            return frequency;
+        }
+
+        long getLastAccessTimestamp() {
+            return lastAccessTimestamp;
+        }
+
+        EntryCacheAccessTracker getTracker() {
+            return tracker;
+        }
+
+        private static final AtomicIntegerFieldUpdater<CachedRange> FREQUENCY_UPDATER = AtomicIntegerFieldUpdater
+                .newUpdater(CachedRange.class, "frequency");
+    }
+}
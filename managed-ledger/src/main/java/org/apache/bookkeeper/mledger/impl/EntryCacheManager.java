@@ -51,6 +51,10 @@ public class EntryCacheManager {
     private final AtomicLong currentSize = new AtomicLong(0);
     private final ConcurrentMap<String, EntryCache> caches = Maps.newConcurrentMap();
     private final EntryCacheEvictionPolicy evictionPolicy;
+    private final boolean segmentedCacheEnabled;
+    private final boolean readCoalescingEnabled;
+    private final boolean accessTrackingEnabled;
+    private final long cacheAdmissionMaxBacklogEntries;
 
     private final AtomicBoolean evictionInProgress = new AtomicBoolean(false);
 
@@ -68,7 +72,12 @@ public class EntryCacheManager {
         this.maxSize = factory.getConfig().getMaxCacheSize();
         this.evictionTriggerThreshold = (long) (maxSize * evictionTriggerThresholdPercent);
         this.cacheEvictionWatermak = factory.getConfig().getCacheEvictionWatermark();
-        this.evictionPolicy = new EntryCacheDefaultEvictionPolicy();
+        this.accessTrackingEnabled = factory.getConfig().isSegmentedLruCacheEvictionEnabled();
+        this.evictionPolicy = accessTrackingEnabled ? new EntryCacheSegmentedLruEvictionPolicy()
+                : new EntryCacheDefaultEvictionPolicy();
+        this.cacheAdmissionMaxBacklogEntries = factory.getConfig().getCacheAdmissionMaxBacklogEntries();
+        this.segmentedCacheEnabled = factory.getConfig().isSegmentedEntryCacheEnabled();
+        this.readCoalescingEnabled = factory.getConfig().isReadCoalescingEnabled();
         this.mlFactory = factory;
         this.mlFactoryMBean = factory.mbean;
 
@@ -81,7 +90,8 @@ public class EntryCacheManager {
             return new EntryCacheDisabled(ml);
         }
 
-        EntryCache newEntryCache = new EntryCacheImpl(this, ml);
+        EntryCache newEntryCache = segmentedCacheEnabled ? new SegmentedEntryCacheImpl(this, ml)
+                : new EntryCacheImpl(this, ml);
         EntryCache currentEntryCache = caches.putIfAbsent(ml.getName(), newEntryCache);
         if (currentEntryCache != null) {
             return currentEntryCache;
@@ -90,6 +100,18 @@ public class EntryCacheManager {
         }
     }
 
+    boolean isReadCoalescingEnabled() {
+        return readCoalescingEnabled;
+    }
+
+    boolean isAccessTrackingEnabled() {
+        return accessTrackingEnabled;
+    }
+
+    long getCacheAdmissionMaxBacklogEntries() {
+        return cacheAdmissionMaxBacklogEntries;
+    }
+
     void removeEntryCache(String name) {
         EntryCache entryCache = caches.remove(name);
         if (entryCache == null) {
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Comparator.comparingInt;
+import static java.util.Comparator.comparingLong;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.apache.bookkeeper.mledger.impl.EntryCacheAccessTracker.CachedRange;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Segmented LRU eviction policy.
+ *
+ * <p/>This policy considers the ranges of entries tracked by the {@link EntryCacheAccessTracker} of each cache. The
+ * ranges that have been read at least twice since they were cached are in the protected segment, the others are in
+ * the probation segment. The protected segment is limited to a fraction of the ranges and the least recently read
+ * ranges beyond it are demoted to the probation segment.
+ *
+ * <p/>The probation ranges are evicted first, least recently used first, then the protected ranges, least frequently
+ * used first. Frequencies are halved at the end of each eviction cycle. If the tracked ranges don't hold enough data,
+ * the remaining size is evicted with the {@link EntryCacheDefaultEvictionPolicy}.
+ */
+public class EntryCacheSegmentedLruEvictionPolicy implements EntryCacheEvictionPolicy {
+
+    private final static double ProtectedSegmentPercent = 0.8;
+
+    private final EntryCacheEvictionPolicy fallbackPolicy = new EntryCacheDefaultEvictionPolicy();
+
+    @Override
+    public void doEviction(List<EntryCache> caches, long sizeToFree) {
+        checkArgument(sizeToFree > 0);
+        checkArgument(!caches.isEmpty());
+
+        List<EntryCacheAccessTracker> trackers = Lists.newArrayList();
+        List<CachedRange> probation = Lists.newArrayList();
+        List<CachedRange> protectedRanges = Lists.newArrayList();
+        for (EntryCache cache : caches) {
+            EntryCacheAccessTracker tracker = cache instanceof AbstractEntryCache
+                    ? ((AbstractEntryCache) cache).getAccessTracker() : null;
+            if (tracker == null) {
+                continue;
+            }
+
+            trackers.add(tracker);
+            for (CachedRange range : tracker.getRanges()) {
+                if (range.isProtected()) {
+                    protectedRanges.add(range);
+                } else {
+                    probation.add(range);
+                }
+            }
+        }
+
+        // Demote the least recently used protected ranges that exceed the protected segment capacity
+        int maxProtectedRanges = (int) ((probation.size() + protectedRanges.size()) * ProtectedSegmentPercent);
+        if (protectedRanges.size() > maxProtectedRanges) {
+            protectedRanges.sort(comparingLong(CachedRange::getLastAccessTimestamp).reversed());
+            List<CachedRange> demoted = protectedRanges.subList(maxProtectedRanges, protectedRanges.size());
+            probation.addAll(demoted);
+            demoted.clear();
+        }
+
+        probation.sort(comparingLong(CachedRange::getLastAccessTimestamp));
+        protectedRanges.sort(comparingInt(CachedRange::getFrequency)
+                .thenComparingLong(CachedRange::getLastAccessTimestamp));
+
+        int evictedEntries = 0;
+        long evictedSize = 0;
+        int evictedRanges = 0;
+
+        for (List<CachedRange> segment : Lists.newArrayList(probation, protectedRanges)) {
+            for (CachedRange range : segment) {
+                if (evictedSize >= sizeToFree) {
+                    break;
+                }
+
+                Pair<Integer, Long> evicted = range.getTracker().evict(range);
+                evictedEntries += evicted.getLeft();
+                evictedSize += evicted.getRight();
+                ++evictedRanges;
+            }
+        }
+
+        trackers.forEach(EntryCacheAccessTracker::age);
+
+        log.info("Completed cache eviction. Removed {} entries from {} ranges. ({} Mb)", evictedEntries,
+                evictedRanges, evictedSize / EntryCacheManager.MB);
+
+        if (evictedSize < sizeToFree) {
+            // Some entries were not tracked in any range, eg: they were inserted while their range was being evicted
+            fallbackPolicy.doEviction(caches, sizeToFree - evictedSize);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(EntryCacheSegmentedLruEvictionPolicy.class);
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.apache.bookkeeper.mledger.util.SafeRun.safeRun;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group-commit of the add operations on the current ledger of a managed ledger.
+ *
+ * <p/>The pending adds are aggregated into a single bookkeeper entry, which is written when either the maximum number
+ * of entries or the maximum size of the group is reached, or after the maximum delay since the first add of the group.
+ * Each add still gets its own position, see {@link GroupedEntriesReadHandle} for the format of the grouped entries.
+ *
+ * <p/>All the methods are expected to be called either by the add writer thread of the managed ledger, or with the
+ * managed ledger lock held once the state moved away from LedgerOpened.
+ */
+class GroupCommitBuffer {
+
+    private final ManagedLedgerImpl ml;
+    private final LedgerHandle ledger;
+    private final GroupedEntriesIndex index;
+    private final GroupedEntriesReadHandle readHandle;
+
+    private final int maxEntries;
+    private final long maxSizeBytes;
+    private final long maxDelayMicros;
+
+    private final List<OpAddEntry> pendingOps = new ArrayList<>();
+    private long pendingSize = 0;
+    private long nextEntryId = 0;
+    private boolean flushScheduled = false;
+    private boolean discarded = false;
+
+    GroupCommitBuffer(ManagedLedgerImpl ml, LedgerHandle ledger, GroupedEntriesIndex index,
+            ManagedLedgerConfig config) {
+        this.ml = ml;
+        this.ledger = ledger;
+        this.index = index;
+        this.readHandle = new GroupedEntriesReadHandle(ledger, index, GroupedEntriesReadHandle.UNKNOWN_LAST_ENTRY_ID);
+        this.maxEntries = config.getGroupCommitMaxEntries();
+        this.maxSizeBytes = config.getGroupCommitMaxSizeBytes();
+        this.maxDelayMicros = config.getGroupCommitMaxDelayMicros();
+    }
+
+    LedgerHandle getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Get the view of the ledger where each grouped entry is a separate entry.
+     */
+    GroupedEntriesReadHandle getReadHandle() {
+        return readHandle;
+    }
+
+    void add(OpAddEntry op) {
+        if (discarded) {
+            // The ledger is not writable anymore, the operation will be resent on the next ledger
+            return;
+        }
+
+        pendingOps.add(op);
+        pendingSize += op.data.readableBytes();
+
+        if (pendingOps.size() >= maxEntries || pendingSize >= maxSizeBytes || maxDelayMicros <= 0
+                || op.isCloseWhenDone()) {
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            ml.getScheduledExecutor().schedule(safeRun(() -> {
+                ml.getExecutor().executeOrdered(ml.getName(), safeRun(() -> {
+                    synchronized (ml) {
+                        flushScheduled = false;
+                        flush();
+                    }
+                }));
+            }), maxDelayMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Write the pending adds into a single bookkeeper entry.
+     */
+    void flush() {
+        if (discarded || pendingOps.isEmpty()) {
+            return;
+        }
+
+        final List<OpAddEntry> ops = new ArrayList<>(pendingOps);
+        final long firstEntryId = nextEntryId;
+        pendingOps.clear();
+        pendingSize = 0;
+        nextEntryId += ops.size();
+
+        List<ByteBuf> payloads = new ArrayList<>(ops.size());
+        for (OpAddEntry op : ops) {
+            payloads.add(op.data);
+        }
+        ByteBuf buffer = GroupedEntriesReadHandle.serialize(firstEntryId, payloads);
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Writing group of {} entries into ledger {} from entry {} - size: {}", ml.getName(),
+                    ops.size(), ledger.getId(), firstEntryId, buffer.readableBytes());
+        }
+
+        ledger.asyncAddEntry(buffer, (rc, lh, bkEntryId, ctx) -> {
+            if (rc == BKException.Code.OK) {
+                index.addGroup(bkEntryId, firstEntryId, ops.size());
+            }
+
+            for (int i = 0; i < ops.size(); i++) {
+                ops.get(i).groupAddComplete(rc, lh, rc == BKException.Code.OK ? firstEntryId + i : bkEntryId);
+            }
+        }, null);
+
+        // asyncAddEntry() keeps its own reference on the buffer until it's done using it
+        buffer.release();
+        ml.mbean.addGroupCommitSample(ops.size());
+    }
+
+    /**
+     * Stop writing into the ledger. The adds not written yet are still pending on the managed ledger.
+     */
+    void discard() {
+        discarded = true;
+        pendingOps.clear();
+        pendingSize = 0;
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitBuffer.class);
+}
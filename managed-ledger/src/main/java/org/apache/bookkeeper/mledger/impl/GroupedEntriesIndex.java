@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Location of the grouped entries of a ledger written with group-commit.
+ *
+ * <p/>Each bookkeeper entry of such a ledger holds a group of consecutive managed ledger entries. The groups written by
+ * this broker are all known, while the groups of ledgers written elsewhere are learned as they are read.
+ */
+class GroupedEntriesIndex {
+
+    static class Group {
+        final long bkEntryId;
+        final long firstEntryId;
+        final int numEntries;
+
+        Group(long bkEntryId, long firstEntryId, int numEntries) {
+            this.bkEntryId = bkEntryId;
+            this.firstEntryId = firstEntryId;
+            this.numEntries = numEntries;
+        }
+
+        long getLastEntryId() {
+            return firstEntryId + numEntries - 1;
+        }
+
+        boolean contains(long entryId) {
+            return entryId >= firstEntryId && entryId < firstEntryId + numEntries;
+        }
+    }
+
+    // first entry id of the group -> group
+    private final ConcurrentSkipListMap<Long, Group> groupsByEntryId = new ConcurrentSkipListMap<>();
+    // bookkeeper entry id -> group
+    private final ConcurrentSkipListMap<Long, Group> groupsByBkEntryId = new ConcurrentSkipListMap<>();
+
+    void addGroup(long bkEntryId, long firstEntryId, int numEntries) {
+        Group group = new Group(bkEntryId, firstEntryId, numEntries);
+        if (groupsByBkEntryId.putIfAbsent(bkEntryId, group) == null) {
+            groupsByEntryId.put(firstEntryId, group);
+        }
+    }
+
+    /**
+     * Get the group containing an entry, or null if it is not known yet.
+     */
+    Group getGroup(long entryId) {
+        Map.Entry<Long, Group> floor = groupsByEntryId.floorEntry(entryId);
+        return floor != null && floor.getValue().contains(entryId) ? floor.getValue() : null;
+    }
+
+    /**
+     * Get the known group with the highest first entry id not greater than entryId.
+     */
+    Group getFloorGroup(long entryId) {
+        Map.Entry<Long, Group> floor = groupsByEntryId.floorEntry(entryId);
+        return floor != null ? floor.getValue() : null;
+    }
+
+    /**
+     * Get the known group with the lowest first entry id greater than entryId.
+     */
+    Group getHigherGroup(long entryId) {
+        Map.Entry<Long, Group> higher = groupsByEntryId.higherEntry(entryId);
+        return higher != null ? higher.getValue() : null;
+    }
+
+    Group getGroupByBkEntryId(long bkEntryId) {
+        return groupsByBkEntryId.get(bkEntryId);
+    }
+
+    /**
+     * Get the number of entries stored up to the given bookkeeper entry, or -1 if that group is not known.
+     */
+    long getNumberOfEntries(long lastBkEntryId) {
+        if (lastBkEntryId < 0) {
+            return 0;
+        }
+
+        Group group = groupsByBkEntryId.get(lastBkEntryId);
+        return group != null ? group.getLastEntryId() + 1 : -1;
+    }
+
+    /**
+     * Get the average number of entries per group among the known groups.
+     */
+    double getAverageGroupSize() {
+        Map.Entry<Long, Group> last = groupsByEntryId.lastEntry();
+        Map.Entry<Long, Group> first = groupsByEntryId.firstEntry();
+        if (last == null || first == null) {
+            return 1.0;
+        }
+
+        long numEntries = last.getValue().getLastEntryId() - first.getValue().firstEntryId + 1;
+        long numGroups = last.getValue().bkEntryId - first.getValue().bkEntryId + 1;
+        return Math.max(1.0, (double) numEntries / numGroups);
+    }
+}
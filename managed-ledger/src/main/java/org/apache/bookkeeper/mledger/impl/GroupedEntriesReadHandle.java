@@ -0,0 +1,408 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.impl.LastConfirmedAndEntryImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.mledger.impl.GroupedEntriesIndex.Group;
+
+/**
+ * Read view of a ledger written with group-commit, exposing each grouped entry as a separate entry.
+ *
+ * <p/>A bookkeeper entry of such a ledger has the following format:
+ *
+ * <pre>
+ * [MAGIC: short][numEntries: int][firstEntryId: long][size: int] * numEntries [payload] * numEntries
+ * </pre>
+ *
+ * <p/>The entry ids seen by the readers are contiguous across the groups, starting from 0 in each ledger. The bookkeeper
+ * entries to read are located through the {@link GroupedEntriesIndex} of the ledger, or estimated from the average
+ * group size when the index does not know them yet.
+ */
+class GroupedEntriesReadHandle implements ReadHandle {
+
+    static final short MAGIC = 0x0e0c;
+    // magic + number of entries + first entry id
+    static final int HEADER_SIZE = 2 + 4 + 8;
+
+    // Used when the last entry of the ledger is not known, i.e. the ledger is still being written
+    static final long UNKNOWN_LAST_ENTRY_ID = -2;
+
+    private final ReadHandle handle;
+    private final GroupedEntriesIndex index;
+    private final long lastEntryId;
+
+    GroupedEntriesReadHandle(ReadHandle handle, GroupedEntriesIndex index, long lastEntryId) {
+        this.handle = handle;
+        this.index = index;
+        this.lastEntryId = lastEntryId;
+    }
+
+    /**
+     * Get the underlying handle, that reads the grouped bookkeeper entries.
+     */
+    ReadHandle getHandle() {
+        return handle;
+    }
+
+    /**
+     * Serialize a group of entries into a single bookkeeper entry.
+     */
+    static ByteBuf serialize(long firstEntryId, List<ByteBuf> payloads) {
+        int size = HEADER_SIZE + 4 * payloads.size();
+        for (ByteBuf payload : payloads) {
+            size += payload.readableBytes();
+        }
+
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(size, size);
+        buffer.writeShort(MAGIC);
+        buffer.writeInt(payloads.size());
+        buffer.writeLong(firstEntryId);
+        for (ByteBuf payload : payloads) {
+            buffer.writeInt(payload.readableBytes());
+        }
+        for (ByteBuf payload : payloads) {
+            buffer.writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+        }
+        return buffer;
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readAsync(long firstEntry, long lastEntry) {
+        return read(firstEntry, lastEntry, false);
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readUnconfirmedAsync(long firstEntry, long lastEntry) {
+        return read(firstEntry, lastEntry, true);
+    }
+
+    private CompletableFuture<LedgerEntries> read(long firstEntry, long lastEntry, boolean unconfirmed) {
+        CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+        if (firstEntry < 0 || firstEntry > lastEntry) {
+            future.completeExceptionally(new BKException.BKIncorrectParameterException());
+            return future;
+        }
+
+        List<LedgerEntry> entries = new ArrayList<>((int) (lastEntry - firstEntry + 1));
+        readNext(firstEntry, lastEntry, unconfirmed, entries, future);
+        return future;
+    }
+
+    private void readNext(long nextEntry, long lastEntry, boolean unconfirmed, List<LedgerEntry> entries,
+            CompletableFuture<LedgerEntries> future) {
+        if (nextEntry > lastEntry) {
+            future.complete(LedgerEntriesImpl.create(entries));
+            return;
+        }
+
+        final long lastBkEntryId = unconfirmed ? Long.MAX_VALUE : handle.getLastAddConfirmed();
+        final long firstBkEntryId;
+
+        Group group = index.getGroup(nextEntry);
+        Group floor = index.getFloorGroup(nextEntry);
+        if (group != null) {
+            firstBkEntryId = group.bkEntryId;
+        } else if (floor != null && floor.getLastEntryId() + 1 == nextEntry) {
+            firstBkEntryId = floor.bkEntryId + 1;
+        } else if (floor == null && nextEntry == 0) {
+            firstBkEntryId = 0;
+        } else {
+            // Locate the group by reading a single entry, interpolated between the closest known groups
+            long lowBkEntryId = floor != null ? floor.bkEntryId + 1 : 0;
+            long lowEntryId = floor != null ? floor.getLastEntryId() + 1 : 0;
+            Group higher = index.getHigherGroup(nextEntry);
+            long highBkEntryId = higher != null ? higher.bkEntryId - 1 : lastBkEntryId;
+            if (lowBkEntryId > highBkEntryId) {
+                failRead(new BKException.BKNoSuchEntryException(), entries, future);
+                return;
+            }
+
+            long probe = lowBkEntryId + (long) ((nextEntry - lowEntryId) / index.getAverageGroupSize());
+            probe = Math.min(probe, highBkEntryId);
+            readBkEntries(probe, probe, unconfirmed).whenComplete((bkEntries, exception) -> {
+                if (exception != null) {
+                    failRead(exception, entries, future);
+                    return;
+                }
+
+                try {
+                    for (LedgerEntry bkEntry : bkEntries) {
+                        parseGroup(bkEntry);
+                    }
+                } catch (BKException e) {
+                    failRead(e, entries, future);
+                    return;
+                } finally {
+                    bkEntries.close();
+                }
+
+                readNext(nextEntry, lastEntry, unconfirmed, entries, future);
+            });
+            return;
+        }
+
+        if (firstBkEntryId > lastBkEntryId) {
+            failRead(new BKException.BKNoSuchEntryException(), entries, future);
+            return;
+        }
+
+        // Read all the known groups up to the last entry, and estimate how many more are needed
+        long bkEntryId = firstBkEntryId;
+        long lastCoveredEntry = nextEntry - 1;
+        Group known;
+        while ((known = index.getGroupByBkEntryId(bkEntryId)) != null) {
+            lastCoveredEntry = known.getLastEntryId();
+            if (lastCoveredEntry >= lastEntry) {
+                break;
+            }
+            ++bkEntryId;
+        }
+
+        long lastBkEntryToRead;
+        if (known != null) {
+            lastBkEntryToRead = bkEntryId;
+        } else {
+            double averageGroupSize = index.getAverageGroupSize();
+            long missingGroups = (long) Math.ceil((lastEntry - lastCoveredEntry) / averageGroupSize);
+            lastBkEntryToRead = bkEntryId + Math.max(missingGroups, 1) - 1;
+        }
+        lastBkEntryToRead = Math.min(lastBkEntryToRead, lastBkEntryId);
+
+        readBkEntries(firstBkEntryId, lastBkEntryToRead, unconfirmed).whenComplete((bkEntries, exception) -> {
+            if (exception != null) {
+                failRead(exception, entries, future);
+                return;
+            }
+
+            long next = nextEntry;
+            try {
+                for (LedgerEntry bkEntry : bkEntries) {
+                    next = addEntries(bkEntry, next, lastEntry, entries);
+                }
+            } catch (BKException e) {
+                failRead(e, entries, future);
+                return;
+            } finally {
+                bkEntries.close();
+            }
+
+            if (next == nextEntry) {
+                // The entry was not found where the index located it
+                failRead(new BKException.BKUnexpectedConditionException(), entries, future);
+                return;
+            }
+            readNext(next, lastEntry, unconfirmed, entries, future);
+        });
+    }
+
+    private CompletableFuture<LedgerEntries> readBkEntries(long firstBkEntryId, long lastBkEntryId,
+            boolean unconfirmed) {
+        return unconfirmed ? handle.readUnconfirmedAsync(firstBkEntryId, lastBkEntryId)
+                : handle.readAsync(firstBkEntryId, lastBkEntryId);
+    }
+
+    /**
+     * Parse the header of a grouped bookkeeper entry and record its location in the index.
+     */
+    private Group parseGroup(LedgerEntry bkEntry) throws BKException {
+        ByteBuf buffer = bkEntry.getEntryBuffer();
+        int offset = buffer.readerIndex();
+        if (buffer.readableBytes() < HEADER_SIZE || buffer.getShort(offset) != MAGIC) {
+            throw new BKException.BKUnexpectedConditionException();
+        }
+
+        int numEntries = buffer.getInt(offset + 2);
+        long firstEntryId = buffer.getLong(offset + 6);
+        if (numEntries <= 0 || buffer.readableBytes() < HEADER_SIZE + 4 * numEntries) {
+            throw new BKException.BKUnexpectedConditionException();
+        }
+
+        index.addGroup(bkEntry.getEntryId(), firstEntryId, numEntries);
+        return new Group(bkEntry.getEntryId(), firstEntryId, numEntries);
+    }
+
+    /**
+     * Add the entries of the group starting from nextEntry, up to lastEntry, and return the next entry to read.
+     */
+    private long addEntries(LedgerEntry bkEntry, long nextEntry, long lastEntry, List<LedgerEntry> entries)
+            throws BKException {
+        Group group = parseGroup(bkEntry);
+        ByteBuf buffer = bkEntry.getEntryBuffer();
+        int sizesOffset = buffer.readerIndex() + HEADER_SIZE;
+        int payloadOffset = sizesOffset + 4 * group.numEntries;
+
+        for (int i = 0; i < group.numEntries; i++) {
+            int size = buffer.getInt(sizesOffset + 4 * i);
+            if (size < 0 || payloadOffset + size > buffer.writerIndex()) {
+                throw new BKException.BKUnexpectedConditionException();
+            }
+
+            long entryId = group.firstEntryId + i;
+            if (entryId == nextEntry && entryId <= lastEntry) {
+                entries.add(LedgerEntryImpl.create(handle.getId(), entryId, size,
+                        buffer.retainedSlice(payloadOffset, size)));
+                ++nextEntry;
+            }
+            payloadOffset += size;
+        }
+        return nextEntry;
+    }
+
+    private static void failRead(Throwable exception, List<LedgerEntry> entries,
+            CompletableFuture<LedgerEntries> future) {
+        entries.forEach(LedgerEntry::close);
+        entries.clear();
+        future.completeExceptionally(exception);
+    }
+
+    /**
+     * Get the id of the last entry stored up to the given bookkeeper entry.
+     */
+    CompletableFuture<Long> getLastEntryIdAsync(long lastBkEntryId) {
+        if (lastBkEntryId < 0) {
+            return CompletableFuture.completedFuture(-1L);
+        }
+
+        long numEntries = index.getNumberOfEntries(lastBkEntryId);
+        if (numEntries >= 0) {
+            return CompletableFuture.completedFuture(numEntries - 1);
+        }
+
+        return handle.readUnconfirmedAsync(lastBkEntryId, lastBkEntryId).thenCompose(bkEntries -> {
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            try {
+                LedgerEntry bkEntry = bkEntries.getEntry(lastBkEntryId);
+                future.complete(parseGroup(bkEntry).getLastEntryId());
+            } catch (BKException e) {
+                future.completeExceptionally(e);
+            } finally {
+                bkEntries.close();
+            }
+            return future;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> readLastAddConfirmedAsync() {
+        return handle.readLastAddConfirmedAsync().thenCompose(this::getLastEntryIdAsync);
+    }
+
+    @Override
+    public CompletableFuture<Long> tryReadLastAddConfirmedAsync() {
+        return handle.tryReadLastAddConfirmedAsync().thenCompose(this::getLastEntryIdAsync);
+    }
+
+    @Override
+    public long getLastAddConfirmed() {
+        if (lastEntryId != UNKNOWN_LAST_ENTRY_ID) {
+            return lastEntryId;
+        }
+
+        long numEntries = index.getNumberOfEntries(handle.getLastAddConfirmed());
+        if (numEntries >= 0) {
+            return numEntries - 1;
+        }
+
+        Group last = index.getFloorGroup(Long.MAX_VALUE);
+        return last != null ? last.getLastEntryId() : -1;
+    }
+
+    @Override
+    public long getLength() {
+        return handle.getLength();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return handle.isClosed();
+    }
+
+    /**
+     * Long poll the bookkeeper entry expected to hold the given entry, and return the entry if the group that was
+     * read contains it.
+     *
+     * <p/>When the location of the entry is not known yet, the bookkeeper entry following the last known group is
+     * polled. If the entry is in a later group, the result has no entry and the next call polls the following
+     * bookkeeper entry, since the group that was read is now part of the index.
+     */
+    @Override
+    public CompletableFuture<LastConfirmedAndEntry> readLastAddConfirmedAndEntryAsync(long entryId,
+            long timeOutInMillis, boolean parallel) {
+        final long bkEntryId;
+        Group group = index.getGroup(entryId);
+        if (group != null) {
+            bkEntryId = group.bkEntryId;
+        } else {
+            Group floor = index.getFloorGroup(entryId);
+            bkEntryId = floor != null ? floor.bkEntryId + 1 : 0;
+        }
+
+        return handle.readLastAddConfirmedAndEntryAsync(bkEntryId, timeOutInMillis, parallel).thenCompose(result -> {
+            // The result is recycled when closed
+            long lastBkEntryId = result.getLastAddConfirmed();
+            List<LedgerEntry> entries = new ArrayList<>(1);
+            try {
+                if (result.hasEntry()) {
+                    addEntries(result.getEntry(), entryId, entryId, entries);
+                }
+            } catch (BKException e) {
+                CompletableFuture<LastConfirmedAndEntry> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            } finally {
+                result.close();
+            }
+
+            LedgerEntry entry = entries.isEmpty() ? null : entries.get(0);
+            return getLastEntryIdAsync(lastBkEntryId).whenComplete((lastEntryId, exception) -> {
+                if (exception != null && entry != null) {
+                    entry.close();
+                }
+            }).thenApply(lastEntryId -> LastConfirmedAndEntryImpl.create(lastEntryId, entry));
+        });
+    }
+
+    @Override
+    public long getId() {
+        return handle.getId();
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        return handle.closeAsync();
+    }
+
+    @Override
+    public LedgerMetadata getLedgerMetadata() {
+        return handle.getLedgerMetadata();
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.AckBitmapChunk;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
+
+/**
+ * Encodes the individually deleted messages of a cursor as run-length encoded bitmap chunks to be stored in the cursor
+ * ledger, without any limit on the number of ranges.
+ *
+ * <p/>The first write into a cursor ledger, and then one write every <code>snapshotInterval</code>, carries a full
+ * snapshot of the acknowledged entries. The writes in between only carry the chunks modified since the previous write.
+ * Each entry records how many entries were appended since the beginning of the last snapshot, so that the state can
+ * be rebuilt by reading the tail of the cursor ledger.
+ */
+class IndividualAckBitmapWriter {
+
+    // Number of entries covered by a bitmap chunk
+    static final int CHUNK_SIZE = 4096;
+
+    // Max serialized size of the chunks stored in a single cursor ledger entry
+    static final int MAX_CHUNKS_SIZE_PER_ENTRY = 1024 * 1024;
+
+    private final int snapshotInterval;
+
+    // Chunks modified since the last write, identified by ledger id and chunk index
+    private final NavigableSet<PositionImpl> dirtyChunks = new TreeSet<>();
+
+    // Cursor ledger holding the last snapshot, -1 if a new snapshot is required
+    private long snapshotCursorLedgerId = -1;
+    private long entriesSinceSnapshot = 0;
+
+    IndividualAckBitmapWriter(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Record that the acknowledgment state of an entry has changed.
+     */
+    synchronized void markDirty(long ledgerId, long entryId) {
+        dirtyChunks.add(new PositionImpl(ledgerId, entryId / CHUNK_SIZE));
+    }
+
+    /**
+     * Force the next write to carry a full snapshot, e.g. after entries were un-acknowledged.
+     */
+    synchronized void requireSnapshot() {
+        snapshotCursorLedgerId = -1;
+        dirtyChunks.clear();
+    }
+
+    /**
+     * Build the entries to append to a cursor ledger for the next position update.
+     *
+     * <p/>The entries must be appended to the cursor ledger in the returned order, while holding the monitor of this
+     * writer.
+     *
+     * @param cursorLedgerId
+     *            the id of the cursor ledger that will store the entries
+     * @param position
+     *            the position info to write, without individually deleted messages
+     * @param individualDeletedMessages
+     *            the acknowledgment state of the cursor
+     * @param ledgerIds
+     *            the ids of the ledgers that can have individually deleted messages, used when taking a snapshot
+     * @return the position infos to write, in order
+     */
+    synchronized List<PositionInfo> buildEntries(long cursorLedgerId, PositionInfo.Builder position,
+            IndividualAckSet individualDeletedMessages, Collection<Long> ledgerIds) {
+        ChunksBuilder chunks = new ChunksBuilder();
+        if (cursorLedgerId != snapshotCursorLedgerId || entriesSinceSnapshot >= snapshotInterval) {
+            for (long ledgerId : ledgerIds) {
+                individualDeletedMessages.forEach(ledgerId, 0, Long.MAX_VALUE - 1, chunks::add);
+            }
+            snapshotCursorLedgerId = cursorLedgerId;
+            entriesSinceSnapshot = 0;
+        } else {
+            for (PositionImpl chunk : dirtyChunks) {
+                long firstEntryId = chunk.getEntryId() * CHUNK_SIZE;
+                chunks.startChunk(chunk.getLedgerId(), firstEntryId);
+                individualDeletedMessages.forEach(chunk.getLedgerId(), firstEntryId, firstEntryId + CHUNK_SIZE - 1,
+                        chunks::add);
+            }
+        }
+        dirtyChunks.clear();
+
+        List<AckBitmapChunk> allChunks = chunks.build();
+        List<PositionInfo> entries = Lists.newArrayList();
+        int i = 0;
+        do {
+            position.clearIndividualDeletedMessagesBitmap();
+            int size = 0;
+            while (i < allChunks.size()
+                    && (size == 0 || size + allChunks.get(i).getSerializedSize() <= MAX_CHUNKS_SIZE_PER_ENTRY)) {
+                AckBitmapChunk chunk = allChunks.get(i++);
+                size += chunk.getSerializedSize();
+                position.addIndividualDeletedMessagesBitmap(chunk);
+            }
+            position.setEntriesSinceAckSnapshot(entriesSinceSnapshot++);
+            entries.add(position.build());
+        } while (i < allChunks.size());
+
+        return entries;
+    }
+
+    /**
+     * Rebuild the individually deleted messages from the entries of a cursor ledger, starting from the first entry of
+     * a snapshot.
+     */
+    static void recover(List<PositionInfo> entries, IndividualAckSet individualDeletedMessages) {
+        // The latest version of each chunk wins
+        Map<PositionImpl, AckBitmapChunk> chunks = new TreeMap<>();
+        for (PositionInfo entry : entries) {
+            for (AckBitmapChunk chunk : entry.getIndividualDeletedMessagesBitmapList()) {
+                chunks.put(new PositionImpl(chunk.getLedgerId(), chunk.getFirstEntryId()), chunk);
+            }
+        }
+
+        individualDeletedMessages.clear();
+        for (AckBitmapChunk chunk : chunks.values()) {
+            long ledgerId = chunk.getLedgerId();
+            long entryId = chunk.getFirstEntryId();
+            for (int i = 0; i + 1 < chunk.getRunsCount(); i += 2) {
+                entryId += chunk.getRuns(i);
+                int length = chunk.getRuns(i + 1);
+                individualDeletedMessages.addOpenClosed(ledgerId, entryId - 1, ledgerId, entryId + length - 1);
+                entryId += length;
+            }
+        }
+    }
+
+    /**
+     * Split the acknowledged ranges into chunks, in order.
+     */
+    private static final class ChunksBuilder {
+        private final List<AckBitmapChunk> chunks = Lists.newArrayList();
+        private AckBitmapChunk.Builder current = null;
+        private long nextEntryId;
+
+        void startChunk(long ledgerId, long firstEntryId) {
+            if (current != null) {
+                chunks.add(current.build());
+            }
+            current = AckBitmapChunk.newBuilder().setLedgerId(ledgerId).setFirstEntryId(firstEntryId)
+                    .setNumEntries(CHUNK_SIZE);
+            nextEntryId = firstEntryId;
+        }
+
+        /**
+         * Add the acknowledged range <code>(lowerEntryId, upperEntryId]</code> of a ledger.
+         */
+        boolean add(long lowerLedgerId, long lowerEntryId, long upperLedgerId, long upperEntryId) {
+            long entryId = lowerEntryId + 1;
+            while (entryId <= upperEntryId) {
+                long chunkFirstEntryId = entryId - entryId % CHUNK_SIZE;
+                if (current == null || current.getLedgerId() != upperLedgerId
+                        || current.getFirstEntryId() != chunkFirstEntryId) {
+                    startChunk(upperLedgerId, chunkFirstEntryId);
+                }
+
+                long lastEntryId = Math.min(upperEntryId, chunkFirstEntryId + CHUNK_SIZE - 1);
+                current.addRuns((int) (entryId - nextEntryId));
+                current.addRuns((int) (lastEntryId - entryId + 1));
+                nextEntryId = lastEntryId + 1;
+                entryId = lastEntryId + 1;
+            }
+            return true;
+        }
+
+        List<AckBitmapChunk> build() {
+            if (current != null) {
+                chunks.add(current.build());
+                current = null;
+            }
+            return chunks;
+        }
+    }
+}
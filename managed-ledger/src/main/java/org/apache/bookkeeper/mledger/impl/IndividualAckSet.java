@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.collect.Range;
+
+/**
+ * Set of positions that were individually acknowledged (deleted) on a cursor, past its mark-delete position.
+ *
+ * <p/>Ranges are expressed as open-closed intervals <code>(lower, upper]</code>, the same way they are persisted in the
+ * cursor metadata. Implementations are not required to be thread-safe, the cursor guards the access to the set.
+ */
+public interface IndividualAckSet {
+
+    /**
+     * Add the positions in the range <code>(lower, upper]</code>.
+     *
+     * <p/>The lower endpoint may be in an earlier ledger only when it is the position right before the first entry of
+     * the upper ledger. Callers are responsible to split ranges spanning across several non-empty ledgers.
+     */
+    void addOpenClosed(long lowerLedgerId, long lowerEntryId, long upperLedgerId, long upperEntryId);
+
+    /**
+     * @return whether the position was individually deleted
+     */
+    boolean contains(long ledgerId, long entryId);
+
+    /**
+     * @return the range containing the position or null if the position was not individually deleted
+     */
+    Range<PositionImpl> rangeContaining(long ledgerId, long entryId);
+
+    /**
+     * Remove all the positions up to the given position (inclusive).
+     */
+    void removeAtMost(long ledgerId, long entryId);
+
+    /**
+     * Remove all the positions of a ledger.
+     */
+    void removeLedger(long ledgerId);
+
+    /**
+     * @return the first range of the set or null if the set is empty
+     */
+    Range<PositionImpl> firstRange();
+
+    /**
+     * @return the minimal range enclosing all the ranges of the set or null if the set is empty
+     */
+    Range<PositionImpl> span();
+
+    /**
+     * Iterate over the ranges of the set, in order.
+     */
+    void forEach(RangeProcessor processor);
+
+    /**
+     * Iterate, in order, over the ranges of the set intersecting the entries <code>[fromEntryId, toEntryId]</code> of
+     * a ledger. The ranges are clipped to those entries.
+     */
+    void forEach(long ledgerId, long fromEntryId, long toEntryId, RangeProcessor processor);
+
+    /**
+     * @return the number of disjoint ranges in the set
+     */
+    int size();
+
+    boolean isEmpty();
+
+    void clear();
+
+    /**
+     * Release the resources held by the set. The set is empty afterward.
+     */
+    default void close() {
+        clear();
+    }
+
+    /**
+     * @return the approximate memory, in bytes, used to store the set
+     */
+    long getMemorySize();
+
+    /**
+     * Callback for iterating over the ranges of the set.
+     */
+    interface RangeProcessor {
+        /**
+         * Process the range <code>(lower, upper]</code>.
+         *
+         * @return true to continue the iteration, false to stop it
+         */
+        boolean process(long lowerLedgerId, long lowerEntryId, long upperLedgerId, long upperEntryId);
+    }
+}
@@ -26,24 +26,29 @@ import static org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.DEFAULT_LEDGE
 import static org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.createManagedLedgerException;
 import static org.apache.bookkeeper.mledger.util.SafeRun.safeRun;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
 import com.google.common.collect.Sets;
-import com.google.common.collect.TreeRangeSet;
+import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.RateLimiter;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import java.time.Clock;
 import java.util.ArrayDeque;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -52,8 +57,8 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
 
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
 import org.apache.bookkeeper.client.AsyncCallback.DeleteCallback;
 import org.apache.bookkeeper.client.BKException;
@@ -81,6 +86,7 @@ import org.apache.bookkeeper.mledger.impl.MetaStore.Stat;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.LongProperty;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -125,7 +131,20 @@ public class ManagedCursorImpl implements ManagedCursor {
     // Stat of the cursor z-node
     private volatile Stat cursorLedgerStat;
 
-    private final RangeSet<PositionImpl> individualDeletedMessages = TreeRangeSet.create();
+    // During recovery, completed once the ledgers of the managed ledger have been recovered. The recovered position
+    // depends on them and is only applied after it
+    private CompletableFuture<Void> ledgerRecoveredFuture = null;
+    // During recovery, notified once the reads from the metadata store and the cursor ledger are done
+    private Runnable recoveryReadsCompleted = null;
+
+    private final IndividualAckSet individualDeletedMessages;
+    // Tracks the changes to individualDeletedMessages when they are persisted as bitmaps, null otherwise
+    private final IndividualAckBitmapWriter individualAckBitmapWriter;
+    // Indexes of the deleted messages of the partially deleted batched entries, as bitset words. Updated under the
+    // write lock, but the arrays are never modified once in the map, so they can be read without taking the lock
+    private final ConcurrentSkipListMap<PositionImpl, long[]> batchDeletedIndexes = new ConcurrentSkipListMap<>();
+    // Entries read in advance when the cursor is catching up, null if read-ahead is disabled
+    volatile CursorReadAhead readAhead;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     private RateLimiter markDeleteLimiter;
@@ -191,6 +210,11 @@ public class ManagedCursorImpl implements ManagedCursor {
         PENDING_READ_OPS_UPDATER.set(this, 0);
         RESET_CURSOR_IN_PROGRESS_UPDATER.set(this, FALSE);
         WAITING_READ_OP_UPDATER.set(this, null);
+        this.individualDeletedMessages = config.getIndividualAckSetFactory().get();
+        this.individualAckBitmapWriter = config.isPersistIndividualAckAsBitmap()
+                ? new IndividualAckBitmapWriter(config.getIndividualAckSnapshotInterval()) : null;
+        this.readAhead = config.isReadAheadEnabled() ? new CursorReadAhead(ledger,
+                config.getReadAheadMaxOutstandingReads(), config.getReadAheadMaxBufferSizeBytes()) : null;
         this.clock = config.getClock();
         this.lastActive = this.clock.millis();
         this.lastLedgerSwitchTimestamp = this.clock.millis();
@@ -213,6 +237,27 @@ public class ManagedCursorImpl implements ManagedCursor {
      * have a new opened ledger.
      */
     void recover(final VoidCallback callback) {
+        recover(CompletableFuture.completedFuture(null), () -> {
+        }, callback);
+    }
+
+    /**
+     * Performs the initial recovery while the ledgers of the managed ledger may still be recovering.
+     *
+     * <p/>The cursor info and the cursor ledger are read right away, then the recovery waits for
+     * <code>ledgerRecovered</code> to apply the recovered position.
+     *
+     * @param ledgerRecovered
+     *            completed once the ledgers of the managed ledger have been recovered
+     * @param readsCompleted
+     *            notified once the cursor doesn't need to read from the metadata store or the cursor ledger anymore
+     * @param callback
+     *            notified when the recovery is complete
+     */
+    void recover(CompletableFuture<Void> ledgerRecovered, Runnable readsCompleted, final VoidCallback callback) {
+        this.ledgerRecoveredFuture = ledgerRecovered;
+        this.recoveryReadsCompleted = readsCompleted;
+
         // Read the meta-data ledgerId from the store
         log.info("[{}] Recovering from bookkeeper ledger cursor: {}", ledger.getName(), name);
         ledger.getStore().asyncGetCursorInfo(ledger.getName(), name, new MetaStoreCallback<ManagedCursorInfo>() {
@@ -227,9 +272,6 @@ public class ManagedCursorImpl implements ManagedCursor {
                     // closed and the last mark-delete position is stored in the ManagedCursorInfo itself.s
                     PositionImpl recoveredPosition = new PositionImpl(info.getMarkDeleteLedgerId(),
                             info.getMarkDeleteEntryId());
-                    if (info.getIndividualDeletedMessagesCount() > 0) {
-                        recoverIndividualDeletedMessages(info.getIndividualDeletedMessagesList());
-                    }
 
                     Map<String, Long> recoveredProperties = Collections.emptyMap();
                     if (info.getPropertiesCount() > 0) {
@@ -241,8 +283,17 @@ public class ManagedCursorImpl implements ManagedCursor {
                         }
                     }
 
-                    recoveredCursor(recoveredPosition, recoveredProperties, null);
-                    callback.operationComplete();
+                    final Map<String, Long> properties = recoveredProperties;
+                    whenLedgerRecovered(callback, () -> {
+                        if (info.getIndividualDeletedMessagesCount() > 0) {
+                            recoverIndividualDeletedMessages(info.getIndividualDeletedMessagesList());
+                        }
+                        if (info.getBatchedEntryDeletionIndexInfoCount() > 0) {
+                            recoverBatchDeletedIndexes(info.getBatchedEntryDeletionIndexInfoList());
+                        }
+                        recoveredCursor(recoveredPosition, properties, null);
+                        callback.operationComplete();
+                    });
                 } else {
                     // Need to proceed and read the last entry in the specified ledger to find out the last position
                     log.info("[{}] Consumer {} meta-data recover from ledger {}", ledger.getName(), name,
@@ -271,7 +322,7 @@ public class ManagedCursorImpl implements ManagedCursor {
                 log.error("[{}] Error opening metadata ledger {} for consumer {}: {}", ledger.getName(), ledgerId, name,
                         BKException.getMessage(rc));
                 // Rewind to oldest entry available
-                initialize(getRollbackPosition(info), callback);
+                whenLedgerRecovered(callback, () -> initialize(getRollbackPosition(info), callback));
                 return;
             } else if (rc != BKException.Code.OK) {
                 log.warn("[{}] Error opening metadata ledger {} for consumer {}: {}", ledger.getName(), ledgerId, name,
@@ -290,7 +341,7 @@ public class ManagedCursorImpl implements ManagedCursor {
                     log.error("[{}] Error reading from metadata ledger {} for consumer {}: {}", ledger.getName(),
                             ledgerId, name, BKException.getMessage(rc1));
                     // Rewind to oldest entry available
-                    initialize(getRollbackPosition(info), callback);
+                    whenLedgerRecovered(callback, () -> initialize(getRollbackPosition(info), callback));
                     return;
                 } else if (rc1 != BKException.Code.OK) {
                     log.warn("[{}] Error reading from metadata ledger {} for consumer {}: {}", ledger.getName(),
@@ -320,27 +371,147 @@ public class ManagedCursorImpl implements ManagedCursor {
                 }
 
                 PositionImpl position = new PositionImpl(positionInfo);
-                if (positionInfo.getIndividualDeletedMessagesCount() > 0) {
-                    recoverIndividualDeletedMessages(positionInfo.getIndividualDeletedMessagesList());
+                if (positionInfo.getBatchedEntryDeletionIndexInfoCount() > 0) {
+                    recoverBatchDeletedIndexes(positionInfo.getBatchedEntryDeletionIndexInfoList());
                 }
-                recoveredCursor(position, recoveredProperties, lh);
-                callback.operationComplete();
+                if (positionInfo.hasEntriesSinceAckSnapshot()) {
+                    final Map<String, Long> properties = recoveredProperties;
+                    recoverIndividualDeletedMessagesBitmap(lh, lastEntryInLedger, positionInfo, new VoidCallback() {
+                        @Override
+                        public void operationComplete() {
+                            whenLedgerRecovered(callback, () -> {
+                                recoveredCursor(position, properties, lh);
+                                callback.operationComplete();
+                            });
+                        }
+
+                        @Override
+                        public void operationFailed(ManagedLedgerException exception) {
+                            callback.operationFailed(exception);
+                        }
+                    });
+                    return;
+                }
+
+                final Map<String, Long> properties = recoveredProperties;
+                whenLedgerRecovered(callback, () -> {
+                    if (positionInfo.getIndividualDeletedMessagesCount() > 0) {
+                        recoverIndividualDeletedMessages(positionInfo.getIndividualDeletedMessagesList());
+                    }
+                    recoveredCursor(position, properties, lh);
+                    callback.operationComplete();
+                });
             }, null);
         }, null);
     }
 
+    /**
+     * Run the last step of the recovery once the ledgers of the managed ledger have been recovered.
+     */
+    private void whenLedgerRecovered(VoidCallback callback, Runnable recoveryStep) {
+        recoveryReadsCompleted.run();
+        ledgerRecoveredFuture.whenComplete((ignore, exception) -> {
+            if (exception != null) {
+                callback.operationFailed(getManagedLedgerException(exception));
+            } else {
+                recoveryStep.run();
+            }
+        });
+    }
+
+    /**
+     * Read the entries written in the cursor ledger since the last snapshot of the individually deleted messages and
+     * rebuild them.
+     */
+    private void recoverIndividualDeletedMessagesBitmap(LedgerHandle lh, long lastEntryId,
+            PositionInfo lastPositionInfo, VoidCallback callback) {
+        long firstEntryId = Math.max(0, lastEntryId - lastPositionInfo.getEntriesSinceAckSnapshot());
+        if (firstEntryId == lastEntryId) {
+            recoverIndividualDeletedMessagesBitmap(Collections.singletonList(lastPositionInfo));
+            callback.operationComplete();
+            return;
+        }
+
+        lh.asyncReadEntries(firstEntryId, lastEntryId - 1, (rc, lh1, seq, ctx) -> {
+            if (isBkErrorNotRecoverable(rc)) {
+                log.error("[{}] Error reading acknowledgment snapshot from metadata ledger {} for consumer {}: {}",
+                        ledger.getName(), lh1.getId(), name, BKException.getMessage(rc));
+                // Only recover the mark-delete position, the acknowledged messages after it will be redelivered
+                recoverIndividualDeletedMessagesBitmap(Collections.emptyList());
+                callback.operationComplete();
+                return;
+            } else if (rc != BKException.Code.OK) {
+                log.warn("[{}] Error reading acknowledgment snapshot from metadata ledger {} for consumer {}: {}",
+                        ledger.getName(), lh1.getId(), name, BKException.getMessage(rc));
+                callback.operationFailed(createManagedLedgerException(rc));
+                return;
+            }
+
+            List<PositionInfo> positionInfos = Lists.newArrayList();
+            try {
+                while (seq.hasMoreElements()) {
+                    positionInfos.add(PositionInfo.parseFrom(seq.nextElement().getEntry()));
+                }
+            } catch (InvalidProtocolBufferException e) {
+                callback.operationFailed(new ManagedLedgerException(e));
+                return;
+            }
+            positionInfos.add(lastPositionInfo);
+
+            recoverIndividualDeletedMessagesBitmap(positionInfos);
+            callback.operationComplete();
+        }, null);
+    }
+
+    private void recoverIndividualDeletedMessagesBitmap(List<PositionInfo> positionInfos) {
+        lock.writeLock().lock();
+        try {
+            IndividualAckBitmapWriter.recover(positionInfos, individualDeletedMessages);
+            if (!positionInfos.isEmpty()) {
+                PositionInfo last = positionInfos.get(positionInfos.size() - 1);
+                individualDeletedMessages.removeAtMost(last.getLedgerId(), last.getEntryId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     private void recoverIndividualDeletedMessages(List<MLDataFormats.MessageRange> individualDeletedMessagesList) {
         lock.writeLock().lock();
         try {
             individualDeletedMessages.clear();
-            individualDeletedMessagesList.forEach(messageRange -> individualDeletedMessages
-                    .add(Range.openClosed(new PositionImpl(messageRange.getLowerEndpoint()),
-                            new PositionImpl(messageRange.getUpperEndpoint()))));
+            individualDeletedMessagesList.forEach(messageRange -> addIndividualDeletedRange(
+                    new PositionImpl(messageRange.getLowerEndpoint()),
+                    new PositionImpl(messageRange.getUpperEndpoint())));
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * Add the range (lower, upper] to the individually deleted messages, splitting it at ledger boundaries.
+     */
+    private void addIndividualDeletedRange(PositionImpl lower, PositionImpl upper) {
+        long lowerLedgerId = lower.getLedgerId();
+        long lowerEntryId = lower.getEntryId();
+        if (lowerLedgerId != upper.getLedgerId()) {
+            for (LedgerInfo li : ledger.getLedgersInfo().subMap(lowerLedgerId, true, upper.getLedgerId(), false)
+                    .values()) {
+                long lastEntryId = li.getEntries() - 1;
+                if (li.getLedgerId() == lowerLedgerId && lastEntryId <= lowerEntryId) {
+                    continue;
+                } else if (li.getLedgerId() != lowerLedgerId && lastEntryId < 0) {
+                    continue;
+                }
+                individualDeletedMessages.addOpenClosed(lowerLedgerId, lowerEntryId, li.getLedgerId(), lastEntryId);
+                lowerLedgerId = li.getLedgerId();
+                lowerEntryId = lastEntryId;
+            }
+        }
+        individualDeletedMessages.addOpenClosed(lowerLedgerId, lowerEntryId, upper.getLedgerId(),
+                upper.getEntryId());
+    }
+
     private void recoveredCursor(PositionImpl position, Map<String, Long> properties,
                                  LedgerHandle recoveredFromCursorLedger) {
         // if the position was at a ledger that didn't exist (since it will be deleted if it was previously empty),
@@ -670,7 +841,7 @@ public class ManagedCursorImpl implements ManagedCursor {
 
     @Override
     public int getTotalNonContiguousDeletedMessagesRange() {
-        return individualDeletedMessages.asRanges().size();
+        return individualDeletedMessages.size();
     }
 
     @Override
@@ -761,6 +932,37 @@ public class ManagedCursorImpl implements ManagedCursor {
         op.find();
     }
 
+    @Override
+    public void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
+            long timestamp, FindEntryCallback callback, Object ctx) {
+        PositionImpl startPosition;
+        switch (constraint) {
+        case SearchAllAvailableEntries:
+            startPosition = (PositionImpl) getFirstPosition();
+            break;
+        case SearchActiveEntries:
+            startPosition = ledger.getNextValidPosition(markDeletePosition);
+            break;
+        default:
+            callback.findEntryFailed(new ManagedLedgerException("Unknown position constraint"), ctx);
+            return;
+        }
+
+        Range<PositionImpl> range = startPosition != null
+                ? ledger.getTimeIndexRange(startPosition, ledger.getLastPosition(), timestamp)
+                : null;
+        if (range == null) {
+            // The ledgers are not indexed, search through all the entries
+            asyncFindNewestMatching(constraint, condition, callback, ctx);
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] [{}] Searching entries at timestamp {} in {}", ledger.getName(), name, timestamp, range);
+        }
+        new OpFindNewestByTime(this, constraint, startPosition, range, condition, callback, ctx).find();
+    }
+
     @Override
     public void setActive() {
         ledger.activateCursor(this);
@@ -825,6 +1027,10 @@ public class ManagedCursorImpl implements ManagedCursor {
                     lastMarkDeleteEntry = new MarkDeleteEntry(newMarkDeletePosition, Collections.emptyMap(),
                             null, null);
                     individualDeletedMessages.clear();
+                    batchDeletedIndexes.clear();
+                    if (individualAckBitmapWriter != null) {
+                        individualAckBitmapWriter.requireSnapshot();
+                    }
 
                     PositionImpl oldReadPosition = readPosition;
                     if (oldReadPosition.compareTo(newPosition) >= 0) {
@@ -967,8 +1173,9 @@ public class ManagedCursorImpl implements ManagedCursor {
 
     /**
      * Async replays given positions: a. before reading it filters out already-acked messages b. reads remaining entries
-     * async and gives it to given ReadEntriesCallback c. returns all already-acked messages which are not replayed so,
-     * those messages can be removed by caller(Dispatcher)'s replay-list and it won't try to replay it again
+     * async, with a single read for each range of consecutive entries, and gives them in order to given
+     * ReadEntriesCallback c. returns all already-acked messages which are not replayed so, those messages can be
+     * removed by caller(Dispatcher)'s replay-list and it won't try to replay it again
      *
      */
     @Override
@@ -981,57 +1188,144 @@ public class ManagedCursorImpl implements ManagedCursor {
 
         // filters out messages which are already acknowledged
         Set<Position> alreadyAcknowledgedPositions = Sets.newHashSet();
+        List<PositionImpl> positionsToRead = Lists.newArrayListWithExpectedSize(positions.size());
         lock.readLock().lock();
         try {
-            positions.stream()
-                    .filter(position -> individualDeletedMessages.contains((PositionImpl) position)
-                            || ((PositionImpl) position).compareTo(markDeletePosition) < 0)
-                    .forEach(alreadyAcknowledgedPositions::add);
+            for (Position p : positions) {
+                PositionImpl position = (PositionImpl) p;
+                if (individualDeletedMessages.contains(position.getLedgerId(), position.getEntryId())
+                        || position.compareTo(markDeletePosition) < 0) {
+                    alreadyAcknowledgedPositions.add(position);
+                } else {
+                    positionsToRead.add(position);
+                }
+            }
         } finally {
             lock.readLock().unlock();
         }
 
-        final int totalValidPositions = positions.size() - alreadyAcknowledgedPositions.size();
+        // group the consecutive entries of each ledger into ranges
+        positionsToRead.sort(null);
+        List<PositionImpl> rangeBounds = Lists.newArrayList();
+        for (int i = 0; i < positionsToRead.size(); i++) {
+            PositionImpl position = positionsToRead.get(i);
+            int last = rangeBounds.size() - 1;
+            if (last > 0 && rangeBounds.get(last).getLedgerId() == position.getLedgerId()
+                    && rangeBounds.get(last).getEntryId() + 1 == position.getEntryId()) {
+                rangeBounds.set(last, position);
+            } else {
+                rangeBounds.add(position);
+                rangeBounds.add(position);
+            }
+        }
+
+        replayRanges(rangeBounds, entries, callback, ctx);
+        return alreadyAcknowledgedPositions;
+    }
+
+    /**
+     * Async replays given ranges of positions, skipping the messages which are already acknowledged: the remaining
+     * parts of each range are read with a single read each.
+     */
+    @Override
+    public Set<? extends Position> asyncReplayEntryRanges(List<Range<PositionImpl>> ranges,
+            ReadEntriesCallback callback, Object ctx) {
+        // split the ranges around the messages which are already acknowledged
+        Set<Position> alreadyAcknowledgedPositions = Sets.newHashSet();
+        List<PositionImpl> rangeBounds = Lists.newArrayListWithExpectedSize(ranges.size() * 2);
+        int expectedEntries = 0;
+        lock.readLock().lock();
+        try {
+            for (Range<PositionImpl> range : ranges) {
+                long ledgerId = range.lowerEndpoint().getLedgerId();
+                long firstEntryId = -1;
+                for (long entryId = range.lowerEndpoint().getEntryId(); entryId <= range.upperEndpoint()
+                        .getEntryId(); entryId++) {
+                    boolean acknowledged = individualDeletedMessages.contains(ledgerId, entryId)
+                            || ledgerId < markDeletePosition.getLedgerId()
+                            || (ledgerId == markDeletePosition.getLedgerId()
+                                    && entryId < markDeletePosition.getEntryId());
+                    if (acknowledged) {
+                        alreadyAcknowledgedPositions.add(new PositionImpl(ledgerId, entryId));
+                        if (firstEntryId >= 0) {
+                            rangeBounds.add(new PositionImpl(ledgerId, firstEntryId));
+                            rangeBounds.add(new PositionImpl(ledgerId, entryId - 1));
+                            firstEntryId = -1;
+                        }
+                    } else {
+                        ++expectedEntries;
+                        if (firstEntryId < 0) {
+                            firstEntryId = entryId;
+                        }
+                    }
+                }
+                if (firstEntryId >= 0) {
+                    rangeBounds.add(new PositionImpl(ledgerId, firstEntryId));
+                    rangeBounds.add(range.upperEndpoint());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        replayRanges(rangeBounds, Lists.newArrayListWithExpectedSize(expectedEntries), callback, ctx);
+        return alreadyAcknowledgedPositions;
+    }
+
+    /**
+     * Read the ranges given as (first, last) pairs of positions, and complete the callback with all their entries.
+     */
+    private void replayRanges(List<PositionImpl> rangeBounds, List<Entry> entries, ReadEntriesCallback callback,
+            Object ctx) {
+        final int totalRanges = rangeBounds.size() / 2;
         final AtomicReference<ManagedLedgerException> exception = new AtomicReference<>();
-        ReadEntryCallback cb = new ReadEntryCallback() {
-            int pendingCallbacks = totalValidPositions;
+        ReadEntriesCallback cb = new ReadEntriesCallback() {
+            int pendingCallbacks = totalRanges;
 
             @Override
-            public synchronized void readEntryComplete(Entry entry, Object ctx) {
+            public synchronized void readEntriesComplete(List<Entry> rangeEntries, Object ctx) {
                 if (exception.get() != null) {
-                    // if there is already a failure for a different position, we should release the entry straight away
-                    // and not add it to the list
-                    entry.release();
-                    if (--pendingCallbacks == 0) {
-                        callback.readEntriesFailed(exception.get(), ctx);
-                    }
+                    // if there is already a failure for a different range, we should release the entries straight
+                    // away and not add them to the list
+                    rangeEntries.forEach(Entry::release);
                 } else {
-                    entries.add(entry);
-                    if (--pendingCallbacks == 0) {
-                        callback.readEntriesComplete(entries, ctx);
-                    }
+                    entries.addAll(rangeEntries);
+                }
+                if (--pendingCallbacks == 0) {
+                    complete(ctx);
                 }
             }
 
             @Override
-            public synchronized void readEntryFailed(ManagedLedgerException mle, Object ctx) {
+            public synchronized void readEntriesFailed(ManagedLedgerException mle, Object ctx) {
                 log.warn("[{}][{}] Error while replaying entries", ledger.getName(), name, mle);
                 if (exception.compareAndSet(null, mle)) {
-                    // release the entries just once, any further read success will release the entry straight away
+                    // release the entries just once, any further read success will release the entries straight away
                     entries.forEach(Entry::release);
                 }
                 if (--pendingCallbacks == 0) {
+                    complete(ctx);
+                }
+            }
+
+            private void complete(Object ctx) {
+                if (exception.get() != null) {
                     callback.readEntriesFailed(exception.get(), ctx);
+                } else {
+                    entries.sort(ENTRY_POSITION_COMPARATOR);
+                    callback.readEntriesComplete(entries, ctx);
                 }
             }
         };
 
-        positions.stream().filter(position -> !alreadyAcknowledgedPositions.contains(position))
-                .forEach(p -> ledger.asyncReadEntry((PositionImpl) p, cb, ctx));
-
-        return alreadyAcknowledgedPositions;
+        for (int i = 0; i < rangeBounds.size(); i += 2) {
+            ledger.asyncReadEntries(rangeBounds.get(i), rangeBounds.get(i + 1), cb, ctx);
+        }
     }
 
+    private static final Comparator<Entry> ENTRY_POSITION_COMPARATOR = Comparator.comparingLong(Entry::getLedgerId)
+            .thenComparingLong(Entry::getEntryId);
+
     protected long getNumberOfEntries(Range<PositionImpl> range) {
         long allEntries = ledger.getNumberOfEntries(range);
 
@@ -1039,11 +1333,13 @@ public class ManagedCursorImpl implements ManagedCursor {
             log.debug("[{}] getNumberOfEntries. {} allEntries: {}", ledger.getName(), range, allEntries);
         }
 
-        long deletedEntries = 0;
+        long[] deletedEntries = { 0 };
 
         lock.readLock().lock();
         try {
-            for (Range<PositionImpl> r : individualDeletedMessages.asRanges()) {
+            individualDeletedMessages.forEach((lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId) -> {
+                Range<PositionImpl> r = Range.openClosed(new PositionImpl(lowerLedgerId, lowerEntryId),
+                        new PositionImpl(upperLedgerId, upperEntryId));
                 if (r.isConnected(range)) {
                     Range<PositionImpl> commonEntries = r.intersection(range);
                     long commonCount = ledger.getNumberOfEntries(commonEntries);
@@ -1051,18 +1347,19 @@ public class ManagedCursorImpl implements ManagedCursor {
                         log.debug("[{}] [{}] Discounting {} entries for already deleted range {}", ledger.getName(),
                                 name, commonCount, commonEntries);
                     }
-                    deletedEntries += commonCount;
+                    deletedEntries[0] += commonCount;
                 }
-            }
+                return true;
+            });
         } finally {
             lock.readLock().unlock();
         }
 
         if (log.isDebugEnabled()) {
             log.debug("[{}] Found {} entries - deleted: {}",
-                ledger.getName(), allEntries - deletedEntries, deletedEntries);
+                ledger.getName(), allEntries - deletedEntries[0], deletedEntries[0]);
         }
-        return allEntries - deletedEntries;
+        return allEntries - deletedEntries[0];
     }
 
     @Override
@@ -1222,34 +1519,35 @@ public class ManagedCursorImpl implements ManagedCursor {
     }
 
     long getNumIndividualDeletedEntriesToSkip(long numEntries) {
-        long totalEntriesToSkip = 0;
-        long deletedMessages = 0;
+        long[] totalEntriesToSkip = { 0 };
+        long[] deletedMessages = { 0 };
         lock.readLock().lock();
         try {
-            PositionImpl startPosition = markDeletePosition;
-            PositionImpl endPosition = null;
-            for (Range<PositionImpl> r : individualDeletedMessages.asRanges()) {
-                endPosition = r.lowerEndpoint();
-                if (startPosition.compareTo(endPosition) <= 0) {
-                    Range<PositionImpl> range = Range.openClosed(startPosition, endPosition);
+            PositionImpl[] startPosition = { markDeletePosition };
+            individualDeletedMessages.forEach((lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId) -> {
+                PositionImpl endPosition = new PositionImpl(lowerLedgerId, lowerEntryId);
+                if (startPosition[0].compareTo(endPosition) <= 0) {
+                    Range<PositionImpl> range = Range.openClosed(startPosition[0], endPosition);
                     long entries = ledger.getNumberOfEntries(range);
-                    if (totalEntriesToSkip + entries >= numEntries) {
-                        break;
+                    if (totalEntriesToSkip[0] + entries >= numEntries) {
+                        return false;
                     }
-                    totalEntriesToSkip += entries;
-                    deletedMessages += ledger.getNumberOfEntries(r);
-                    startPosition = r.upperEndpoint();
+                    PositionImpl upperPosition = new PositionImpl(upperLedgerId, upperEntryId);
+                    totalEntriesToSkip[0] += entries;
+                    deletedMessages[0] += ledger.getNumberOfEntries(Range.openClosed(endPosition, upperPosition));
+                    startPosition[0] = upperPosition;
                 } else {
                     if (log.isDebugEnabled()) {
                         log.debug("[{}] deletePosition {} moved ahead without clearing deleteMsgs {} for cursor {}",
-                                ledger.getName(), markDeletePosition, r.lowerEndpoint(), name);
+                                ledger.getName(), markDeletePosition, endPosition, name);
                     }
                 }
-            }
+                return true;
+            });
         } finally {
             lock.readLock().unlock();
         }
-        return deletedMessages;
+        return deletedMessages[0];
     }
 
     boolean hasMoreEntries(PositionImpl position) {
@@ -1287,14 +1585,16 @@ public class ManagedCursorImpl implements ManagedCursor {
             if (newMarkDeletePosition.getLedgerId() == oldMarkDeletePosition.getLedgerId()
                     && newMarkDeletePosition.getEntryId() == oldMarkDeletePosition.getEntryId() + 1) {
                 // Mark-deleting the position next to current one
-                skippedEntries = individualDeletedMessages.contains(newMarkDeletePosition) ? 0 : 1;
+                skippedEntries = individualDeletedMessages.contains(newMarkDeletePosition.getLedgerId(),
+                        newMarkDeletePosition.getEntryId()) ? 0 : 1;
             } else {
                 skippedEntries = getNumberOfEntries(Range.openClosed(oldMarkDeletePosition, newMarkDeletePosition));
             }
             PositionImpl positionAfterNewMarkDelete = ledger.getNextValidPosition(newMarkDeletePosition);
-            if (individualDeletedMessages.contains(positionAfterNewMarkDelete)) {
-                Range<PositionImpl> rangeToBeMarkDeleted = individualDeletedMessages
-                        .rangeContaining(positionAfterNewMarkDelete);
+            Range<PositionImpl> rangeToBeMarkDeleted = positionAfterNewMarkDelete == null ? null
+                    : individualDeletedMessages.rangeContaining(positionAfterNewMarkDelete.getLedgerId(),
+                            positionAfterNewMarkDelete.getEntryId());
+            if (rangeToBeMarkDeleted != null) {
                 newMarkDeletePosition = rangeToBeMarkDeleted.upperEndpoint();
             }
 
@@ -1307,7 +1607,8 @@ public class ManagedCursorImpl implements ManagedCursor {
 
         // markDelete-position and clear out deletedMsgSet
         markDeletePosition = PositionImpl.get(newMarkDeletePosition);
-        individualDeletedMessages.remove(Range.atMost(markDeletePosition));
+        individualDeletedMessages.removeAtMost(markDeletePosition.getLedgerId(), markDeletePosition.getEntryId());
+        removeBatchDeletedIndexesAtMost(markDeletePosition);
 
         if (readPosition.compareTo(newMarkDeletePosition) <= 0) {
             // If the position that is mark-deleted is past the read position, it
@@ -1446,7 +1747,9 @@ public class ManagedCursorImpl implements ManagedCursor {
                 // point.
                 lock.writeLock().lock();
                 try {
-                    individualDeletedMessages.remove(Range.atMost(mdEntry.newPosition));
+                    individualDeletedMessages.removeAtMost(mdEntry.newPosition.getLedgerId(),
+                            mdEntry.newPosition.getEntryId());
+                    removeBatchDeletedIndexesAtMost(mdEntry.newPosition);
                 } finally {
                     lock.writeLock().unlock();
                 }
@@ -1580,7 +1883,8 @@ public class ManagedCursorImpl implements ManagedCursor {
                     return;
                 }
 
-                if (individualDeletedMessages.contains(position) || position.compareTo(markDeletePosition) <= 0) {
+                if (individualDeletedMessages.contains(position.getLedgerId(), position.getEntryId())
+                        || position.compareTo(markDeletePosition) <= 0) {
                     if (log.isDebugEnabled()) {
                         log.debug("[{}] [{}] Position was already deleted {}", ledger.getName(), name, position);
                     }
@@ -1590,7 +1894,12 @@ public class ManagedCursorImpl implements ManagedCursor {
                 // Add a range (prev, pos] to the set. Adding the previous entry as an open limit to the range will make
                 // the RangeSet recognize the "continuity" between adjacent Positions
                 PositionImpl previousPosition = ledger.getPreviousPosition(position);
-                individualDeletedMessages.add(Range.openClosed(previousPosition, position));
+                individualDeletedMessages.addOpenClosed(previousPosition.getLedgerId(),
+                        previousPosition.getEntryId(), position.getLedgerId(), position.getEntryId());
+                batchDeletedIndexes.remove(position);
+                if (individualAckBitmapWriter != null) {
+                    individualAckBitmapWriter.markDirty(position.getLedgerId(), position.getEntryId());
+                }
                 ++messagesConsumedCounter;
 
                 if (log.isDebugEnabled()) {
@@ -1606,19 +1915,28 @@ public class ManagedCursorImpl implements ManagedCursor {
             }
 
             // If the lower bound of the range set is the current mark delete position, then we can trigger a new
-            // mark-delete to the upper bound of the first range segment
-            Range<PositionImpl> range = individualDeletedMessages.asRanges().iterator().next();
-
-            // If the lowerBound is ahead of MarkDelete, verify if there are any entries in-between
-            if (range.lowerEndpoint().compareTo(markDeletePosition) <= 0 || ledger
-                    .getNumberOfEntries(Range.openClosed(markDeletePosition, range.lowerEndpoint())) <= 0) {
+            // mark-delete to the upper bound of the first range segment. Ranges are kept per ledger, so keep walking
+            // while the following range is contiguous with the previous one across a ledger boundary
+            final PositionImpl[] candidate = new PositionImpl[] { markDeletePosition };
+            individualDeletedMessages.forEach((lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId) -> {
+                PositionImpl lower = PositionImpl.get(lowerLedgerId, lowerEntryId);
+
+                // If the lowerBound is ahead of MarkDelete, verify if there are any entries in-between
+                if (lower.compareTo(candidate[0]) <= 0
+                        || ledger.getNumberOfEntries(Range.openClosed(candidate[0], lower)) <= 0) {
+                    candidate[0] = PositionImpl.get(upperLedgerId, upperEntryId);
+                    return true;
+                }
+                return false;
+            });
 
+            if (candidate[0] != markDeletePosition) {
                 if (log.isDebugEnabled()) {
                     log.debug("[{}] Found a position range to mark delete for cursor {}: {} ", ledger.getName(),
-                            name, range);
+                            name, candidate[0]);
                 }
 
-                newMarkDeletePosition = range.upperEndpoint();
+                newMarkDeletePosition = candidate[0];
             }
 
             if (newMarkDeletePosition != null) {
@@ -1666,6 +1984,129 @@ public class ManagedCursorImpl implements ManagedCursor {
         }
     }
 
+    @Override
+    public void asyncDeleteBatchIndexes(Position pos, int batchSize, BitSet batchIndexes,
+            AsyncCallbacks.DeleteCallback callback, Object ctx) {
+        if (state == State.Closed) {
+            callback.deleteFailed(new ManagedLedgerException("Cursor was already closed"), ctx);
+            return;
+        }
+
+        PositionImpl position = (PositionImpl) checkNotNull(pos);
+        PositionImpl currentMarkDeletePosition;
+        boolean allIndexesDeleted;
+
+        lock.writeLock().lock();
+        try {
+            if (individualDeletedMessages.contains(position.getLedgerId(), position.getEntryId())
+                    || position.compareTo(markDeletePosition) <= 0) {
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] [{}] Position was already deleted {}", ledger.getName(), name, position);
+                }
+                callback.deleteComplete(ctx);
+                return;
+            }
+
+            long[] deleted = batchDeletedIndexes.get(position);
+            BitSet deletedIndexes = deleted != null ? BitSet.valueOf(deleted) : new BitSet(batchSize);
+            deletedIndexes.or(batchIndexes);
+            allIndexesDeleted = deletedIndexes.nextClearBit(0) >= batchSize;
+            if (!allIndexesDeleted) {
+                batchDeletedIndexes.put(position, deletedIndexes.toLongArray());
+            }
+            currentMarkDeletePosition = markDeletePosition;
+
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] [{}] Deleted batch indexes {} of {}: {}", ledger.getName(), name, batchIndexes,
+                        position, deletedIndexes);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (allIndexesDeleted) {
+            // The whole entry can go, which also drops its batch indexes
+            asyncDelete(position, callback, ctx);
+            return;
+        }
+
+        // Persist the deleted indexes along with the current mark-delete position, as for the individual deletes
+        if (markDeleteLimiter != null && !markDeleteLimiter.tryAcquire()) {
+            lastMarkDeleteEntry = new MarkDeleteEntry(currentMarkDeletePosition, Collections.emptyMap(), null, null);
+            callback.deleteComplete(ctx);
+            return;
+        }
+
+        internalAsyncMarkDelete(currentMarkDeletePosition, Collections.emptyMap(), new MarkDeleteCallback() {
+            @Override
+            public void markDeleteComplete(Object ctx) {
+                callback.deleteComplete(ctx);
+            }
+
+            @Override
+            public void markDeleteFailed(ManagedLedgerException exception, Object ctx) {
+                callback.deleteFailed(exception, ctx);
+            }
+        }, ctx);
+    }
+
+    @Override
+    public long[] getDeletedBatchIndexesAsLongArray(Position position) {
+        return batchDeletedIndexes.get(position);
+    }
+
+    /**
+     * Drop the deleted batch indexes of the entries up to the mark-delete position. Must be called with the write lock
+     * held.
+     */
+    private void removeBatchDeletedIndexesAtMost(PositionImpl position) {
+        if (!batchDeletedIndexes.isEmpty()) {
+            batchDeletedIndexes.headMap(position, true).clear();
+        }
+    }
+
+    /**
+     * Build the deleted indexes of the oldest partially deleted batch entries, up to
+     * {@link ManagedLedgerConfig#getMaxBatchDeletedIndexToPersist()}. The indexes of the following entries are only
+     * tracked in memory, and their whole batch is redelivered after a recovery.
+     */
+    private List<MLDataFormats.BatchedEntryDeletionIndexInfo> buildBatchEntryDeletionIndexInfoList() {
+        int maxBatchDeletedIndexToPersist = config.getMaxBatchDeletedIndexToPersist();
+        if (batchDeletedIndexes.isEmpty() || maxBatchDeletedIndexToPersist <= 0) {
+            return Collections.emptyList();
+        }
+
+        MLDataFormats.NestedPositionInfo.Builder nestedPositionBuilder = MLDataFormats.NestedPositionInfo
+                .newBuilder();
+        MLDataFormats.BatchedEntryDeletionIndexInfo.Builder batchDeletedIndexInfoBuilder = MLDataFormats
+                .BatchedEntryDeletionIndexInfo.newBuilder();
+        List<MLDataFormats.BatchedEntryDeletionIndexInfo> result = Lists.newArrayList();
+        for (Map.Entry<PositionImpl, long[]> e : batchDeletedIndexes.entrySet()) {
+            if (result.size() >= maxBatchDeletedIndexToPersist) {
+                break;
+            }
+            nestedPositionBuilder.setLedgerId(e.getKey().getLedgerId());
+            nestedPositionBuilder.setEntryId(e.getKey().getEntryId());
+            batchDeletedIndexInfoBuilder.clear();
+            batchDeletedIndexInfoBuilder.setPosition(nestedPositionBuilder.build());
+            batchDeletedIndexInfoBuilder.addAllDeleteSet(Longs.asList(e.getValue()));
+            result.add(batchDeletedIndexInfoBuilder.build());
+        }
+        return result;
+    }
+
+    private void recoverBatchDeletedIndexes(List<MLDataFormats.BatchedEntryDeletionIndexInfo> batchDeletedIndexInfos) {
+        lock.writeLock().lock();
+        try {
+            batchDeletedIndexes.clear();
+            batchDeletedIndexInfos.forEach(batchDeletedIndexInfo -> batchDeletedIndexes.put(
+                    new PositionImpl(batchDeletedIndexInfo.getPosition()),
+                    Longs.toArray(batchDeletedIndexInfo.getDeleteSetList())));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     /**
      * Given a list of entries, filter out the entries that have already been individually deleted.
      *
@@ -1692,7 +2133,9 @@ public class ManagedCursorImpl implements ManagedCursor {
             } else {
                 // Remove from the entry list all the entries that were already marked for deletion
                 return Lists.newArrayList(Collections2.filter(entries, entry -> {
-                    boolean includeEntry = !individualDeletedMessages.contains((PositionImpl) entry.getPosition());
+                    PositionImpl position = (PositionImpl) entry.getPosition();
+                    boolean includeEntry = !individualDeletedMessages.contains(position.getLedgerId(),
+                            position.getEntryId());
                     if (!includeEntry) {
                         if (log.isDebugEnabled()) {
                             log.debug("[{}] [{}] Filtering entry at {} - already deleted", ledger.getName(), name,
@@ -1863,9 +2306,21 @@ public class ManagedCursorImpl implements ManagedCursor {
         }
     }
 
-    private boolean shouldPersistUnackRangesToLedger() {
-        return cursorLedger != null && config.getMaxUnackedRangesToPersist() > 0
-                && individualDeletedMessages.asRanges().size() > config.getMaxUnackedRangesToPersistInZk();
+    @VisibleForTesting
+    boolean shouldPersistUnackRangesToLedger() {
+        if (cursorLedger == null) {
+            return false;
+        }
+
+        int maxRangesInZk = config.getMaxUnackedRangesToPersistInZk();
+        long entriesToPersist = individualAckBitmapWriter != null || config.getMaxUnackedRangesToPersist() > 0
+                ? individualDeletedMessages.size() : 0;
+        // The deleted batch indexes are written along with the ranges, with a position and a bitset for each entry.
+        // Only count them up to the limit, as the size of the map is not tracked.
+        int batchEntriesLimit = Math.min(config.getMaxBatchDeletedIndexToPersist(), maxRangesInZk + 1);
+        entriesToPersist += Iterables.size(Iterables.limit(batchDeletedIndexes.keySet(),
+                Math.max(batchEntriesLimit, 0)));
+        return entriesToPersist > maxRangesInZk;
     }
 
     private void persistPositionMetaStore(long cursorsLedgerId, PositionImpl position, Map<String, Long> properties,
@@ -1881,6 +2336,7 @@ public class ManagedCursorImpl implements ManagedCursor {
         info.addAllProperties(buildPropertiesMap(properties));
         if (persistIndividualDeletedMessageRanges) {
             info.addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges());
+            info.addAllBatchedEntryDeletionIndexInfo(buildBatchEntryDeletionIndexInfoList());
         }
 
         if (log.isDebugEnabled()) {
@@ -1910,7 +2366,45 @@ public class ManagedCursorImpl implements ManagedCursor {
             callback.closeComplete(ctx);
             return;
         }
-        persistPosition(-1, lastMarkDeleteEntry.newPosition, lastMarkDeleteEntry.properties, callback, ctx);
+        releaseReadAhead();
+        persistPosition(-1, lastMarkDeleteEntry.newPosition, lastMarkDeleteEntry.properties,
+                new AsyncCallbacks.CloseCallback() {
+                    @Override
+                    public void closeComplete(Object ctx) {
+                        releaseIndividualAckSet();
+                        callback.closeComplete(ctx);
+                    }
+
+                    @Override
+                    public void closeFailed(ManagedLedgerException exception, Object ctx) {
+                        releaseIndividualAckSet();
+                        callback.closeFailed(exception, ctx);
+                    }
+                }, ctx);
+    }
+
+    /**
+     * Release the memory held to track the individually deleted messages, once the cursor is closed or deleted.
+     */
+    void releaseIndividualAckSet() {
+        lock.writeLock().lock();
+        try {
+            individualDeletedMessages.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Discard the individually deleted messages of a ledger that was trimmed from the managed ledger.
+     */
+    void trimIndividualAckSet(long ledgerId) {
+        lock.writeLock().lock();
+        try {
+            individualDeletedMessages.removeLedger(ledgerId);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -2080,29 +2574,60 @@ public class ManagedCursorImpl implements ManagedCursor {
             MLDataFormats.NestedPositionInfo.Builder nestedPositionBuilder = MLDataFormats.NestedPositionInfo
                     .newBuilder();
             MLDataFormats.MessageRange.Builder messageRangeBuilder = MLDataFormats.MessageRange.newBuilder();
-            return individualDeletedMessages.asRanges().stream().limit(config.getMaxUnackedRangesToPersist())
-                    .map(positionRange -> {
-                        PositionImpl p = positionRange.lowerEndpoint();
-                        nestedPositionBuilder.setLedgerId(p.getLedgerId());
-                        nestedPositionBuilder.setEntryId(p.getEntryId());
-                        messageRangeBuilder.setLowerEndpoint(nestedPositionBuilder.build());
-                        p = positionRange.upperEndpoint();
-                        nestedPositionBuilder.setLedgerId(p.getLedgerId());
-                        nestedPositionBuilder.setEntryId(p.getEntryId());
-                        messageRangeBuilder.setUpperEndpoint(nestedPositionBuilder.build());
-                        return messageRangeBuilder.build();
-                    }).collect(Collectors.toList());
+            int maxRanges = config.getMaxUnackedRangesToPersist();
+            List<MLDataFormats.MessageRange> ranges = Lists
+                    .newArrayListWithExpectedSize(Math.min(maxRanges, individualDeletedMessages.size()));
+            // Ranges that are contiguous across ledger boundaries are merged into a single one
+            final PositionImpl[] pendingRange = new PositionImpl[2];
+            individualDeletedMessages.forEach((lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId) -> {
+                PositionImpl lower = lowerEntryId < 0
+                        ? ledger.getPreviousPosition(PositionImpl.get(lowerLedgerId, 0))
+                        : PositionImpl.get(lowerLedgerId, lowerEntryId);
+                PositionImpl upper = PositionImpl.get(upperLedgerId, upperEntryId);
+                if (pendingRange[1] != null && lower.compareTo(pendingRange[1]) <= 0) {
+                    pendingRange[1] = upper;
+                    return true;
+                }
+
+                if (pendingRange[1] != null) {
+                    ranges.add(buildMessageRange(messageRangeBuilder, nestedPositionBuilder, pendingRange[0],
+                            pendingRange[1]));
+                }
+                if (ranges.size() >= maxRanges) {
+                    pendingRange[1] = null;
+                    return false;
+                }
+                pendingRange[0] = lower;
+                pendingRange[1] = upper;
+                return true;
+            });
+            if (pendingRange[1] != null) {
+                ranges.add(buildMessageRange(messageRangeBuilder, nestedPositionBuilder, pendingRange[0],
+                        pendingRange[1]));
+            }
+            return ranges;
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    private static MLDataFormats.MessageRange buildMessageRange(MLDataFormats.MessageRange.Builder messageRangeBuilder,
+            MLDataFormats.NestedPositionInfo.Builder nestedPositionBuilder, PositionImpl lower, PositionImpl upper) {
+        nestedPositionBuilder.setLedgerId(lower.getLedgerId());
+        nestedPositionBuilder.setEntryId(lower.getEntryId());
+        messageRangeBuilder.setLowerEndpoint(nestedPositionBuilder.build());
+        nestedPositionBuilder.setLedgerId(upper.getLedgerId());
+        nestedPositionBuilder.setEntryId(upper.getEntryId());
+        messageRangeBuilder.setUpperEndpoint(nestedPositionBuilder.build());
+        return messageRangeBuilder.build();
+    }
+
     void persistPositionToLedger(final LedgerHandle lh, MarkDeleteEntry mdEntry, final VoidCallback callback) {
         PositionImpl position = mdEntry.newPosition;
-        PositionInfo pi = PositionInfo.newBuilder().setLedgerId(position.getLedgerId())
+        PositionInfo.Builder pi = PositionInfo.newBuilder().setLedgerId(position.getLedgerId())
                 .setEntryId(position.getEntryId())
-                .addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges())
-                .addAllProperties(buildPropertiesMap(mdEntry.properties)).build();
+                .addAllProperties(buildPropertiesMap(mdEntry.properties))
+                .addAllBatchedEntryDeletionIndexInfo(buildBatchEntryDeletionIndexInfoList());
 
 
         if (log.isDebugEnabled()) {
@@ -2111,7 +2636,7 @@ public class ManagedCursorImpl implements ManagedCursor {
         }
 
         checkNotNull(lh);
-        lh.asyncAddEntry(pi.toByteArray(), (rc, lh1, entryId, ctx) -> {
+        appendPositionInfo(lh, pi, (rc, lh1, entryId, ctx) -> {
             if (rc == BKException.Code.OK) {
                 if (log.isDebugEnabled()) {
                     log.debug("[{}] Updated cursor {} position {} in meta-ledger {}", ledger.getName(), name, position,
@@ -2153,7 +2678,42 @@ public class ManagedCursorImpl implements ManagedCursor {
                     }
                 }, true);
             }
-        }, null);
+        });
+    }
+
+    /**
+     * Append the position info to the cursor ledger, along with the individually deleted messages. When they are
+     * persisted as bitmaps, they can span over multiple entries and the callback is only triggered for the last one.
+     */
+    private void appendPositionInfo(LedgerHandle lh, PositionInfo.Builder pi, AddCallback callback) {
+        if (individualAckBitmapWriter == null) {
+            pi.addAllIndividualDeletedMessages(buildIndividualDeletedMessageRanges());
+            lh.asyncAddEntry(pi.build().toByteArray(), callback, null);
+            return;
+        }
+
+        // Entries must be appended in the order they were built
+        synchronized (individualAckBitmapWriter) {
+            List<PositionInfo> entries;
+            lock.readLock().lock();
+            try {
+                entries = individualAckBitmapWriter.buildEntries(lh.getId(), pi, individualDeletedMessages,
+                        ledger.getLedgersInfo().tailMap(pi.getLedgerId(), true).keySet());
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            for (int i = 0; i < entries.size() - 1; i++) {
+                // A failure also fails all the following entries, and it is reported by the last one
+                lh.asyncAddEntry(entries.get(i).toByteArray(), (rc, lh1, entryId, ctx) -> {
+                    if (rc != BKException.Code.OK && log.isDebugEnabled()) {
+                        log.debug("[{}] Error appending acknowledgment bitmap of cursor {} to ledger {}: {}",
+                                ledger.getName(), name, lh1.getId(), BKException.getMessage(rc));
+                    }
+                }, null);
+            }
+            lh.asyncAddEntry(entries.get(entries.size() - 1).toByteArray(), callback, null);
+        }
     }
 
     boolean shouldCloseLedger(LedgerHandle lh) {
@@ -2307,6 +2867,7 @@ public class ManagedCursorImpl implements ManagedCursor {
 
     private void asyncDeleteCursorLedger(int retry) {
         STATE_UPDATER.set(this, State.Closed);
+        releaseIndividualAckSet();
 
         if (cursorLedger == null || retry <= 0) {
             if (cursorLedger != null) {
@@ -2404,7 +2965,13 @@ public class ManagedCursorImpl implements ManagedCursor {
      * @return next available position
      */
     public PositionImpl getNextAvailablePosition(PositionImpl position) {
-        Range<PositionImpl> range = individualDeletedMessages.rangeContaining(position);
+        Range<PositionImpl> range;
+        lock.readLock().lock();
+        try {
+            range = individualDeletedMessages.rangeContaining(position.getLedgerId(), position.getEntryId());
+        } finally {
+            lock.readLock().unlock();
+        }
         if (range != null) {
             PositionImpl nextPosition = range.upperEndpoint().getNext();
             return (nextPosition != null && nextPosition.compareTo(position) > 0) ? nextPosition : position.getNext();
@@ -2417,6 +2984,44 @@ public class ManagedCursorImpl implements ManagedCursor {
         return nextExistingLedger != null ? PositionImpl.get(nextExistingLedger, 0) : null;
     }
 
+    /**
+     * @return the size in bytes of the entries read ahead and held in the buffer of this cursor, not yet consumed
+     */
+    public long getReadAheadBufferSize() {
+        return readAhead != null ? readAhead.getBufferSize() : 0;
+    }
+
+    /**
+     * Read entries ahead for this cursor when it catches up with the backlog, even if read-ahead is not enabled for the
+     * managed ledger. It has no effect if the cursor already reads ahead, and must be called before the cursor starts
+     * reading.
+     *
+     * @param maxOutstandingReads
+     *            max number of read-ahead requests in flight
+     * @param maxBufferSizeBytes
+     *            max size of the entries read ahead and not yet consumed
+     */
+    public void enableReadAhead(int maxOutstandingReads, long maxBufferSizeBytes) {
+        if (readAhead == null) {
+            readAhead = new CursorReadAhead(ledger, maxOutstandingReads, maxBufferSizeBytes);
+        }
+    }
+
+    void releaseReadAhead() {
+        if (readAhead != null) {
+            readAhead.clear();
+        }
+    }
+
+    public long getIndividualAckSetMemorySize() {
+        lock.readLock().lock();
+        try {
+            return individualDeletedMessages.getMemorySize();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public boolean isIndividuallyDeletedEntriesEmpty() {
         lock.readLock().lock();
         try {
@@ -86,6 +86,7 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
 
     protected final ConcurrentHashMap<String, CompletableFuture<ManagedLedgerImpl>> ledgers = new ConcurrentHashMap<>();
     private final EntryCacheManager entryCacheManager;
+    final CursorRecoveryLimiter cursorRecoveryLimiter;
 
     private long lastStatTimestamp = System.nanoTime();
     private final ScheduledFuture<?> statsTask;
@@ -138,6 +139,8 @@ public class ManagedLedgerFactoryImpl implements ManagedLedgerFactory {
         this.config = config;
         this.mbean = new ManagedLedgerFactoryMBeanImpl(this);
         this.entryCacheManager = new EntryCacheManager(this);
+        this.cursorRecoveryLimiter = new CursorRecoveryLimiter(config.getMaxConcurrentCursorRecoveries(),
+                orderedExecutor);
         this.statsTask = scheduledExecutor.scheduleAtFixedRate(() -> refreshStats(), 0, StatsPeriodSeconds, TimeUnit.SECONDS);
     }
 
@@ -30,6 +30,14 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
     final Rate cacheHits = new Rate();
     final Rate cacheMisses = new Rate();
     final Rate cacheEvictions = new Rate();
+    final Rate coalescedReads = new Rate();
+    final Rate cacheProtectedHits = new Rate();
+    final Rate cacheProbationHits = new Rate();
+    final Rate cacheBacklogReads = new Rate();
+    final Rate recoveryLatency = new Rate();
+    final Rate recoveryMetadataLatency = new Rate();
+    final Rate recoveryLedgersLatency = new Rate();
+    final Rate recoveryCursorsLatency = new Rate();
 
     public ManagedLedgerFactoryMBeanImpl(ManagedLedgerFactoryImpl factory) throws Exception {
         this.factory = factory;
@@ -46,6 +54,14 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
         cacheHits.calculateRate(seconds);
         cacheMisses.calculateRate(seconds);
         cacheEvictions.calculateRate(seconds);
+        coalescedReads.calculateRate(seconds);
+        cacheProtectedHits.calculateRate(seconds);
+        cacheProbationHits.calculateRate(seconds);
+        cacheBacklogReads.calculateRate(seconds);
+        recoveryLatency.calculateRate(seconds);
+        recoveryMetadataLatency.calculateRate(seconds);
+        recoveryLedgersLatency.calculateRate(seconds);
+        recoveryCursorsLatency.calculateRate(seconds);
     }
 
     public void recordCacheHit(long size) {
@@ -60,6 +76,29 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
         cacheMisses.recordMultipleEvents(count, totalSize);
     }
 
+    public void recordCoalescedReads(int count, long totalSize) {
+        coalescedReads.recordMultipleEvents(count, totalSize);
+    }
+
+    public void recordCacheSegmentHits(boolean protectedSegment, int count, long totalSize) {
+        if (protectedSegment) {
+            cacheProtectedHits.recordMultipleEvents(count, totalSize);
+        } else {
+            cacheProbationHits.recordMultipleEvents(count, totalSize);
+        }
+    }
+
+    public void recordCacheBacklogReads(int count) {
+        cacheBacklogReads.recordMultipleEvents(count, 0);
+    }
+
+    public void recordRecovery(long totalMicros, long metadataMicros, long ledgersMicros, long cursorsMicros) {
+        recoveryLatency.recordEvent(totalMicros);
+        recoveryMetadataLatency.recordEvent(metadataMicros);
+        recoveryLedgersLatency.recordEvent(ledgersMicros);
+        recoveryCursorsLatency.recordEvent(cursorsMicros);
+    }
+
     public void recordCacheEviction() {
         cacheEvictions.recordEvent();
     }
@@ -106,4 +145,54 @@ public class ManagedLedgerFactoryMBeanImpl implements ManagedLedgerFactoryMXBean
         return cacheEvictions.getCount();
     }
 
+    @Override
+    public double getCacheCoalescedReadsRate() {
+        return coalescedReads.getRate();
+    }
+
+    @Override
+    public double getCacheCoalescedReadsThroughput() {
+        return coalescedReads.getValueRate();
+    }
+
+    @Override
+    public double getCacheProtectedHitsRate() {
+        return cacheProtectedHits.getRate();
+    }
+
+    @Override
+    public double getCacheProbationHitsRate() {
+        return cacheProbationHits.getRate();
+    }
+
+    @Override
+    public double getCacheBacklogReadsRate() {
+        return cacheBacklogReads.getRate();
+    }
+
+    @Override
+    public double getRecoveryAvgLatencyMs() {
+        return recoveryLatency.getAverageValue() / 1000.0;
+    }
+
+    @Override
+    public double getRecoveryMetadataAvgLatencyMs() {
+        return recoveryMetadataLatency.getAverageValue() / 1000.0;
+    }
+
+    @Override
+    public double getRecoveryLedgersAvgLatencyMs() {
+        return recoveryLedgersLatency.getAverageValue() / 1000.0;
+    }
+
+    @Override
+    public double getRecoveryCursorsAvgLatencyMs() {
+        return recoveryCursorsLatency.getAverageValue() / 1000.0;
+    }
+
+    @Override
+    public int getPendingCursorRecoveries() {
+        return factory.cursorRecoveryLimiter.getPendingRecoveries();
+    }
+
 }
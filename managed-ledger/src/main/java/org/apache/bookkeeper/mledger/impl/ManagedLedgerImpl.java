@@ -33,6 +33,7 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
@@ -45,7 +46,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 import org.apache.bookkeeper.client.AsyncCallback.CreateCallback;
@@ -65,6 +68,7 @@ import org.apache.bookkeeper.mledger.AsyncCallbacks.DeleteCursorCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.DeleteLedgerCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.OffloadCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.OpenCursorCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.TerminateCallback;
 import org.apache.bookkeeper.mledger.Entry;
@@ -128,6 +132,10 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     protected final MetaStore store;
 
     private final ConcurrentLongHashMap<CompletableFuture<ReadHandle>> ledgerCache = new ConcurrentLongHashMap<>();
+    // Location of the grouped entries of the ledgers written with group-commit
+    private final ConcurrentLongHashMap<GroupedEntriesIndex> groupedEntriesIndexes = new ConcurrentLongHashMap<>();
+    // Timestamps of the entries of the ledgers, for the ledger being written and the ones already searched by time
+    private final ConcurrentLongHashMap<TimeIndex> timeIndexes = new ConcurrentLongHashMap<>();
     protected final NavigableMap<Long, LedgerInfo> ledgers = new ConcurrentSkipListMap<>();
     private volatile Stat ledgersStat;
 
@@ -140,6 +148,10 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     @SuppressWarnings("unused")
     private volatile long entriesAddedCounter = 0;
 
+    private static final AtomicLongFieldUpdater<ManagedLedgerImpl> CURRENT_LEDGER_ENTRIES_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(ManagedLedgerImpl.class, "currentLedgerEntries");
+    private static final AtomicLongFieldUpdater<ManagedLedgerImpl> CURRENT_LEDGER_SIZE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(ManagedLedgerImpl.class, "currentLedgerSize");
     static final AtomicLongFieldUpdater<ManagedLedgerImpl> NUMBER_OF_ENTRIES_UPDATER =
             AtomicLongFieldUpdater.newUpdater(ManagedLedgerImpl.class, "numberOfEntries");
     @SuppressWarnings("unused")
@@ -171,12 +183,24 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     private final static CompletableFuture<PositionImpl> NULL_OFFLOAD_PROMISE
         = CompletableFuture.completedFuture(PositionImpl.latest);
     private volatile LedgerHandle currentLedger;
-    private long currentLedgerEntries = 0;
-    private long currentLedgerSize = 0;
+    private volatile long currentLedgerEntries = 0;
+    private volatile long currentLedgerSize = 0;
+    // Group-commit of the adds into the current ledger, null if the current ledger is not written with group-commit
+    private volatile GroupCommitBuffer groupCommit = null;
     private long lastLedgerCreatedTimestamp = 0;
     private long lastLedgerCreationFailureTimestamp = 0;
     private long lastLedgerCreationInitiationTimestamp = 0;
 
+    // Timestamps (nanos) of the recovery phases, used to report the time spent in each of them
+    private volatile long recoveryStartTimestamp = 0;
+    private volatile long metadataRecoveredTimestamp = 0;
+    private volatile long ledgersRecoveredTimestamp = 0;
+    private volatile long cursorsRecoveryStartTimestamp = 0;
+    // With pipelined recovery, the cursors are recovered while the ledgers are recovering and wait for this future to
+    // apply their recovered positions. Null otherwise
+    private CompletableFuture<Void> ledgersRecoveredFuture = null;
+    private CompletableFuture<Void> cursorsRecoveredFuture = null;
+
     private static final Random random = new Random(System.currentTimeMillis());
     private long maximumRolloverTimeMs;
 
@@ -225,6 +249,18 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
      */
     final ConcurrentLinkedQueue<OpAddEntry> pendingAddEntries = new ConcurrentLinkedQueue<>();
 
+    /**
+     * Lock held by the add writer while it writes into the current ledger without holding the managed ledger lock.
+     *
+     * <p/>Adds are always processed by the executor thread hashed on the managed ledger name. When the state is
+     * {@link State#LedgerOpened}, that thread takes this lock instead of the managed ledger lock to write into the
+     * current ledger, and never takes the managed ledger lock while holding it. The transitions away from
+     * {@link State#LedgerOpened} take this lock <i>before</i> entering the managed ledger lock, so that they wait for an
+     * add in progress without blocking the threads waiting on the managed ledger lock. They must not be called with
+     * the managed ledger lock held.
+     */
+    private final ReentrantLock addWriterLock = new ReentrantLock();
+
     // //////////////////////////////////////////////////////////////////////
 
     public ManagedLedgerImpl(ManagedLedgerFactoryImpl factory, BookKeeper bookKeeper, MetaStore store,
@@ -254,13 +290,36 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         this.maximumRolloverTimeMs = (long) (config.getMaximumRolloverTimeMs() * (1 + random.nextDouble() * 5 / 100.0));
     }
 
-    synchronized void initialize(final ManagedLedgerInitializeLedgerCallback callback, final Object ctx) {
+    synchronized void initialize(final ManagedLedgerInitializeLedgerCallback openCallback, final Object ctx) {
         log.info("Opening managed ledger {}", name);
+        recoveryStartTimestamp = System.nanoTime();
+
+        final ManagedLedgerInitializeLedgerCallback callback;
+        if (factory.getConfig().isPipelinedRecoveryEnabled()) {
+            // Start reading the cursors metadata and ledgers right away, alongside the ledgers recovery
+            ledgersRecoveredFuture = new CompletableFuture<>();
+            cursorsRecoveredFuture = recoverCursors(ledgersRecoveredFuture);
+            callback = new ManagedLedgerInitializeLedgerCallback() {
+                @Override
+                public void initializeComplete() {
+                    openCallback.initializeComplete();
+                }
+
+                @Override
+                public void initializeFailed(ManagedLedgerException e) {
+                    ledgersRecoveredFuture.completeExceptionally(e);
+                    openCallback.initializeFailed(e);
+                }
+            };
+        } else {
+            callback = openCallback;
+        }
 
         // Fetch the list of existing ledgers in the managed ledger
         store.getManagedLedgerInfo(name, config.isCreateIfMissing(), new MetaStoreCallback<ManagedLedgerInfo>() {
             @Override
             public void operationComplete(ManagedLedgerInfo mlInfo, Stat stat) {
+                metadataRecoveredTimestamp = System.nanoTime();
                 ledgersStat = stat;
                 if (mlInfo.hasTerminatedPosition()) {
                     state = State.Terminated;
@@ -281,7 +340,27 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                             if (log.isDebugEnabled()) {
                                 log.debug("[{}] Opened ledger {}: ", name, id, BKException.getMessage(rc));
                             }
-                            if (rc == BKException.Code.OK) {
+                            if (rc == BKException.Code.OK && ledgers.get(id).getGroupedEntries()) {
+                                // The number of entries is found in the last group written into the ledger
+                                new GroupedEntriesReadHandle(lh, getGroupedEntriesIndex(id),
+                                        GroupedEntriesReadHandle.UNKNOWN_LAST_ENTRY_ID)
+                                        .getLastEntryIdAsync(lh.getLastAddConfirmed())
+                                        .whenCompleteAsync((lastEntryId, ex) -> {
+                                            if (ex != null) {
+                                                log.error("[{}] Failed to read last group of ledger {}: {}", name, id,
+                                                        ex.getMessage());
+                                                callback.initializeFailed(createManagedLedgerException(
+                                                        ex instanceof CompletionException ? ex.getCause() : ex));
+                                                return;
+                                            }
+
+                                            LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(id)
+                                                    .setEntries(lastEntryId + 1).setSize(lh.getLength())
+                                                    .setTimestamp(clock.millis()).setGroupedEntries(true).build();
+                                            ledgers.put(id, info);
+                                            initializeBookKeeper(callback);
+                                        }, executor.chooseThread(name));
+                            } else if (rc == BKException.Code.OK) {
                                 LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(id)
                                         .setEntries(lh.getLastAddConfirmed() + 1).setSize(lh.getLength())
                                         .setTimestamp(clock.millis()).build();
@@ -381,9 +460,10 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                 }
 
                 log.info("[{}] Created ledger {}", name, lh.getId());
-                STATE_UPDATER.set(this, State.LedgerOpened);
                 lastLedgerCreatedTimestamp = clock.millis();
                 currentLedger = lh;
+                groupCommit = createGroupCommit(lh);
+                STATE_UPDATER.set(this, State.LedgerOpened);
 
                 lastConfirmedEntry = new PositionImpl(lh.getId(), -1);
                 // bypass empty ledgers, find last ledger with Message if possible.
@@ -397,8 +477,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                     }
                 }
 
-                LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(lh.getId()).setTimestamp(0).build();
-                ledgers.put(lh.getId(), info);
+                ledgers.put(lh.getId(), newLedgerInfo(lh));
 
                 // Save it back to ensure all nodes exist
                 store.asyncUpdateLedgerIds(name, getManagedLedgerInfo(), ledgersStat, storeLedgersCb);
@@ -407,9 +486,53 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     private void initializeCursors(final ManagedLedgerInitializeLedgerCallback callback) {
+        ledgersRecoveredTimestamp = System.nanoTime();
+
+        final CompletableFuture<Void> cursorsRecovered;
+        if (ledgersRecoveredFuture != null) {
+            // The cursors are already recovering, let them apply their positions
+            cursorsRecovered = cursorsRecoveredFuture;
+            ledgersRecoveredFuture.complete(null);
+        } else {
+            cursorsRecovered = recoverCursors(CompletableFuture.completedFuture(null));
+        }
+
+        cursorsRecovered.whenComplete((ignore, exception) -> {
+            if (exception != null) {
+                callback.initializeFailed(ManagedLedgerException.getManagedLedgerException(exception));
+                return;
+            }
+
+            long now = System.nanoTime();
+            long totalMicros = TimeUnit.NANOSECONDS.toMicros(now - recoveryStartTimestamp);
+            long metadataMicros = TimeUnit.NANOSECONDS.toMicros(metadataRecoveredTimestamp - recoveryStartTimestamp);
+            long ledgersMicros = TimeUnit.NANOSECONDS.toMicros(ledgersRecoveredTimestamp - metadataRecoveredTimestamp);
+            long cursorsMicros = TimeUnit.NANOSECONDS.toMicros(now - cursorsRecoveryStartTimestamp);
+            log.info("[{}] Recovered managed ledger in {} ms -- metadata: {} ms, ledgers: {} ms, cursors: {} ms", name,
+                    totalMicros / 1000.0, metadataMicros / 1000.0, ledgersMicros / 1000.0, cursorsMicros / 1000.0);
+            factory.mbean.recordRecovery(totalMicros, metadataMicros, ledgersMicros, cursorsMicros);
+
+            // The initialization is now completed, register the jmx mbean
+            callback.initializeComplete();
+        });
+    }
+
+    /**
+     * Read the list of cursors and recover all of them. The number of cursors reading their recovery data at the same
+     * time is bounded across the whole factory.
+     *
+     * <p/>The cursors read their metadata and ledgers right away and wait for <code>ledgersRecovered</code> before
+     * applying their recovered positions.
+     *
+     * @return a future completed once all the cursors have been recovered
+     */
+    private CompletableFuture<Void> recoverCursors(CompletableFuture<Void> ledgersRecovered) {
         if (log.isDebugEnabled()) {
             log.debug("[{}] initializing cursors", name);
         }
+        cursorsRecoveryStartTimestamp = System.nanoTime();
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
         store.getCursors(name, new MetaStoreCallback<List<String>>() {
             @Override
             public void operationComplete(List<String> consumers, Stat s) {
@@ -420,7 +543,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                 }
 
                 if (consumers.isEmpty()) {
-                    callback.initializeComplete();
+                    future.complete(null);
                     return;
                 }
 
@@ -431,36 +554,46 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                     final ManagedCursorImpl cursor;
                     cursor = new ManagedCursorImpl(bookKeeper, config, ManagedLedgerImpl.this, cursorName);
 
-                    cursor.recover(new VoidCallback() {
-                        @Override
-                        public void operationComplete() {
-                            log.info("[{}] Recovery for cursor {} completed. pos={} -- todo={}", name, cursorName,
-                                    cursor.getMarkDeletedPosition(), cursorCount.get() - 1);
-                            cursor.setActive();
-                            cursors.add(cursor);
-
-                            if (cursorCount.decrementAndGet() == 0) {
-                                // The initialization is now completed, register the jmx mbean
-                                callback.initializeComplete();
-                            }
+                    final AtomicBoolean readsCompleted = new AtomicBoolean(false);
+                    final Runnable releaseRecoverySlot = () -> {
+                        if (readsCompleted.compareAndSet(false, true)) {
+                            factory.cursorRecoveryLimiter.release();
                         }
+                    };
 
-                        @Override
-                        public void operationFailed(ManagedLedgerException exception) {
-                            log.warn("[{}] Recovery for cursor {} failed", name, cursorName, exception);
-                            cursorCount.set(-1);
-                            callback.initializeFailed(exception);
-                        }
-                    });
+                    factory.cursorRecoveryLimiter.execute(() -> cursor.recover(ledgersRecovered, releaseRecoverySlot,
+                            new VoidCallback() {
+                                @Override
+                                public void operationComplete() {
+                                    releaseRecoverySlot.run();
+                                    log.info("[{}] Recovery for cursor {} completed. pos={} -- todo={}", name,
+                                            cursorName, cursor.getMarkDeletedPosition(), cursorCount.get() - 1);
+                                    cursor.setActive();
+                                    cursors.add(cursor);
+
+                                    if (cursorCount.decrementAndGet() == 0) {
+                                        future.complete(null);
+                                    }
+                                }
+
+                                @Override
+                                public void operationFailed(ManagedLedgerException exception) {
+                                    releaseRecoverySlot.run();
+                                    log.warn("[{}] Recovery for cursor {} failed", name, cursorName, exception);
+                                    cursorCount.set(-1);
+                                    future.completeExceptionally(exception);
+                                }
+                            }));
                 }
             }
 
             @Override
             public void operationFailed(MetaStoreException e) {
                 log.warn("[{}] Failed to get the cursors list", name, e);
-                callback.initializeFailed(new ManagedLedgerException(e));
+                future.completeExceptionally(new ManagedLedgerException(e));
             }
         });
+        return future;
     }
 
     @Override
@@ -529,14 +662,32 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         OpAddEntry addOperation = OpAddEntry.create(this, buffer, callback, ctx);
 
         // Jump to specific thread to avoid contention from writers writing from different threads
-        executor.executeOrdered(name, safeRun(() -> {
-            pendingAddEntries.add(addOperation);
+        executor.executeOrdered(name, safeRun(() -> internalAsyncAddEntry(addOperation)));
+    }
+
+    private void internalAsyncAddEntry(OpAddEntry addOperation) {
+        // Fast path: write into the current ledger without taking the managed ledger lock, so that adds are not
+        // blocked by cursor operations. The state can only move away from LedgerOpened once we release the add
+        // writer lock. If a transition holds it, the add waits for the transition on the managed ledger lock.
+        if (addWriterLock.tryLock()) {
+            try {
+                if (STATE_UPDATER.get(this) == State.LedgerOpened) {
+                    pendingAddEntries.add(addOperation);
+                    addToCurrentLedger(addOperation);
+                    return;
+                }
+            } finally {
+                addWriterLock.unlock();
+            }
+        }
 
-            internalAsyncAddEntry(addOperation);
-        }));
+        synchronized (this) {
+            pendingAddEntries.add(addOperation);
+            internalAsyncAddEntryLocked(addOperation);
+        }
     }
 
-    private synchronized void internalAsyncAddEntry(OpAddEntry addOperation) {
+    private void internalAsyncAddEntryLocked(OpAddEntry addOperation) {
         final State state = STATE_UPDATER.get(this);
         if (state == State.Fenced) {
             addOperation.failed(new ManagedLedgerFencedException());
@@ -575,29 +726,35 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             }
         } else {
             checkArgument(state == State.LedgerOpened, "ledger=%s is not opened", state);
+            addToCurrentLedger(addOperation);
+        }
+    }
 
-            // Write into lastLedger
-            addOperation.setLedger(currentLedger);
+    /**
+     * Write into the current ledger. Called either by the add writer while the state is LedgerOpened, or with the
+     * managed ledger lock held.
+     */
+    private void addToCurrentLedger(OpAddEntry addOperation) {
+        LedgerHandle currentLedger = this.currentLedger;
+        addOperation.setLedger(currentLedger);
 
-            ++currentLedgerEntries;
-            currentLedgerSize += addOperation.data.readableBytes();
+        long entries = CURRENT_LEDGER_ENTRIES_UPDATER.incrementAndGet(this);
+        CURRENT_LEDGER_SIZE_UPDATER.addAndGet(this, addOperation.data.readableBytes());
 
-            if (log.isDebugEnabled()) {
-                log.debug("[{}] Write into current ledger lh={} entries={}", name, currentLedger.getId(),
-                        currentLedgerEntries);
-            }
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Write into current ledger lh={} entries={}", name, currentLedger.getId(), entries);
+        }
 
-            if (currentLedgerIsFull()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("[{}] Closing current ledger lh={}", name, currentLedger.getId());
-                }
-                // This entry will be the last added to current ledger
-                addOperation.setCloseWhenDone(true);
-                STATE_UPDATER.set(this, State.ClosingLedger);
+        if (currentLedgerIsFull()
+                && STATE_UPDATER.compareAndSet(this, State.LedgerOpened, State.ClosingLedger)) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Closing current ledger lh={}", name, currentLedger.getId());
             }
-
-            addOperation.initiate();
+            // This entry will be the last added to current ledger
+            addOperation.setCloseWhenDone(true);
         }
+
+        initiateAddOperation(addOperation);
     }
 
     @Override
@@ -724,6 +881,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             public void operationComplete(Void result, Stat stat) {
                 cursor.asyncDeleteCursorLedger();
                 cursors.removeCursor(consumerName);
+                cursor.releaseReadAhead();
 
                 // Redo invalidation of entries in cache
                 PositionImpl slowestConsumerPosition = cursors.getSlowestReaderPosition();
@@ -966,7 +1124,16 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     @Override
-    public synchronized void asyncTerminate(TerminateCallback callback, Object ctx) {
+    public void asyncTerminate(TerminateCallback callback, Object ctx) {
+        addWriterLock.lock();
+        try {
+            internalAsyncTerminate(callback, ctx);
+        } finally {
+            addWriterLock.unlock();
+        }
+    }
+
+    private synchronized void internalAsyncTerminate(TerminateCallback callback, Object ctx) {
         if (state == State.Fenced) {
             callback.terminateFailed(new ManagedLedgerFencedException(), ctx);
             return;
@@ -986,6 +1153,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             log.debug("[{}] Closing current writing ledger {}", name, lh.getId());
         }
 
+        flushGroupCommit();
         mbean.startDataLedgerCloseOp();
         lh.asyncClose((rc, lh1, ctx1) -> {
             if (log.isDebugEnabled()) {
@@ -995,7 +1163,8 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             if (rc != BKException.Code.OK) {
                 callback.terminateFailed(createManagedLedgerException(rc), ctx);
             } else {
-                lastConfirmedEntry = new PositionImpl(lh.getId(), lh.getLastAddConfirmed());
+                lastConfirmedEntry = new PositionImpl(lh.getId(),
+                        getCurrentLedgerReadHandle(lh).getLastAddConfirmed());
                 // Store the new state in metadata
                 store.asyncUpdateLedgerIds(name, getManagedLedgerInfo(), ledgersStat, new MetaStoreCallback<Void>() {
                     @Override
@@ -1089,7 +1258,16 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     @Override
-    public synchronized void asyncClose(final CloseCallback callback, final Object ctx) {
+    public void asyncClose(final CloseCallback callback, final Object ctx) {
+        addWriterLock.lock();
+        try {
+            internalAsyncClose(callback, ctx);
+        } finally {
+            addWriterLock.unlock();
+        }
+    }
+
+    private synchronized void internalAsyncClose(final CloseCallback callback, final Object ctx) {
         State state = STATE_UPDATER.get(this);
         if (state == State.Fenced) {
             factory.close(this);
@@ -1120,6 +1298,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             log.debug("[{}] Closing current writing ledger {}", name, lh.getId());
         }
 
+        flushGroupCommit();
         mbean.startDataLedgerCloseOp();
         lh.asyncClose((rc, lh1, ctx1) -> {
             if (log.isDebugEnabled()) {
@@ -1176,10 +1355,11 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             STATE_UPDATER.set(this, State.ClosedLedger);
         } else {
             log.info("[{}] Created new ledger {}", name, lh.getId());
-            ledgers.put(lh.getId(), LedgerInfo.newBuilder().setLedgerId(lh.getId()).setTimestamp(0).build());
             currentLedger = lh;
-            currentLedgerEntries = 0;
-            currentLedgerSize = 0;
+            groupCommit = createGroupCommit(lh);
+            ledgers.put(lh.getId(), newLedgerInfo(lh));
+            CURRENT_LEDGER_ENTRIES_UPDATER.set(this, 0);
+            CURRENT_LEDGER_SIZE_UPDATER.set(this, 0);
 
             final MetaStoreCallback<Void> cb = new MetaStoreCallback<Void>() {
                 @Override
@@ -1250,7 +1430,6 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     }
 
     public synchronized void updateLedgersIdsComplete(Stat stat) {
-        STATE_UPDATER.set(this, State.LedgerOpened);
         lastLedgerCreatedTimestamp = clock.millis();
 
         if (log.isDebugEnabled()) {
@@ -1260,8 +1439,8 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         // Process all the pending addEntry requests
         for (OpAddEntry op : pendingAddEntries) {
             op.setLedger(currentLedger);
-            ++currentLedgerEntries;
-            currentLedgerSize += op.data.readableBytes();
+            CURRENT_LEDGER_ENTRIES_UPDATER.incrementAndGet(this);
+            CURRENT_LEDGER_SIZE_UPDATER.addAndGet(this, op.data.readableBytes());
 
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Sending {}", name, op);
@@ -1270,22 +1449,35 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             if (currentLedgerIsFull()) {
                 STATE_UPDATER.set(this, State.ClosingLedger);
                 op.setCloseWhenDone(true);
-                op.initiate();
+                initiateAddOperation(op);
                 if (log.isDebugEnabled()) {
                     log.debug("[{}] Stop writing into ledger {} queue={}", name, currentLedger.getId(),
                             pendingAddEntries.size());
                 }
-                break;
+                return;
             } else {
-                op.initiate();
+                initiateAddOperation(op);
             }
         }
+
+        // Only publish the state once all the pending adds are sent, since from this point new adds are sent
+        // directly by the add writer
+        STATE_UPDATER.set(this, State.LedgerOpened);
     }
 
     // //////////////////////////////////////////////////////////////////////
     // Private helpers
 
-    synchronized void ledgerClosed(final LedgerHandle lh) {
+    void ledgerClosed(final LedgerHandle lh) {
+        addWriterLock.lock();
+        try {
+            internalLedgerClosed(lh);
+        } finally {
+            addWriterLock.unlock();
+        }
+    }
+
+    private synchronized void internalLedgerClosed(final LedgerHandle lh) {
         final State state = STATE_UPDATER.get(this);
         LedgerHandle currentLedger = this.currentLedger;
         if (currentLedger == lh && (state == State.ClosingLedger || state == State.LedgerOpened)) {
@@ -1300,14 +1492,28 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             return;
         }
 
-        long entriesInLedger = lh.getLastAddConfirmed() + 1;
+        GroupCommitBuffer groupCommit = this.groupCommit;
+        boolean groupedEntries = groupCommit != null && groupCommit.getLedger() == lh;
+        if (groupedEntries) {
+            // The adds not written yet will be sent to the next ledger
+            groupCommit.discard();
+        }
+
+        long entriesInLedger = getCurrentLedgerReadHandle(lh).getLastAddConfirmed() + 1;
         if (log.isDebugEnabled()) {
             log.debug("[{}] Ledger has been closed id={} entries={}", name, lh.getId(), entriesInLedger);
         }
         if (entriesInLedger > 0) {
-            LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(lh.getId()).setEntries(entriesInLedger)
-                    .setSize(lh.getLength()).setTimestamp(clock.millis()).build();
-            ledgers.put(lh.getId(), info);
+            LedgerInfo.Builder info = LedgerInfo.newBuilder().setLedgerId(lh.getId()).setEntries(entriesInLedger)
+                    .setSize(lh.getLength()).setTimestamp(clock.millis());
+            if (groupedEntries) {
+                info.setGroupedEntries(true);
+            }
+            TimeIndex timeIndex = timeIndexes.get(lh.getId());
+            if (timeIndex != null) {
+                timeIndex.writeTo(info);
+            }
+            ledgers.put(lh.getId(), info.build());
         } else {
             // The last ledger was empty, so we can discard it
             ledgers.remove(lh.getId());
@@ -1334,6 +1540,67 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         }
     }
 
+    private GroupCommitBuffer createGroupCommit(LedgerHandle lh) {
+        return config.isGroupCommitEnabled()
+                ? new GroupCommitBuffer(this, lh, getGroupedEntriesIndex(lh.getId()), config)
+                : null;
+    }
+
+    private LedgerInfo newLedgerInfo(LedgerHandle lh) {
+        LedgerInfo.Builder info = LedgerInfo.newBuilder().setLedgerId(lh.getId()).setTimestamp(0);
+        GroupCommitBuffer groupCommit = this.groupCommit;
+        if (groupCommit != null && groupCommit.getLedger() == lh) {
+            info.setGroupedEntries(true);
+        }
+        return info.build();
+    }
+
+    private void initiateAddOperation(OpAddEntry addOperation) {
+        GroupCommitBuffer groupCommit = this.groupCommit;
+        if (groupCommit != null) {
+            groupCommit.add(addOperation);
+        } else {
+            addOperation.initiate();
+        }
+    }
+
+    private void flushGroupCommit() {
+        GroupCommitBuffer groupCommit = this.groupCommit;
+        if (groupCommit != null) {
+            groupCommit.flush();
+        }
+    }
+
+    GroupedEntriesIndex getGroupedEntriesIndex(long ledgerId) {
+        return groupedEntriesIndexes.computeIfAbsent(ledgerId, id -> new GroupedEntriesIndex());
+    }
+
+    /**
+     * Get the handle to read from the current ledger, that exposes the grouped entries if it is written with
+     * group-commit.
+     */
+    private ReadHandle getCurrentLedgerReadHandle(LedgerHandle currentLedger) {
+        GroupCommitBuffer groupCommit = this.groupCommit;
+        if (groupCommit != null && groupCommit.getLedger() == currentLedger) {
+            return groupCommit.getReadHandle();
+        }
+        return currentLedger;
+    }
+
+    /**
+     * Wrap the handle of a ledger that was written with group-commit, to read the grouped entries.
+     */
+    ReadHandle wrapGroupedEntries(long ledgerId, ReadHandle handle) {
+        LedgerInfo info = ledgers.get(ledgerId);
+        if (info == null || !info.getGroupedEntries()) {
+            return handle;
+        }
+
+        long lastEntryId = info.getEntries() > 0 ? info.getEntries() - 1
+                : GroupedEntriesReadHandle.UNKNOWN_LAST_ENTRY_ID;
+        return new GroupedEntriesReadHandle(handle, getGroupedEntriesIndex(ledgerId), lastEntryId);
+    }
+
     void clearPendingAddEntries(ManagedLedgerException e) {
         while (!pendingAddEntries.isEmpty()) {
             OpAddEntry op = pendingAddEntries.poll();
@@ -1356,7 +1623,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             // Current writing ledger is not in the cache (since we don't want
             // it to be automatically evicted), and we cannot use 2 different
             // ledger handles (read & write)for the same ledger.
-            internalReadFromLedger(currentLedger, opReadEntry);
+            internalReadFromLedger(getCurrentLedgerReadHandle(currentLedger), opReadEntry);
         } else {
             LedgerInfo ledgerInfo = ledgers.get(ledgerId);
             if (ledgerInfo == null || ledgerInfo.getEntries() == 0) {
@@ -1419,7 +1686,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                             if (log.isDebugEnabled()) {
                                 log.debug("[{}] Successfully opened ledger {} for reading", name, ledgerId);
                             }
-                            promise.complete(res);
+                            promise.complete(wrapGroupedEntries(ledgerId, res));
                         }
                     }, executor.chooseThread(name));
                 return promise;
@@ -1447,7 +1714,7 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             log.debug("[{}] Reading entry ledger {}: {}", name, position.getLedgerId(), position.getEntryId());
         }
         if (position.getLedgerId() == currentLedger.getId()) {
-            LedgerHandle ledger = currentLedger;
+            ReadHandle ledger = getCurrentLedgerReadHandle(currentLedger);
             entryCache.asyncReadEntry(ledger, position, callback, ctx);
         } else {
             getLedgerHandle(position.getLedgerId()).thenAccept(ledger -> {
@@ -1461,6 +1728,142 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
     }
 
+    /**
+     * Read a range of entries within a single ledger.
+     */
+    void asyncReadEntries(PositionImpl firstPosition, PositionImpl lastPosition, ReadEntriesCallback callback,
+            Object ctx) {
+        checkArgument(firstPosition.getLedgerId() == lastPosition.getLedgerId());
+        LedgerHandle currentLedger = this.currentLedger;
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Reading entries ledger {}: {} - {}", name, firstPosition.getLedgerId(),
+                    firstPosition.getEntryId(), lastPosition.getEntryId());
+        }
+        if (firstPosition.getLedgerId() == currentLedger.getId()) {
+            ReadHandle ledger = getCurrentLedgerReadHandle(currentLedger);
+            entryCache.asyncReadEntry(ledger, firstPosition.getEntryId(), lastPosition.getEntryId(), false, callback,
+                    ctx);
+        } else {
+            getLedgerHandle(firstPosition.getLedgerId()).thenAccept(ledger -> {
+                entryCache.asyncReadEntry(ledger, firstPosition.getEntryId(), lastPosition.getEntryId(), false,
+                        callback, ctx);
+            }).exceptionally(ex -> {
+                log.error("[{}] Error opening ledger for reading at position {} - {}", name, firstPosition,
+                        ex.getMessage());
+                callback.readEntriesFailed(ManagedLedgerException.getManagedLedgerException(ex.getCause()), ctx);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Record the timestamp of an entry added to the current ledger in the time index, if the entry is at the index
+     * interval.
+     */
+    void updateTimeIndex(long ledgerId, long entryId, ByteBuf data) {
+        int interval = config.getTimeIndexIntervalEntries();
+        ToLongFunction<ByteBuf> timestampExtractor = config.getEntryTimestampExtractor();
+        if (interval <= 0 || timestampExtractor == null || entryId % interval != 0) {
+            return;
+        }
+
+        TimeIndex index = timeIndexes.computeIfAbsent(ledgerId, id -> new TimeIndex(interval));
+        if (index.getInterval() != interval) {
+            // The interval was changed while writing the ledger
+            index.invalidate();
+            return;
+        }
+
+        try {
+            index.add(entryId, timestampExtractor.applyAsLong(data.duplicate()));
+        } catch (Exception e) {
+            log.warn("[{}] Failed to read the timestamp of entry {}:{} for the time index: {}", name, ledgerId,
+                    entryId, e.getMessage());
+            index.invalidate();
+        }
+    }
+
+    private TimeIndex getTimeIndex(long ledgerId) {
+        TimeIndex index = timeIndexes.get(ledgerId);
+        if (index == null) {
+            LedgerInfo info = ledgers.get(ledgerId);
+            index = info != null ? TimeIndex.fromLedgerInfo(info) : null;
+            if (index != null) {
+                TimeIndex existing = timeIndexes.putIfAbsent(ledgerId, index);
+                if (existing != null) {
+                    index = existing;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Use the time index of the ledgers to narrow down the search of the newest entry between {@code from} and
+     * {@code to} with a timestamp lower or equal to the given one.
+     *
+     * @return the range of entries, within a single ledger, containing the newest entry with a timestamp lower or
+     *         equal to the given one, an empty range if all the entries are more recent, or null if the ledgers are not
+     *         all indexed
+     */
+    Range<PositionImpl> getTimeIndexRange(PositionImpl from, PositionImpl to, long timestamp) {
+        if (from.compareTo(to) > 0) {
+            return null;
+        }
+
+        // Newest indexed entry not more recent than the timestamp, and the next indexed entry
+        PositionImpl lower = from;
+        long lowerLedgerLastEntry = -1;
+        PositionImpl upperExcluded = null;
+
+        for (LedgerInfo info : ledgers.subMap(from.getLedgerId(), true, to.getLedgerId(), true).values()) {
+            long ledgerId = info.getLedgerId();
+            // The entries of the current ledger are only known up to the last confirmed one
+            long lastEntry = ledgerId == to.getLedgerId() ? to.getEntryId() : info.getEntries() - 1;
+            if (lastEntry < 0) {
+                continue;
+            }
+
+            TimeIndex index = getTimeIndex(ledgerId);
+            if (index == null || !index.covers(lastEntry)) {
+                return null;
+            }
+
+            if (ledgerId == from.getLedgerId()) {
+                lowerLedgerLastEntry = lastEntry;
+            }
+
+            for (int i = 0; i < index.size() && index.getEntryId(i) <= lastEntry; i++) {
+                PositionImpl position = PositionImpl.get(ledgerId, index.getEntryId(i));
+                if (index.getTimestamp(i) <= timestamp) {
+                    if (position.compareTo(from) > 0) {
+                        lower = position;
+                        lowerLedgerLastEntry = lastEntry;
+                    }
+                    upperExcluded = null;
+                } else if (upperExcluded == null && position.compareTo(lower) >= 0) {
+                    upperExcluded = position;
+                }
+            }
+        }
+
+        PositionImpl upper;
+        if (upperExcluded == null) {
+            upper = to;
+        } else if (upperExcluded.getLedgerId() == lower.getLedgerId()) {
+            upper = PositionImpl.get(lower.getLedgerId(), upperExcluded.getEntryId() - 1);
+        } else {
+            upper = PositionImpl.get(lower.getLedgerId(), lowerLedgerLastEntry);
+        }
+
+        if (upper.compareTo(lower) < 0) {
+            return Range.closedOpen(lower, lower);
+        } else if (upper.getLedgerId() != lower.getLedgerId()) {
+            return null;
+        }
+        return Range.closed(lower, upper);
+    }
+
     private void internalReadFromLedger(ReadHandle ledger, OpReadEntry opReadEntry) {
 
         // Perform the read
@@ -1506,7 +1909,12 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             log.debug("[{}] Reading entries from ledger {} - first={} last={}", name, ledger.getId(), firstEntry,
                     lastEntry);
         }
-        entryCache.asyncReadEntry(ledger, firstEntry, lastEntry, false, opReadEntry, opReadEntry.ctx);
+        if (cursor.readAhead != null) {
+            cursor.readAhead.asyncReadEntries(ledger, firstEntry, lastEntry, lastEntryInLedger, opReadEntry,
+                    opReadEntry.ctx);
+        } else {
+            entryCache.asyncReadEntry(ledger, firstEntry, lastEntry, false, opReadEntry, opReadEntry.ctx);
+        }
 
         if (updateCursorRateLimit.tryAcquire()) {
             if (isCursorActive(cursor)) {
@@ -1774,6 +2182,8 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
             // Update metadata
             for (LedgerInfo ls : ledgersToDelete) {
                 ledgerCache.remove(ls.getLedgerId());
+                groupedEntriesIndexes.remove(ls.getLedgerId());
+                timeIndexes.remove(ls.getLedgerId());
 
                 ledgers.remove(ls.getLedgerId());
                 NUMBER_OF_ENTRIES_UPDATER.addAndGet(this, -ls.getEntries());
@@ -1812,6 +2222,8 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
                     for (LedgerInfo ls : ledgersToDelete) {
                         log.info("[{}] Removing ledger {} - size: {}", name, ls.getLedgerId(), ls.getSize());
                         asyncDeleteLedger(ls.getLedgerId(), ls);
+                        // Release the acknowledgments that cursors may still track on the deleted ledger
+                        cursors.forEach(cursor -> ((ManagedCursorImpl) cursor).trimIndividualAckSet(ls.getLedgerId()));
                     }
                     for (LedgerInfo ls : offloadedLedgersToDelete) {
                         log.info("[{}] Deleting offloaded ledger {} from bookkeeper - size: {}",
@@ -1871,7 +2283,12 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
     public void asyncDelete(final DeleteLedgerCallback callback, final Object ctx) {
         // Delete the managed ledger without closing, since we are not interested in gracefully closing cursors and
         // ledgers
-        STATE_UPDATER.set(this, State.Fenced);
+        addWriterLock.lock();
+        try {
+            STATE_UPDATER.set(this, State.Fenced);
+        } finally {
+            addWriterLock.unlock();
+        }
 
         List<ManagedCursor> cursors = Lists.newArrayList(this.cursors);
         if (cursors.isEmpty()) {
@@ -2135,7 +2552,12 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
 
             prepareLedgerInfoForOffloaded(ledgerId, uuid, driverName, driverMetadata)
                 .thenCompose((ignore) -> getLedgerHandle(ledgerId))
-                .thenCompose(readHandle -> config.getLedgerOffloader().offload(readHandle, uuid, extraMetadata))
+                .thenCompose(readHandle -> {
+                        // Offload the bookkeeper entries as they are, the grouped entries are split when read back
+                        ReadHandle handle = readHandle instanceof GroupedEntriesReadHandle
+                                ? ((GroupedEntriesReadHandle) readHandle).getHandle() : readHandle;
+                        return config.getLedgerOffloader().offload(handle, uuid, extraMetadata);
+                    })
                 .thenCompose((ignore) -> {
                         return Retries.run(Backoff.exponentialJittered(TimeUnit.SECONDS.toMillis(1),
                                                                        TimeUnit.SECONDS.toHours(1)).limit(10),
@@ -2696,8 +3118,15 @@ public class ManagedLedgerImpl implements ManagedLedger, CreateCallback {
         }
     }
 
-    synchronized void setFenced() {
-        STATE_UPDATER.set(this, State.Fenced);
+    void setFenced() {
+        addWriterLock.lock();
+        try {
+            synchronized (this) {
+                STATE_UPDATER.set(this, State.Fenced);
+            }
+        } finally {
+            addWriterLock.unlock();
+        }
     }
 
     MetaStore getStore() {
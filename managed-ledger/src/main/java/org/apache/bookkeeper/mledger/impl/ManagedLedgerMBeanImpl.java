@@ -39,6 +39,9 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
     private final Rate readEntriesOps = new Rate();
     private final Rate readEntriesOpsFailed = new Rate();
     private final Rate markDeleteOps = new Rate();
+    private final Rate readAheadHits = new Rate();
+    private final Rate readAheadMisses = new Rate();
+    private final Rate groupCommits = new Rate();
 
     private final LongAdder dataLedgerOpenOp = new LongAdder();
     private final LongAdder dataLedgerCloseOp = new LongAdder();
@@ -64,6 +67,9 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         readEntriesOps.calculateRate(seconds);
         readEntriesOpsFailed.calculateRate(seconds);
         markDeleteOps.calculateRate(seconds);
+        readAheadHits.calculateRate(seconds);
+        readAheadMisses.calculateRate(seconds);
+        groupCommits.calculateRate(seconds);
 
         addEntryLatencyStatsUsec.refresh();
         ledgerSwitchLatencyStatsUsec.refresh();
@@ -87,6 +93,18 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         readEntriesOpsFailed.recordEvent();
     }
 
+    public void recordReadAheadHit() {
+        readAheadHits.recordEvent();
+    }
+
+    public void recordReadAheadMiss() {
+        readAheadMisses.recordEvent();
+    }
+
+    public void addGroupCommitSample(int numEntries) {
+        groupCommits.recordEvent(numEntries);
+    }
+
     public void addAddEntryLatencySample(long latency, TimeUnit unit) {
         addEntryLatencyStatsUsec.addValue(unit.toMicros(latency));
     }
@@ -213,6 +231,47 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         return markDeleteOps.getRate();
     }
 
+    @Override
+    public double getReadAheadHitsRate() {
+        return readAheadHits.getRate();
+    }
+
+    @Override
+    public double getReadAheadMissesRate() {
+        return readAheadMisses.getRate();
+    }
+
+    @Override
+    public double getReadAheadHitRatio() {
+        long hits = readAheadHits.getCount();
+        long total = hits + readAheadMisses.getCount();
+        return total > 0 ? (double) hits / total : 0.0;
+    }
+
+    @Override
+    public double getGroupCommitRate() {
+        return groupCommits.getRate();
+    }
+
+    @Override
+    public double getGroupCommitAvgEntries() {
+        double rate = groupCommits.getRate();
+        return rate > 0 ? groupCommits.getValueRate() / rate : 0.0;
+    }
+
+    @Override
+    public long getReadAheadBufferSize() {
+        long size = 0;
+
+        for (ManagedCursor cursor : managedLedger.getCursors()) {
+            if (cursor instanceof ManagedCursorImpl) {
+                size += ((ManagedCursorImpl) cursor).getReadAheadBufferSize();
+            }
+        }
+
+        return size;
+    }
+
     @Override
     public double getEntrySizeAverage() {
         return entryStats.getAvg();
@@ -269,6 +328,19 @@ public class ManagedLedgerMBeanImpl implements ManagedLedgerMXBean {
         return count;
     }
 
+    @Override
+    public long getIndividualAckSetMemorySize() {
+        long size = 0;
+
+        for (ManagedCursor cursor : managedLedger.getCursors()) {
+            if (cursor instanceof ManagedCursorImpl) {
+                size += ((ManagedCursorImpl) cursor).getIndividualAckSetMemorySize();
+            }
+        }
+
+        return size;
+    }
+
     @Override
     public PendingBookieOpsStats getPendingBookieOpsStats() {
         PendingBookieOpsStats result = new PendingBookieOpsStats();
@@ -103,7 +103,8 @@ public class NonDurableCursorImpl extends ManagedCursorImpl {
 
     @Override
     public void asyncClose(CloseCallback callback, Object ctx) {
-        // No-Op
+        releaseReadAhead();
+        releaseIndividualAckSet();
         callback.closeComplete(ctx);
     }
 
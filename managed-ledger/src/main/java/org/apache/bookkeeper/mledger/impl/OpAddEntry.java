@@ -82,6 +82,10 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
         this.closeWhenDone = closeWhenDone;
     }
 
+    public boolean isCloseWhenDone() {
+        return closeWhenDone;
+    }
+
     public void initiate() {
         ByteBuf duplicateBuffer = data.retainedDuplicate();
         // duplicatedBuffer has refCnt=1 at this point
@@ -135,6 +139,11 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
         }
     }
 
+    // Called when the group containing this entry was written, with the entry id assigned within the group
+    void groupAddComplete(int rc, final LedgerHandle lh, long entryId) {
+        addComplete(rc, lh, entryId, ctx);
+    }
+
     // Called in exector hashed on managed ledger name, once the add operation is complete
     @Override
     public void safeRun() {
@@ -153,6 +162,9 @@ class OpAddEntry extends SafeRunnable implements AddCallback, CloseCallback {
             entry.release();
         }
 
+        // Index the entry before making it visible, so that the search by time covers all the readable entries
+        ml.updateTimeIndex(ledger.getId(), entryId, data);
+
         // We are done using the byte buffer
         data.release();
 
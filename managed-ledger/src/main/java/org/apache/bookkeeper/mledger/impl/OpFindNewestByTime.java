@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Range;
+import java.util.List;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.FindEntryCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedCursor.FindPositionConstraint;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.Position;
+
+/**
+ * Find the newest entry before a timestamp within the range of entries given by the time index of the managed ledger.
+ *
+ * <p/>The whole range is read at once and checked from the newest entry. If no entry of the range matches, while the
+ * time index says there should be one, the search falls back to the binary search over all the entries.
+ */
+class OpFindNewestByTime implements ReadEntriesCallback {
+    private final ManagedCursorImpl cursor;
+    private final FindPositionConstraint constraint;
+    private final PositionImpl startPosition;
+    private final Range<PositionImpl> range;
+    private final Predicate<Entry> condition;
+    private final FindEntryCallback callback;
+    private final Object ctx;
+
+    OpFindNewestByTime(ManagedCursorImpl cursor, FindPositionConstraint constraint, PositionImpl startPosition,
+            Range<PositionImpl> range, Predicate<Entry> condition, FindEntryCallback callback, Object ctx) {
+        this.cursor = cursor;
+        this.constraint = constraint;
+        this.startPosition = startPosition;
+        this.range = range;
+        this.condition = condition;
+        this.callback = callback;
+        this.ctx = ctx;
+    }
+
+    void find() {
+        if (range.isEmpty()) {
+            // All the entries are more recent than the timestamp
+            callback.findEntryComplete(null, ctx);
+            return;
+        }
+
+        cursor.ledger.asyncReadEntries(range.lowerEndpoint(), range.upperEndpoint(), this, null);
+    }
+
+    @Override
+    public void readEntriesComplete(List<Entry> entries, Object ctx) {
+        Position matchedPosition = null;
+        int i = entries.size() - 1;
+        while (i >= 0) {
+            Entry entry = entries.get(i--);
+            // The condition owns the entry once it's passed to it
+            Position position = entry.getPosition();
+            if (condition.apply(entry)) {
+                matchedPosition = position;
+                break;
+            }
+        }
+
+        // Release the entries that were not checked
+        while (i >= 0) {
+            entries.get(i--).release();
+        }
+
+        if (matchedPosition == null && !range.lowerEndpoint().equals(startPosition)) {
+            // The entries don't match the time index, search through all the entries
+            cursor.asyncFindNewestMatching(constraint, condition, callback, this.ctx);
+            return;
+        }
+
+        callback.findEntryComplete(matchedPosition, this.ctx);
+    }
+
+    @Override
+    public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+        callback.findEntryFailed(exception, this.ctx);
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.apache.bookkeeper.mledger.impl.ManagedLedgerImpl.createManagedLedgerException;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesce the bookie reads issued for the same ledger ranges of a managed ledger.
+ *
+ * <p/>When several cursors are reading the same part of the backlog, a read that falls within a range already being
+ * read from the bookies is attached to the pending read instead of being sent again. If only the beginning of the
+ * range is pending, the rest of the range is read separately and the two parts are merged.
+ *
+ * <p/>Each attached read gets its own {@link EntryImpl} instances, sharing the buffers returned by the bookies.
+ */
+class PendingReadsManager {
+
+    private final ManagedLedgerImpl ml;
+    private final ManagedLedgerFactoryMBeanImpl mlFactoryMBean;
+
+    // ledgerId -> first entry of the read -> read in flight
+    private final Map<Long, NavigableMap<Long, PendingRead>> pendingReads = new HashMap<>();
+
+    PendingReadsManager(ManagedLedgerImpl ml, ManagedLedgerFactoryMBeanImpl mlFactoryMBean) {
+        this.ml = ml;
+        this.mlFactoryMBean = mlFactoryMBean;
+    }
+
+    /**
+     * Read the entries between firstEntry and lastEntry from the bookies, sharing the reads already in flight.
+     */
+    void readEntries(ReadHandle lh, long firstEntry, long lastEntry, ReadEntriesCallback callback, Object ctx) {
+        final long ledgerId = lh.getId();
+        PendingRead newRead = null;
+        long remainderFirstEntry = -1;
+        ReadEntriesCallback remainderCallback = null;
+
+        synchronized (this) {
+            PendingRead pending = findPendingRead(ledgerId, firstEntry);
+            if (pending == null) {
+                newRead = new PendingRead(lh, firstEntry, lastEntry);
+                newRead.attach(firstEntry, lastEntry, callback, ctx);
+                pendingReads.computeIfAbsent(ledgerId, id -> new TreeMap<>()).put(firstEntry, newRead);
+            } else if (pending.lastEntry >= lastEntry) {
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Attaching read of ledger {}: {}-{} to pending read {}-{}", ml.getName(), ledgerId,
+                            firstEntry, lastEntry, pending.firstEntry, pending.lastEntry);
+                }
+                pending.attach(firstEntry, lastEntry, callback, ctx);
+            } else {
+                // Only the beginning of the range is being read, the rest has to be read separately
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Attaching read of ledger {}: {}-{} to pending read {}-{}", ml.getName(), ledgerId,
+                            firstEntry, pending.lastEntry, pending.firstEntry, pending.lastEntry);
+                }
+                MergedReadCallback merged = new MergedReadCallback(callback, ctx);
+                pending.attach(firstEntry, pending.lastEntry, merged.head, null);
+                remainderFirstEntry = pending.lastEntry + 1;
+                remainderCallback = merged.tail;
+            }
+        }
+
+        if (newRead != null) {
+            newRead.start();
+        } else if (remainderCallback != null) {
+            readEntries(lh, remainderFirstEntry, lastEntry, remainderCallback, null);
+        }
+    }
+
+    synchronized int getNumberOfPendingReads() {
+        return pendingReads.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * Find the pending read that contains the given entry, preferring the one extending further.
+     */
+    private PendingRead findPendingRead(long ledgerId, long entryId) {
+        NavigableMap<Long, PendingRead> reads = pendingReads.get(ledgerId);
+        if (reads == null) {
+            return null;
+        }
+
+        PendingRead found = null;
+        for (PendingRead read : reads.headMap(entryId, true).values()) {
+            if (read.lastEntry >= entryId && (found == null || read.lastEntry > found.lastEntry)) {
+                found = read;
+            }
+        }
+        return found;
+    }
+
+    private synchronized void remove(PendingRead read) {
+        NavigableMap<Long, PendingRead> reads = pendingReads.get(read.lh.getId());
+        if (reads != null && reads.remove(read.firstEntry, read) && reads.isEmpty()) {
+            pendingReads.remove(read.lh.getId());
+        }
+    }
+
+    private static class Waiter {
+        final long firstEntry;
+        final long lastEntry;
+        final ReadEntriesCallback callback;
+        final Object ctx;
+
+        Waiter(long firstEntry, long lastEntry, ReadEntriesCallback callback, Object ctx) {
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+            this.callback = callback;
+            this.ctx = ctx;
+        }
+    }
+
+    private class PendingRead {
+        final ReadHandle lh;
+        final long firstEntry;
+        final long lastEntry;
+
+        // Guarded by the PendingReadsManager lock while the read is registered
+        private final List<Waiter> waiters = new ArrayList<>(1);
+
+        PendingRead(ReadHandle lh, long firstEntry, long lastEntry) {
+            this.lh = lh;
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+        }
+
+        void attach(long first, long last, ReadEntriesCallback callback, Object ctx) {
+            waiters.add(new Waiter(first, last, callback, ctx));
+        }
+
+        void start() {
+            lh.readAsync(firstEntry, lastEntry).whenCompleteAsync((ledgerEntries, exception) -> {
+                // Once removed, no more reads can attach and the waiters list is stable
+                remove(this);
+
+                if (exception != null) {
+                    readFailed(exception);
+                } else {
+                    try {
+                        readComplete(ledgerEntries);
+                    } finally {
+                        ledgerEntries.close();
+                    }
+                }
+            }, ml.getExecutor().chooseThread(ml.getName()));
+        }
+
+        private void readFailed(Throwable exception) {
+            if (!(exception instanceof BKException
+                    && ((BKException) exception).getCode() == BKException.Code.TooManyRequestsException)) {
+                ml.invalidateLedgerHandle(lh, exception);
+            }
+
+            ManagedLedgerException mlException = createManagedLedgerException(exception);
+            for (Waiter waiter : waiters) {
+                waiter.callback.readEntriesFailed(mlException, waiter.ctx);
+            }
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private void readComplete(LedgerEntries ledgerEntries) {
+            final List<EntryImpl> entries = Lists.newArrayListWithExpectedSize((int) (lastEntry - firstEntry + 1));
+            long totalSize = 0;
+            for (LedgerEntry e : ledgerEntries) {
+                EntryImpl entry = EntryImpl.create(e);
+                entries.add(entry);
+                totalSize += entry.getLength();
+            }
+
+            mlFactoryMBean.recordCacheMiss(entries.size(), totalSize);
+
+            if (waiters.size() == 1 && waiters.get(0).firstEntry == firstEntry) {
+                // Nobody shared this read, hand over the entries as they are
+                Waiter waiter = waiters.get(0);
+                ml.getMBean().addReadEntriesSample(entries.size(), totalSize);
+                waiter.callback.readEntriesComplete((List) entries, waiter.ctx);
+                return;
+            }
+
+            for (int i = 0; i < waiters.size(); i++) {
+                Waiter waiter = waiters.get(i);
+                int from = (int) (waiter.firstEntry - firstEntry);
+                int to = (int) Math.min(waiter.lastEntry - firstEntry + 1, entries.size());
+
+                List<Entry> waiterEntries = Lists.newArrayListWithExpectedSize(Math.max(to - from, 0));
+                long waiterSize = 0;
+                for (int j = from; j < to; j++) {
+                    EntryImpl entry = EntryImpl.create(entries.get(j));
+                    waiterEntries.add(entry);
+                    waiterSize += entry.getLength();
+                }
+
+                if (i > 0) {
+                    mlFactoryMBean.recordCoalescedReads(waiterEntries.size(), waiterSize);
+                }
+                ml.getMBean().addReadEntriesSample(waiterEntries.size(), waiterSize);
+                waiter.callback.readEntriesComplete(waiterEntries, waiter.ctx);
+            }
+
+            entries.forEach(EntryImpl::release);
+        }
+    }
+
+    /**
+     * Join the entries of two consecutive reads, in order, before completing the original read.
+     */
+    private static class MergedReadCallback {
+        private final ReadEntriesCallback callback;
+        private final Object ctx;
+
+        private List<Entry> headEntries = null;
+        private List<Entry> tailEntries = null;
+        private boolean failed = false;
+
+        final ReadEntriesCallback head = new ReadEntriesCallback() {
+            @Override
+            public void readEntriesComplete(List<Entry> entries, Object ignored) {
+                partComplete(entries, true);
+            }
+
+            @Override
+            public void readEntriesFailed(ManagedLedgerException exception, Object ignored) {
+                partFailed(exception);
+            }
+        };
+
+        final ReadEntriesCallback tail = new ReadEntriesCallback() {
+            @Override
+            public void readEntriesComplete(List<Entry> entries, Object ignored) {
+                partComplete(entries, false);
+            }
+
+            @Override
+            public void readEntriesFailed(ManagedLedgerException exception, Object ignored) {
+                partFailed(exception);
+            }
+        };
+
+        MergedReadCallback(ReadEntriesCallback callback, Object ctx) {
+            this.callback = callback;
+            this.ctx = ctx;
+        }
+
+        private void partComplete(List<Entry> entries, boolean isHead) {
+            List<Entry> merged;
+            synchronized (this) {
+                if (failed) {
+                    entries.forEach(Entry::release);
+                    return;
+                }
+
+                if (isHead) {
+                    headEntries = entries;
+                } else {
+                    tailEntries = entries;
+                }
+
+                if (headEntries == null || tailEntries == null) {
+                    return;
+                }
+
+                merged = Lists.newArrayListWithExpectedSize(headEntries.size() + tailEntries.size());
+                merged.addAll(headEntries);
+                merged.addAll(tailEntries);
+            }
+
+            callback.readEntriesComplete(merged, ctx);
+        }
+
+        private void partFailed(ManagedLedgerException exception) {
+            List<Entry> toRelease;
+            synchronized (this) {
+                if (failed) {
+                    return;
+                }
+                failed = true;
+                toRelease = headEntries != null ? headEntries
+                        : (tailEntries != null ? tailEntries : Collections.emptyList());
+                headEntries = null;
+                tailEntries = null;
+            }
+
+            toRelease.forEach(Entry::release);
+            callback.readEntriesFailed(exception, ctx);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(PendingReadsManager.class);
+}
@@ -24,6 +24,7 @@ import java.util.concurrent.CompletionException;
 import com.google.common.collect.Range;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.api.ReadHandle;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
 import org.apache.bookkeeper.mledger.AsyncCallbacks;
@@ -67,12 +68,21 @@ public class ReadOnlyManagedLedgerImpl extends ManagedLedgerImpl {
                     // Fetch last add confirmed for last ledger
                     bookKeeper.newOpenLedgerOp().withRecovery(false).withLedgerId(lastLedgerId)
                             .withDigestType(config.getDigestType()).withPassword(config.getPassword()).execute()
-                            .thenAccept(readHandle -> {
+                            .thenAccept(bkReadHandle -> {
+                                boolean groupedEntries = ledgers.get(lastLedgerId).getGroupedEntries();
+                                ReadHandle readHandle = groupedEntries
+                                        ? new GroupedEntriesReadHandle(bkReadHandle,
+                                                getGroupedEntriesIndex(lastLedgerId),
+                                                GroupedEntriesReadHandle.UNKNOWN_LAST_ENTRY_ID)
+                                        : bkReadHandle;
                                 readHandle.readLastAddConfirmedAsync().thenAccept(lastAddConfirmed -> {
-                                    LedgerInfo info = LedgerInfo.newBuilder().setLedgerId(lastLedgerId)
+                                    LedgerInfo.Builder info = LedgerInfo.newBuilder().setLedgerId(lastLedgerId)
                                             .setEntries(lastAddConfirmed + 1).setSize(readHandle.getLength())
-                                            .setTimestamp(clock.millis()).build();
-                                    ledgers.put(lastLedgerId, info);
+                                            .setTimestamp(clock.millis());
+                                    if (groupedEntries) {
+                                        info.setGroupedEntries(true);
+                                    }
+                                    ledgers.put(lastLedgerId, info.build());
 
                                     future.complete(createReadOnlyCursor(startPosition));
                                 }).exceptionally(ex -> {
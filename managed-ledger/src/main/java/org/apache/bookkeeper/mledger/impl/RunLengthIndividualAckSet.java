@@ -0,0 +1,321 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.collect.Range;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * {@link IndividualAckSet} keeping a sorted array of ranges in pooled direct memory, 24 bytes per range.
+ *
+ * <p/>Each record is the closed range of entries <code>[firstEntryId, lastEntryId]</code> of a single ledger, so the
+ * memory only depends on the number of disjoint ranges and not on how far apart they are. Inserting or removing a
+ * range moves the following records.
+ *
+ * <p/>The records never use more than <code>maxMemorySize</code> bytes. When a new range doesn't fit, the ranges
+ * furthest from the mark-delete position are dropped to make room, or the new range itself if it is the furthest.
+ * The dropped entries are then seen as not acknowledged: they stay in the backlog and may be delivered again, but the
+ * mark-delete position never moves past an entry that wasn't acknowledged.
+ */
+public class RunLengthIndividualAckSet implements IndividualAckSet {
+
+    private static final int RECORD_SIZE = 24;
+    private static final int MIN_CAPACITY = 16;
+
+    private final int maxCapacity;
+
+    // Records (ledgerId, firstEntryId, lastEntryId) sorted by position. Null when the set has no capacity
+    private ByteBuf records = null;
+    private int capacity = 0;
+    private int count = 0;
+    private long droppedRanges = 0;
+
+    public RunLengthIndividualAckSet() {
+        this(BitSetIndividualAckSet.DEFAULT_MAX_MEMORY_SIZE);
+    }
+
+    /**
+     * @param maxMemorySize
+     *            maximum size, in bytes, of the records of the set
+     */
+    public RunLengthIndividualAckSet(long maxMemorySize) {
+        this.maxCapacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE / RECORD_SIZE, maxMemorySize / RECORD_SIZE));
+    }
+
+    @Override
+    public void addOpenClosed(long lowerLedgerId, long lowerEntryId, long upperLedgerId, long upperEntryId) {
+        long firstEntryId = lowerLedgerId == upperLedgerId ? lowerEntryId + 1 : 0;
+        if (upperEntryId < firstEntryId) {
+            return;
+        }
+
+        // Records overlapping or adjacent to the new range are merged into it
+        int from = lowerBound(upperLedgerId, firstEntryId - 1);
+        int to = from;
+        long mergedFirstEntryId = firstEntryId;
+        long mergedLastEntryId = upperEntryId;
+        while (to < count && ledgerId(to) == upperLedgerId && firstEntryId(to) <= upperEntryId + 1) {
+            mergedFirstEntryId = Math.min(mergedFirstEntryId, firstEntryId(to));
+            mergedLastEntryId = Math.max(mergedLastEntryId, lastEntryId(to));
+            ++to;
+        }
+
+        if (from == to) {
+            if (!ensureCapacity(from)) {
+                ++droppedRanges;
+                return;
+            }
+            move(from, from + 1, count - from);
+            ++count;
+        } else if (to - from > 1) {
+            move(to, from + 1, count - to);
+            count -= to - from - 1;
+        }
+        setRecord(from, upperLedgerId, mergedFirstEntryId, mergedLastEntryId);
+    }
+
+    @Override
+    public boolean contains(long ledgerId, long entryId) {
+        int i = lowerBound(ledgerId, entryId);
+        return i < count && ledgerId(i) == ledgerId && firstEntryId(i) <= entryId;
+    }
+
+    @Override
+    public Range<PositionImpl> rangeContaining(long ledgerId, long entryId) {
+        int i = lowerBound(ledgerId, entryId);
+        if (i == count || ledgerId(i) != ledgerId || firstEntryId(i) > entryId) {
+            return null;
+        }
+        return range(i, i);
+    }
+
+    @Override
+    public void removeAtMost(long ledgerId, long entryId) {
+        int i = entryId == Long.MAX_VALUE ? lowerBound(ledgerId + 1, -1) : lowerBound(ledgerId, entryId + 1);
+        if (i < count && ledgerId(i) == ledgerId && firstEntryId(i) <= entryId) {
+            setRecord(i, ledgerId, entryId + 1, lastEntryId(i));
+        }
+        remove(0, i);
+    }
+
+    @Override
+    public void removeLedger(long ledgerId) {
+        int from = lowerBound(ledgerId, -1);
+        int to = from;
+        while (to < count && ledgerId(to) == ledgerId) {
+            ++to;
+        }
+        remove(from, to);
+    }
+
+    @Override
+    public Range<PositionImpl> firstRange() {
+        return count == 0 ? null : range(0, 0);
+    }
+
+    @Override
+    public Range<PositionImpl> span() {
+        return count == 0 ? null : range(0, count - 1);
+    }
+
+    @Override
+    public void forEach(RangeProcessor processor) {
+        for (int i = 0; i < count; i++) {
+            long ledgerId = ledgerId(i);
+            if (!processor.process(ledgerId, firstEntryId(i) - 1, ledgerId, lastEntryId(i))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void forEach(long ledgerId, long fromEntryId, long toEntryId, RangeProcessor processor) {
+        for (int i = lowerBound(ledgerId, fromEntryId); i < count && ledgerId(i) == ledgerId
+                && firstEntryId(i) <= toEntryId; i++) {
+            long lowerEntryId = Math.max(firstEntryId(i), fromEntryId) - 1;
+            long upperEntryId = Math.min(lastEntryId(i), toEntryId);
+            if (!processor.process(ledgerId, lowerEntryId, ledgerId, upperEntryId)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public void clear() {
+        count = 0;
+        if (records != null) {
+            records.release();
+            records = null;
+            capacity = 0;
+        }
+    }
+
+    @Override
+    public long getMemorySize() {
+        return (long) capacity * RECORD_SIZE;
+    }
+
+    /**
+     * @return the number of ranges that were dropped because they didn't fit in the max memory size
+     */
+    public long getDroppedRanges() {
+        return droppedRanges;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        forEach((lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append('(').append(lowerLedgerId).append(':').append(lowerEntryId).append("..").append(upperLedgerId)
+                    .append(':').append(upperEntryId).append(']');
+            return true;
+        });
+        return sb.append(']').toString();
+    }
+
+    /**
+     * @return the index of the first record ending at or after the given position, or <code>count</code> if none
+     */
+    private int lowerBound(long ledgerId, long entryId) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long midLedgerId = ledgerId(mid);
+            if (midLedgerId < ledgerId || (midLedgerId == ledgerId && lastEntryId(mid) < entryId)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Make room for one more record, to be inserted at the given index. When the set is at its max capacity, the last
+     * record is dropped, unless the new record would be the last one.
+     *
+     * @return false if the new record must be dropped
+     */
+    private boolean ensureCapacity(int index) {
+        if (count < capacity) {
+            return true;
+        }
+
+        if (capacity < maxCapacity) {
+            resize(Math.min(maxCapacity, Math.max(MIN_CAPACITY, capacity * 2)));
+            return true;
+        }
+
+        if (index == count) {
+            return false;
+        }
+        --count;
+        ++droppedRanges;
+        return true;
+    }
+
+    /**
+     * Remove the records between from (inclusive) and to (exclusive), releasing the memory of the set once it is
+     * mostly unused.
+     */
+    private void remove(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+
+        move(to, from, count - to);
+        count -= to - from;
+        if (count == 0) {
+            clear();
+        } else if (capacity > MIN_CAPACITY && count < capacity / 4) {
+            resize(Math.max(MIN_CAPACITY, capacity / 2));
+        }
+    }
+
+    private void resize(int newCapacity) {
+        ByteBuf newRecords = PooledByteBufAllocator.DEFAULT.directBuffer(newCapacity * RECORD_SIZE,
+                newCapacity * RECORD_SIZE);
+        if (records != null) {
+            newRecords.setBytes(0, records, 0, count * RECORD_SIZE);
+            records.release();
+        }
+        records = newRecords;
+        capacity = newCapacity;
+    }
+
+    /**
+     * Move <code>length</code> records from index <code>src</code> to index <code>dst</code>, the areas may overlap.
+     */
+    private void move(int src, int dst, int length) {
+        if (length <= 0 || src == dst) {
+            return;
+        }
+
+        int words = length * (RECORD_SIZE / 8);
+        int srcOffset = src * RECORD_SIZE;
+        int dstOffset = dst * RECORD_SIZE;
+        if (dst < src) {
+            for (int w = 0; w < words; w++) {
+                records.setLong(dstOffset + w * 8, records.getLong(srcOffset + w * 8));
+            }
+        } else {
+            for (int w = words - 1; w >= 0; w--) {
+                records.setLong(dstOffset + w * 8, records.getLong(srcOffset + w * 8));
+            }
+        }
+    }
+
+    private Range<PositionImpl> range(int first, int last) {
+        return Range.openClosed(new PositionImpl(ledgerId(first), firstEntryId(first) - 1),
+                new PositionImpl(ledgerId(last), lastEntryId(last)));
+    }
+
+    private long ledgerId(int i) {
+        return records.getLong(i * RECORD_SIZE);
+    }
+
+    private long firstEntryId(int i) {
+        return records.getLong(i * RECORD_SIZE + 8);
+    }
+
+    private long lastEntryId(int i) {
+        return records.getLong(i * RECORD_SIZE + 16);
+    }
+
+    private void setRecord(int i, long ledgerId, long firstEntryId, long lastEntryId) {
+        records.setLong(i * RECORD_SIZE, ledgerId);
+        records.setLong(i * RECORD_SIZE + 8, firstEntryId);
+        records.setLong(i * RECORD_SIZE + 16, lastEntryId);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.Collection;
+import org.apache.bookkeeper.mledger.util.SegmentedRangeCache;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Entry cache that keeps the entries of each ledger in a separate segment, indexed by entry id.
+ *
+ * <p/>Compared to {@link EntryCacheImpl}, inserting an entry does not allocate a skip-list node, range reads are
+ * slices over the ledger segment and invalidating or evicting a whole ledger drops its segment at once.
+ */
+public class SegmentedEntryCacheImpl extends AbstractEntryCache {
+
+    private final SegmentedRangeCache<EntryImpl> entries;
+
+    public SegmentedEntryCacheImpl(EntryCacheManager manager, ManagedLedgerImpl ml) {
+        super(manager, ml);
+        this.entries = new SegmentedRangeCache<>(entryWeighter, manager::entriesRemoved);
+    }
+
+    @Override
+    protected boolean putEntry(PositionImpl position, EntryImpl entry) {
+        return entries.put(position.getLedgerId(), position.getEntryId(), entry);
+    }
+
+    @Override
+    protected EntryImpl getEntry(PositionImpl position) {
+        return entries.get(position.getLedgerId(), position.getEntryId());
+    }
+
+    @Override
+    protected Collection<EntryImpl> getEntries(PositionImpl firstPosition, PositionImpl lastPosition) {
+        // Range reads issued by the managed ledger never span across ledgers
+        return entries.getRange(firstPosition.getLedgerId(), firstPosition.getEntryId(), lastPosition.getEntryId());
+    }
+
+    @Override
+    protected Pair<Integer, Long> removeEntriesUpTo(PositionImpl lastPosition) {
+        return entries.removeUpTo(lastPosition.getLedgerId(), lastPosition.getEntryId());
+    }
+
+    @Override
+    protected Pair<Integer, Long> removeEntries(PositionImpl firstPosition, PositionImpl lastPosition) {
+        // Only used to evict ranges of a single ledger
+        return entries.removeRange(firstPosition.getLedgerId(), firstPosition.getEntryId(), lastPosition.getEntryId());
+    }
+
+    @Override
+    protected Pair<Integer, Long> removeLedgerEntries(long ledgerId) {
+        return entries.removeSegment(ledgerId);
+    }
+
+    @Override
+    protected Pair<Integer, Long> evictLeastAccessedEntries(long sizeToFree) {
+        return entries.evictLeastAccessedEntries(sizeToFree);
+    }
+
+    @Override
+    protected long clearEntries() {
+        return entries.clear();
+    }
+
+    @Override
+    public long getSize() {
+        return entries.getSize();
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.Arrays;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedLedgerInfo.LedgerInfo;
+
+/**
+ * Sparse index of the timestamps of the entries of a ledger.
+ *
+ * <p/>The index keeps the timestamp of one entry every {@code interval} entries, starting from the first entry of the
+ * ledger, so that the entries close to a given time can be found without reading the ledger. Timestamps are added in
+ * order while the ledger is written; if one of them is missing, the index is marked as incomplete and is not used.
+ */
+class TimeIndex {
+
+    private final int interval;
+    private long[] timestamps = new long[8];
+    private int size = 0;
+    private boolean complete = true;
+
+    TimeIndex(int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Load the index stored in the metadata of a ledger.
+     *
+     * @return the index or null if the ledger was not indexed
+     */
+    static TimeIndex fromLedgerInfo(LedgerInfo info) {
+        if (!info.hasTimeIndexInterval() || info.getTimeIndexInterval() <= 0) {
+            return null;
+        }
+
+        TimeIndex index = new TimeIndex(info.getTimeIndexInterval());
+        long timestamp = 0;
+        for (int i = 0; i < info.getTimeIndexDeltasCount(); i++) {
+            timestamp += info.getTimeIndexDeltas(i);
+            index.append(timestamp);
+        }
+        return index;
+    }
+
+    int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Record the timestamp of an entry. Only the entries at the index interval are kept.
+     */
+    synchronized void add(long entryId, long timestamp) {
+        if (!complete || entryId % interval != 0) {
+            return;
+        }
+
+        if (entryId != (long) size * interval) {
+            // An indexed entry was skipped
+            complete = false;
+            return;
+        }
+        append(timestamp);
+    }
+
+    /**
+     * Mark the index as unusable, when the timestamp of an indexed entry couldn't be read.
+     */
+    synchronized void invalidate() {
+        complete = false;
+    }
+
+    /**
+     * Whether the index covers all the entries up to the given one.
+     */
+    synchronized boolean covers(long lastEntryId) {
+        return complete && (long) size * interval > lastEntryId;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    long getEntryId(int i) {
+        return (long) i * interval;
+    }
+
+    synchronized long getTimestamp(int i) {
+        return timestamps[i];
+    }
+
+    /**
+     * Store the index into the metadata of the ledger, if it is complete.
+     */
+    synchronized void writeTo(LedgerInfo.Builder info) {
+        if (!complete) {
+            return;
+        }
+
+        info.setTimeIndexInterval(interval);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            info.addTimeIndexDeltas(timestamps[i] - previous);
+            previous = timestamps[i];
+        }
+    }
+
+    private void append(long timestamp) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+        }
+        timestamps[size++] = timestamp;
+    }
+}
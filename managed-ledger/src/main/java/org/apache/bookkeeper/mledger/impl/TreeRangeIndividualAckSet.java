@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+
+/**
+ * {@link IndividualAckSet} backed by a Guava {@link TreeRangeSet} of positions.
+ *
+ * <p/>Each disjoint range costs a tree node, a {@link Range} and two {@link PositionImpl} instances on the heap.
+ */
+public class TreeRangeIndividualAckSet implements IndividualAckSet {
+
+    // Approximate heap size of a tree node, a Range, its 2 Cut and 2 PositionImpl objects
+    private static final long ESTIMATED_RANGE_SIZE = 160;
+
+    private final RangeSet<PositionImpl> ranges = TreeRangeSet.create();
+
+    @Override
+    public void addOpenClosed(long lowerLedgerId, long lowerEntryId, long upperLedgerId, long upperEntryId) {
+        ranges.add(Range.openClosed(new PositionImpl(lowerLedgerId, lowerEntryId),
+                new PositionImpl(upperLedgerId, upperEntryId)));
+    }
+
+    @Override
+    public boolean contains(long ledgerId, long entryId) {
+        return ranges.contains(new PositionImpl(ledgerId, entryId));
+    }
+
+    @Override
+    public Range<PositionImpl> rangeContaining(long ledgerId, long entryId) {
+        return ranges.rangeContaining(new PositionImpl(ledgerId, entryId));
+    }
+
+    @Override
+    public void removeAtMost(long ledgerId, long entryId) {
+        ranges.remove(Range.atMost(new PositionImpl(ledgerId, entryId)));
+    }
+
+    @Override
+    public void removeLedger(long ledgerId) {
+        ranges.remove(Range.closed(new PositionImpl(ledgerId, 0), new PositionImpl(ledgerId, Long.MAX_VALUE)));
+    }
+
+    @Override
+    public Range<PositionImpl> firstRange() {
+        return ranges.isEmpty() ? null : ranges.asRanges().iterator().next();
+    }
+
+    @Override
+    public Range<PositionImpl> span() {
+        return ranges.isEmpty() ? null : ranges.span();
+    }
+
+    @Override
+    public void forEach(RangeProcessor processor) {
+        for (Range<PositionImpl> range : ranges.asRanges()) {
+            PositionImpl lower = range.lowerEndpoint();
+            PositionImpl upper = range.upperEndpoint();
+            if (!processor.process(lower.getLedgerId(), lower.getEntryId(), upper.getLedgerId(),
+                    upper.getEntryId())) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void forEach(long ledgerId, long fromEntryId, long toEntryId, RangeProcessor processor) {
+        Range<PositionImpl> entries = Range.closed(new PositionImpl(ledgerId, fromEntryId),
+                new PositionImpl(ledgerId, toEntryId));
+        for (Range<PositionImpl> range : ranges.subRangeSet(entries).asRanges()) {
+            PositionImpl lower = range.lowerEndpoint();
+            PositionImpl upper = range.upperEndpoint();
+            long lowerEntryId = range.lowerBoundType() == BoundType.CLOSED ? lower.getEntryId() - 1
+                    : lower.getEntryId();
+            long upperEntryId = range.upperBoundType() == BoundType.CLOSED ? upper.getEntryId()
+                    : upper.getEntryId() - 1;
+            if (!processor.process(ledgerId, lowerEntryId, ledgerId, upperEntryId)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return ranges.asRanges().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        ranges.clear();
+    }
+
+    @Override
+    public long getMemorySize() {
+        return size() * ESTIMATED_RANGE_SIZE;
+    }
+
+    @Override
+    public String toString() {
+        return ranges.toString();
+    }
+}
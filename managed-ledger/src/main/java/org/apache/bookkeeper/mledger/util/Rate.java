@@ -23,12 +23,22 @@ import static com.google.common.base.Preconditions.checkArgument;
 import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Counts events and their values on hot paths, and computes their rates over the period since the last calculation.
+ *
+ * <p/>The counters are striped {@link LongAdder}s that are never reset: each calculation takes the difference with
+ * the totals seen by the previous one. Resetting the adders would lose the events recorded between the sum and the
+ * reset of each cell, and would cost a write to every cell. Recording an event does not allocate, and the rates are
+ * only computed when the stats are refreshed.
  */
 public class Rate {
-    // Counters
+    // Counters, only ever increasing
     private final LongAdder valueAdder = new LongAdder();
     private final LongAdder countAdder = new LongAdder();
 
+    // Totals at the previous calculation
+    private long lastCount = 0;
+    private long lastValue = 0;
+
     // Computed stats
     private long count = 0;
     private double rate = 0.0d;
@@ -51,16 +61,24 @@ public class Rate {
     }
 
     public void calculateRate() {
-        double period = (System.nanoTime() - lastCalculatedTime) / 1e9;
+        long now = System.nanoTime();
+        double period = (now - lastCalculatedTime) / 1e9;
         calculateRate(period);
-        lastCalculatedTime = System.nanoTime();
+        lastCalculatedTime = now;
     }
 
     public void calculateRate(double period) {
         checkArgument(period > 0, "Invalid period %s to calculate rate", period);
 
-        count = countAdder.sumThenReset();
-        long sum = valueAdder.sumThenReset();
+        // Events add their value before their count: reading the count first includes the value of every counted event
+        long totalCount = countAdder.sum();
+        long totalValue = valueAdder.sum();
+
+        count = totalCount - lastCount;
+        long sum = totalValue - lastValue;
+        lastCount = totalCount;
+        lastValue = totalValue;
+
         averageValue = count != 0 ? sum / count : 0.0d;
         rate = count / period;
         valueRate = sum / period;
@@ -81,4 +99,18 @@ public class Rate {
     public double getValueRate() {
         return valueRate;
     }
+
+    /**
+     * @return the number of events recorded since the creation of the rate
+     */
+    public long getTotalCount() {
+        return countAdder.sum();
+    }
+
+    /**
+     * @return the sum of the values recorded since the creation of the rate
+     */
+    public long getTotalValue() {
+        return valueAdder.sum();
+    }
 }
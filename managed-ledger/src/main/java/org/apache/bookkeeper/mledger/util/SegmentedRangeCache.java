@@ -0,0 +1,532 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.Lists;
+import io.netty.util.ReferenceCounted;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import org.apache.bookkeeper.mledger.util.RangeCache.Weighter;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Range cache specialized for values keyed by (segmentId, offset), such as entries keyed by (ledgerId, entryId).
+ *
+ * <p/>Values of each segment are stored in an append-only array indexed by offset, so that range reads are array
+ * slices and evicting the head of a segment only moves an index. Segments are kept in a small navigable index, and a
+ * whole segment can be dropped from the cache with a single map removal.
+ *
+ * <p/>Offsets within a segment are expected to be mostly inserted in increasing order. Inserting a value before the
+ * first offset of a segment is supported but requires shifting the segment array. Since the array is indexed by
+ * offset, a segment doesn't bridge gaps of more than {@value #MAX_SEGMENT_GAP} offsets: a value inserted further
+ * after the last offset replaces the values of the segment, which are reported to the eviction listener, and a value
+ * inserted further before the first offset is not cached.
+ *
+ * @param <Value>
+ *            Cache value
+ */
+public class SegmentedRangeCache<Value extends ReferenceCounted> {
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 24;
+    static final int MAX_SEGMENT_GAP = 4096;
+    private static final long REJECTED = -1;
+
+    // Segments sorted by segment id (eg: ledger id)
+    private final ConcurrentNavigableMap<Long, Segment> segments;
+    private final AtomicLong size; // Total size of values stored in cache
+    private final Weighter<Value> weighter; // Weighter object used to extract the size from values
+    private final LongConsumer evictionListener; // Notified of the size of the values evicted by an insertion
+
+    /**
+     * Construct a new SegmentedRangeCache.
+     *
+     * @param weighter
+     *            a custom weighter to compute the size of each stored value
+     */
+    public SegmentedRangeCache(Weighter<Value> weighter) {
+        this(weighter, evictedSize -> {
+        });
+    }
+
+    /**
+     * Construct a new SegmentedRangeCache.
+     *
+     * @param weighter
+     *            a custom weighter to compute the size of each stored value
+     * @param evictionListener
+     *            notified of the total size of the values evicted to make room for an inserted value
+     */
+    public SegmentedRangeCache(Weighter<Value> weighter, LongConsumer evictionListener) {
+        this.size = new AtomicLong(0);
+        this.segments = new ConcurrentSkipListMap<>();
+        this.weighter = weighter;
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Insert.
+     *
+     * @param segmentId
+     * @param offset
+     * @param value
+     *            ref counted value with at least 1 ref to pass on the cache
+     * @return whether the entry was inserted in the cache
+     */
+    public boolean put(long segmentId, long offset, Value value) {
+        Segment segment = segments.computeIfAbsent(segmentId, id -> new Segment());
+        long valueSize = weighter.getSize(value);
+        long evictedSize = segment.put(offset, value, valueSize);
+        if (evictedSize == REJECTED) {
+            return false;
+        }
+
+        size.addAndGet(valueSize - evictedSize);
+        if (evictedSize > 0) {
+            evictionListener.accept(evictedSize);
+        }
+        return true;
+    }
+
+    public Value get(long segmentId, long offset) {
+        Segment segment = segments.get(segmentId);
+        if (segment == null) {
+            return null;
+        }
+        return segment.get(offset);
+    }
+
+    /**
+     *
+     * @param segmentId
+     * @param firstOffset
+     *            the first offset in the range
+     * @param lastOffset
+     *            the last offset in the range (inclusive)
+     * @return a collections of the value found in cache
+     */
+    public Collection<Value> getRange(long segmentId, long firstOffset, long lastOffset) {
+        Segment segment = segments.get(segmentId);
+        if (segment == null) {
+            return Collections.emptyList();
+        }
+        return segment.getRange(firstOffset, lastOffset);
+    }
+
+    /**
+     * Remove all the values of the segments preceding <code>segmentId</code> and the values of <code>segmentId</code>
+     * up to <code>lastOffset</code> (inclusive).
+     *
+     * @param segmentId
+     * @param lastOffset
+     * @return an pair of ints, containing the number of removed entries and the total size
+     */
+    public Pair<Integer, Long> removeUpTo(long segmentId, long lastOffset) {
+        int removedEntries = 0;
+        long removedSize = 0;
+
+        for (Long id : segments.headMap(segmentId, false).keySet()) {
+            Segment segment = segments.remove(id);
+            if (segment != null) {
+                removedEntries += segment.close();
+                removedSize += segment.size;
+            }
+        }
+
+        Segment segment = segments.get(segmentId);
+        if (segment != null) {
+            Pair<Integer, Long> removed = segment.removeUpTo(lastOffset);
+            removedEntries += removed.getLeft();
+            removedSize += removed.getRight();
+        }
+
+        size.addAndGet(-removedSize);
+        return Pair.of(removedEntries, removedSize);
+    }
+
+    /**
+     * Remove the values of a segment between <code>firstOffset</code> and <code>lastOffset</code> (inclusive).
+     *
+     * @param segmentId
+     * @param firstOffset
+     * @param lastOffset
+     * @return an pair of ints, containing the number of removed entries and the total size
+     */
+    public Pair<Integer, Long> removeRange(long segmentId, long firstOffset, long lastOffset) {
+        Segment segment = segments.get(segmentId);
+        if (segment == null) {
+            return Pair.of(0, 0L);
+        }
+
+        Pair<Integer, Long> removed = segment.removeRange(firstOffset, lastOffset);
+        size.addAndGet(-removed.getRight());
+        return removed;
+    }
+
+    /**
+     * Drop a whole segment from the cache.
+     *
+     * @param segmentId
+     * @return an pair of ints, containing the number of removed entries and the total size
+     */
+    public Pair<Integer, Long> removeSegment(long segmentId) {
+        Segment segment = segments.remove(segmentId);
+        if (segment == null) {
+            return Pair.of(0, 0L);
+        }
+
+        int removedEntries = segment.close();
+        long removedSize = segment.size;
+        size.addAndGet(-removedSize);
+        return Pair.of(removedEntries, removedSize);
+    }
+
+    /**
+     * Evict values starting from the oldest segment. Segments that fit entirely in the size to free are dropped
+     * wholesale.
+     *
+     * @param minSize
+     * @return a pair containing the number of entries evicted and their total size
+     */
+    public Pair<Integer, Long> evictLeastAccessedEntries(long minSize) {
+        checkArgument(minSize > 0);
+
+        long removedSize = 0;
+        int removedEntries = 0;
+
+        while (removedSize < minSize) {
+            Map.Entry<Long, Segment> first = segments.firstEntry();
+            if (first == null) {
+                break;
+            }
+
+            Segment segment = first.getValue();
+            if (segment.size <= minSize - removedSize) {
+                if (segments.remove(first.getKey(), segment)) {
+                    removedEntries += segment.close();
+                    removedSize += segment.size;
+                }
+            } else {
+                Pair<Integer, Long> evicted = segment.evictHead(minSize - removedSize);
+                removedEntries += evicted.getLeft();
+                removedSize += evicted.getRight();
+            }
+        }
+
+        size.addAndGet(-removedSize);
+        return Pair.of(removedEntries, removedSize);
+    }
+
+    /**
+     * Just for testing.
+     */
+    protected long getNumberOfEntries() {
+        long count = 0;
+        for (Segment segment : segments.values()) {
+            count += segment.getNumberOfEntries();
+        }
+        return count;
+    }
+
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     *
+     * @return the old size
+     */
+    public synchronized long clear() {
+        long removedSize = 0;
+
+        while (true) {
+            Map.Entry<Long, Segment> entry = segments.pollFirstEntry();
+            if (entry == null) {
+                break;
+            }
+            Segment segment = entry.getValue();
+            segment.close();
+            removedSize += segment.size;
+        }
+
+        return size.getAndAdd(-removedSize);
+    }
+
+    /**
+     * Values of a single segment. The array slot <code>i</code> holds the value with offset <code>baseOffset + i</code>
+     * and the live values are in the slots <code>[head, tail)</code>.
+     */
+    private class Segment {
+        private Value[] values;
+        private long baseOffset = -1;
+        private int head = 0;
+        private int tail = 0;
+        private boolean closed = false;
+
+        // Total size of the live values, only updated while holding the segment lock
+        private volatile long size = 0;
+
+        @SuppressWarnings("unchecked")
+        Segment() {
+            this.values = (Value[]) new ReferenceCounted[INITIAL_SEGMENT_CAPACITY];
+        }
+
+        /**
+         * @return the size of the values evicted to make room for the new value, or {@link #REJECTED} if the value
+         *         was not inserted
+         */
+        synchronized long put(long offset, Value value, long valueSize) {
+            if (closed) {
+                return REJECTED;
+            }
+
+            long evictedSize = 0;
+            if (head != tail && offset - baseOffset - tail >= MAX_SEGMENT_GAP) {
+                // Too far after the last value: drop the older values rather than allocating slots for the gap
+                evictedSize = removeHead(tail - 1, Long.MAX_VALUE).getRight();
+            }
+
+            if (head == tail) {
+                // Segment is empty, rebase it on the new offset to avoid keeping a gap in the array
+                baseOffset = offset;
+                head = 0;
+                tail = 0;
+            }
+
+            long idx = offset - baseOffset;
+            if (idx < 0) {
+                if (head - idx > MAX_SEGMENT_GAP || tail - idx > MAX_SEGMENT_CAPACITY) {
+                    return REJECTED;
+                }
+                shift((int) -idx);
+                idx = 0;
+            } else if (idx - head >= MAX_SEGMENT_CAPACITY) {
+                return REJECTED;
+            }
+
+            if (idx < head) {
+                // Slots before the head are always empty
+                head = (int) idx;
+            } else if (idx < tail) {
+                if (values[(int) idx] != null) {
+                    return REJECTED;
+                }
+            } else {
+                if (idx >= values.length) {
+                    grow(idx);
+                    idx = offset - baseOffset;
+                }
+                tail = (int) idx + 1;
+            }
+
+            values[(int) idx] = value;
+            size += valueSize;
+            return evictedSize;
+        }
+
+        synchronized Value get(long offset) {
+            long idx = offset - baseOffset;
+            if (closed || idx < head || idx >= tail) {
+                return null;
+            }
+
+            Value value = values[(int) idx];
+            if (value != null) {
+                value.retain();
+            }
+            return value;
+        }
+
+        synchronized Collection<Value> getRange(long firstOffset, long lastOffset) {
+            if (closed || head == tail) {
+                return Collections.emptyList();
+            }
+
+            long from = Math.max(head, firstOffset - baseOffset);
+            long to = Math.min(tail - 1, lastOffset - baseOffset);
+            if (from > to) {
+                return Collections.emptyList();
+            }
+
+            List<Value> result = Lists.newArrayListWithExpectedSize((int) (to - from + 1));
+            for (int i = (int) from; i <= to; i++) {
+                Value value = values[i];
+                if (value != null) {
+                    value.retain();
+                    result.add(value);
+                }
+            }
+            return result;
+        }
+
+        synchronized Pair<Integer, Long> removeUpTo(long lastOffset) {
+            if (closed || head == tail) {
+                return Pair.of(0, 0L);
+            }
+
+            long to = Math.min(tail - 1, lastOffset - baseOffset);
+            return removeHead(to, Long.MAX_VALUE);
+        }
+
+        synchronized Pair<Integer, Long> removeRange(long firstOffset, long lastOffset) {
+            if (closed || head == tail) {
+                return Pair.of(0, 0L);
+            }
+
+            long from = Math.max(head, firstOffset - baseOffset);
+            long to = Math.min(tail - 1, lastOffset - baseOffset);
+            if (from > to) {
+                return Pair.of(0, 0L);
+            } else if (from == head) {
+                return removeHead(to, Long.MAX_VALUE);
+            }
+
+            int removedEntries = 0;
+            long removedSize = 0;
+            for (int i = (int) from; i <= to; i++) {
+                Value value = values[i];
+                if (value != null) {
+                    values[i] = null;
+                    removedSize += weighter.getSize(value);
+                    value.release();
+                    ++removedEntries;
+                }
+            }
+
+            if (to == tail - 1) {
+                // Slots after the tail are always empty
+                tail = (int) from;
+            }
+
+            size -= removedSize;
+            return Pair.of(removedEntries, removedSize);
+        }
+
+        synchronized Pair<Integer, Long> evictHead(long minSize) {
+            if (closed || head == tail) {
+                return Pair.of(0, 0L);
+            }
+
+            return removeHead(tail - 1, minSize);
+        }
+
+        /**
+         * Remove values from the head of the segment up to index <code>to</code> (inclusive), stopping as soon as
+         * <code>minSize</code> has been removed.
+         */
+        private Pair<Integer, Long> removeHead(long to, long minSize) {
+            int removedEntries = 0;
+            long removedSize = 0;
+            while (head <= to && removedSize < minSize) {
+                Value value = values[head];
+                values[head] = null;
+                ++head;
+                if (value != null) {
+                    removedSize += weighter.getSize(value);
+                    value.release();
+                    ++removedEntries;
+                }
+            }
+
+            size -= removedSize;
+            return Pair.of(removedEntries, removedSize);
+        }
+
+        /**
+         * Release all the values and reject any further insertion. The segment size is left untouched so that the
+         * caller can account for the removed size.
+         *
+         * @return the number of released values
+         */
+        synchronized int close() {
+            closed = true;
+            int removedEntries = 0;
+            for (int i = head; i < tail; i++) {
+                Value value = values[i];
+                if (value != null) {
+                    values[i] = null;
+                    value.release();
+                    ++removedEntries;
+                }
+            }
+            head = tail;
+            return removedEntries;
+        }
+
+        synchronized int getNumberOfEntries() {
+            int count = 0;
+            for (int i = head; i < tail; i++) {
+                if (values[i] != null) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Shift the segment content by <code>n</code> slots to make room for values before the first offset.
+         */
+        @SuppressWarnings("unchecked")
+        private void shift(int n) {
+            int newCapacity = values.length;
+            while (newCapacity < tail + n) {
+                newCapacity = newCapacity << 1;
+            }
+
+            Value[] newValues = (Value[]) new ReferenceCounted[newCapacity];
+            System.arraycopy(values, head, newValues, head + n, tail - head);
+            values = newValues;
+            baseOffset -= n;
+            head += n;
+            tail += n;
+        }
+
+        /**
+         * Make room for index <code>idx</code>, compacting the evicted prefix of the array first.
+         */
+        @SuppressWarnings("unchecked")
+        private void grow(long idx) {
+            int live = tail - head;
+            long required = idx - head + 1;
+            int newCapacity = values.length;
+            while (newCapacity < required) {
+                newCapacity = newCapacity << 1;
+            }
+
+            Value[] newValues = newCapacity == values.length ? values : (Value[]) new ReferenceCounted[newCapacity];
+            System.arraycopy(values, head, newValues, 0, live);
+            if (newValues == values) {
+                Arrays.fill(values, live, tail, null);
+            }
+            values = newValues;
+            baseOffset += head;
+            tail = live;
+            head = 0;
+        }
+    }
+}
@@ -26,6 +26,8 @@ import java.util.concurrent.atomic.LongAdder;
 /**
  * Create stats buckets to have frequency distribution of samples.
  *
+ * <p/>Like {@link Rate}, the counters are never reset by {@link #refresh()}, which takes the difference with the
+ * totals seen by the previous refresh instead, so that no sample recorded concurrently is lost.
  */
 public class StatsBuckets {
     private final long[] boundaries;
@@ -36,6 +38,10 @@ public class StatsBuckets {
     private long count = 0;
     private long sum = 0;
 
+    // Totals at the previous refresh
+    private final long[] lastBuckets;
+    private long lastSum = 0;
+
     public StatsBuckets(long... boundaries) {
         checkArgument(boundaries.length > 0);
         checkArgument(isSorted(boundaries), "Boundaries array must be sorted");
@@ -48,6 +54,7 @@ public class StatsBuckets {
         }
 
         this.values = new long[buckets.length];
+        this.lastBuckets = new long[buckets.length];
     }
 
     public void addValue(long value) {
@@ -63,25 +70,33 @@ public class StatsBuckets {
 
     public void refresh() {
         long count = 0;
-        sum = sumCounter.sumThenReset();
 
+        // Samples increment their bucket before the sum: reading the buckets first includes every counted sample
         for (int i = 0; i < buckets.length; i++) {
-            long value = buckets[i].sumThenReset();
+            long total = buckets[i].sum();
+            long value = total - lastBuckets[i];
+            lastBuckets[i] = total;
             count += value;
             values[i] = value;
         }
 
+        long totalSum = sumCounter.sum();
+        sum = totalSum - lastSum;
+        lastSum = totalSum;
+
         this.count = count;
     }
 
     public void reset() {
         sum = 0;
         sumCounter.reset();
+        lastSum = 0;
         count = 0;
 
         for (int i = 0; i < buckets.length; i++) {
             buckets[i].reset();
             values[i] = 0;
+            lastBuckets[i] = 0;
         }
     }
 
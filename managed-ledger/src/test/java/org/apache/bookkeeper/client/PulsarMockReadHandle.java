@@ -27,6 +27,7 @@ import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerEntry;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.impl.LastConfirmedAndEntryImpl;
 import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
 import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
@@ -102,9 +103,10 @@ class PulsarMockReadHandle implements ReadHandle {
     public CompletableFuture<LastConfirmedAndEntry> readLastAddConfirmedAndEntryAsync(long entryId,
                                                                                       long timeOutInMillis,
                                                                                       boolean parallel) {
-        CompletableFuture<LastConfirmedAndEntry> promise = new CompletableFuture<>();
-        promise.completeExceptionally(new UnsupportedOperationException("Long poll not implemented"));
-        return promise;
+        // Entries are added synchronously in the mock, there's nothing to wait for
+        long lastAddConfirmed = entries.isEmpty() ? -1 : getLastAddConfirmed();
+        LedgerEntry entry = entryId <= lastAddConfirmed ? entries.get((int) entryId).duplicate() : null;
+        return CompletableFuture.completedFuture(LastConfirmedAndEntryImpl.create(lastAddConfirmed, entry));
     }
 
     // Handle interface
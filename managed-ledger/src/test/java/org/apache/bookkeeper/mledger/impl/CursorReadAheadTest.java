@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.testng.annotations.Test;
+
+public class CursorReadAheadTest extends MockedBookKeeperTestCase {
+
+    private ManagedLedgerFactoryImpl createFactoryWithoutCache() throws Exception {
+        ManagedLedgerFactoryConfig factoryConfig = new ManagedLedgerFactoryConfig();
+        factoryConfig.setMaxCacheSize(0);
+        return new ManagedLedgerFactoryImpl(bkc, zkc, factoryConfig);
+    }
+
+    private static void assertEntries(List<Entry> entries, int first) {
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(new String(entries.get(i).getDataAndRelease(), Charsets.UTF_8), "entry-" + (first + i));
+        }
+    }
+
+    @Test(timeOut = 20000)
+    public void testSequentialReads() throws Exception {
+        ManagedLedgerFactoryImpl factory = createFactoryWithoutCache();
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(30).setReadAheadEnabled(true)
+                .setReadAheadMaxOutstandingReads(2);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", config);
+        ManagedCursor cursor = ledger.openCursor("c1");
+
+        for (int i = 0; i < 100; i++) {
+            ledger.addEntry(("entry-" + i).getBytes(Charsets.UTF_8));
+        }
+
+        int read = 0;
+        while (cursor.hasMoreEntries()) {
+            List<Entry> entries = cursor.readEntries(4);
+            assertTrue(!entries.isEmpty());
+            assertEntries(entries, read);
+            read += entries.size();
+        }
+        assertEquals(read, 100);
+
+        ledger.mbean.refreshStats(1, TimeUnit.SECONDS);
+        assertTrue(ledger.mbean.getReadAheadHitsRate() > 0);
+        assertTrue(ledger.mbean.getReadAheadHitRatio() > 0.5);
+
+        cursor.close();
+        assertEquals(ledger.mbean.getReadAheadBufferSize(), 0);
+        factory.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    public void testReadsAfterSeek() throws Exception {
+        ManagedLedgerFactoryImpl factory = createFactoryWithoutCache();
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setReadAheadEnabled(true);
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", config);
+        ManagedCursor cursor = ledger.openCursor("c1");
+
+        Position[] positions = new Position[50];
+        for (int i = 0; i < 50; i++) {
+            positions[i] = ledger.addEntry(("entry-" + i).getBytes(Charsets.UTF_8));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertEntries(cursor.readEntries(3), 3 * i);
+        }
+        assertTrue(ledger.mbean.getReadAheadBufferSize() > 0);
+
+        // Moving the cursor drops the entries read ahead
+        cursor.seek(positions[40]);
+        assertEntries(cursor.readEntries(3), 40);
+        assertEntries(cursor.readEntries(5), 43);
+
+        cursor.rewind();
+        int read = 0;
+        while (cursor.hasMoreEntries()) {
+            List<Entry> entries = cursor.readEntries(7);
+            assertEntries(entries, read);
+            read += entries.size();
+        }
+        assertEquals(read, 50);
+
+        cursor.close();
+        assertEquals(ledger.mbean.getReadAheadBufferSize(), 0);
+        factory.shutdown();
+    }
+}
@@ -25,9 +25,13 @@ import static org.testng.Assert.assertTrue;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.bookkeeper.client.api.ReadHandle;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
 import org.testng.annotations.BeforeClass;
@@ -114,6 +118,39 @@ public class EntryCacheManagerTest extends MockedBookKeeperTestCase {
         assertEquals(cacheManager.mlFactoryMBean.getNumberOfCacheEvictions(), 1);
     }
 
+    @Test
+    void segmentedCache() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(10);
+        config.setCacheEvictionWatermark(0.8);
+        config.setSegmentedEntryCacheEnabled(true);
+
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        EntryCache cache1 = cacheManager.getEntryCache(ml1);
+        assertTrue(cache1 instanceof SegmentedEntryCacheImpl);
+
+        assertEquals(cache1.insert(EntryImpl.create(1, 0, new byte[1])), true);
+        assertEquals(cache1.insert(EntryImpl.create(1, 1, new byte[2])), true);
+        assertEquals(cache1.insert(EntryImpl.create(2, 0, new byte[3])), true);
+        assertEquals(cache1.insert(EntryImpl.create(2, 0, new byte[3])), false);
+
+        assertEquals(cache1.getSize(), 6);
+        assertEquals(cacheManager.getSize(), 6);
+
+        cache1.invalidateAllEntries(2);
+        assertEquals(cache1.getSize(), 3);
+        assertEquals(cacheManager.getSize(), 3);
+
+        cache1.invalidateEntries(new PositionImpl(1, 0));
+        assertEquals(cache1.getSize(), 2);
+        assertEquals(cacheManager.getSize(), 2);
+
+        cacheManager.removeEntryCache("cache1");
+        assertEquals(cacheManager.getSize(), 0);
+    }
+
     @Test
     void doubleInsert() throws Exception {
         ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
@@ -269,4 +306,128 @@ public class EntryCacheManagerTest extends MockedBookKeeperTestCase {
         assertEquals(cacheManager.mlFactoryMBean.getCacheHitsThroughput(), 0.0);
         assertEquals(cacheManager.mlFactoryMBean.getNumberOfCacheEvictions(), 0);
     }
+
+    @Test
+    void segmentedLruEviction() throws Exception {
+        for (boolean segmentedCache : new boolean[] { false, true }) {
+            ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+            config.setMaxCacheSize(400);
+            config.setCacheEvictionWatermark(0.5);
+            config.setSegmentedEntryCacheEnabled(segmentedCache);
+            config.setSegmentedLruCacheEvictionEnabled(true);
+
+            factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+
+            EntryCacheManager cacheManager = factory.getEntryCacheManager();
+            EntryCache cache1 = cacheManager.getEntryCache(ml1);
+            EntryCache cache2 = cacheManager.getEntryCache(ml2);
+
+            // 2 ranges in cache1 and 1 range in cache2
+            for (int i = 0; i < 256; i++) {
+                cache1.insert(EntryImpl.create(1, i, new byte[1]));
+            }
+            for (int i = 0; i < 128; i++) {
+                cache2.insert(EntryImpl.create(2, i, new byte[1]));
+            }
+            assertEquals(cacheManager.getSize(), 384);
+
+            // The second range of cache1 is read 3 times and gets protected, the range of cache2 is read once
+            for (int i = 0; i < 3; i++) {
+                readEntries(cache1, 1, 128, 255);
+            }
+            readEntries(cache2, 2, 0, 127);
+
+            cacheManager.mlFactoryMBean.refreshStats(1, TimeUnit.SECONDS);
+            assertEquals(cacheManager.mlFactoryMBean.getCacheHitsRate(), 512.0);
+            assertEquals(cacheManager.mlFactoryMBean.getCacheProtectedHitsRate(), 128.0);
+            assertEquals(cacheManager.mlFactoryMBean.getCacheProbationHitsRate(), 384.0);
+            assertEquals(cacheManager.mlFactoryMBean.getCacheBacklogReadsRate(), 0.0);
+
+            // Next inserts should trigger a cache eviction to force the size to 200
+            for (int i = 128; i < 138; i++) {
+                cache2.insert(EntryImpl.create(2, i, new byte[1]));
+            }
+
+            // Wait for eviction to be completed in background
+            Thread.sleep(100);
+
+            // The policy should have evicted the never read range of cache1 and then the least recently used range
+            // of cache2, keeping the protected range and the newly added entries
+            cacheManager.mlFactoryMBean.refreshStats(1, TimeUnit.SECONDS);
+            assertEquals(cacheManager.mlFactoryMBean.getNumberOfCacheEvictions(), 1);
+            assertEquals(cache1.getSize(), 128);
+            assertEquals(cache2.getSize(), 10);
+            assertEquals(cacheManager.getSize(), 138);
+
+            readEntries(cache1, 1, 128, 255);
+            readEntries(cache2, 2, 128, 137);
+
+            cacheManager.removeEntryCache("cache1");
+            cacheManager.removeEntryCache("cache2");
+            assertEquals(cacheManager.getSize(), 0);
+            factory.shutdown();
+        }
+    }
+
+    @Test
+    void segmentedLruBacklogReads() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setMaxCacheSize(1000);
+        config.setSegmentedLruCacheEvictionEnabled(true);
+        config.setCacheAdmissionMaxBacklogEntries(100);
+
+        factory = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle(), config);
+
+        ManagedLedgerImpl ml = mock(ManagedLedgerImpl.class);
+        when(ml.getName()).thenReturn("cache3");
+        when(ml.getLastConfirmedEntry()).thenReturn(new PositionImpl(3, 1000));
+
+        EntryCacheManager cacheManager = factory.getEntryCacheManager();
+        EntryCache cache = cacheManager.getEntryCache(ml);
+
+        for (int i = 0; i < 10; i++) {
+            cache.insert(EntryImpl.create(3, i, new byte[1]));
+            cache.insert(EntryImpl.create(3, 950 + i, new byte[1]));
+        }
+
+        // Reads far from the last entry are served from the cache but not accounted as accesses
+        readEntries(cache, 3, 0, 9);
+        readEntries(cache, 3, 950, 959);
+
+        cacheManager.mlFactoryMBean.refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(cacheManager.mlFactoryMBean.getCacheHitsRate(), 20.0);
+        assertEquals(cacheManager.mlFactoryMBean.getCacheBacklogReadsRate(), 10.0);
+        assertEquals(cacheManager.mlFactoryMBean.getCacheProbationHitsRate(), 10.0);
+
+        EntryCacheAccessTracker tracker = ((AbstractEntryCache) cache).getAccessTracker();
+        for (EntryCacheAccessTracker.CachedRange range : tracker.getRanges()) {
+            assertEquals(range.getFrequency(), range.firstEntryId == 0 ? 0 : 1);
+        }
+
+        cache.invalidateEntries(new PositionImpl(3, 900));
+        assertEquals(tracker.getRanges().size(), 1);
+        cache.clear();
+        assertTrue(tracker.getRanges().isEmpty());
+    }
+
+    private static void readEntries(EntryCache cache, long ledgerId, long firstEntry, long lastEntry) {
+        ReadHandle lh = mock(ReadHandle.class);
+        when(lh.getId()).thenReturn(ledgerId);
+
+        AtomicInteger readEntries = new AtomicInteger();
+        cache.asyncReadEntry(lh, firstEntry, lastEntry, false, new ReadEntriesCallback() {
+            @Override
+            public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                readEntries.set(entries.size());
+                entries.forEach(Entry::release);
+            }
+
+            @Override
+            public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+            }
+        }, null);
+
+        // All the entries must be found in the cache
+        assertEquals(readEntries.get(), lastEntry - firstEntry + 1);
+    }
 }
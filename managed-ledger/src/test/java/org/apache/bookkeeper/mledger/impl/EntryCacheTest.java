@@ -25,10 +25,15 @@ import static org.testng.Assert.assertEquals;
 
 import io.netty.buffer.Unpooled;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import org.apache.bookkeeper.client.BKException.BKNoSuchLedgerExistsException;
 import org.apache.bookkeeper.client.api.BKException;
 import org.apache.bookkeeper.client.api.LedgerEntries;
@@ -37,7 +42,9 @@ import org.apache.bookkeeper.client.api.ReadHandle;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.Entry;
 import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.apache.commons.lang3.tuple.Pair;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -236,6 +243,86 @@ public class EntryCacheTest extends MockedBookKeeperTestCase {
         counter.await();
     }
 
+    @Test(timeOut = 5000)
+    void testReadCoalescing() throws Exception {
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setReadCoalescingEnabled(true);
+        ManagedLedgerFactoryImpl coalescingFactory = new ManagedLedgerFactoryImpl(bkc, zkc, config);
+
+        try {
+            final ReadHandle lh = mock(ReadHandle.class);
+            when(lh.getId()).thenReturn((long) 0);
+
+            // Keep the bookie reads pending until all the cursor reads are issued
+            List<Pair<Long, Long>> bookieReads = new ArrayList<>();
+            List<CompletableFuture<LedgerEntries>> futures = new ArrayList<>();
+            doAnswer((invocation) -> {
+                bookieReads.add(Pair.of((Long) invocation.getArguments()[0], (Long) invocation.getArguments()[1]));
+                CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+                futures.add(future);
+                return future;
+            }).when(lh).readAsync(anyLong(), anyLong());
+
+            EntryCache entryCache = coalescingFactory.getEntryCacheManager().getEntryCache(ml);
+
+            List<List<Long>> results = new Vector<>();
+            CountDownLatch counter = new CountDownLatch(3);
+            ReadEntriesCallback callback = new ReadEntriesCallback() {
+                public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                    List<Long> ids = new ArrayList<>();
+                    for (Entry entry : entries) {
+                        ids.add(entry.getEntryId());
+                        assertEquals(entry.getDataBuffer().getLong(0), entry.getEntryId());
+                        entry.release();
+                    }
+                    results.set((Integer) ctx, ids);
+                    counter.countDown();
+                }
+
+                public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                    Assert.fail("should not fail");
+                }
+            };
+
+            results.addAll(Arrays.asList(null, null, null));
+            entryCache.asyncReadEntry(lh, 0, 9, false, callback, 0);
+            // Fully contained in the first read
+            entryCache.asyncReadEntry(lh, 2, 5, false, callback, 1);
+            // Partially overlapping, only 10-14 are read again
+            entryCache.asyncReadEntry(lh, 5, 14, false, callback, 2);
+
+            assertEquals(bookieReads, Arrays.asList(Pair.of(0L, 9L), Pair.of(10L, 14L)));
+
+            futures.get(1).complete(getLedgerEntries(10, 14));
+            futures.get(0).complete(getLedgerEntries(0, 9));
+            counter.await();
+
+            assertEquals(results.get(0), LongStream.rangeClosed(0, 9).boxed().collect(Collectors.toList()));
+            assertEquals(results.get(1), LongStream.rangeClosed(2, 5).boxed().collect(Collectors.toList()));
+            assertEquals(results.get(2), LongStream.rangeClosed(5, 14).boxed().collect(Collectors.toList()));
+
+            coalescingFactory.mbean.refreshStats(1, TimeUnit.SECONDS);
+            assertEquals(coalescingFactory.mbean.getCacheCoalescedReadsRate(), 9.0);
+            assertEquals(coalescingFactory.mbean.getCacheMissesRate(), 15.0);
+        } finally {
+            coalescingFactory.shutdown();
+        }
+    }
+
+    private static LedgerEntries getLedgerEntries(long firstEntry, long lastEntry) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            final LedgerEntry ledgerEntry = mock(LedgerEntry.class, Mockito.CALLS_REAL_METHODS);
+            doReturn(Unpooled.buffer(8).writeLong(entryId)).when(ledgerEntry).getEntryBuffer();
+            doReturn(entryId).when(ledgerEntry).getEntryId();
+            doReturn((long) 8).when(ledgerEntry).getLength();
+            entries.add(ledgerEntry);
+        }
+        LedgerEntries ledgerEntries = mock(LedgerEntries.class);
+        doAnswer((invocation) -> entries.iterator()).when(ledgerEntries).iterator();
+        return ledgerEntries;
+    }
+
     private static ReadHandle getLedgerHandle() {
         final ReadHandle lh = mock(ReadHandle.class);
         final LedgerEntry ledgerEntry = mock(LedgerEntry.class, Mockito.CALLS_REAL_METHODS);
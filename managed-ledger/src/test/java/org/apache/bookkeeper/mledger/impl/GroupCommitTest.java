@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.AddEntryCallback;
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.testng.annotations.Test;
+
+public class GroupCommitTest extends MockedBookKeeperTestCase {
+
+    private ManagedLedgerFactoryImpl createFactoryWithoutCache() throws Exception {
+        ManagedLedgerFactoryConfig factoryConfig = new ManagedLedgerFactoryConfig();
+        factoryConfig.setMaxCacheSize(0);
+        return new ManagedLedgerFactoryImpl(bkc, zkc, factoryConfig);
+    }
+
+    private static ManagedLedgerConfig createConfig() {
+        return new ManagedLedgerConfig().setGroupCommitEnabled(true).setGroupCommitMaxEntries(10)
+                .setGroupCommitMaxDelayMicros(10_000);
+    }
+
+    private static List<Position> addEntries(ManagedLedgerImpl ledger, int first, int count) throws Exception {
+        List<CompletableFuture<Position>> futures = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            CompletableFuture<Position> future = new CompletableFuture<>();
+            ledger.asyncAddEntry(("entry-" + i).getBytes(Charsets.UTF_8), new AddEntryCallback() {
+                @Override
+                public void addComplete(Position position, Object ctx) {
+                    future.complete(position);
+                }
+
+                @Override
+                public void addFailed(ManagedLedgerException exception, Object ctx) {
+                    future.completeExceptionally(exception);
+                }
+            }, null);
+            futures.add(future);
+        }
+
+        List<Position> positions = new ArrayList<>();
+        for (CompletableFuture<Position> future : futures) {
+            positions.add(future.get());
+        }
+        return positions;
+    }
+
+    private static int readAll(ManagedCursor cursor, int first, int batchSize) throws Exception {
+        int read = 0;
+        while (cursor.hasMoreEntries()) {
+            List<Entry> entries = cursor.readEntries(batchSize);
+            assertTrue(!entries.isEmpty());
+            for (Entry entry : entries) {
+                assertEquals(new String(entry.getDataAndRelease(), Charsets.UTF_8), "entry-" + (first + read));
+                ++read;
+            }
+        }
+        return read;
+    }
+
+    private long getNumberOfBkEntries(long ledgerId) throws Exception {
+        ReadHandle handle = bkc.newOpenLedgerOp().withLedgerId(ledgerId).withRecovery(false)
+                .withDigestType(DigestType.CRC32C).withPassword("".getBytes(Charsets.UTF_8)).execute().get();
+        return handle.getLastAddConfirmed() + 1;
+    }
+
+    @Test(timeOut = 20000)
+    public void testGroupedEntries() throws Exception {
+        ManagedLedgerFactoryImpl factory = createFactoryWithoutCache();
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", createConfig());
+        ManagedCursor cursor = ledger.openCursor("c1");
+
+        List<Position> positions = addEntries(ledger, 0, 35);
+
+        // Every add gets its own position
+        long ledgerId = ((PositionImpl) positions.get(0)).getLedgerId();
+        for (int i = 0; i < positions.size(); i++) {
+            assertEquals(positions.get(i), PositionImpl.get(ledgerId, i));
+        }
+        assertEquals(ledger.getNumberOfEntries(), 35);
+        assertEquals(ledger.getLastConfirmedEntry(), PositionImpl.get(ledgerId, 34));
+        assertTrue(getNumberOfBkEntries(ledgerId) < 35);
+
+        assertEquals(readAll(cursor, 0, 7), 35);
+
+        factory.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    public void testLedgerRollover() throws Exception {
+        ManagedLedgerFactoryImpl factory = createFactoryWithoutCache();
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger",
+                createConfig().setMaxEntriesPerLedger(20));
+        ManagedCursor cursor = ledger.openCursor("c1");
+
+        for (int i = 0; i < 5; i++) {
+            addEntries(ledger, i * 10, 10);
+        }
+
+        assertTrue(ledger.getLedgersInfoAsList().size() >= 3);
+        assertEquals(ledger.getNumberOfEntries(), 50);
+        assertEquals(readAll(cursor, 0, 3), 50);
+
+        factory.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    public void testReopen() throws Exception {
+        ManagedLedgerFactoryImpl factory = createFactoryWithoutCache();
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", createConfig());
+        ledger.openCursor("c1");
+        List<Position> positions = addEntries(ledger, 0, 47);
+        factory.shutdown();
+
+        // Reopen without the index of the groups written before
+        factory = createFactoryWithoutCache();
+        ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", createConfig());
+        assertEquals(ledger.getNumberOfEntries(), 47);
+
+        // The groups need to be located when reading from the middle of the ledger
+        long ledgerId = ((PositionImpl) positions.get(0)).getLedgerId();
+        ReadHandle handle = ledger.getLedgerHandle(ledgerId).get();
+        assertEquals(handle.getLastAddConfirmed(), 46);
+        for (long entryId : new long[] { 31, 5, 46, 0, 18 }) {
+            LedgerEntries entries = handle.readAsync(entryId, entryId).get();
+            LedgerEntry entry = entries.getEntry(entryId);
+            assertEquals(entry.getEntryBuffer().toString(Charsets.UTF_8), "entry-" + entryId);
+            entries.close();
+        }
+
+        ManagedCursor cursor = ledger.newNonDurableCursor(positions.get(22));
+        assertEquals(readAll(cursor, 23, 5), 24);
+
+        cursor = ledger.openCursor("c1");
+        assertEquals(readAll(cursor, 0, 10), 47);
+
+        // New entries are added after the recovered ones
+        addEntries(ledger, 47, 3);
+        assertEquals(readAll(cursor, 47, 10), 3);
+
+        factory.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    public void testDisabledOnExistingLedgers() throws Exception {
+        ManagedLedgerFactoryImpl factory = createFactoryWithoutCache();
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", createConfig());
+        ledger.openCursor("c1");
+        addEntries(ledger, 0, 15);
+        factory.shutdown();
+
+        // The grouped entries of the existing ledgers are still readable
+        factory = createFactoryWithoutCache();
+        ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", new ManagedLedgerConfig());
+        addEntries(ledger, 15, 5);
+
+        ManagedCursor cursor = ledger.openCursor("c1");
+        assertEquals(readAll(cursor, 0, 4), 20);
+
+        factory.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    public void testRecoverAfterWriteError() throws Exception {
+        ManagedLedgerFactoryImpl factory = createFactoryWithoutCache();
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", createConfig());
+        ManagedCursor cursor = ledger.openCursor("c1");
+        addEntries(ledger, 0, 5);
+
+        // The group fails to be written, its entries are written again in a new ledger
+        bkc.failNow(BKException.Code.BookieHandleNotAvailableException);
+        List<Position> positions = addEntries(ledger, 5, 10);
+
+        long ledgerId = ((PositionImpl) positions.get(0)).getLedgerId();
+        for (int i = 0; i < positions.size(); i++) {
+            assertEquals(positions.get(i), PositionImpl.get(ledgerId, i));
+        }
+        assertEquals(ledger.getLedgersInfoAsList().size(), 2);
+        assertEquals(readAll(cursor, 0, 4), 15);
+
+        factory.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    public void testLongPollGroupedEntries() throws Exception {
+        ManagedLedgerFactoryImpl factory = createFactoryWithoutCache();
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("my_test_ledger", createConfig());
+        List<Position> positions = addEntries(ledger, 0, 25);
+        long ledgerId = ((PositionImpl) positions.get(0)).getLedgerId();
+
+        ReadHandle bkHandle = bkc.newOpenLedgerOp().withLedgerId(ledgerId).withRecovery(false)
+                .withDigestType(DigestType.CRC32C).withPassword("".getBytes(Charsets.UTF_8)).execute().get();
+        // Start from an empty index, so that the groups are located by the long polls
+        GroupedEntriesReadHandle handle = new GroupedEntriesReadHandle(bkHandle, new GroupedEntriesIndex(),
+                GroupedEntriesReadHandle.UNKNOWN_LAST_ENTRY_ID);
+
+        for (long entryId = 0; entryId < 25; entryId++) {
+            boolean found = false;
+            for (int polls = 0; !found && polls < 25; polls++) {
+                LastConfirmedAndEntry result = handle.readLastAddConfirmedAndEntryAsync(entryId, 1000, false).get();
+                assertEquals(result.getLastAddConfirmed(), 24);
+                if (result.hasEntry()) {
+                    assertEquals(result.getEntry().getEntryId(), entryId);
+                    assertEquals(new String(result.getEntry().getEntryBytes(), Charsets.UTF_8), "entry-" + entryId);
+                    found = true;
+                }
+                result.close();
+            }
+            assertTrue(found);
+        }
+
+        // Past the last add confirmed, only the last entry id is returned
+        LastConfirmedAndEntry result = handle.readLastAddConfirmedAndEntryAsync(25, 1000, false).get();
+        assertEquals(result.getLastAddConfirmed(), 24);
+        assertFalse(result.hasEntry());
+        result.close();
+
+        factory.shutdown();
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Random;
+import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
+import org.testng.annotations.Test;
+
+public class IndividualAckBitmapWriterTest {
+
+    private static PositionInfo.Builder position() {
+        return PositionInfo.newBuilder().setLedgerId(1).setEntryId(-1);
+    }
+
+    private static void ack(IndividualAckSet set, IndividualAckBitmapWriter writer, long ledgerId, long entryId) {
+        set.addOpenClosed(ledgerId, entryId - 1, ledgerId, entryId);
+        writer.markDirty(ledgerId, entryId);
+    }
+
+    @Test
+    public void testSnapshotAndDeltas() {
+        IndividualAckSet set = new BitSetIndividualAckSet();
+        IndividualAckBitmapWriter writer = new IndividualAckBitmapWriter(3);
+        List<PositionInfo> written = Lists.newArrayList();
+        List<Long> ledgerIds = Lists.newArrayList(1L, 2L);
+
+        ack(set, writer, 1, 0);
+        ack(set, writer, 1, 5);
+        ack(set, writer, 2, 10000);
+
+        // First write is a full snapshot
+        List<PositionInfo> entries = writer.buildEntries(100, position(), set, ledgerIds);
+        assertEquals(entries.size(), 1);
+        assertEquals(entries.get(0).getEntriesSinceAckSnapshot(), 0);
+        assertEquals(entries.get(0).getIndividualDeletedMessagesBitmapCount(), 2);
+        written.addAll(entries);
+
+        // Following writes only carry the modified chunks
+        ack(set, writer, 1, 6);
+        entries = writer.buildEntries(100, position(), set, ledgerIds);
+        assertEquals(entries.get(0).getEntriesSinceAckSnapshot(), 1);
+        assertEquals(entries.get(0).getIndividualDeletedMessagesBitmapCount(), 1);
+        written.addAll(entries);
+
+        entries = writer.buildEntries(100, position(), set, ledgerIds);
+        assertEquals(entries.get(0).getEntriesSinceAckSnapshot(), 2);
+        assertEquals(entries.get(0).getIndividualDeletedMessagesBitmapCount(), 0);
+        written.addAll(entries);
+
+        IndividualAckSet recovered = new BitSetIndividualAckSet();
+        IndividualAckBitmapWriter.recover(written, recovered);
+        assertEquals(recovered.toString(), set.toString());
+
+        // Snapshot after the interval, and on a new cursor ledger
+        entries = writer.buildEntries(100, position(), set, ledgerIds);
+        assertEquals(entries.get(0).getEntriesSinceAckSnapshot(), 0);
+        assertEquals(entries.get(0).getIndividualDeletedMessagesBitmapCount(), 2);
+        entries = writer.buildEntries(100, position(), set, ledgerIds);
+        assertEquals(entries.get(0).getEntriesSinceAckSnapshot(), 1);
+        entries = writer.buildEntries(101, position(), set, ledgerIds);
+        assertEquals(entries.get(0).getEntriesSinceAckSnapshot(), 0);
+        assertEquals(entries.get(0).getIndividualDeletedMessagesBitmapCount(), 2);
+    }
+
+    @Test
+    public void testRandomAcksSplitOverEntries() {
+        IndividualAckSet set = new BitSetIndividualAckSet();
+        IndividualAckBitmapWriter writer = new IndividualAckBitmapWriter(Integer.MAX_VALUE);
+        List<PositionInfo> written = Lists.newArrayList();
+        List<Long> ledgerIds = Lists.newArrayList(1L, 2L, 3L);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 300000; j++) {
+                ack(set, writer, 1 + random.nextInt(3), random.nextInt(4000000));
+            }
+            written.addAll(writer.buildEntries(100, position(), set, ledgerIds));
+        }
+
+        // The snapshot and the deltas don't fit in a single entry
+        assertTrue(written.size() > 2);
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.get(i).getEntriesSinceAckSnapshot(), i);
+            assertTrue(written.get(i).getSerializedSize() < 2 * IndividualAckBitmapWriter.MAX_CHUNKS_SIZE_PER_ENTRY);
+        }
+
+        IndividualAckSet recovered = new BitSetIndividualAckSet();
+        IndividualAckBitmapWriter.recover(written, recovered);
+        assertEquals(recovered.size(), set.size());
+        assertEquals(recovered.toString(), set.toString());
+    }
+
+    @Test
+    public void testRequireSnapshot() {
+        IndividualAckSet set = new TreeRangeIndividualAckSet();
+        IndividualAckBitmapWriter writer = new IndividualAckBitmapWriter(100);
+        List<Long> ledgerIds = Lists.newArrayList(1L);
+
+        ack(set, writer, 1, 3);
+        writer.buildEntries(100, position(), set, ledgerIds);
+
+        set.clear();
+        writer.requireSnapshot();
+        ack(set, writer, 1, 7);
+        List<PositionInfo> entries = writer.buildEntries(100, position(), set, ledgerIds);
+        assertEquals(entries.get(0).getEntriesSinceAckSnapshot(), 0);
+
+        IndividualAckSet recovered = new TreeRangeIndividualAckSet();
+        IndividualAckBitmapWriter.recover(entries, recovered);
+        assertFalse(recovered.contains(1, 3));
+        assertTrue(recovered.contains(1, 7));
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class IndividualAckSetTest {
+
+    @DataProvider(name = "ackSets")
+    public static Object[][] ackSets() {
+        return new Object[][] { { (Supplier<IndividualAckSet>) TreeRangeIndividualAckSet::new },
+                { (Supplier<IndividualAckSet>) BitSetIndividualAckSet::new },
+                { (Supplier<IndividualAckSet>) RunLengthIndividualAckSet::new } };
+    }
+
+    private static Range<PositionImpl> range(long lowerLedgerId, long lowerEntryId, long upperLedgerId,
+            long upperEntryId) {
+        return Range.openClosed(new PositionImpl(lowerLedgerId, lowerEntryId),
+                new PositionImpl(upperLedgerId, upperEntryId));
+    }
+
+    private static List<Range<PositionImpl>> ranges(IndividualAckSet set) {
+        List<Range<PositionImpl>> ranges = new ArrayList<>();
+        set.forEach((lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId) -> {
+            ranges.add(range(lowerLedgerId, lowerEntryId, upperLedgerId, upperEntryId));
+            return true;
+        });
+        return ranges;
+    }
+
+    @Test(dataProvider = "ackSets")
+    public void testAddAndContains(Supplier<IndividualAckSet> factory) {
+        IndividualAckSet set = factory.get();
+        assertTrue(set.isEmpty());
+        assertNull(set.firstRange());
+        assertNull(set.span());
+
+        set.addOpenClosed(1, 2, 1, 3);
+        set.addOpenClosed(1, 3, 1, 4);
+        set.addOpenClosed(1, 6, 1, 7);
+        set.addOpenClosed(2, 10, 2, 20);
+
+        assertFalse(set.isEmpty());
+        assertEquals(set.size(), 3);
+        assertFalse(set.contains(1, 2));
+        assertTrue(set.contains(1, 3));
+        assertTrue(set.contains(1, 4));
+        assertFalse(set.contains(1, 5));
+        assertTrue(set.contains(1, 7));
+        assertTrue(set.contains(2, 11));
+        assertTrue(set.contains(2, 20));
+        assertFalse(set.contains(2, 21));
+        assertFalse(set.contains(3, 11));
+
+        assertEquals(ranges(set), Lists.newArrayList(range(1, 2, 1, 4), range(1, 6, 1, 7), range(2, 10, 2, 20)));
+        assertEquals(set.firstRange(), range(1, 2, 1, 4));
+        assertEquals(set.span(), range(1, 2, 2, 20));
+        assertEquals(set.rangeContaining(2, 15), range(2, 10, 2, 20));
+        assertNull(set.rangeContaining(2, 21));
+        assertEquals(set.toString(), "[(1:2..1:4], (1:6..1:7], (2:10..2:20]]");
+
+        // Filling the hole merges the ranges
+        set.addOpenClosed(1, 4, 1, 5);
+        assertEquals(set.size(), 3);
+        set.addOpenClosed(1, 5, 1, 6);
+        assertEquals(set.size(), 2);
+        assertEquals(set.firstRange(), range(1, 2, 1, 7));
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertEquals(set.size(), 0);
+    }
+
+    @Test(dataProvider = "ackSets")
+    public void testRemoveAtMost(Supplier<IndividualAckSet> factory) {
+        IndividualAckSet set = factory.get();
+        set.addOpenClosed(1, 2, 1, 10);
+        set.addOpenClosed(1, 20, 1, 30);
+        set.addOpenClosed(2, 0, 2, 5);
+        set.addOpenClosed(3, 100, 3, 200);
+
+        set.removeAtMost(1, 5);
+        assertEquals(ranges(set), Lists.newArrayList(range(1, 5, 1, 10), range(1, 20, 1, 30), range(2, 0, 2, 5),
+                range(3, 100, 3, 200)));
+
+        set.removeAtMost(2, 3);
+        assertEquals(ranges(set), Lists.newArrayList(range(2, 3, 2, 5), range(3, 100, 3, 200)));
+        assertEquals(set.size(), 2);
+
+        set.removeAtMost(3, 200);
+        assertTrue(set.isEmpty());
+        assertEquals(set.size(), 0);
+    }
+
+    @Test(dataProvider = "ackSets")
+    public void testFirstEntryOfLedger(Supplier<IndividualAckSet> factory) {
+        IndividualAckSet set = factory.get();
+        // Range starting at the last entry of the previous ledger
+        set.addOpenClosed(1, 9, 2, 0);
+        assertTrue(set.contains(2, 0));
+        assertFalse(set.contains(1, 9));
+        assertEquals(set.size(), 1);
+        assertEquals(set.rangeContaining(2, 0).upperEndpoint(), new PositionImpl(2, 0));
+    }
+
+    @Test
+    public void testRandomAcks() {
+        IndividualAckSet expected = new TreeRangeIndividualAckSet();
+        BitSetIndividualAckSet set = new BitSetIndividualAckSet();
+        RunLengthIndividualAckSet runLengthSet = new RunLengthIndividualAckSet();
+
+        Random random = new Random(1);
+        long markDelete = -1;
+        for (int i = 0; i < 10_000; i++) {
+            long entryId = markDelete + 1 + random.nextInt(2_000);
+            expected.addOpenClosed(1, entryId - 1, 1, entryId);
+            set.addOpenClosed(1, entryId - 1, 1, entryId);
+            runLengthSet.addOpenClosed(1, entryId - 1, 1, entryId);
+
+            if (i % 100 == 0) {
+                markDelete += random.nextInt(200);
+                expected.removeAtMost(1, markDelete);
+                set.removeAtMost(1, markDelete);
+                runLengthSet.removeAtMost(1, markDelete);
+            }
+
+            assertEquals(set.size(), expected.size());
+            assertEquals(runLengthSet.size(), expected.size());
+        }
+
+        assertEquals(ranges(set), ranges(expected));
+        assertEquals(set.toString(), expected.toString());
+        assertEquals(set.firstRange(), expected.firstRange());
+        assertEquals(set.span(), expected.span());
+        assertEquals(ranges(runLengthSet), ranges(expected));
+        assertEquals(runLengthSet.span(), expected.span());
+        runLengthSet.close();
+
+        // A bit per entry between the mark-delete and the last deleted entry
+        assertTrue(set.getMemorySize() < 4 * (set.span().upperEndpoint().getEntryId() - markDelete) / 8 + 1024);
+    }
+
+    @Test
+    public void testMemoryIsReleasedOnMarkDelete() {
+        BitSetIndividualAckSet set = new BitSetIndividualAckSet();
+        for (long entryId = 1; entryId < 100_000; entryId += 2) {
+            set.addOpenClosed(1, entryId - 1, 1, entryId);
+        }
+        assertEquals(set.size(), 50_000);
+        long memorySize = set.getMemorySize();
+        assertTrue(memorySize >= 100_000 / 8);
+
+        set.removeAtMost(1, 90_000);
+        assertEquals(set.size(), 5_000);
+        assertTrue(set.getMemorySize() < memorySize / 2);
+
+        set.removeAtMost(2, 0);
+        assertEquals(set.getMemorySize(), 0);
+    }
+
+    @Test(dataProvider = "ackSets")
+    public void testRemoveLedger(Supplier<IndividualAckSet> factory) {
+        IndividualAckSet set = factory.get();
+        set.addOpenClosed(1, 2, 1, 5);
+        set.addOpenClosed(1, 7, 1, 9);
+        set.addOpenClosed(2, 3, 2, 4);
+
+        set.removeLedger(1);
+        assertEquals(set.size(), 1);
+        assertFalse(set.contains(1, 3));
+        assertFalse(set.contains(1, 8));
+        assertTrue(set.contains(2, 4));
+
+        set.removeLedger(2);
+        assertTrue(set.isEmpty());
+        assertEquals(set.getMemorySize(), 0);
+    }
+
+    @Test
+    public void testOverflowToRanges() {
+        IndividualAckSet expected = new TreeRangeIndividualAckSet();
+        BitSetIndividualAckSet set = new BitSetIndividualAckSet(16 * 1024);
+
+        for (long entryId = 1; entryId < 1000; entryId += 2) {
+            expected.addOpenClosed(1, entryId - 1, 1, entryId);
+            set.addOpenClosed(1, entryId - 1, 1, entryId);
+        }
+        assertFalse(set.isOverflowed());
+        assertTrue(set.getMemorySize() <= 1024);
+
+        // A far away entry would need a bitset bigger than the max memory size
+        expected.addOpenClosed(1, 9_999_999, 1, 10_000_000);
+        set.addOpenClosed(1, 9_999_999, 1, 10_000_000);
+        assertTrue(set.isOverflowed());
+        assertEquals(ranges(set), ranges(expected));
+        assertEquals(set.size(), expected.size());
+        assertTrue(set.contains(1, 10_000_000));
+        assertFalse(set.contains(1, 1000));
+        assertTrue(set.getMemorySize() <= 16 * 1024);
+        assertEquals(set.getDroppedRanges(), 0);
+
+        set.removeAtMost(1, 999);
+        assertTrue(set.isOverflowed());
+        assertEquals(set.size(), 1);
+
+        // Once empty, the set uses bitsets again
+        set.removeAtMost(1, 10_000_000);
+        assertFalse(set.isOverflowed());
+        assertTrue(set.isEmpty());
+        set.addOpenClosed(2, 0, 2, 1);
+        assertFalse(set.isOverflowed());
+        assertTrue(set.getMemorySize() > 0);
+
+        set.close();
+        assertTrue(set.isEmpty());
+        assertEquals(set.getMemorySize(), 0);
+    }
+
+    @Test
+    public void testMemoryIsBoundedOnceOverflowed() {
+        final long maxMemorySize = 1024;
+        BitSetIndividualAckSet set = new BitSetIndividualAckSet(maxMemorySize);
+
+        // Entries deleted far apart from each other, with more ranges than can fit in the max memory size
+        for (long entryId = 1; entryId < 100_000_000; entryId += 100_000) {
+            set.addOpenClosed(1, entryId - 1, 1, entryId);
+            assertTrue(set.getMemorySize() <= maxMemorySize, "memory: " + set.getMemorySize());
+        }
+        assertTrue(set.isOverflowed());
+        assertEquals(set.size() + set.getDroppedRanges(), 1000);
+
+        // The ranges closest to the mark-delete position are kept, the furthest ones are seen as not deleted
+        assertEquals(set.firstRange(), range(1, 0, 1, 1));
+        assertTrue(set.contains(1, (set.size() - 1) * 100_000L + 1));
+        assertFalse(set.contains(1, set.size() * 100_000L + 1));
+
+        // A range before the furthest one replaces it
+        long lastEntryId = set.span().upperEndpoint().getEntryId();
+        set.addOpenClosed(1, 49, 1, 50);
+        assertTrue(set.contains(1, 50));
+        assertFalse(set.contains(1, lastEntryId));
+        assertTrue(set.getMemorySize() <= maxMemorySize);
+
+        set.close();
+        assertEquals(set.getMemorySize(), 0);
+    }
+}
@@ -22,7 +22,9 @@ import static org.testng.Assert.*;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -173,6 +175,16 @@ public class ManagedCursorContainerTest {
         public void asyncDelete(Iterable<Position> position, DeleteCallback callback, Object ctx) {
         }
 
+        @Override
+        public void asyncDeleteBatchIndexes(Position position, int batchSize, BitSet batchIndexes,
+                DeleteCallback callback, Object ctx) {
+        }
+
+        @Override
+        public long[] getDeletedBatchIndexesAsLongArray(Position position) {
+            return null;
+        }
+
         @Override
         public void clearBacklog() throws InterruptedException, ManagedLedgerException {
         }
@@ -207,6 +219,11 @@ public class ManagedCursorContainerTest {
                 AsyncCallbacks.FindEntryCallback callback, Object ctx) {
         }
 
+        @Override
+        public void asyncFindNewestMatching(FindPositionConstraint constraint, Predicate<Entry> condition,
+                long timestamp, AsyncCallbacks.FindEntryCallback callback, Object ctx) {
+        }
+
         @Override
         public void asyncResetCursor(final Position position, AsyncCallbacks.ResetCursorCallback callback) {
 
@@ -233,6 +250,12 @@ public class ManagedCursorContainerTest {
             return Sets.newConcurrentHashSet();
         }
 
+        @Override
+        public Set<? extends Position> asyncReplayEntryRanges(List<Range<PositionImpl>> ranges,
+                ReadEntriesCallback callback, Object ctx) {
+            return Sets.newConcurrentHashSet();
+        }
+
         @Override
         public List<Entry> readEntriesOrWait(int numberOfEntriesToRead)
                 throws InterruptedException, ManagedLedgerException {
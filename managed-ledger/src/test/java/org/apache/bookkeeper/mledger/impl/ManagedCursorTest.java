@@ -27,14 +27,17 @@ import static org.testng.Assert.*;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
@@ -53,10 +56,12 @@ import org.apache.bookkeeper.client.LedgerEntry;
 import org.apache.bookkeeper.mledger.AsyncCallbacks;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.AddEntryCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.DeleteCallback;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.FindEntryCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.MarkDeleteCallback;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.mledger.Entry;
 import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedCursor.FindPositionConstraint;
 import org.apache.bookkeeper.mledger.ManagedCursor.IndividualDeletedEntries;
 import org.apache.bookkeeper.mledger.ManagedLedger;
 import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
@@ -71,6 +76,7 @@ import org.apache.bookkeeper.mledger.impl.MetaStore.Stat;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.ManagedCursorInfo;
 import org.apache.bookkeeper.mledger.proto.MLDataFormats.PositionInfo;
 import org.apache.bookkeeper.test.MockedBookKeeperTestCase;
+import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.InitialPosition;
 import org.apache.zookeeper.KeeperException.Code;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -1897,6 +1903,65 @@ public class ManagedCursorTest extends MockedBookKeeperTestCase {
                 lastPosition);
     }
 
+    @Test(timeOut = 20000)
+    void testFindNewestMatchingByTime() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(25)
+                .setTimeIndexIntervalEntries(10)
+                .setEntryTimestampExtractor(data -> Long.parseLong(data.toString(Encoding)));
+        ManagedLedger ledger = factory.open("testFindNewestMatchingByTime", config);
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+
+        List<Position> positions = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            positions.add(ledger.addEntry(Long.toString(i * 10).getBytes(Encoding)));
+        }
+
+        // Each search only checks the entries between 2 timestamps of the index
+        AtomicInteger checkedEntries = new AtomicInteger();
+        assertEquals(findNewestByTime(c1, 555, checkedEntries), positions.get(55));
+        assertTrue(checkedEntries.get() <= 10);
+        checkedEntries.set(0);
+        assertEquals(findNewestByTime(c1, 249, checkedEntries), positions.get(24));
+        assertTrue(checkedEntries.get() <= 10);
+        assertEquals(findNewestByTime(c1, 250, checkedEntries), positions.get(25));
+        assertEquals(findNewestByTime(c1, 5000, checkedEntries), positions.get(99));
+        assertNull(findNewestByTime(c1, -1, checkedEntries));
+
+        // Only consider the active entries
+        c1.markDelete(positions.get(60));
+        assertNull(findNewestByTime(c1, 555, checkedEntries));
+        assertEquals(findNewestByTime(c1, 615, checkedEntries), positions.get(61));
+
+        // The last ledger is not indexed after reopening, the search goes through all the entries
+        ledger.close();
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle());
+        ledger = factory2.open("testFindNewestMatchingByTime", config);
+        ManagedCursor c2 = ledger.openCursor("c2", InitialPosition.Earliest);
+        assertEquals(findNewestByTime(c2, 815, checkedEntries), c2.findNewestMatching(
+                entry -> Long.parseLong(new String(entry.getDataAndRelease(), Encoding)) <= 815));
+        factory2.shutdown();
+    }
+
+    private static Position findNewestByTime(ManagedCursor cursor, long timestamp, AtomicInteger checkedEntries)
+            throws Exception {
+        CompletableFuture<Position> future = new CompletableFuture<>();
+        cursor.asyncFindNewestMatching(FindPositionConstraint.SearchActiveEntries, entry -> {
+            checkedEntries.incrementAndGet();
+            return Long.parseLong(new String(entry.getDataAndRelease(), Encoding)) <= timestamp;
+        }, timestamp, new FindEntryCallback() {
+            @Override
+            public void findEntryComplete(Position position, Object ctx) {
+                future.complete(position);
+            }
+
+            @Override
+            public void findEntryFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+        return future.get();
+    }
+
     @Test(timeOut = 20000)
     void testIndividuallyDeletedMessages() throws Exception {
         ManagedLedger ledger = factory.open("testIndividuallyDeletedMessages");
@@ -2139,6 +2204,151 @@ public class ManagedCursorTest extends MockedBookKeeperTestCase {
         }
     }
 
+    @Test(timeOut = 20000)
+    void testDeleteBatchIndexes() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger");
+        ManagedCursor cursor = ledger.openCursor("c1");
+        Position p1 = ledger.addEntry("batch-1".getBytes(Encoding));
+        Position p2 = ledger.addEntry("batch-2".getBytes(Encoding));
+        final int batchSize = 10;
+
+        BitSet indexes = new BitSet();
+        indexes.set(1);
+        indexes.set(3);
+        deleteBatchIndexes(cursor, p2, batchSize, indexes);
+        indexes.clear();
+        indexes.set(5);
+        deleteBatchIndexes(cursor, p2, batchSize, indexes);
+
+        assertNull(cursor.getDeletedBatchIndexesAsLongArray(p1));
+        BitSet deleted = BitSet.valueOf(cursor.getDeletedBatchIndexesAsLongArray(p2));
+        assertEquals(deleted.toString(), "{1, 3, 5}");
+        assertEquals(cursor.getMarkDeletedPosition(), PositionImpl.get(p1.getLedgerId(), p1.getEntryId() - 1));
+
+        // The deleted indexes are recovered when the ledger is reopened
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle());
+        ledger = factory2.open("my_test_ledger");
+        cursor = ledger.openCursor("c1");
+        deleted = BitSet.valueOf(cursor.getDeletedBatchIndexesAsLongArray(p2));
+        assertEquals(deleted.toString(), "{1, 3, 5}");
+
+        // Deleting the remaining indexes deletes the entry
+        indexes.clear();
+        indexes.set(0, batchSize);
+        deleteBatchIndexes(cursor, p2, batchSize, indexes);
+        assertNull(cursor.getDeletedBatchIndexesAsLongArray(p2));
+        assertEquals(cursor.getNumberOfEntriesInBacklog(), 1);
+
+        cursor.delete(p1);
+        assertEquals(cursor.getMarkDeletedPosition(), p2);
+        assertEquals(cursor.getNumberOfEntriesInBacklog(), 0);
+
+        factory2.shutdown();
+    }
+
+    @Test(timeOut = 20000)
+    void testPersistedBatchIndexesAreBounded() throws Exception {
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxBatchDeletedIndexToPersist(2);
+        config.setMaxUnackedRangesToPersistInZk(1);
+        ManagedLedger ledger = factory.open("my_test_ledger", config);
+        ManagedCursorImpl cursor = (ManagedCursorImpl) ledger.openCursor("c1");
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            positions.add(ledger.addEntry(("batch-" + i).getBytes(Encoding)));
+        }
+        final int batchSize = 10;
+
+        BitSet indexes = new BitSet();
+        indexes.set(2);
+        deleteBatchIndexes(cursor, positions.get(1), batchSize, indexes);
+        // A single partially deleted batch fits in the metadata store
+        assertFalse(cursor.shouldPersistUnackRangesToLedger());
+
+        deleteBatchIndexes(cursor, positions.get(2), batchSize, indexes);
+        deleteBatchIndexes(cursor, positions.get(3), batchSize, indexes);
+        // The deleted indexes count towards the limit of the metadata store
+        assertTrue(cursor.shouldPersistUnackRangesToLedger());
+        ledger.close();
+
+        // Only the indexes of the oldest batches are persisted
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle());
+        ledger = factory2.open("my_test_ledger", config);
+        cursor = (ManagedCursorImpl) ledger.openCursor("c1");
+        assertEquals(BitSet.valueOf(cursor.getDeletedBatchIndexesAsLongArray(positions.get(1))).toString(), "{2}");
+        assertEquals(BitSet.valueOf(cursor.getDeletedBatchIndexesAsLongArray(positions.get(2))).toString(), "{2}");
+        assertNull(cursor.getDeletedBatchIndexesAsLongArray(positions.get(3)));
+        assertEquals(cursor.getNumberOfEntriesInBacklog(), 4);
+
+        factory2.shutdown();
+    }
+
+    private static void deleteBatchIndexes(ManagedCursor cursor, Position position, int batchSize, BitSet indexes)
+            throws Exception {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        cursor.asyncDeleteBatchIndexes(position, batchSize, indexes, new DeleteCallback() {
+            @Override
+            public void deleteComplete(Object ctx) {
+                future.complete(null);
+            }
+
+            @Override
+            public void deleteFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+        future.get();
+    }
+
+    @Test(timeOut = 20000)
+    void testReplayEntriesInRanges() throws Exception {
+        ManagedLedger ledger = factory.open("my_test_ledger_replay_ranges",
+                new ManagedLedgerConfig().setMaxEntriesPerLedger(4));
+
+        ManagedCursorImpl c1 = (ManagedCursorImpl) ledger.openCursor("c1");
+        List<PositionImpl> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            added.add((PositionImpl) ledger.addEntry(("entry" + i).getBytes(Encoding)));
+        }
+
+        // Consecutive entries, across ledgers and with holes, in no particular order
+        Set<PositionImpl> positions = Sets.newHashSet(added.get(6), added.get(1), added.get(2), added.get(3),
+                added.get(4), added.get(8));
+        c1.delete(added.get(8));
+
+        // The entries are returned in order, without the acknowledged one
+        List<Entry> entries = c1.replayEntries(positions);
+        assertEquals(entries.size(), 5);
+        String[] expected = { "entry1", "entry2", "entry3", "entry4", "entry6" };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(new String(entries.get(i).getData(), Encoding), expected[i]);
+        }
+        entries.forEach(Entry::release);
+
+        // Ranges are split around the acknowledged entries
+        c1.delete(added.get(5));
+        List<Range<PositionImpl>> ranges = Lists.newArrayList(Range.closed(added.get(1), added.get(3)),
+                Range.closed(added.get(4), added.get(6)));
+        CompletableFuture<List<Entry>> future = new CompletableFuture<>();
+        Set<? extends Position> skipped = c1.asyncReplayEntryRanges(ranges, new ReadEntriesCallback() {
+            @Override
+            public void readEntriesComplete(List<Entry> entries, Object ctx) {
+                future.complete(entries);
+            }
+
+            @Override
+            public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
+                future.completeExceptionally(exception);
+            }
+        }, null);
+        assertEquals(skipped, Sets.newHashSet(added.get(5)));
+        entries = future.get();
+        assertEquals(entries.size(), 5);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(new String(entries.get(i).getData(), Encoding), expected[i]);
+        }
+        entries.forEach(Entry::release);
+    }
+
     @Test(timeOut = 20000)
     void outOfOrderAcks() throws Exception {
         ManagedLedger ledger = factory.open("outOfOrderAcks");
@@ -2426,6 +2636,43 @@ public class ManagedCursorTest extends MockedBookKeeperTestCase {
         factory2.shutdown();
     }
 
+    @Test(timeOut = 20000)
+    public void testOutOfOrderDeletePersistenceAsBitmapAfterCrash() throws Exception {
+        final int totalAddEntries = 200;
+        ManagedLedgerConfig config = new ManagedLedgerConfig().setMaxEntriesPerLedger(30)
+                .setMaxUnackedRangesToPersist(10).setPersistIndividualAckAsBitmap(true)
+                .setIndividualAckSnapshotInterval(7);
+        ManagedLedger ledger = factory.open("my_test_ledger", config);
+
+        ManagedCursor c1 = ledger.openCursor("c1");
+        List<Position> addedPositions = new ArrayList<>();
+        for (int i = 0; i < totalAddEntries; i++) {
+            Position p = ledger.addEntry(("dummy-entry-" + i).getBytes(Encoding));
+            addedPositions.add(p);
+        }
+
+        // Acknowledge 1 message out of 2, leaving many more holes than the max number of ranges to persist
+        for (int i = 1; i < totalAddEntries; i += 2) {
+            c1.delete(addedPositions.get(i));
+        }
+        assertEquals(c1.getNumberOfEntriesInBacklog(), totalAddEntries / 2);
+
+        // Re-Open
+        ManagedLedgerFactory factory2 = new ManagedLedgerFactoryImpl(bkc, bkc.getZkHandle());
+        ledger = factory2.open("my_test_ledger", config);
+        c1 = ledger.openCursor("c1");
+        assertEquals(c1.getNumberOfEntriesInBacklog(), totalAddEntries / 2);
+
+        List<Entry> entries = c1.readEntries(totalAddEntries);
+        assertEquals(entries.size(), totalAddEntries / 2);
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(new String(entries.get(i).getDataAndRelease(), Encoding), "dummy-entry-" + (2 * i));
+        }
+
+        assertFalse(c1.hasMoreEntries());
+        factory2.shutdown();
+    }
+
     /**
      * <pre>
      * Verifies that {@link ManagedCursorImpl#createNewMetadataLedger()} cleans up orphan ledgers if fails to switch new
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.PulsarMockBookKeeper;
+import org.apache.bookkeeper.mledger.AsyncCallbacks.AddEntryCallback;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
+import org.apache.bookkeeper.mledger.ManagedLedgerException;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
+import org.apache.bookkeeper.mledger.Position;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.MockZooKeeper;
+import org.apache.zookeeper.ZooDefs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measure the adds per second on a single managed ledger, with and without concurrent cursor operations taking the
+ * managed ledger lock.
+ *
+ * <p/>Run with:
+ * <pre>
+ * mvn -pl managed-ledger test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.apache.bookkeeper.mledger.impl.ManagedLedgerAddBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ManagedLedgerAddBenchmark {
+
+    private static final int ADDS_PER_INVOCATION = 1000;
+    private static final byte[] PAYLOAD = new byte[1024];
+
+    @Param({ "false", "true" })
+    public boolean cursorContention;
+
+    private MockZooKeeper zkc;
+    private PulsarMockBookKeeper bkc;
+    private ExecutorService bkExecutor;
+    private ManagedLedgerFactoryImpl factory;
+    private ManagedLedger ledger;
+
+    private ExecutorService cursorExecutor;
+    private volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        zkc = MockZooKeeper.newInstance();
+        zkc.create("/managed-ledgers", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        bkExecutor = Executors.newSingleThreadExecutor();
+        bkc = new PulsarMockBookKeeper(zkc, bkExecutor);
+        factory = new ManagedLedgerFactoryImpl(bkc, zkc, new ManagedLedgerFactoryConfig());
+        ledger = factory.open("benchmark", new ManagedLedgerConfig().setMaxEntriesPerLedger(100_000));
+
+        running = true;
+        cursorExecutor = Executors.newSingleThreadExecutor();
+        if (cursorContention) {
+            cursorExecutor.execute(this::cursorOperations);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        running = false;
+        cursorExecutor.shutdown();
+        cursorExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        ledger.close();
+        factory.shutdown();
+        bkc.shutdown();
+        bkExecutor.shutdown();
+        zkc.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ADDS_PER_INVOCATION)
+    public void addEntries() throws Exception {
+        CountDownLatch latch = new CountDownLatch(ADDS_PER_INVOCATION);
+        AddEntryCallback callback = new AddEntryCallback() {
+            @Override
+            public void addComplete(Position position, Object ctx) {
+                latch.countDown();
+            }
+
+            @Override
+            public void addFailed(ManagedLedgerException exception, Object ctx) {
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < ADDS_PER_INVOCATION; i++) {
+            ledger.asyncAddEntry(PAYLOAD, callback, null);
+        }
+        latch.await();
+    }
+
+    /**
+     * Keep opening and deleting cursors, and reading the backlog, which all take the managed ledger lock.
+     */
+    private void cursorOperations() {
+        int i = 0;
+        while (running) {
+            try {
+                ManagedCursor cursor = ledger.openCursor("cursor-" + (i++));
+                ledger.getEstimatedBacklogSize();
+                ledger.deleteCursor(cursor.getName());
+            } catch (Exception e) {
+                // Keep going, the benchmark only measures the adds
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ManagedLedgerAddBenchmark.class.getSimpleName()).build()).run();
+    }
+}
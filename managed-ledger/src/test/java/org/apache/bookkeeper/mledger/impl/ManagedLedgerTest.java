@@ -71,6 +71,7 @@ import org.apache.bookkeeper.mledger.ManagedLedgerException.ManagedLedgerFencedE
 import org.apache.bookkeeper.mledger.ManagedLedgerException.ManagedLedgerNotFoundException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.MetaStoreException;
 import org.apache.bookkeeper.mledger.ManagedLedgerFactory;
+import org.apache.bookkeeper.mledger.ManagedLedgerFactoryConfig;
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.impl.MetaStore.MetaStoreCallback;
 import org.apache.bookkeeper.mledger.impl.MetaStore.Stat;
@@ -2158,6 +2159,173 @@ public class ManagedLedgerTest extends MockedBookKeeperTestCase {
         ledger.close();
     }
 
+    @Test(timeOut = 30000)
+    public void testAddEntriesWithConcurrentCursorOperations() throws Exception {
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testAddEntriesWithConcurrentCursorOperations",
+                new ManagedLedgerConfig().setMaxEntriesPerLedger(10));
+        ManagedCursor reader = ledger.openCursor("reader");
+        final int numEntries = 1000;
+
+        final AtomicInteger cursorsCount = new AtomicInteger();
+        final CountDownLatch cursorsDone = new CountDownLatch(1);
+        cachedExecutor.execute(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    ManagedCursor cursor = ledger.openCursor("c" + i);
+                    ledger.getEstimatedBacklogSize();
+                    ledger.deleteCursor(cursor.getName());
+                    cursorsCount.incrementAndGet();
+                }
+            } catch (Exception e) {
+                log.error("Failed cursor operation", e);
+            } finally {
+                cursorsDone.countDown();
+            }
+        });
+
+        final List<Position> positions = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch addsDone = new CountDownLatch(numEntries);
+        for (int i = 0; i < numEntries; i++) {
+            ledger.asyncAddEntry(("entry-" + i).getBytes(Encoding), new AddEntryCallback() {
+                @Override
+                public void addComplete(Position position, Object ctx) {
+                    positions.add(position);
+                    addsDone.countDown();
+                }
+
+                @Override
+                public void addFailed(ManagedLedgerException exception, Object ctx) {
+                    failures.incrementAndGet();
+                    addsDone.countDown();
+                }
+            }, null);
+        }
+
+        addsDone.await();
+        cursorsDone.await();
+        assertEquals(failures.get(), 0);
+        assertEquals(cursorsCount.get(), 100);
+        assertEquals(positions.size(), numEntries);
+
+        // The adds are completed in order, on ledgers rolled over every 10 entries
+        for (int i = 1; i < numEntries; i++) {
+            assertTrue(((PositionImpl) positions.get(i)).compareTo((PositionImpl) positions.get(i - 1)) > 0);
+        }
+        assertEquals(ledger.getNumberOfEntries(), numEntries);
+
+        for (int i = 0; i < numEntries; i += 100) {
+            List<Entry> entries = reader.readEntries(100);
+            assertEquals(entries.size(), 100);
+            assertEquals(new String(entries.get(0).getData(), Encoding), "entry-" + i);
+            entries.forEach(Entry::release);
+        }
+
+        ledger.close();
+    }
+
+    @Test(timeOut = 30000)
+    public void testConcurrentAddsWithRolloverAndClose() throws Exception {
+        ManagedLedgerImpl ledger = (ManagedLedgerImpl) factory.open("testConcurrentAddsWithRolloverAndClose",
+                new ManagedLedgerConfig().setMaxEntriesPerLedger(5));
+        ledger.openCursor("c1");
+        final int numThreads = 4;
+        final int numEntriesPerThread = 500;
+
+        final Set<Position> positions = Sets.newConcurrentHashSet();
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch addsDone = new CountDownLatch(numThreads * numEntriesPerThread);
+        final AddEntryCallback callback = new AddEntryCallback() {
+            @Override
+            public void addComplete(Position position, Object ctx) {
+                positions.add(position);
+                succeeded.incrementAndGet();
+                addsDone.countDown();
+            }
+
+            @Override
+            public void addFailed(ManagedLedgerException exception, Object ctx) {
+                failed.incrementAndGet();
+                addsDone.countDown();
+            }
+        };
+
+        final CyclicBarrier barrier = new CyclicBarrier(numThreads + 1);
+        for (int t = 0; t < numThreads; t++) {
+            cachedExecutor.execute(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                    return;
+                }
+                for (int i = 0; i < numEntriesPerThread; i++) {
+                    ledger.asyncAddEntry(("entry-" + i).getBytes(Encoding), callback, null);
+                }
+            });
+        }
+
+        // Close the managed ledger while the adds are sent and the ledgers are rolled over
+        barrier.await();
+        while (succeeded.get() < 100) {
+            Thread.sleep(1);
+        }
+        ledger.close();
+
+        // Every add completes, either written or failed because the managed ledger was closed
+        addsDone.await();
+        assertEquals(succeeded.get() + failed.get(), numThreads * numEntriesPerThread);
+        assertEquals(positions.size(), succeeded.get());
+        assertTrue(ledger.getLedgersInfoAsList().size() > 1);
+
+        // The written entries were persisted
+        ManagedLedgerImpl reopened = (ManagedLedgerImpl) factory.open("testConcurrentAddsWithRolloverAndClose");
+        assertTrue(reopened.getNumberOfEntries() >= succeeded.get());
+        reopened.close();
+    }
+
+    @Test(timeOut = 30000)
+    public void testPipelinedRecovery() throws Exception {
+        ManagedLedger ledger = factory.open("testPipelinedRecovery",
+                new ManagedLedgerConfig().setMaxEntriesPerLedger(5));
+        final int numCursors = 6;
+        List<ManagedCursor> cursors = new ArrayList<>();
+        for (int i = 0; i < numCursors; i++) {
+            cursors.add(ledger.openCursor("c" + i));
+        }
+
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            positions.add(ledger.addEntry(("entry-" + i).getBytes(Encoding)));
+        }
+
+        for (int i = 0; i < numCursors; i++) {
+            cursors.get(i).markDelete(positions.get(i * 3 + 1));
+        }
+
+        // Re-open the managed ledger from a new factory, without closing it first
+        ManagedLedgerFactoryConfig config = new ManagedLedgerFactoryConfig();
+        config.setPipelinedRecoveryEnabled(true);
+        config.setMaxConcurrentCursorRecoveries(2);
+        ManagedLedgerFactoryImpl factory2 = new ManagedLedgerFactoryImpl(bkc, zkc, config);
+
+        ManagedLedgerImpl ledger2 = (ManagedLedgerImpl) factory2.open("testPipelinedRecovery",
+                new ManagedLedgerConfig().setMaxEntriesPerLedger(5));
+        assertEquals(ledger2.getNumberOfEntries(), 20);
+        for (int i = 0; i < numCursors; i++) {
+            ManagedCursor cursor = ledger2.openCursor("c" + i);
+            assertEquals(cursor.getMarkDeletedPosition(), positions.get(i * 3 + 1));
+            assertEquals(cursor.getNumberOfEntries(), 20 - i * 3 - 2);
+        }
+
+        factory2.mbean.refreshStats(1, TimeUnit.SECONDS);
+        assertEquals(factory2.mbean.recoveryLatency.getCount(), 1);
+        assertEquals(factory2.mbean.getPendingCursorRecoveries(), 0);
+
+        ledger2.close();
+        factory2.shutdown();
+    }
+
     public ByteBuf getMessageWithMetadata(byte[] data) throws IOException {
         MessageMetadata messageData = MessageMetadata.newBuilder().setPublishTime(System.currentTimeMillis())
                 .setProducerName("prod-name").setSequenceId(0).build();
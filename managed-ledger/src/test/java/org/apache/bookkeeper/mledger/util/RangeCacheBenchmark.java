@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.util;
+
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare {@link RangeCache} and {@link SegmentedRangeCache} when used as managed ledger entry cache.
+ *
+ * <p/>Run with:
+ * <pre>
+ * mvn -pl managed-ledger test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.apache.bookkeeper.mledger.util.RangeCacheBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RangeCacheBenchmark {
+
+    private static final int ENTRIES_PER_LEDGER = 10_000;
+    private static final int ENTRY_SIZE = 1024;
+    private static final int READ_BATCH_SIZE = 100;
+
+    @Param({ "RangeCache", "SegmentedRangeCache" })
+    public String cacheType;
+
+    @Param({ "10" })
+    public int numLedgers;
+
+    @Benchmark
+    public long insert(EmptyCache empty) {
+        fill(empty.cache, numLedgers);
+        return empty.cache.getSize();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public int getRange(FilledCache filled) {
+        int found = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 1000; i++) {
+            long ledgerId = random.nextInt(numLedgers);
+            long firstEntry = random.nextInt(ENTRIES_PER_LEDGER - READ_BATCH_SIZE);
+            Collection<Value> values = filled.cache.getRange(ledgerId, firstEntry, firstEntry + READ_BATCH_SIZE - 1);
+            found += values.size();
+            values.forEach(Value::release);
+        }
+        return found;
+    }
+
+    @Benchmark
+    public long evict(EmptyCache empty) {
+        fill(empty.cache, numLedgers);
+        long evicted = 0;
+        while (empty.cache.getSize() > 0) {
+            evicted += empty.cache.evict(ENTRIES_PER_LEDGER * ENTRY_SIZE / 4);
+        }
+        return evicted;
+    }
+
+    /**
+     * New empty cache for each invocation, used for the insert and evict benchmarks.
+     */
+    @State(Scope.Thread)
+    public static class EmptyCache {
+        EntryCacheAdapter cache;
+
+        @Setup(Level.Invocation)
+        public void setup(RangeCacheBenchmark benchmark) {
+            cache = newCache(benchmark.cacheType);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Cache pre-filled once per trial, used for the read benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class FilledCache {
+        EntryCacheAdapter cache;
+
+        @Setup(Level.Trial)
+        public void setup(RangeCacheBenchmark benchmark) {
+            cache = newCache(benchmark.cacheType);
+            fill(cache, benchmark.numLedgers);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            cache.clear();
+        }
+    }
+
+    private static EntryCacheAdapter newCache(String cacheType) {
+        return "RangeCache".equals(cacheType) ? new RangeCacheAdapter() : new SegmentedRangeCacheAdapter();
+    }
+
+    private static void fill(EntryCacheAdapter cache, int numLedgers) {
+        for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+            for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                cache.put(ledgerId, entryId, new Value());
+            }
+        }
+    }
+
+    static class Value extends AbstractReferenceCounted {
+        @Override
+        protected void deallocate() {
+            // no-op
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
+    interface EntryCacheAdapter {
+        void put(long ledgerId, long entryId, Value value);
+
+        Collection<Value> getRange(long ledgerId, long firstEntry, long lastEntry);
+
+        long evict(long sizeToFree);
+
+        long getSize();
+
+        void clear();
+    }
+
+    static class RangeCacheAdapter implements EntryCacheAdapter {
+        private final RangeCache<PositionImpl, Value> cache = new RangeCache<>(value -> ENTRY_SIZE);
+
+        public void put(long ledgerId, long entryId, Value value) {
+            cache.put(PositionImpl.get(ledgerId, entryId), value);
+        }
+
+        public Collection<Value> getRange(long ledgerId, long firstEntry, long lastEntry) {
+            return cache.getRange(PositionImpl.get(ledgerId, firstEntry), PositionImpl.get(ledgerId, lastEntry));
+        }
+
+        public long evict(long sizeToFree) {
+            return cache.evictLeastAccessedEntries(sizeToFree).getRight();
+        }
+
+        public long getSize() {
+            return cache.getSize();
+        }
+
+        public void clear() {
+            cache.clear();
+        }
+    }
+
+    static class SegmentedRangeCacheAdapter implements EntryCacheAdapter {
+        private final SegmentedRangeCache<Value> cache = new SegmentedRangeCache<>(value -> ENTRY_SIZE);
+
+        public void put(long ledgerId, long entryId, Value value) {
+            cache.put(ledgerId, entryId, value);
+        }
+
+        public Collection<Value> getRange(long ledgerId, long firstEntry, long lastEntry) {
+            return cache.getRange(ledgerId, firstEntry, lastEntry);
+        }
+
+        public long evict(long sizeToFree) {
+            return cache.evictLeastAccessedEntries(sizeToFree).getRight();
+        }
+
+        public long getSize() {
+            return cache.getSize();
+        }
+
+        public void clear() {
+            cache.clear();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RangeCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare {@link Rate}, which computes the rates from the difference of its counters, with the previous
+ * implementation resetting its counters at every calculation.
+ *
+ * <p/>{@code recordEvent} measures the hot path shared by several threads, {@code calculateRates} measures the
+ * periodic stats update of a broker with {@code numTopics} topics, each with one producer and one consumer rate.
+ *
+ * <p/>Run with:
+ * <pre>
+ * mvn -pl managed-ledger test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.apache.bookkeeper.mledger.util.RateBenchmark
+ * </pre>
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateBenchmark {
+
+    @Param({ "Rate", "ResettingRate" })
+    public String rateType;
+
+    @Param({ "100000" })
+    public int numTopics;
+
+    private RateAdapter sharedRate;
+    private RateAdapter[] topicRates;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sharedRate = newRate(rateType);
+        topicRates = new RateAdapter[numTopics * 2];
+        for (int i = 0; i < topicRates.length; i++) {
+            topicRates[i] = newRate(rateType);
+            topicRates[i].recordEvent(1024);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(4)
+    public void recordEvent() {
+        sharedRate.recordEvent(1024);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double calculateRates() {
+        double total = 0;
+        for (RateAdapter rate : topicRates) {
+            rate.recordEvent(1024);
+            rate.calculateRate(60);
+            total += rate.getRate();
+        }
+        return total;
+    }
+
+    private static RateAdapter newRate(String rateType) {
+        return "Rate".equals(rateType) ? new RateImplAdapter() : new ResettingRate();
+    }
+
+    interface RateAdapter {
+        void recordEvent(long value);
+
+        void calculateRate(double period);
+
+        double getRate();
+    }
+
+    static class RateImplAdapter implements RateAdapter {
+        private final Rate rate = new Rate();
+
+        public void recordEvent(long value) {
+            rate.recordEvent(value);
+        }
+
+        public void calculateRate(double period) {
+            rate.calculateRate(period);
+        }
+
+        public double getRate() {
+            return rate.getRate();
+        }
+    }
+
+    /**
+     * The previous implementation of {@link Rate}, resetting its counters at every calculation.
+     */
+    static class ResettingRate implements RateAdapter {
+        private final LongAdder valueAdder = new LongAdder();
+        private final LongAdder countAdder = new LongAdder();
+        private long count = 0;
+        private double rate = 0.0d;
+        private double valueRate = 0.0d;
+        private double averageValue = 0.0d;
+
+        public void recordEvent(long value) {
+            valueAdder.add(value);
+            countAdder.increment();
+        }
+
+        public void calculateRate(double period) {
+            count = countAdder.sumThenReset();
+            long sum = valueAdder.sumThenReset();
+            averageValue = count != 0 ? sum / count : 0.0d;
+            rate = count / period;
+            valueRate = sum / period;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RateBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+public class RateTest {
+
+    @Test
+    public void testCalculateRate() {
+        Rate rate = new Rate();
+        rate.recordEvent(100);
+        rate.recordMultipleEvents(3, 500);
+
+        rate.calculateRate(2);
+        assertEquals(rate.getCount(), 4);
+        assertEquals(rate.getRate(), 2.0);
+        assertEquals(rate.getValueRate(), 300.0);
+        assertEquals(rate.getAverageValue(), 150.0);
+
+        // Only the events recorded since the previous calculation are accounted
+        rate.recordEvent(50);
+        rate.calculateRate(1);
+        assertEquals(rate.getCount(), 1);
+        assertEquals(rate.getRate(), 1.0);
+        assertEquals(rate.getValueRate(), 50.0);
+
+        rate.calculateRate(1);
+        assertEquals(rate.getCount(), 0);
+        assertEquals(rate.getRate(), 0.0);
+        assertEquals(rate.getAverageValue(), 0.0);
+
+        assertEquals(rate.getTotalCount(), 5);
+        assertEquals(rate.getTotalValue(), 650);
+    }
+
+    @Test
+    public void testNoEventLostWhileCalculating() throws Exception {
+        final int numThreads = 4;
+        final int eventsPerThread = 100_000;
+        Rate rate = new Rate();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = Lists.newArrayList();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < eventsPerThread; j++) {
+                        rate.recordEvent(2);
+                    }
+                }));
+            }
+
+            long count = 0;
+            boolean done = false;
+            while (!done) {
+                done = futures.stream().allMatch(Future::isDone);
+                rate.calculateRate(1);
+                count += rate.getCount();
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            rate.calculateRate(1);
+            count += rate.getCount();
+
+            assertEquals(count, numThreads * eventsPerThread);
+            assertEquals(rate.getTotalValue(), 2L * numThreads * eventsPerThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.mledger.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import com.google.common.collect.Lists;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.annotations.Test;
+
+@Test
+public class SegmentedRangeCacheTest {
+
+    class RefString extends AbstractReferenceCounted implements ReferenceCounted {
+        final String s;
+
+        RefString(String s) {
+            super();
+            this.s = s;
+            setRefCnt(1);
+        }
+
+        @Override
+        protected void deallocate() {
+            // no-op
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof RefString) {
+                return this.s.equals(((RefString) obj).s);
+            } else if (obj instanceof String) {
+                return this.s.equals((String) obj);
+            }
+
+            return false;
+        }
+    }
+
+    @Test
+    void simple() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> 1);
+
+        cache.put(1, 0, new RefString("0"));
+        cache.put(1, 1, new RefString("1"));
+
+        assertEquals(cache.getSize(), 2);
+        assertEquals(cache.getNumberOfEntries(), 2);
+
+        RefString s = cache.get(1, 0);
+        assertEquals(s.s, "0");
+        assertEquals(s.refCnt(), 2);
+        s.release();
+
+        assertEquals(cache.get(1, 2), null);
+        assertEquals(cache.get(2, 0), null);
+
+        cache.put(1, 2, new RefString("2"));
+        cache.put(2, 0, new RefString("2:0"));
+        cache.put(2, 1, new RefString("2:1"));
+
+        assertEquals(cache.getSize(), 5);
+        assertEquals(cache.getNumberOfEntries(), 5);
+
+        assertEquals(cache.removeUpTo(1, 1), Pair.of(2, 2L));
+        assertEquals(cache.getSize(), 3);
+        assertEquals(cache.getNumberOfEntries(), 3);
+
+        assertEquals(cache.removeUpTo(2, 0), Pair.of(2, 2L));
+        assertEquals(cache.getSize(), 1);
+        assertEquals(cache.get(2, 1).s, "2:1");
+
+        assertEquals(cache.removeSegment(2), Pair.of(1, 1L));
+        assertEquals(cache.getSize(), 0);
+        assertEquals(cache.getNumberOfEntries(), 0);
+
+        assertEquals(cache.removeSegment(2), Pair.of(0, 0L));
+    }
+
+    @Test
+    void doubleInsert() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> 1);
+
+        RefString s0 = new RefString("zero");
+        assertTrue(cache.put(1, 0, s0));
+        assertEquals(s0.refCnt(), 1);
+        cache.put(1, 1, new RefString("one"));
+
+        RefString s1 = new RefString("uno");
+        assertFalse(cache.put(1, 1, s1));
+        assertEquals(s1.refCnt(), 1);
+        s1.release();
+
+        // Should not have been overridden in cache
+        assertEquals(cache.getSize(), 2);
+        assertEquals(cache.get(1, 1).s, "one");
+
+        // Entries can be inserted again after being removed
+        cache.removeUpTo(1, 0);
+        assertEquals(cache.getSize(), 1);
+        assertTrue(cache.put(1, 0, new RefString("zero")));
+        assertEquals(cache.getSize(), 2);
+        assertEquals(cache.get(1, 0).s, "zero");
+    }
+
+    @Test
+    void outOfOrderInsert() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> 1);
+
+        assertTrue(cache.put(1, 100, new RefString("100")));
+        assertTrue(cache.put(1, 101, new RefString("101")));
+        assertTrue(cache.put(1, 10, new RefString("10")));
+        assertTrue(cache.put(1, 50, new RefString("50")));
+
+        assertEquals(cache.getNumberOfEntries(), 4);
+        assertEquals(cache.getRange(1, 0, 200), Lists.newArrayList(new RefString("10"), new RefString("50"),
+                new RefString("100"), new RefString("101")));
+
+        assertEquals(cache.removeUpTo(1, 50), Pair.of(2, 2L));
+        assertEquals(cache.getRange(1, 0, 200), Lists.newArrayList(new RefString("100"), new RefString("101")));
+    }
+
+    @Test
+    void removeRange() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> 1);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(1, i, new RefString(Integer.toString(i)));
+        }
+
+        // Middle of the segment
+        assertEquals(cache.removeRange(1, 3, 5), Pair.of(3, 3L));
+        assertEquals(cache.getRange(1, 2, 6), Lists.newArrayList(new RefString("2"), new RefString("6")));
+
+        // Tail of the segment, the freed slots can be filled again
+        assertEquals(cache.removeRange(1, 8, 20), Pair.of(2, 2L));
+        assertTrue(cache.put(1, 9, new RefString("9")));
+        assertTrue(cache.put(1, 4, new RefString("4")));
+
+        // Head of the segment
+        assertEquals(cache.removeRange(1, 0, 1), Pair.of(2, 2L));
+        assertEquals(cache.removeRange(2, 0, 1), Pair.of(0, 0L));
+
+        assertEquals(cache.getRange(1, 0, 20), Lists.newArrayList(new RefString("2"), new RefString("4"),
+                new RefString("6"), new RefString("7"), new RefString("9")));
+        assertEquals(cache.getSize(), 5);
+    }
+
+    @Test
+    void getRange() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> 1);
+
+        cache.put(1, 0, new RefString("0"));
+        cache.put(1, 1, new RefString("1"));
+        cache.put(1, 3, new RefString("3"));
+        cache.put(1, 5, new RefString("5"));
+        cache.put(2, 0, new RefString("2:0"));
+
+        assertEquals(cache.getRange(1, 1, 8),
+                Lists.newArrayList(new RefString("1"), new RefString("3"), new RefString("5")));
+
+        cache.put(1, 8, new RefString("8"));
+        assertEquals(cache.getRange(1, 1, 8),
+                Lists.newArrayList(new RefString("1"), new RefString("3"), new RefString("5"), new RefString("8")));
+        assertEquals(cache.getRange(1, 9, 20), Lists.newArrayList());
+        assertEquals(cache.getRange(3, 0, 20), Lists.newArrayList());
+        assertEquals(cache.getRange(2, 0, 20), Lists.newArrayList(new RefString("2:0")));
+
+        cache.clear();
+        assertEquals(cache.getSize(), 0);
+        assertEquals(cache.getNumberOfEntries(), 0);
+    }
+
+    @Test
+    void segmentGrowth() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> 1);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(1, i, new RefString(Integer.toString(i)));
+        }
+        assertEquals(cache.getNumberOfEntries(), 1000);
+
+        // Drop the head and keep appending, the evicted prefix gets compacted
+        cache.removeUpTo(1, 899);
+        for (int i = 1000; i < 2000; i++) {
+            cache.put(1, i, new RefString(Integer.toString(i)));
+        }
+        assertEquals(cache.getNumberOfEntries(), 1100);
+        assertEquals(cache.getSize(), 1100);
+        assertEquals(cache.get(1, 899), null);
+        assertEquals(cache.get(1, 900).s, "900");
+        assertEquals(cache.get(1, 1999).s, "1999");
+        assertEquals(cache.getRange(1, 1500, 1509).size(), 10);
+
+        // Once empty, the segment is rebased on the next inserted entry
+        cache.removeUpTo(1, 1999);
+        assertTrue(cache.put(1, 1_000_000, new RefString("1000000")));
+        assertEquals(cache.get(1, 1_000_000).s, "1000000");
+    }
+
+    @Test
+    void sparseOffsets() {
+        AtomicLong evictedSize = new AtomicLong();
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> 1, evictedSize::addAndGet);
+
+        RefString s0 = new RefString("0");
+        cache.put(1, 0, s0);
+        cache.put(1, 1, new RefString("1"));
+
+        // A value far after the last one replaces the values of the segment instead of bridging the gap
+        assertTrue(cache.put(1, 1_000_000, new RefString("1000000")));
+        assertEquals(s0.refCnt(), 0);
+        assertEquals(evictedSize.get(), 2);
+        assertEquals(cache.get(1, 0), null);
+        assertEquals(cache.getNumberOfEntries(), 1);
+        assertEquals(cache.getSize(), 1);
+
+        // Gaps up to the max are bridged
+        long bridged = 1_000_000 + SegmentedRangeCache.MAX_SEGMENT_GAP;
+        assertTrue(cache.put(1, bridged, new RefString("bridged")));
+        assertTrue(cache.put(1, 1_000_000 - 10, new RefString("999990")));
+        assertEquals(cache.getNumberOfEntries(), 3);
+        assertEquals(cache.getSize(), 3);
+
+        // A value far before the first one is not cached
+        RefString old = new RefString("old");
+        assertFalse(cache.put(1, 1_000_000 - 10 * SegmentedRangeCache.MAX_SEGMENT_GAP, old));
+        assertEquals(old.refCnt(), 1);
+        assertEquals(cache.getRange(1, 0, bridged), Lists.newArrayList(new RefString("999990"),
+                new RefString("1000000"), new RefString("bridged")));
+        assertEquals(cache.getSize(), 3);
+    }
+
+    @Test
+    void eviction() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> value.s.length());
+
+        cache.put(1, 0, new RefString("zero"));
+        cache.put(1, 1, new RefString("one"));
+        cache.put(2, 0, new RefString("two"));
+        cache.put(2, 1, new RefString("three"));
+
+        // Entries are evicted from the head of the oldest ledger
+        assertEquals(cache.evictLeastAccessedEntries(5), Pair.of(2, (long) 7));
+
+        assertEquals(cache.getNumberOfEntries(), 2);
+        assertEquals(cache.getSize(), 8);
+        assertEquals(cache.get(1, 0), null);
+        assertEquals(cache.get(1, 1), null);
+        assertEquals(cache.get(2, 0).s, "two");
+        assertEquals(cache.get(2, 1).s, "three");
+
+        // Partial eviction of the head of the segment
+        assertEquals(cache.evictLeastAccessedEntries(2), Pair.of(1, (long) 3));
+        assertEquals(cache.getSize(), 5);
+
+        // The remaining ledger fits in the size to free and is dropped entirely
+        assertEquals(cache.evictLeastAccessedEntries(100), Pair.of(1, (long) 5));
+        assertEquals(cache.getNumberOfEntries(), 0);
+        assertEquals(cache.getSize(), 0);
+
+        try {
+            cache.evictLeastAccessedEntries(0);
+            fail("should throw exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @Test
+    void releaseOnRemoval() {
+        SegmentedRangeCache<RefString> cache = new SegmentedRangeCache<>(value -> 1);
+
+        RefString s0 = new RefString("0");
+        RefString s1 = new RefString("1");
+        cache.put(1, 0, s0);
+        cache.put(2, 0, s1);
+
+        cache.removeSegment(1);
+        assertEquals(s0.refCnt(), 0);
+
+        cache.clear();
+        assertEquals(s1.refCnt(), 0);
+    }
+}
@@ -177,6 +177,48 @@ public class ServiceConfiguration implements PulsarConfiguration {
     // don't have backlog. This enables dispatch-throttling for non-backlog consumers as well.
     @FieldContext(dynamic = true)
     private boolean dispatchThrottlingOnNonBacklogConsumerEnabled = false;
+    // Default number of messages per second every topic can publish, when the namespace doesn't configure a publish
+    // rate. Once a topic exceeds it, the broker stops reading from the connections of its producers until the next
+    // second. Using a value of 0, is disabling default message publish-throttling
+    private int maxPublishRatePerTopicInMessages = 0;
+    // Default number of message-bytes per second every topic can publish, when the namespace doesn't configure a
+    // publish rate. Using a value of 0, is disabling default message-byte publish-throttling
+    private long maxPublishRatePerTopicInBytes = 0;
+    // Interval at which the publish rate of the topics is compared to their publish-throttling limit. A shorter tick
+    // stops the producers closer to the limit
+    private int topicPublisherThrottlingTickTimeMillis = 5;
+    // Class implementing org.apache.pulsar.broker.service.ConsumerSelector used to pick the consumer of a shared
+    // subscription that messages are dispatched to. Leave empty to dispatch to consumers in round robin.
+    // org.apache.pulsar.broker.service.LeastOutstandingConsumerSelector prefers the consumers with the least unacked
+    // messages, weighted by their ack latency. Only applies to persistent topics: the consumers of non-persistent
+    // topics never acknowledge messages, so they are always dispatched to in round robin
+    private String sharedSubscriptionConsumerSelectorClassName = "";
+    // Whether the messages published with a delivery time are held by shared subscriptions until that time
+    private boolean delayedDeliveryEnabled = true;
+    // Granularity of the delivery time of delayed messages: the dispatcher wakes up at most once per tick to deliver
+    // the messages that became due
+    private long delayedDeliveryTickTimeMillis = 1000;
+    // Max number of delayed messages a subscription keeps track of, at 24 bytes of direct memory per message. When it
+    // is reached, the subscription stops reading until some of the delayed messages are due. 0 means no limit
+    private long delayedDeliveryMaxMessagesPerSubscription = 1000000;
+    // Max number of positions a shared subscription keeps to replay, eg: the unacked messages of disconnected
+    // consumers. Above it, the cursor is rewound and the messages are read again from the mark-delete position, which
+    // redelivers the messages pending on the connected consumers. 0 means no limit
+    private long dispatcherMaxMessagesToReplay = 0;
+    // Max number of entries an exclusive or failover subscription reads from the cursor in one go
+    private int dispatcherMaxReadBatchSize = 100;
+    // Target size in bytes of an exclusive or failover subscription read: the number of entries to read is sized on
+    // the average size of the entries read so far. 0 always reads dispatcherMaxReadBatchSize entries
+    private long dispatcherMaxReadSizeBytes = 5 * 1024 * 1024;
+    // Max number of bytes an exclusive or failover subscription keeps dispatched but not yet written to the consumer
+    // connection. When set, the next read is issued as soon as the previous entries are handed to the consumer instead
+    // of after they are written, so that reads overlap the writes. 0 disables read pipelining
+    private long dispatcherMaxPendingWriteBytes = 0;
+    // Delay before redelivering a negatively acknowledged message. It doubles with each redelivery of the same
+    // message, up to negativeAckMaxRedeliveryDelayMs. 0 redelivers negatively acknowledged messages immediately
+    private long negativeAckRedeliveryDelayMs = 1000;
+    // Max delay before redelivering a negatively acknowledged message
+    private long negativeAckMaxRedeliveryDelayMs = 60000;
     // Max number of concurrent lookup request broker allows to throttle heavy incoming lookup traffic
     @FieldContext(dynamic = true)
     private int maxConcurrentLookupRequest = 50000;
@@ -185,6 +227,13 @@ public class ServiceConfiguration implements PulsarConfiguration {
     private int maxConcurrentTopicLoadRequest = 5000;
     // Max concurrent non-persistent message can be processed per connection
     private int maxConcurrentNonPersistentMessagePerConnection = 1000;
+    // Max size of the messages, across all the connections of the broker, that have been received from producers and
+    // are not persisted yet. Once it's reached, the broker stops reading from the connections which publish messages,
+    // until the size of the pending messages goes down to half of it. -1 (default) uses half of the max direct memory
+    // of the broker. Using a value of 0, is disabling the limit
+    private int maxMessagePublishBufferSizeInMB = -1;
+    // Interval at which the size of the pending published messages is compared to maxMessagePublishBufferSizeInMB
+    private long messagePublishBufferCheckIntervalInMillis = 100;
     // Number of worker threads to serve non-persistent topic
     private int numWorkerThreadsForNonPersistentTopic = 8;
 
@@ -335,6 +384,25 @@ public class ServiceConfiguration implements PulsarConfiguration {
     private int managedLedgerCacheSizeMB = 1024;
     // Threshold to which bring down the cache level when eviction is triggered
     private double managedLedgerCacheEvictionWatermark = 0.9f;
+    // Store cached entries in per-ledger segments indexed by entry id rather than in a single sorted map
+    private boolean managedLedgerCacheSegmentedEnabled = false;
+    // Whether reads of entries missing from the cache should share the bookie reads already in flight for the same
+    // range, e.g. when several subscriptions are replaying the same backlog
+    private boolean managedLedgerCacheReadCoalescingEnabled = false;
+    // Whether to evict the cached entries based on how often and how recently they are read (segmented LRU), instead of
+    // evicting proportionally from the biggest topic caches
+    private boolean managedLedgerCacheEvictionSegmentedLruEnabled = false;
+    // With the segmented LRU cache eviction, reads by cursors more than this number of entries behind the last
+    // published entry are not accounted as cache accesses, so that replaying a backlog doesn't keep cold entries in the
+    // cache
+    private long managedLedgerCacheAdmissionMaxBacklogEntries = 10000;
+    // Whether to read the cursors metadata of a managed ledger while its ledgers are still being recovered, instead of
+    // waiting for the ledgers recovery to complete before starting the cursors recovery
+    private boolean managedLedgerPipelinedRecoveryEnabled = false;
+    // Max number of cursors that can be recovering concurrently across all the managed ledgers of the broker. This
+    // avoids overloading the metadata store and the bookies when many topics are loaded at once. (0 to disable the
+    // limit)
+    private int managedLedgerMaxConcurrentCursorRecoveries = 0;
     // Rate limit the amount of writes per second generated by consumer acking the messages
     private double managedLedgerDefaultMarkDeleteRateLimit = 1.0;
 
@@ -371,6 +439,46 @@ public class ServiceConfiguration implements PulsarConfiguration {
     // than this limit then broker will persist unacked ranges into bookkeeper to avoid additional data overhead into
     // zookeeper.
     private int managedLedgerMaxUnackedRangesToPersistInZooKeeper = 1000;
+    // Max number of partially acknowledged batch messages whose deleted batch indexes are going to be persistently
+    // stored. After this limit is reached, the indexes of the following batches will only be tracked in memory and
+    // the whole batches will be redelivered in case of crashes.
+    private int managedLedgerMaxBatchDeletedIndexToPersist = 10000;
+    // Persist the acknowledgment holes into the cursor ledger as compressed bitmaps, written as deltas with periodic
+    // full snapshots. The whole acknowledgment state is recovered regardless of managedLedgerMaxUnackedRangesToPersist.
+    // Brokers that don't support this format will only recover the mark-delete position.
+    private boolean managedLedgerPersistUnackedRangesAsBitmap = false;
+    // Number of cursor ledger writes between two full snapshots of the acknowledgment holes, when they are
+    // persisted as bitmaps
+    private int managedLedgerUnackedRangesSnapshotInterval = 100;
+    // Track the acknowledgment holes of each cursor in per-ledger bitsets held in pooled direct memory, instead of
+    // a tree of ranges on the heap with no size limit
+    private boolean managedLedgerUnackedRangesBitSetEnabled = true;
+    // Max direct memory used by the acknowledgment bitsets of a cursor. Above this size, the cursor tracks its
+    // acknowledgment holes as a sorted array of ranges in direct memory, bounded by the same size. When the array is
+    // full, the acknowledgments furthest from the mark-delete position are dropped and these messages may be
+    // delivered again
+    private int managedLedgerUnackedRangesBitSetMaxSizeKB = 1024;
+    // Read entries ahead for cursors catching up with the backlog. After a few sequential reads, the following batches
+    // are requested from the bookies in advance, so that the reads don't wait for a full round trip each time.
+    private boolean managedLedgerReadAheadEnabled = false;
+    // Max number of read-ahead requests in flight for each cursor
+    private int managedLedgerReadAheadMaxOutstandingReads = 4;
+    // Max size of the entries read ahead and not yet consumed, for each cursor
+    private int managedLedgerReadAheadMaxBufferSizeMB = 8;
+    // Group the entries added to a managed ledger within a short time window into a single BookKeeper entry. Each
+    // message keeps its own position. Only applied to ledgers created after enabling it, and older brokers can't read
+    // the grouped ledgers.
+    private boolean managedLedgerGroupCommitEnabled = false;
+    // Max number of entries grouped into a single BookKeeper entry
+    private int managedLedgerGroupCommitMaxEntries = 100;
+    // Max size of the entries grouped into a single BookKeeper entry
+    private int managedLedgerGroupCommitMaxSizeKB = 128;
+    // Max time an entry waits for other entries to be grouped with, before being written to BookKeeper
+    private int managedLedgerGroupCommitMaxDelayMicros = 1000;
+    // Keep the publish time of one entry every N entries in the metadata of each ledger, so that resetting a
+    // subscription by time and expiring messages only read the entries next to the searched time. A smaller interval
+    // makes the metadata bigger, a larger interval makes each search read more entries. 0 disables the index.
+    private int managedLedgerTimeIndexIntervalEntries = 0;
     // Skip reading non-recoverable/unreadable data-ledger under managed-ledger's list. It helps when data-ledgers gets
     // corrupted at bookkeeper and managed-cursor is stuck at that ledger.
     @FieldContext(dynamic = true)
@@ -451,6 +559,16 @@ public class ServiceConfiguration implements PulsarConfiguration {
     private String replicatorPrefix = "pulsar.repl";
     // Replicator producer queue size;
     private int replicationProducerQueueSize = 1000;
+    // Max number of bytes per second replicated to each remote cluster, shared by all the topics of the broker. Using a
+    // value of 0, is disabling replication throttling
+    private long replicationThrottlingRatePerRemoteClusterInByte = 0;
+    // Max number of bytes a replicator has sent to the remote cluster and not yet seen persisted. The replicator stops
+    // reading from its cursor above it. 0 only bounds the replicator by replicationProducerQueueSize messages
+    private long replicationProducerMaxPendingBytes = 32 * 1024 * 1024;
+    // Read entries ahead for the replicator cursors catching up with the backlog, even if managedLedgerReadAheadEnabled
+    // is false. Each replicator cursor keeps up to managedLedgerReadAheadMaxOutstandingReads reads in flight and up to
+    // managedLedgerReadAheadMaxBufferSizeMB of entries read ahead
+    private boolean replicationReadAheadEnabled = true;
     // @deprecated - Use brokerClientTlsEnabled instead.
     @Deprecated
     private boolean replicationTlsEnabled = false;
@@ -494,6 +612,9 @@ public class ServiceConfiguration implements PulsarConfiguration {
     // If true, export topic level metrics otherwise namespace level
     private boolean exposeTopicLevelMetricsInPrometheus = true;
     private boolean exposeConsumerLevelMetricsInPrometheus = false;
+    // Time during which the generated Prometheus metrics are served again to the following scrapes. Scrapes waiting
+    // for a generation in progress always share the next one
+    private long prometheusMetricsCacheTimeInMillis = 0;
 
     /**** --- Functions --- ****/
     private boolean functionsWorkerEnabled = false;
@@ -823,6 +944,30 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.dispatchThrottlingRatePerTopicInByte = dispatchThrottlingRatePerTopicInByte;
     }
 
+    public int getMaxPublishRatePerTopicInMessages() {
+        return maxPublishRatePerTopicInMessages;
+    }
+
+    public void setMaxPublishRatePerTopicInMessages(int maxPublishRatePerTopicInMessages) {
+        this.maxPublishRatePerTopicInMessages = maxPublishRatePerTopicInMessages;
+    }
+
+    public long getMaxPublishRatePerTopicInBytes() {
+        return maxPublishRatePerTopicInBytes;
+    }
+
+    public void setMaxPublishRatePerTopicInBytes(long maxPublishRatePerTopicInBytes) {
+        this.maxPublishRatePerTopicInBytes = maxPublishRatePerTopicInBytes;
+    }
+
+    public int getTopicPublisherThrottlingTickTimeMillis() {
+        return topicPublisherThrottlingTickTimeMillis;
+    }
+
+    public void setTopicPublisherThrottlingTickTimeMillis(int topicPublisherThrottlingTickTimeMillis) {
+        this.topicPublisherThrottlingTickTimeMillis = topicPublisherThrottlingTickTimeMillis;
+    }
+
     public int getDispatchThrottlingRatePerSubscriptionInMsg() {
         return dispatchThrottlingRatePerSubscriptionInMsg;
     }
@@ -847,6 +992,86 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.dispatchThrottlingOnNonBacklogConsumerEnabled = dispatchThrottlingOnNonBacklogConsumerEnabled;
     }
 
+    public String getSharedSubscriptionConsumerSelectorClassName() {
+        return sharedSubscriptionConsumerSelectorClassName;
+    }
+
+    public void setSharedSubscriptionConsumerSelectorClassName(String sharedSubscriptionConsumerSelectorClassName) {
+        this.sharedSubscriptionConsumerSelectorClassName = sharedSubscriptionConsumerSelectorClassName;
+    }
+
+    public boolean isDelayedDeliveryEnabled() {
+        return delayedDeliveryEnabled;
+    }
+
+    public void setDelayedDeliveryEnabled(boolean delayedDeliveryEnabled) {
+        this.delayedDeliveryEnabled = delayedDeliveryEnabled;
+    }
+
+    public long getDelayedDeliveryTickTimeMillis() {
+        return delayedDeliveryTickTimeMillis;
+    }
+
+    public void setDelayedDeliveryTickTimeMillis(long delayedDeliveryTickTimeMillis) {
+        this.delayedDeliveryTickTimeMillis = delayedDeliveryTickTimeMillis;
+    }
+
+    public long getDelayedDeliveryMaxMessagesPerSubscription() {
+        return delayedDeliveryMaxMessagesPerSubscription;
+    }
+
+    public void setDelayedDeliveryMaxMessagesPerSubscription(long delayedDeliveryMaxMessagesPerSubscription) {
+        this.delayedDeliveryMaxMessagesPerSubscription = delayedDeliveryMaxMessagesPerSubscription;
+    }
+
+    public long getDispatcherMaxMessagesToReplay() {
+        return dispatcherMaxMessagesToReplay;
+    }
+
+    public void setDispatcherMaxMessagesToReplay(long dispatcherMaxMessagesToReplay) {
+        this.dispatcherMaxMessagesToReplay = dispatcherMaxMessagesToReplay;
+    }
+
+    public int getDispatcherMaxReadBatchSize() {
+        return dispatcherMaxReadBatchSize;
+    }
+
+    public void setDispatcherMaxReadBatchSize(int dispatcherMaxReadBatchSize) {
+        this.dispatcherMaxReadBatchSize = dispatcherMaxReadBatchSize;
+    }
+
+    public long getDispatcherMaxReadSizeBytes() {
+        return dispatcherMaxReadSizeBytes;
+    }
+
+    public void setDispatcherMaxReadSizeBytes(long dispatcherMaxReadSizeBytes) {
+        this.dispatcherMaxReadSizeBytes = dispatcherMaxReadSizeBytes;
+    }
+
+    public long getDispatcherMaxPendingWriteBytes() {
+        return dispatcherMaxPendingWriteBytes;
+    }
+
+    public void setDispatcherMaxPendingWriteBytes(long dispatcherMaxPendingWriteBytes) {
+        this.dispatcherMaxPendingWriteBytes = dispatcherMaxPendingWriteBytes;
+    }
+
+    public long getNegativeAckRedeliveryDelayMs() {
+        return negativeAckRedeliveryDelayMs;
+    }
+
+    public void setNegativeAckRedeliveryDelayMs(long negativeAckRedeliveryDelayMs) {
+        this.negativeAckRedeliveryDelayMs = negativeAckRedeliveryDelayMs;
+    }
+
+    public long getNegativeAckMaxRedeliveryDelayMs() {
+        return negativeAckMaxRedeliveryDelayMs;
+    }
+
+    public void setNegativeAckMaxRedeliveryDelayMs(long negativeAckMaxRedeliveryDelayMs) {
+        this.negativeAckMaxRedeliveryDelayMs = negativeAckMaxRedeliveryDelayMs;
+    }
+
     public int getMaxConcurrentLookupRequest() {
         return maxConcurrentLookupRequest;
     }
@@ -871,6 +1096,22 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.maxConcurrentNonPersistentMessagePerConnection = maxConcurrentNonPersistentMessagePerConnection;
     }
 
+    public int getMaxMessagePublishBufferSizeInMB() {
+        return maxMessagePublishBufferSizeInMB;
+    }
+
+    public void setMaxMessagePublishBufferSizeInMB(int maxMessagePublishBufferSizeInMB) {
+        this.maxMessagePublishBufferSizeInMB = maxMessagePublishBufferSizeInMB;
+    }
+
+    public long getMessagePublishBufferCheckIntervalInMillis() {
+        return messagePublishBufferCheckIntervalInMillis;
+    }
+
+    public void setMessagePublishBufferCheckIntervalInMillis(long messagePublishBufferCheckIntervalInMillis) {
+        this.messagePublishBufferCheckIntervalInMillis = messagePublishBufferCheckIntervalInMillis;
+    }
+
     public int getNumWorkerThreadsForNonPersistentTopic() {
         return numWorkerThreadsForNonPersistentTopic;
     }
@@ -1233,6 +1474,54 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.managedLedgerCacheEvictionWatermark = managedLedgerCacheEvictionWatermark;
     }
 
+    public boolean isManagedLedgerCacheSegmentedEnabled() {
+        return managedLedgerCacheSegmentedEnabled;
+    }
+
+    public void setManagedLedgerCacheSegmentedEnabled(boolean managedLedgerCacheSegmentedEnabled) {
+        this.managedLedgerCacheSegmentedEnabled = managedLedgerCacheSegmentedEnabled;
+    }
+
+    public boolean isManagedLedgerCacheReadCoalescingEnabled() {
+        return managedLedgerCacheReadCoalescingEnabled;
+    }
+
+    public void setManagedLedgerCacheReadCoalescingEnabled(boolean managedLedgerCacheReadCoalescingEnabled) {
+        this.managedLedgerCacheReadCoalescingEnabled = managedLedgerCacheReadCoalescingEnabled;
+    }
+
+    public boolean isManagedLedgerCacheEvictionSegmentedLruEnabled() {
+        return managedLedgerCacheEvictionSegmentedLruEnabled;
+    }
+
+    public void setManagedLedgerCacheEvictionSegmentedLruEnabled(boolean managedLedgerCacheEvictionSegmentedLruEnabled) {
+        this.managedLedgerCacheEvictionSegmentedLruEnabled = managedLedgerCacheEvictionSegmentedLruEnabled;
+    }
+
+    public long getManagedLedgerCacheAdmissionMaxBacklogEntries() {
+        return managedLedgerCacheAdmissionMaxBacklogEntries;
+    }
+
+    public void setManagedLedgerCacheAdmissionMaxBacklogEntries(long managedLedgerCacheAdmissionMaxBacklogEntries) {
+        this.managedLedgerCacheAdmissionMaxBacklogEntries = managedLedgerCacheAdmissionMaxBacklogEntries;
+    }
+
+    public boolean isManagedLedgerPipelinedRecoveryEnabled() {
+        return managedLedgerPipelinedRecoveryEnabled;
+    }
+
+    public void setManagedLedgerPipelinedRecoveryEnabled(boolean managedLedgerPipelinedRecoveryEnabled) {
+        this.managedLedgerPipelinedRecoveryEnabled = managedLedgerPipelinedRecoveryEnabled;
+    }
+
+    public int getManagedLedgerMaxConcurrentCursorRecoveries() {
+        return managedLedgerMaxConcurrentCursorRecoveries;
+    }
+
+    public void setManagedLedgerMaxConcurrentCursorRecoveries(int managedLedgerMaxConcurrentCursorRecoveries) {
+        this.managedLedgerMaxConcurrentCursorRecoveries = managedLedgerMaxConcurrentCursorRecoveries;
+    }
+
     public double getManagedLedgerDefaultMarkDeleteRateLimit() {
         return managedLedgerDefaultMarkDeleteRateLimit;
     }
@@ -1306,6 +1595,110 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.managedLedgerMaxUnackedRangesToPersistInZooKeeper = managedLedgerMaxUnackedRangesToPersistInZookeeper;
     }
 
+    public int getManagedLedgerMaxBatchDeletedIndexToPersist() {
+        return managedLedgerMaxBatchDeletedIndexToPersist;
+    }
+
+    public void setManagedLedgerMaxBatchDeletedIndexToPersist(int managedLedgerMaxBatchDeletedIndexToPersist) {
+        this.managedLedgerMaxBatchDeletedIndexToPersist = managedLedgerMaxBatchDeletedIndexToPersist;
+    }
+
+    public boolean isManagedLedgerPersistUnackedRangesAsBitmap() {
+        return managedLedgerPersistUnackedRangesAsBitmap;
+    }
+
+    public void setManagedLedgerPersistUnackedRangesAsBitmap(boolean managedLedgerPersistUnackedRangesAsBitmap) {
+        this.managedLedgerPersistUnackedRangesAsBitmap = managedLedgerPersistUnackedRangesAsBitmap;
+    }
+
+    public int getManagedLedgerUnackedRangesSnapshotInterval() {
+        return managedLedgerUnackedRangesSnapshotInterval;
+    }
+
+    public void setManagedLedgerUnackedRangesSnapshotInterval(int managedLedgerUnackedRangesSnapshotInterval) {
+        this.managedLedgerUnackedRangesSnapshotInterval = managedLedgerUnackedRangesSnapshotInterval;
+    }
+
+    public boolean isManagedLedgerUnackedRangesBitSetEnabled() {
+        return managedLedgerUnackedRangesBitSetEnabled;
+    }
+
+    public void setManagedLedgerUnackedRangesBitSetEnabled(boolean managedLedgerUnackedRangesBitSetEnabled) {
+        this.managedLedgerUnackedRangesBitSetEnabled = managedLedgerUnackedRangesBitSetEnabled;
+    }
+
+    public int getManagedLedgerUnackedRangesBitSetMaxSizeKB() {
+        return managedLedgerUnackedRangesBitSetMaxSizeKB;
+    }
+
+    public void setManagedLedgerUnackedRangesBitSetMaxSizeKB(int managedLedgerUnackedRangesBitSetMaxSizeKB) {
+        this.managedLedgerUnackedRangesBitSetMaxSizeKB = managedLedgerUnackedRangesBitSetMaxSizeKB;
+    }
+
+    public boolean isManagedLedgerReadAheadEnabled() {
+        return managedLedgerReadAheadEnabled;
+    }
+
+    public void setManagedLedgerReadAheadEnabled(boolean managedLedgerReadAheadEnabled) {
+        this.managedLedgerReadAheadEnabled = managedLedgerReadAheadEnabled;
+    }
+
+    public int getManagedLedgerReadAheadMaxOutstandingReads() {
+        return managedLedgerReadAheadMaxOutstandingReads;
+    }
+
+    public void setManagedLedgerReadAheadMaxOutstandingReads(int managedLedgerReadAheadMaxOutstandingReads) {
+        this.managedLedgerReadAheadMaxOutstandingReads = managedLedgerReadAheadMaxOutstandingReads;
+    }
+
+    public int getManagedLedgerReadAheadMaxBufferSizeMB() {
+        return managedLedgerReadAheadMaxBufferSizeMB;
+    }
+
+    public void setManagedLedgerReadAheadMaxBufferSizeMB(int managedLedgerReadAheadMaxBufferSizeMB) {
+        this.managedLedgerReadAheadMaxBufferSizeMB = managedLedgerReadAheadMaxBufferSizeMB;
+    }
+
+    public boolean isManagedLedgerGroupCommitEnabled() {
+        return managedLedgerGroupCommitEnabled;
+    }
+
+    public void setManagedLedgerGroupCommitEnabled(boolean managedLedgerGroupCommitEnabled) {
+        this.managedLedgerGroupCommitEnabled = managedLedgerGroupCommitEnabled;
+    }
+
+    public int getManagedLedgerGroupCommitMaxEntries() {
+        return managedLedgerGroupCommitMaxEntries;
+    }
+
+    public void setManagedLedgerGroupCommitMaxEntries(int managedLedgerGroupCommitMaxEntries) {
+        this.managedLedgerGroupCommitMaxEntries = managedLedgerGroupCommitMaxEntries;
+    }
+
+    public int getManagedLedgerGroupCommitMaxSizeKB() {
+        return managedLedgerGroupCommitMaxSizeKB;
+    }
+
+    public void setManagedLedgerGroupCommitMaxSizeKB(int managedLedgerGroupCommitMaxSizeKB) {
+        this.managedLedgerGroupCommitMaxSizeKB = managedLedgerGroupCommitMaxSizeKB;
+    }
+
+    public int getManagedLedgerGroupCommitMaxDelayMicros() {
+        return managedLedgerGroupCommitMaxDelayMicros;
+    }
+
+    public void setManagedLedgerGroupCommitMaxDelayMicros(int managedLedgerGroupCommitMaxDelayMicros) {
+        this.managedLedgerGroupCommitMaxDelayMicros = managedLedgerGroupCommitMaxDelayMicros;
+    }
+
+    public int getManagedLedgerTimeIndexIntervalEntries() {
+        return managedLedgerTimeIndexIntervalEntries;
+    }
+
+    public void setManagedLedgerTimeIndexIntervalEntries(int managedLedgerTimeIndexIntervalEntries) {
+        this.managedLedgerTimeIndexIntervalEntries = managedLedgerTimeIndexIntervalEntries;
+    }
+
     public int getManagedLedgerNumWorkerThreads() {
         return managedLedgerNumWorkerThreads;
     }
@@ -1531,6 +1924,31 @@ public class ServiceConfiguration implements PulsarConfiguration {
     public void setReplicationProducerQueueSize(int replicationProducerQueueSize) {
         this.replicationProducerQueueSize = replicationProducerQueueSize;
     }
+
+    public long getReplicationThrottlingRatePerRemoteClusterInByte() {
+        return replicationThrottlingRatePerRemoteClusterInByte;
+    }
+
+    public void setReplicationThrottlingRatePerRemoteClusterInByte(
+            long replicationThrottlingRatePerRemoteClusterInByte) {
+        this.replicationThrottlingRatePerRemoteClusterInByte = replicationThrottlingRatePerRemoteClusterInByte;
+    }
+
+    public long getReplicationProducerMaxPendingBytes() {
+        return replicationProducerMaxPendingBytes;
+    }
+
+    public void setReplicationProducerMaxPendingBytes(long replicationProducerMaxPendingBytes) {
+        this.replicationProducerMaxPendingBytes = replicationProducerMaxPendingBytes;
+    }
+
+    public boolean isReplicationReadAheadEnabled() {
+        return replicationReadAheadEnabled;
+    }
+
+    public void setReplicationReadAheadEnabled(boolean replicationReadAheadEnabled) {
+        this.replicationReadAheadEnabled = replicationReadAheadEnabled;
+    }
     
     @Deprecated
     public boolean isReplicationTlsEnabled() {
@@ -1672,6 +2090,14 @@ public class ServiceConfiguration implements PulsarConfiguration {
         this.exposeConsumerLevelMetricsInPrometheus = exposeConsumerLevelMetricsInPrometheus;
     }
 
+    public long getPrometheusMetricsCacheTimeInMillis() {
+        return prometheusMetricsCacheTimeInMillis;
+    }
+
+    public void setPrometheusMetricsCacheTimeInMillis(long prometheusMetricsCacheTimeInMillis) {
+        this.prometheusMetricsCacheTimeInMillis = prometheusMetricsCacheTimeInMillis;
+    }
+
     public boolean isSchemaValidationEnforced() {
         return isSchemaValidationEnforced;
     }
@@ -45,6 +45,15 @@ public class ManagedLedgerClientFactory implements Closeable {
         ManagedLedgerFactoryConfig managedLedgerFactoryConfig = new ManagedLedgerFactoryConfig();
         managedLedgerFactoryConfig.setMaxCacheSize(conf.getManagedLedgerCacheSizeMB() * 1024L * 1024L);
         managedLedgerFactoryConfig.setCacheEvictionWatermark(conf.getManagedLedgerCacheEvictionWatermark());
+        managedLedgerFactoryConfig.setSegmentedEntryCacheEnabled(conf.isManagedLedgerCacheSegmentedEnabled());
+        managedLedgerFactoryConfig.setReadCoalescingEnabled(conf.isManagedLedgerCacheReadCoalescingEnabled());
+        managedLedgerFactoryConfig
+                .setSegmentedLruCacheEvictionEnabled(conf.isManagedLedgerCacheEvictionSegmentedLruEnabled());
+        managedLedgerFactoryConfig
+                .setCacheAdmissionMaxBacklogEntries(conf.getManagedLedgerCacheAdmissionMaxBacklogEntries());
+        managedLedgerFactoryConfig.setPipelinedRecoveryEnabled(conf.isManagedLedgerPipelinedRecoveryEnabled());
+        managedLedgerFactoryConfig
+                .setMaxConcurrentCursorRecoveries(conf.getManagedLedgerMaxConcurrentCursorRecoveries());
         managedLedgerFactoryConfig.setNumManagedLedgerWorkerThreads(conf.getManagedLedgerNumWorkerThreads());
         managedLedgerFactoryConfig.setNumManagedLedgerSchedulerThreads(conf.getManagedLedgerNumSchedulerThreads());
 
@@ -44,6 +44,7 @@ import org.apache.pulsar.common.policies.data.BundlesData;
 import org.apache.pulsar.common.policies.data.DispatchRate;
 import org.apache.pulsar.common.policies.data.PersistencePolicies;
 import org.apache.pulsar.common.policies.data.Policies;
+import org.apache.pulsar.common.policies.data.PublishRate;
 import org.apache.pulsar.common.policies.data.RetentionPolicies;
 import org.apache.pulsar.common.policies.data.SubscriptionAuthMode;
 import org.apache.pulsar.common.policies.data.SchemaAutoUpdateCompatibilityStrategy;
@@ -302,6 +303,27 @@ public class Namespaces extends NamespacesBase {
         internalSplitNamespaceBundle(bundleRange, authoritative, unload);
     }
 
+    @POST
+    @Path("/{tenant}/{namespace}/publishRate")
+    @ApiOperation(value = "Set publish-rate throttling for all topics of the namespace")
+    @ApiResponses(value = { @ApiResponse(code = 403, message = "Don't have admin permission") })
+    public void setPublishRate(@PathParam("tenant") String tenant, @PathParam("namespace") String namespace,
+            PublishRate publishRate) {
+        validateNamespaceName(tenant, namespace);
+        internalSetPublishRate(publishRate);
+    }
+
+    @GET
+    @Path("/{tenant}/{namespace}/publishRate")
+    @ApiOperation(value = "Get publish-rate configured for the namespace, -1 represents not configured yet")
+    @ApiResponses(value = { @ApiResponse(code = 403, message = "Don't have admin permission"),
+            @ApiResponse(code = 404, message = "Namespace does not exist") })
+    public PublishRate getPublishRate(@PathParam("tenant") String tenant,
+            @PathParam("namespace") String namespace) {
+        validateNamespaceName(tenant, namespace);
+        return internalGetPublishRate();
+    }
+
     @POST
     @Path("/{tenant}/{namespace}/dispatchRate")
     @ApiOperation(value = "Set dispatch-rate throttling for all topics of the namespace")
@@ -21,18 +21,18 @@ package org.apache.pulsar.broker.service;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenHashSet;
 import org.apache.pulsar.utils.CopyOnWriteArrayList;
 
-import com.carrotsearch.hppc.ObjectHashSet;
-import com.carrotsearch.hppc.ObjectSet;
-
 /**
  */
 public abstract class AbstractDispatcherMultipleConsumers {
 
     protected final CopyOnWriteArrayList<Consumer> consumerList = new CopyOnWriteArrayList<>();
-    protected final ObjectSet<Consumer> consumerSet = new ObjectHashSet<>();
+    protected final ConcurrentOpenHashSet<Consumer> consumerSet = new ConcurrentOpenHashSet<>(16, 1);
     protected int currentConsumerRoundRobinIndex = 0;
+    // When set, picks the consumers to dispatch to instead of the round robin
+    protected ConsumerSelector consumerSelector = null;
 
     protected static final int FALSE = 0;
     protected static final int TRUE = 1;
@@ -90,6 +90,8 @@ public abstract class AbstractDispatcherMultipleConsumers {
      * 4. Returns null in case it doesn't find any available consumer
      * </pre>
      *
+     * When a {@link ConsumerSelector} is configured, the choice is delegated to it instead.
+     *
      * @return nextAvailableConsumer
      */
     public Consumer getNextConsumer() {
@@ -98,6 +100,10 @@ public abstract class AbstractDispatcherMultipleConsumers {
             return null;
         }
 
+        if (consumerSelector != null) {
+            return consumerSelector.select(consumerList, this::isConsumerAvailable);
+        }
+
         if (currentConsumerRoundRobinIndex >= consumerList.size()) {
             currentConsumerRoundRobinIndex = 0;
         }
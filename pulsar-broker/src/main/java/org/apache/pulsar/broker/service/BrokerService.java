@@ -37,6 +37,7 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.handler.ssl.SslContext;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -71,6 +72,8 @@ import org.apache.bookkeeper.mledger.ManagedLedgerConfig;
 import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.ManagedLedgerNotFoundException;
 import org.apache.bookkeeper.mledger.ManagedLedgerFactory;
+import org.apache.bookkeeper.mledger.impl.BitSetIndividualAckSet;
+import org.apache.bookkeeper.mledger.impl.TreeRangeIndividualAckSet;
 import org.apache.bookkeeper.util.ZkUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -100,6 +103,8 @@ import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.impl.ClientBuilderImpl;
 import org.apache.pulsar.client.impl.PulsarClientImpl;
 import org.apache.pulsar.client.impl.conf.ClientConfigurationData;
+import org.apache.pulsar.common.api.Commands;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
 import org.apache.pulsar.common.configuration.FieldContext;
 import org.apache.pulsar.common.naming.NamespaceBundle;
 import org.apache.pulsar.common.naming.NamespaceBundleFactory;
@@ -110,12 +115,14 @@ import org.apache.pulsar.common.policies.data.ClusterData;
 import org.apache.pulsar.common.policies.data.PersistencePolicies;
 import org.apache.pulsar.common.policies.data.PersistentOfflineTopicStats;
 import org.apache.pulsar.common.policies.data.Policies;
+import org.apache.pulsar.common.policies.data.PublishRate;
 import org.apache.pulsar.common.policies.data.RetentionPolicies;
 import org.apache.pulsar.common.policies.data.TopicStats;
 import org.apache.pulsar.common.stats.Metrics;
 import org.apache.pulsar.common.util.FieldParser;
 import org.apache.pulsar.common.util.FutureUtil;
 import org.apache.pulsar.common.util.ObjectMapperFactory;
+import org.apache.pulsar.common.util.RateLimiter;
 import org.apache.pulsar.common.util.collections.ConcurrentOpenHashMap;
 import org.apache.pulsar.common.util.collections.ConcurrentOpenHashSet;
 import org.apache.pulsar.common.util.netty.EventLoopUtil;
@@ -140,6 +147,8 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
     private final ConcurrentOpenHashMap<String, CompletableFuture<Optional<Topic>>> topics;
 
     private final ConcurrentOpenHashMap<String, PulsarClient> replicationClients;
+    // Byte rate limiters of the replication to each remote cluster, shared by all the replicators of the broker
+    private final ConcurrentOpenHashMap<String, Optional<RateLimiter>> replicationRateLimiters;
 
     // Multi-layer topics map:
     // Namespace --> Bundle --> topicName --> topic
@@ -166,6 +175,17 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
     private final ScheduledExecutorService inactivityMonitor;
     private final ScheduledExecutorService messageExpiryMonitor;
     private final ScheduledExecutorService compactionMonitor;
+    private final ScheduledExecutorService topicPublishRateLimiterMonitor;
+    private final ScheduledExecutorService messagePublishBufferMonitor;
+
+    // Size of the messages received from producers that are not persisted yet, across all the connections
+    private final LongAdder currentMessagePublishBufferSize = new LongAdder();
+    private final long maxMessagePublishBufferBytes;
+    private final long resumeProducerReadMessagePublishBufferBytes;
+    private volatile boolean reachedMaxMessagePublishBuffer = false;
+    // Connections that stopped reading because the publish buffer was full, resumed together once it's drained
+    private final ConcurrentLinkedQueue<ServerCnx> pausedConnections = new ConcurrentLinkedQueue<>();
+    private final LongAdder totalPausedConnections = new LongAdder();
 
     private DistributedIdGenerator producerNameGenerator;
 
@@ -195,6 +215,7 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         this.tlsPort = new URI(pulsar.getBrokerServiceUrlTls()).getPort();
         this.topics = new ConcurrentOpenHashMap<>();
         this.replicationClients = new ConcurrentOpenHashMap<>();
+        this.replicationRateLimiters = new ConcurrentOpenHashMap<>();
         this.keepAliveIntervalSeconds = pulsar.getConfiguration().getKeepAliveIntervalSeconds();
         this.configRegisteredListeners = new ConcurrentOpenHashMap<>();
         this.pendingTopicLoadingQueue = Queues.newConcurrentLinkedQueue();
@@ -230,6 +251,15 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
                 .newSingleThreadScheduledExecutor(new DefaultThreadFactory("pulsar-msg-expiry-monitor"));
         this.compactionMonitor =
             Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("pulsar-compaction-monitor"));
+        this.topicPublishRateLimiterMonitor = Executors
+                .newSingleThreadScheduledExecutor(new DefaultThreadFactory("pulsar-publish-rate-limiter-monitor"));
+        this.messagePublishBufferMonitor = Executors
+                .newSingleThreadScheduledExecutor(new DefaultThreadFactory("pulsar-publish-buffer-monitor"));
+        final int maxMessagePublishBufferSizeInMB = pulsar.getConfiguration().getMaxMessagePublishBufferSizeInMB();
+        this.maxMessagePublishBufferBytes = maxMessagePublishBufferSizeInMB < 0
+                ? PlatformDependent.maxDirectMemory() / 2
+                : maxMessagePublishBufferSizeInMB * 1024L * 1024L;
+        this.resumeProducerReadMessagePublishBufferBytes = maxMessagePublishBufferBytes / 2;
 
         this.backlogQuotaManager = new BacklogQuotaManager(pulsar);
         this.backlogQuotaChecker = Executors
@@ -315,6 +345,8 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         this.startMessageExpiryMonitor();
         this.startCompactionMonitor();
         this.startBacklogQuotaChecker();
+        this.startPublishRateLimiterMonitor();
+        this.startMessagePublishBufferMonitor();
         // register listener to capture zk-latency
         ClientCnxnAspect.addListener(zkStatsListener);
         ClientCnxnAspect.registerExecutor(pulsar.getExecutor());
@@ -375,6 +407,30 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
 
     }
 
+    void startPublishRateLimiterMonitor() {
+        final long tickTimeMs = pulsar().getConfiguration().getTopicPublisherThrottlingTickTimeMillis();
+        if (tickTimeMs > 0) {
+            // Both tasks run on the same thread, so that a topic can't be found exceeding its rate while it's reset
+            topicPublishRateLimiterMonitor.scheduleAtFixedRate(safeRun(this::checkTopicPublishThrottlingRate),
+                    tickTimeMs, tickTimeMs, TimeUnit.MILLISECONDS);
+            topicPublishRateLimiterMonitor.scheduleAtFixedRate(safeRun(this::refreshTopicPublishRate), 1, 1,
+                    TimeUnit.SECONDS);
+        } else {
+            log.info("Publish-throttling is disabled");
+        }
+    }
+
+    void startMessagePublishBufferMonitor() {
+        final long interval = pulsar().getConfiguration().getMessagePublishBufferCheckIntervalInMillis();
+        if (maxMessagePublishBufferBytes > 0 && interval > 0) {
+            log.info("Limiting the size of the pending published messages to {} bytes", maxMessagePublishBufferBytes);
+            messagePublishBufferMonitor.scheduleAtFixedRate(safeRun(this::checkMessagePublishBuffer), interval,
+                    interval, TimeUnit.MILLISECONDS);
+        } else {
+            log.info("The size of the pending published messages is not limited");
+        }
+    }
+
     @Override
     public void close() throws IOException {
         log.info("Shutting down Pulsar Broker service");
@@ -394,6 +450,7 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
                 log.warn("Error shutting down repl client for cluster {}", cluster, e);
             }
         });
+        replicationRateLimiters.forEach((cluster, rateLimiter) -> rateLimiter.ifPresent(RateLimiter::close));
 
         acceptorGroup.shutdownGracefully();
         workerGroup.shutdownGracefully();
@@ -402,6 +459,8 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         messageExpiryMonitor.shutdown();
         compactionMonitor.shutdown();
         backlogQuotaChecker.shutdown();
+        topicPublishRateLimiterMonitor.shutdown();
+        messagePublishBufferMonitor.shutdown();
         authenticationService.close();
         pulsarStats.close();
         ClientCnxnAspect.removeListener(zkStatsListener);
@@ -523,6 +582,18 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         return topicFuture;
     }
 
+    /**
+     * Read the publish time of a message stored in a managed ledger entry, for the time index of the ledgers.
+     */
+    private static long getEntryPublishTime(ByteBuf entryData) {
+        MessageMetadata metadata = Commands.parseMessageMetadata(entryData);
+        try {
+            return metadata.getPublishTime();
+        } finally {
+            metadata.recycle();
+        }
+    }
+
     private static <T> CompletableFuture<T> failedFuture(Throwable t) {
         CompletableFuture<T> future = new CompletableFuture<>();
         future.completeExceptionally(t);
@@ -569,6 +640,24 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         });
     }
 
+    /**
+     * Gets the limiter of the bytes replicated to a remote cluster, shared by all the replicators to that cluster.
+     *
+     * @param cluster
+     *            the remote cluster
+     * @return the rate limiter, empty if replication throttling is disabled
+     */
+    public Optional<RateLimiter> getReplicationRateLimiter(String cluster) {
+        return replicationRateLimiters.computeIfAbsent(cluster, key -> {
+            long rate = pulsar.getConfiguration().getReplicationThrottlingRatePerRemoteClusterInByte();
+            if (rate <= 0) {
+                return Optional.empty();
+            }
+            log.info("Throttling replication to cluster {} at {} bytes/s", cluster, rate);
+            return Optional.of(new RateLimiter(pulsar.getExecutor(), rate, 1, TimeUnit.SECONDS));
+        });
+    }
+
     /**
      * It creates a topic async and returns CompletableFuture. It also throttles down configured max-concurrent topic
      * loading and puts them into queue once in-process topics are created.
@@ -726,6 +815,29 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
 
             managedLedgerConfig.setMaxUnackedRangesToPersist(serviceConfig.getManagedLedgerMaxUnackedRangesToPersist());
             managedLedgerConfig.setMaxUnackedRangesToPersistInZk(serviceConfig.getManagedLedgerMaxUnackedRangesToPersistInZooKeeper());
+            managedLedgerConfig.setMaxBatchDeletedIndexToPersist(
+                    serviceConfig.getManagedLedgerMaxBatchDeletedIndexToPersist());
+            managedLedgerConfig.setPersistIndividualAckAsBitmap(
+                    serviceConfig.isManagedLedgerPersistUnackedRangesAsBitmap());
+            managedLedgerConfig.setIndividualAckSnapshotInterval(
+                    serviceConfig.getManagedLedgerUnackedRangesSnapshotInterval());
+            if (serviceConfig.isManagedLedgerUnackedRangesBitSetEnabled()) {
+                long maxBitSetSize = serviceConfig.getManagedLedgerUnackedRangesBitSetMaxSizeKB() * 1024L;
+                managedLedgerConfig.setIndividualAckSetFactory(() -> new BitSetIndividualAckSet(maxBitSetSize));
+            } else {
+                managedLedgerConfig.setIndividualAckSetFactory(TreeRangeIndividualAckSet::new);
+            }
+            managedLedgerConfig.setReadAheadEnabled(serviceConfig.isManagedLedgerReadAheadEnabled());
+            managedLedgerConfig.setReadAheadMaxOutstandingReads(
+                    serviceConfig.getManagedLedgerReadAheadMaxOutstandingReads());
+            managedLedgerConfig.setReadAheadMaxBufferSizeBytes(
+                    serviceConfig.getManagedLedgerReadAheadMaxBufferSizeMB() * 1024L * 1024L);
+            managedLedgerConfig.setGroupCommitEnabled(serviceConfig.isManagedLedgerGroupCommitEnabled());
+            managedLedgerConfig.setGroupCommitMaxEntries(serviceConfig.getManagedLedgerGroupCommitMaxEntries());
+            managedLedgerConfig.setGroupCommitMaxSizeBytes(serviceConfig.getManagedLedgerGroupCommitMaxSizeKB() * 1024L);
+            managedLedgerConfig.setGroupCommitMaxDelayMicros(serviceConfig.getManagedLedgerGroupCommitMaxDelayMicros());
+            managedLedgerConfig.setTimeIndexIntervalEntries(serviceConfig.getManagedLedgerTimeIndexIntervalEntries());
+            managedLedgerConfig.setEntryTimestampExtractor(BrokerService::getEntryPublishTime);
             managedLedgerConfig.setMaxEntriesPerLedger(serviceConfig.getManagedLedgerMaxEntriesPerLedger());
             managedLedgerConfig.setMinimumRolloverTime(serviceConfig.getManagedLedgerMinLedgerRolloverTimeMinutes(),
                     TimeUnit.MINUTES);
@@ -877,6 +989,101 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         forEachTopic(Topic::checkInactiveSubscriptions);
     }
 
+    public void checkTopicPublishThrottlingRate() {
+        forEachTopic(Topic::checkPublishThrottlingRate);
+    }
+
+    public void refreshTopicPublishRate() {
+        forEachTopic(Topic::resetPublishCountAndEnableReadIfRequired);
+    }
+
+    /**
+     * Compares the size of the pending published messages to the limit. Once it's reached, the connections stop
+     * reading as they publish their next message. Once the size goes down to half of the limit, all the paused
+     * connections are resumed at once, so that none of them is starved by the ones resumed first.
+     */
+    void checkMessagePublishBuffer() {
+        long currentSize = currentMessagePublishBufferSize.sum();
+        if (currentSize >= maxMessagePublishBufferBytes) {
+            if (!reachedMaxMessagePublishBuffer) {
+                log.warn("Pending published messages reached {} bytes, pausing the producer connections",
+                        currentSize);
+                reachedMaxMessagePublishBuffer = true;
+            }
+        } else if (reachedMaxMessagePublishBuffer && currentSize < resumeProducerReadMessagePublishBufferBytes) {
+            log.info("Pending published messages went down to {} bytes, resuming {} producer connections",
+                    currentSize, pausedConnections.size());
+            reachedMaxMessagePublishBuffer = false;
+            resumePausedConnections();
+        }
+    }
+
+    private void resumePausedConnections() {
+        ServerCnx cnx;
+        while ((cnx = pausedConnections.poll()) != null) {
+            cnx.resumeReadsAfterPublishBufferRelease();
+        }
+    }
+
+    void incrementMessagePublishBufferSize(long msgSize) {
+        currentMessagePublishBufferSize.add(msgSize);
+    }
+
+    void decrementMessagePublishBufferSize(long msgSize) {
+        currentMessagePublishBufferSize.add(-msgSize);
+    }
+
+    boolean isReachedMaxMessagePublishBuffer() {
+        return reachedMaxMessagePublishBuffer;
+    }
+
+    /**
+     * Registers a connection that stopped reading because the publish buffer is full, to be resumed once it's drained.
+     */
+    void pauseConnection(ServerCnx cnx) {
+        pausedConnections.add(cnx);
+        totalPausedConnections.increment();
+        if (!reachedMaxMessagePublishBuffer) {
+            // the buffer was drained while the connection was being paused
+            resumePausedConnections();
+        }
+    }
+
+    public long getCurrentMessagePublishBufferSize() {
+        return currentMessagePublishBufferSize.sum();
+    }
+
+    public long getMaxMessagePublishBufferSize() {
+        return maxMessagePublishBufferBytes;
+    }
+
+    public int getPausedConnections() {
+        return pausedConnections.size();
+    }
+
+    public long getTotalPausedConnections() {
+        return totalPausedConnections.sum();
+    }
+
+    /**
+     * Gets the publish rate of the topics of a namespace: the publish rate configured in the namespace policies for
+     * the local cluster, else the broker default publish rate per topic.
+     *
+     * @param policies
+     *            the namespace policies, or null if they are not available
+     * @return the publish rate, disabled if none of its rates is > 0
+     */
+    public PublishRate getPublishRate(Policies policies) {
+        if (policies != null) {
+            PublishRate publishRate = policies.publishMaxMessageRate.get(pulsar.getConfiguration().getClusterName());
+            if (PublishRateLimiterImpl.isPublishRateEnabled(publishRate)) {
+                return publishRate;
+            }
+        }
+        return new PublishRate(pulsar.getConfiguration().getMaxPublishRatePerTopicInMessages(),
+                pulsar.getConfiguration().getMaxPublishRatePerTopicInBytes());
+    }
+
     /**
      * Iterates over all loaded topics in the broker
      */
@@ -1493,7 +1700,7 @@ public class BrokerService implements Closeable, ZooKeeperCacheListener<Policies
         try {
             dispatcherList.forEach(dispatcher -> {
                 dispatcher.unBlockDispatcherOnUnackedMsgs();
-                executor().execute(() -> dispatcher.readMoreEntries());
+                dispatcher.scheduleReadMoreEntries();
                 log.info("[{}] Dispatcher is unblocked", dispatcher.getName());
                 blockedDispatchers.remove(dispatcher);
             });
@@ -30,13 +30,17 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.stream.Collectors;
 
 import lombok.Data;
@@ -48,6 +52,7 @@ import org.apache.bookkeeper.mledger.util.Rate;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.apache.pulsar.broker.PulsarServerException;
+import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.authentication.AuthenticationDataSource;
 import org.apache.pulsar.common.api.Commands;
 import org.apache.pulsar.common.api.proto.PulsarApi;
@@ -95,6 +100,12 @@ public class Consumer {
     private static final AtomicIntegerFieldUpdater<Consumer> PERMITS_RECEIVED_WHILE_CONSUMER_BLOCKED_UPDATER =
             AtomicIntegerFieldUpdater.newUpdater(Consumer.class, "permitsReceivedWhileConsumerBlocked");
     private volatile int permitsReceivedWhileConsumerBlocked = 0;
+    // Represents how many bytes of entries we can send to the consumer, once it has opted in for byte flow control by
+    // sending byte permits. It can drop below 0 since the size of the entries is only known after reading them
+    private static final AtomicLongFieldUpdater<Consumer> MESSAGE_PERMITS_BYTES_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Consumer.class, "messagePermitsBytes");
+    private volatile long messagePermitsBytes = 0;
+    private volatile boolean bytePermitsEnabled = false;
 
     private final ConcurrentLongLongPairHashMap pendingAcks;
 
@@ -106,6 +117,14 @@ public class Consumer {
     private volatile int unackedMessages = 0;
     private volatile boolean blockedConsumerOnUnackedMsgs = false;
 
+    // Moving average of the time between the dispatch of a message and its acknowledgement. The acks of a shared
+    // subscription are processed by the connection threads of all its consumers, so the bits of the average are
+    // updated with a CAS
+    private static final double ACK_LATENCY_AVG_WEIGHT = 0.1;
+    private static final AtomicLongFieldUpdater<Consumer> AVG_ACK_LATENCY_BITS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Consumer.class, "avgAckLatencyBits");
+    private volatile long avgAckLatencyBits = Double.doubleToRawLongBits(0);
+
     private final Map<String, String> metadata;
 
     public interface SendListener {
@@ -145,7 +164,7 @@ public class Consumer {
         stats.setClientVersion(cnx.getClientVersion());
         stats.metadata = this.metadata;
 
-        if (subType == SubType.Shared) {
+        if (Subscription.isIndividualAckMode(subType)) {
             this.pendingAcks = new ConcurrentLongLongPairHashMap(256, 1);
         } else {
             // We don't need to keep track of pending acks if the subscription is not shared
@@ -237,21 +256,20 @@ public class Consumer {
         }
 
         ctx.channel().eventLoop().execute(() -> {
+            final boolean skipChecksum = cnx.getRemoteEndpointProtocolVersion() < ProtocolVersion.v11.getNumber();
+            final RedeliveryTracker redeliveryTracker = subscription.getDispatcher().getRedeliveryTracker();
+            // The acknowledged messages of partially acknowledged batches are skipped by the consumers that support it
+            final boolean sendBatchAckSet = pendingAcks != null
+                    && Commands.peerSupportsBatchIndexAcknowledgment(cnx.getRemoteEndpointProtocolVersion());
             for (int i = 0; i < entries.size(); i++) {
                 Entry entry = entries.get(i);
                 PositionImpl pos = (PositionImpl) entry.getPosition();
-                MessageIdData.Builder messageIdBuilder = MessageIdData.newBuilder();
-                MessageIdData messageId = messageIdBuilder
-                    .setLedgerId(pos.getLedgerId())
-                    .setEntryId(pos.getEntryId())
-                    .setPartition(partitionIdx)
-                    .build();
-
-                ByteBuf metadataAndPayload = entry.getDataBuffer();
-                // increment ref-count of data and release at the end of process: so, we can get chance to call entry.release
-                metadataAndPayload.retain();
+
+                // share the entry payload with a retained slice, released once written: so, we can get chance to call
+                // entry.release and the reader-index of the entry buffer is left untouched
+                ByteBuf metadataAndPayload = entry.getDataBuffer().retainedSlice();
                 // skip checksum by incrementing reader-index if consumer-client doesn't support checksum verification
-                if (cnx.getRemoteEndpointProtocolVersion() < ProtocolVersion.v11.getNumber()) {
+                if (skipChecksum) {
                     Commands.skipChecksumIfPresent(metadataAndPayload);
                 }
 
@@ -265,10 +283,10 @@ public class Consumer {
                 if (i == (entries.size() - 1)) {
                     promise = writePromise;
                 }
-                int redeliveryCount = subscription.getDispatcher().getRedeliveryTracker().getRedeliveryCount(PositionImpl.get(messageId.getLedgerId(), messageId.getEntryId()));
-                ctx.write(Commands.newMessage(consumerId, messageId, redeliveryCount, metadataAndPayload), promise);
-                messageId.recycle();
-                messageIdBuilder.recycle();
+                int redeliveryCount = redeliveryTracker.getRedeliveryCount(pos);
+                long[] ackSet = sendBatchAckSet ? subscription.getAckedBatchIndexes(pos) : null;
+                ctx.write(Commands.newMessage(consumerId, pos.getLedgerId(), pos.getEntryId(), partitionIdx,
+                        redeliveryCount, ackSet, metadataAndPayload), promise);
                 entry.release();
             }
 
@@ -308,6 +326,7 @@ public class Consumer {
         boolean unsupportedVersion = false;
         long totalReadableBytes = 0;
         boolean clientSupportBatchMessages = cnx.isBatchMessageCompatibleVersion();
+        long dispatchTime = System.currentTimeMillis();
         while (iter.hasNext()) {
             Entry entry = iter.next();
             ByteBuf metadataAndPayload = entry.getDataBuffer();
@@ -321,7 +340,8 @@ public class Consumer {
                 continue;
             }
             if (pendingAcks != null) {
-                pendingAcks.put(entry.getLedgerId(), entry.getEntryId(), batchSize, 0);
+                // keep the dispatch time to track the ack latency
+                pendingAcks.put(entry.getLedgerId(), entry.getEntryId(), batchSize, dispatchTime);
             }
             // check if consumer supports batch message
             if (batchSize > 1 && !clientSupportBatchMessages) {
@@ -332,6 +352,9 @@ public class Consumer {
         }
         // reduce permit and increment unackedMsg count with total number of messages in batch-msgs
         int permits = MESSAGE_PERMITS_UPDATER.addAndGet(this, -permitsToReduce);
+        if (bytePermitsEnabled) {
+            MESSAGE_PERMITS_BYTES_UPDATER.addAndGet(this, -totalReadableBytes);
+        }
         incrementUnackedMessages(permitsToReduce);
         if (unsupportedVersion) {
             throw new PulsarServerException("Consumer does not support batch-message");
@@ -405,7 +428,7 @@ public class Consumer {
                 return;
             }
 
-            if (subType == SubType.Shared) {
+            if (Subscription.isIndividualAckMode(subType)) {
                 log.warn("[{}] [{}] Received cumulative ack on shared subscription, ignoring", subscription, consumerId);
                 return;
             }
@@ -416,12 +439,23 @@ public class Consumer {
         } else {
             // Individual ack
             List<Position> positionsAcked = new ArrayList<>();
+            Map<PositionImpl, BitSet> batchIndexesAcked = null;
             for (int i = 0; i < ack.getMessageIdCount(); i++) {
                 MessageIdData msgId = ack.getMessageId(i);
                 PositionImpl position = PositionImpl.get(msgId.getLedgerId(), msgId.getEntryId());
+
+                if (msgId.getBatchIndex() >= 0 && Subscription.isIndividualAckMode(subType)) {
+                    // Single message of a batch: the entry stays pending until the consumer acknowledges it as a
+                    // whole, once all its messages are acknowledged
+                    if (batchIndexesAcked == null) {
+                        batchIndexesAcked = new TreeMap<>();
+                    }
+                    batchIndexesAcked.computeIfAbsent(position, p -> new BitSet()).set(msgId.getBatchIndex());
+                    continue;
+                }
                 positionsAcked.add(position);
 
-                if (subType == SubType.Shared) {
+                if (Subscription.isIndividualAckMode(subType)) {
                     removePendingAcks(position);
                 }
 
@@ -430,12 +464,44 @@ public class Consumer {
                             consumerId, position, ack.getValidationError());
                 }
             }
-            subscription.acknowledgeMessage(positionsAcked, AckType.Individual, properties);
+            if (!positionsAcked.isEmpty()) {
+                subscription.acknowledgeMessage(positionsAcked, AckType.Individual, properties);
+            }
+            if (batchIndexesAcked != null) {
+                batchIndexesAcked.forEach(this::acknowledgeBatchIndexes);
+            }
         }
     }
 
+    private void acknowledgeBatchIndexes(PositionImpl position, BitSet batchIndexes) {
+        LongPair batchSize = pendingAcks.get(position.getLedgerId(), position.getEntryId());
+        if (batchSize == null) {
+            // Not pending on this consumer: either already acknowledged or redelivered to another consumer
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] [{}] Ignoring ack of batch indexes {} of {}", subscription, consumerId, batchIndexes,
+                        position);
+            }
+            return;
+        }
+        subscription.acknowledgeBatchIndexes(position, (int) batchSize.first, batchIndexes);
+    }
+
     void flowPermits(int additionalNumberOfMessages) {
-        checkArgument(additionalNumberOfMessages > 0);
+        flowPermits(additionalNumberOfMessages, -1);
+    }
+
+    /**
+     * @param additionalNumberOfBytes
+     *            byte permits granted along with the message permits, or -1 if the consumer doesn't use byte flow
+     *            control
+     */
+    void flowPermits(int additionalNumberOfMessages, long additionalNumberOfBytes) {
+        checkArgument(additionalNumberOfMessages > 0 || additionalNumberOfBytes > 0);
+
+        if (additionalNumberOfBytes >= 0) {
+            bytePermitsEnabled = true;
+            MESSAGE_PERMITS_BYTES_UPDATER.addAndGet(this, additionalNumberOfBytes);
+        }
 
         // block shared consumer when unacked-messages reaches limit
         if (shouldBlockConsumerOnUnackMsgs() && unackedMessages >= maxUnackedMessages) {
@@ -450,8 +516,9 @@ public class Consumer {
         }
 
         if (log.isDebugEnabled()) {
-            log.debug("[{}-{}] Added more flow control message permits {} (old was: {}), blocked = {} ", topicName,
-                    subscription, additionalNumberOfMessages, oldPermits, blockedConsumerOnUnackedMsgs);
+            log.debug("[{}-{}] Added more flow control message permits {} (old was: {}) and byte permits {}, "
+                    + "blocked = {} ", topicName, subscription, additionalNumberOfMessages, oldPermits,
+                    additionalNumberOfBytes, blockedConsumerOnUnackedMsgs);
         }
 
     }
@@ -475,6 +542,33 @@ public class Consumer {
         return MESSAGE_PERMITS_UPDATER.get(this);
     }
 
+    /**
+     * @return the bytes of entries that can be sent to the consumer, or {@link Long#MAX_VALUE} when it doesn't use byte
+     *         flow control
+     */
+    public long getAvailablePermitsBytes() {
+        return bytePermitsEnabled ? MESSAGE_PERMITS_BYTES_UPDATER.get(this) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Bound the number of entries to send to the consumer to its byte permits. The first entry always fits, so that an
+     * entry bigger than the byte permits of the consumer can still be delivered.
+     *
+     * @return the number of entries, out of {@code maxEntries} starting at {@code start}, that can be sent
+     */
+    public int getEntriesWithinPermitsBytes(List<Entry> entries, int start, int maxEntries) {
+        if (!bytePermitsEnabled) {
+            return maxEntries;
+        }
+        long availableBytes = MESSAGE_PERMITS_BYTES_UPDATER.get(this);
+        int count = 0;
+        while (count < maxEntries && (count == 0 || availableBytes > 0)) {
+            availableBytes -= entries.get(start + count).getLength();
+            ++count;
+        }
+        return count;
+    }
+
     public boolean isBlocked() {
         return blockedConsumerOnUnackedMsgs;
     }
@@ -495,7 +589,7 @@ public class Consumer {
      * @return
      */
     private boolean shouldBlockConsumerOnUnackMsgs() {
-        return SubType.Shared.equals(subType) && maxUnackedMessages > 0;
+        return Subscription.isIndividualAckMode(subType) && maxUnackedMessages > 0;
     }
 
     public void updateRates() {
@@ -510,6 +604,7 @@ public class Consumer {
         stats.availablePermits = getAvailablePermits();
         stats.unackedMessages = unackedMessages;
         stats.blockedConsumerOnUnackedMsgs = blockedConsumerOnUnackedMsgs;
+        stats.avgAckLatencyMs = getAvgAckLatencyMs();
         return stats;
     }
 
@@ -582,11 +677,14 @@ public class Consumer {
 
         // remove pending message from appropriate consumer and unblock unAckMsg-flow if requires
         if (ackOwnedConsumer != null) {
-            int totalAckedMsgs = (int) ackOwnedConsumer.getPendingAcks().get(position.getLedgerId(), position.getEntryId()).first;
-            if (!ackOwnedConsumer.getPendingAcks().remove(position.getLedgerId(), position.getEntryId())) {
+            LongPair pendingAck = ackOwnedConsumer.getPendingAcks().get(position.getLedgerId(), position.getEntryId());
+            if (pendingAck == null
+                    || !ackOwnedConsumer.getPendingAcks().remove(position.getLedgerId(), position.getEntryId())) {
                 // Message was already removed by the other consumer
                 return;
             }
+            int totalAckedMsgs = (int) pendingAck.first;
+            ackOwnedConsumer.recordAckLatency(System.currentTimeMillis() - pendingAck.second);
             if (log.isDebugEnabled()) {
                 log.debug("[{}-{}] consumer {} received ack {}", topicName, subscription, consumerId, position);
             }
@@ -601,6 +699,21 @@ public class Consumer {
         }
     }
 
+    private void recordAckLatency(long ackLatencyMs) {
+        long bits;
+        long newBits;
+        do {
+            bits = avgAckLatencyBits;
+            double avg = Double.longBitsToDouble(bits);
+            newBits = Double.doubleToRawLongBits(
+                    avg == 0 ? ackLatencyMs : avg + ACK_LATENCY_AVG_WEIGHT * (ackLatencyMs - avg));
+        } while (!AVG_ACK_LATENCY_BITS_UPDATER.compareAndSet(this, bits, newBits));
+    }
+
+    public double getAvgAckLatencyMs() {
+        return Double.longBitsToDouble(avgAckLatencyBits);
+    }
+
     public ConcurrentLongLongPairHashMap getPendingAcks() {
         return pendingAcks;
     }
@@ -630,11 +743,67 @@ public class Consumer {
     }
 
     public void redeliverUnacknowledgedMessages(List<MessageIdData> messageIds) {
+        redeliverUnacknowledgedPositions(toPositions(messageIds));
+    }
+
+    /**
+     * Redeliver the negatively acknowledged messages after a backoff delay, which doubles with each redelivery of
+     * the same message. The messages stay pending on this consumer until they are redelivered.
+     */
+    public void negativeAcknowledge(List<MessageIdData> messageIds) {
+        ServiceConfiguration conf = cnx.getBrokerService().pulsar().getConfiguration();
+        long redeliveryDelayMs = conf.getNegativeAckRedeliveryDelayMs();
+        if (redeliveryDelayMs <= 0) {
+            redeliverUnacknowledgedMessages(messageIds);
+            return;
+        }
+        long maxRedeliveryDelayMs = Math.max(redeliveryDelayMs, conf.getNegativeAckMaxRedeliveryDelayMs());
+
+        // Group the messages by delay, so that a single task redelivers all the messages due at the same time. The
+        // redelivery counts are read from the tracker without taking the dispatcher lock
+        final RedeliveryTracker redeliveryTracker = subscription.getDispatcher().getRedeliveryTracker();
+        Map<Long, List<PositionImpl>> positionsByDelay = new TreeMap<>();
+        for (PositionImpl position : toPositions(messageIds)) {
+            int redeliveryCount = redeliveryTracker.getRedeliveryCount(position);
+            long delayMs = getNegativeAckRedeliveryDelayMs(redeliveryDelayMs, maxRedeliveryDelayMs, redeliveryCount);
+            positionsByDelay.computeIfAbsent(delayMs, d -> new ArrayList<>()).add(position);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("[{}-{}] consumer {} negatively acknowledged {} messages", topicName, subscription, consumerId,
+                    messageIds.size());
+        }
+
+        positionsByDelay.forEach((delayMs, positions) -> cnx.getBrokerService().executor().schedule(() -> {
+            // If the consumer was closed in the meantime, its pending messages were already handed back to the
+            // dispatcher
+            if (subscription.getDispatcher().getConsumers().contains(this)) {
+                redeliverUnacknowledgedPositions(positions);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS));
+    }
+
+    static long getNegativeAckRedeliveryDelayMs(long redeliveryDelayMs, long maxRedeliveryDelayMs,
+            int redeliveryCount) {
+        if (redeliveryCount >= Long.numberOfLeadingZeros(redeliveryDelayMs) - 1) {
+            return maxRedeliveryDelayMs;
+        }
+        return Math.min(redeliveryDelayMs << redeliveryCount, maxRedeliveryDelayMs);
+    }
+
+    private static List<PositionImpl> toPositions(List<MessageIdData> messageIds) {
+        List<PositionImpl> positions = new ArrayList<>(messageIds.size());
+        for (MessageIdData msg : messageIds) {
+            positions.add(PositionImpl.get(msg.getLedgerId(), msg.getEntryId()));
+        }
+        return positions;
+    }
+
+    private void redeliverUnacknowledgedPositions(List<PositionImpl> positions) {
 
         int totalRedeliveryMessages = 0;
         List<PositionImpl> pendingPositions = Lists.newArrayList();
-        for (MessageIdData msg : messageIds) {
-            PositionImpl position = PositionImpl.get(msg.getLedgerId(), msg.getEntryId());
+        for (PositionImpl position : positions) {
             LongPair batchSize = pendingAcks.get(position.getLedgerId(), position.getEntryId());
             if (batchSize != null) {
                 pendingAcks.remove(position.getLedgerId(), position.getEntryId());
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.List;
+import java.util.function.Predicate;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pulsar.broker.ServiceConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the consumer of a shared subscription that the next batch of messages is dispatched to.
+ *
+ * <p/>Implementations are configured with {@code sharedSubscriptionConsumerSelectorClassName}, must have a public
+ * no-argument constructor and are instantiated once per dispatcher. They are only called while the dispatcher is
+ * holding its lock.
+ *
+ * <p/>Only the dispatchers of persistent topics use a selector: the consumers of non-persistent topics never
+ * acknowledge messages, so they are always dispatched to in round robin.
+ */
+public interface ConsumerSelector {
+    Logger log = LoggerFactory.getLogger(ConsumerSelector.class);
+
+    /**
+     * Select the consumer for the next batch of messages.
+     *
+     * @param consumers
+     *            the connected consumers, sorted by priority level (highest priority first)
+     * @param isAvailable
+     *            tells whether a consumer can receive messages
+     * @return the selected consumer, or null if no consumer is available
+     */
+    Consumer select(List<Consumer> consumers, Predicate<Consumer> isAvailable);
+
+    /**
+     * Create the selector configured with {@code sharedSubscriptionConsumerSelectorClassName}.
+     *
+     * @return the selector, or null to dispatch in round robin
+     */
+    static ConsumerSelector create(ServiceConfiguration conf) {
+        String className = conf.getSharedSubscriptionConsumerSelectorClassName();
+        if (StringUtils.isBlank(className)) {
+            return null;
+        }
+        try {
+            return (ConsumerSelector) Class.forName(className).newInstance();
+        } catch (Exception e) {
+            log.warn("Error when trying to create consumer selector {}, dispatching in round robin", className, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.Set;
+
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+
+/**
+ * Holds the messages of a subscription that must not be delivered before a given time.
+ */
+public interface DelayedDeliveryTracker extends AutoCloseable {
+
+    /**
+     * Add a message to the tracker.
+     *
+     * @param deliveryAt
+     *            the absolute timestamp at which the message should be delivered
+     * @return true if the message was added, false if it can be delivered right away
+     */
+    boolean addMessage(long ledgerId, long entryId, long deliveryAt);
+
+    /**
+     * @return whether some of the tracked messages are due for delivery
+     */
+    boolean hasMessageAvailable();
+
+    /**
+     * @return the number of messages held by the tracker
+     */
+    long getNumberOfDelayedMessages();
+
+    /**
+     * @return whether the tracker holds its max number of messages. Until some messages are due, the dispatcher must
+     *         keep the delayed messages it reads for a later replay instead of adding them
+     */
+    boolean isFull();
+
+    /**
+     * Remove from the tracker the messages that are due for delivery.
+     *
+     * @param maxMessages
+     *            max number of positions to return
+     * @return the positions of the messages to deliver, in order
+     */
+    Set<PositionImpl> getScheduledMessages(int maxMessages);
+
+    /**
+     * Forget about all the messages held by the tracker.
+     */
+    void clear();
+
+    @Override
+    void close();
+}
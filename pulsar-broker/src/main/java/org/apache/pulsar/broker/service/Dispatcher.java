@@ -76,4 +76,18 @@ public interface Dispatcher {
     default DispatchRateLimiter getRateLimiter() {
         return null;
     }
+
+    /**
+     * @return the number of messages held until their delivery time
+     */
+    default long getNumberOfDelayedMessages() {
+        return 0;
+    }
+
+    /**
+     * Notify the dispatcher that the subscription has processed an acknowledgement from one of its consumers.
+     */
+    default void acknowledgementWasProcessed() {
+        // No-op
+    }
 }
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerBusyException;
+
+/**
+ * Sticky key consumer selector that splits the key hash space in contiguous ranges, one per consumer.
+ *
+ * <p/>A new consumer takes half of the biggest range, and the range of a consumer that leaves is merged into the next
+ * one. This way, a change in the set of consumers only moves the keys of the ranges that are split or merged, and all
+ * the other keys stay on their current consumer.
+ */
+public class HashRangeStickyKeyConsumerSelector implements StickyKeyConsumerSelector {
+
+    public static final int DEFAULT_RANGE_SIZE = 2 << 15;
+
+    private final int rangeSize;
+
+    // Consumers indexed by the upper bound (inclusive) of their range. The lower bound of a range is the upper bound of
+    // the previous range + 1
+    private final ConcurrentSkipListMap<Integer, Consumer> rangeMap = new ConcurrentSkipListMap<>();
+    private final Map<Consumer, Integer> consumerRange = new HashMap<>();
+
+    public HashRangeStickyKeyConsumerSelector() {
+        this(DEFAULT_RANGE_SIZE);
+    }
+
+    public HashRangeStickyKeyConsumerSelector(int rangeSize) {
+        checkArgument(rangeSize > 1 && Integer.bitCount(rangeSize) == 1, "Range size must be a power of 2");
+        this.rangeSize = rangeSize;
+    }
+
+    @Override
+    public synchronized void addConsumer(Consumer consumer) throws ConsumerBusyException {
+        if (consumerRange.containsKey(consumer)) {
+            return;
+        }
+
+        if (rangeMap.isEmpty()) {
+            rangeMap.put(rangeSize - 1, consumer);
+            consumerRange.put(consumer, rangeSize - 1);
+            return;
+        }
+
+        // Split the biggest range, the new consumer takes its lower half
+        int biggestRangeUpperBound = -1;
+        int biggestRangeSize = 0;
+        int lowerBound = 0;
+        for (Integer upperBound : rangeMap.keySet()) {
+            int size = upperBound - lowerBound + 1;
+            if (size > biggestRangeSize) {
+                biggestRangeSize = size;
+                biggestRangeUpperBound = upperBound;
+            }
+            lowerBound = upperBound + 1;
+        }
+
+        if (biggestRangeSize < 2) {
+            throw new ConsumerBusyException("No more key ranges to assign to new consumers");
+        }
+
+        int splitPoint = biggestRangeUpperBound - biggestRangeSize / 2;
+        rangeMap.put(splitPoint, consumer);
+        consumerRange.put(consumer, splitPoint);
+    }
+
+    @Override
+    public synchronized void removeConsumer(Consumer consumer) {
+        Integer upperBound = consumerRange.remove(consumer);
+        if (upperBound == null) {
+            return;
+        }
+
+        if (upperBound < rangeSize - 1) {
+            // The next range takes over the keys of the removed consumer
+            rangeMap.remove(upperBound);
+            return;
+        }
+
+        // The last range is merged into the previous one, if any
+        Map.Entry<Integer, Consumer> previous = rangeMap.lowerEntry(upperBound);
+        if (previous != null) {
+            rangeMap.put(upperBound, previous.getValue());
+            rangeMap.remove(previous.getKey());
+            consumerRange.put(previous.getValue(), upperBound);
+        } else {
+            rangeMap.remove(upperBound);
+        }
+    }
+
+    @Override
+    public Consumer select(int keyHash) {
+        Map.Entry<Integer, Consumer> entry = rangeMap.ceilingEntry(keyHash & (rangeSize - 1));
+        return entry != null ? entry.getValue() : null;
+    }
+
+    Map<Consumer, Integer> getConsumerRange() {
+        return consumerRange;
+    }
+}
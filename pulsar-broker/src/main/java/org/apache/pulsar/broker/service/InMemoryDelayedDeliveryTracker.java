@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.time.Clock;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.common.util.collections.TripleLongPriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the delayed messages in a priority queue of (delivery time, ledger id, entry id), held in direct memory.
+ *
+ * <p/>A single timer is armed for the earliest delivery time, rounded up to the tick time, so that the dispatcher is
+ * woken up at most once per tick whatever the number of delayed messages.
+ *
+ * <p/>The number of messages is capped, at 24 bytes per message. The tracker is full at the cap, it is up to the
+ * dispatcher to hold the delayed messages until then.
+ */
+public class InMemoryDelayedDeliveryTracker implements DelayedDeliveryTracker {
+
+    private final TripleLongPriorityQueue priorityQueue = new TripleLongPriorityQueue();
+
+    private final ScheduledExecutorService executor;
+    // Notified when some messages are due for delivery
+    private final Runnable onMessagesAvailable;
+    private final long tickTimeMillis;
+    // 0 means no limit
+    private final long maxDelayedMessages;
+    private final Clock clock;
+
+    private ScheduledFuture<?> timeout = null;
+    // Time at which the current timeout is going to fire
+    private long currentTimeoutTarget = -1;
+    // Incremented each time the timer is armed or cancelled, to ignore a timeout that fired after being replaced
+    private long timerGeneration = 0;
+
+    public InMemoryDelayedDeliveryTracker(ScheduledExecutorService executor, Runnable onMessagesAvailable,
+            long tickTimeMillis, long maxDelayedMessages) {
+        this(executor, onMessagesAvailable, tickTimeMillis, maxDelayedMessages, Clock.systemUTC());
+    }
+
+    InMemoryDelayedDeliveryTracker(ScheduledExecutorService executor, Runnable onMessagesAvailable,
+            long tickTimeMillis, long maxDelayedMessages, Clock clock) {
+        this.executor = executor;
+        this.onMessagesAvailable = onMessagesAvailable;
+        this.tickTimeMillis = Math.max(tickTimeMillis, 1);
+        this.maxDelayedMessages = maxDelayedMessages;
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized boolean addMessage(long ledgerId, long entryId, long deliveryAt) {
+        if (deliveryAt <= clock.millis()) {
+            return false;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Add message {}:{} -- Delivery in {} ms", ledgerId, entryId, deliveryAt - clock.millis());
+        }
+        priorityQueue.add(deliveryAt, ledgerId, entryId);
+        updateTimer();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean hasMessageAvailable() {
+        return !priorityQueue.isEmpty() && priorityQueue.peekN1() <= clock.millis();
+    }
+
+    @Override
+    public synchronized long getNumberOfDelayedMessages() {
+        return priorityQueue.size();
+    }
+
+    @Override
+    public synchronized boolean isFull() {
+        return maxDelayedMessages > 0 && priorityQueue.size() >= maxDelayedMessages;
+    }
+
+    @Override
+    public synchronized Set<PositionImpl> getScheduledMessages(int maxMessages) {
+        Set<PositionImpl> positions = new TreeSet<>();
+        long now = clock.millis();
+
+        while (positions.size() < maxMessages && !priorityQueue.isEmpty() && priorityQueue.peekN1() <= now) {
+            positions.add(new PositionImpl(priorityQueue.peekN2(), priorityQueue.peekN3()));
+            priorityQueue.pop();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Get scheduled messages - found {}", positions.size());
+        }
+        updateTimer();
+        return positions;
+    }
+
+    @Override
+    public synchronized void clear() {
+        priorityQueue.clear();
+        cancelTimer();
+    }
+
+    @Override
+    public synchronized void close() {
+        cancelTimer();
+        priorityQueue.close();
+    }
+
+    private void updateTimer() {
+        if (priorityQueue.isEmpty()) {
+            cancelTimer();
+            return;
+        }
+
+        // Round up to the next tick, so that the messages due within a tick are delivered together
+        long target = (priorityQueue.peekN1() + tickTimeMillis - 1) / tickTimeMillis * tickTimeMillis;
+        if (timeout != null && currentTimeoutTarget <= target) {
+            // The current timer fires early enough, it will be re-armed then
+            return;
+        }
+
+        cancelTimer();
+        long delayMillis = Math.max(target - clock.millis(), 0);
+        currentTimeoutTarget = target;
+        final long generation = ++timerGeneration;
+        timeout = executor.schedule(() -> run(generation), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimer() {
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+        currentTimeoutTarget = -1;
+        ++timerGeneration;
+    }
+
+    private void run(long generation) {
+        synchronized (this) {
+            if (generation != timerGeneration) {
+                return;
+            }
+            timeout = null;
+            currentTimeoutTarget = -1;
+            if (!hasMessageAvailable()) {
+                // Cleared in the meantime, or the timer fired slightly early
+                updateTimer();
+                return;
+            }
+        }
+        onMessagesAvailable.run();
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryDelayedDeliveryTracker.class);
+}
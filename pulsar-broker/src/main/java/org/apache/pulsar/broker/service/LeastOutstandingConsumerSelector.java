@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Dispatches to the available consumer that is expected to process its outstanding messages first.
+ *
+ * <p/>The cost of a consumer is its number of unacked messages weighted by its average ack latency, so slow consumers
+ * get a smaller share of the messages than fast ones. Consumers whose connection is not writable are only selected
+ * when no writable consumer is available. As with the round robin dispatch, a lower priority level is only used when
+ * no consumer of a higher level is available.
+ */
+public class LeastOutstandingConsumerSelector implements ConsumerSelector {
+
+    // Lower bound of the ack latency, so that consumers without acks yet are still compared by unacked messages
+    private static final double MIN_ACK_LATENCY_MS = 1.0;
+
+    @Override
+    public Consumer select(List<Consumer> consumers, Predicate<Consumer> isAvailable) {
+        Consumer selected = null;
+        boolean selectedWritable = false;
+        double selectedCost = 0;
+
+        for (Consumer consumer : consumers) {
+            if (selected != null && consumer.getPriorityLevel() != selected.getPriorityLevel()) {
+                break;
+            }
+            if (!isAvailable.test(consumer)) {
+                continue;
+            }
+
+            boolean writable = consumer.isWritable();
+            double cost = getCost(consumer);
+            if (selected == null || (writable && !selectedWritable)
+                    || (writable == selectedWritable && cost < selectedCost)) {
+                selected = consumer;
+                selectedWritable = writable;
+                selectedCost = cost;
+            }
+        }
+        return selected;
+    }
+
+    static double getCost(Consumer consumer) {
+        return (consumer.getUnackedMessages() + 1) * Math.max(consumer.getAvgAckLatencyMs(), MIN_ACK_LATENCY_MS);
+    }
+}
@@ -129,11 +129,21 @@ public class Producer {
     }
 
     public void publishMessage(long producerId, long sequenceId, ByteBuf headersAndPayload, long batchSize) {
+        publishMessage(producerId, sequenceId, headersAndPayload, batchSize, false);
+    }
+
+    /**
+     * @param isDelayed
+     *            whether the message has a delivery time, as flagged by the client
+     */
+    public void publishMessage(long producerId, long sequenceId, ByteBuf headersAndPayload, long batchSize,
+            boolean isDelayed) {
+        final int msgSize = headersAndPayload.readableBytes();
         if (isClosed) {
             cnx.ctx().channel().eventLoop().execute(() -> {
                 cnx.ctx().writeAndFlush(Commands.newSendError(producerId, sequenceId, ServerError.PersistenceError,
                         "Producer is closed"));
-                cnx.completedSendOperation(isNonPersistentTopic);
+                cnx.completedSendOperation(isNonPersistentTopic, msgSize);
             });
 
             return;
@@ -143,7 +153,7 @@ public class Producer {
             cnx.ctx().channel().eventLoop().execute(() -> {
                 cnx.ctx().writeAndFlush(
                         Commands.newSendError(producerId, sequenceId, ServerError.ChecksumError, "Checksum failed on the broker"));
-                cnx.completedSendOperation(isNonPersistentTopic);
+                cnx.completedSendOperation(isNonPersistentTopic, msgSize);
             });
             return;
         }
@@ -160,15 +170,20 @@ public class Producer {
                 cnx.ctx().channel().eventLoop().execute(() -> {
                     cnx.ctx().writeAndFlush(Commands.newSendError(producerId, sequenceId, ServerError.MetadataError,
                             "Messages must be encrypted"));
-                    cnx.completedSendOperation(isNonPersistentTopic);
+                    cnx.completedSendOperation(isNonPersistentTopic, msgSize);
                 });
                 return;
             }
         }
 
+        if (isDelayed && !isNonPersistentTopic) {
+            ((PersistentTopic) topic).markDelayedMessagePublished();
+        }
+
         startPublishOperation();
+        topic.incrementPublishCount((int) batchSize, msgSize);
         topic.publishMessage(headersAndPayload,
-                MessagePublishContext.get(this, sequenceId, msgIn, headersAndPayload.readableBytes(), batchSize));
+                MessagePublishContext.get(this, sequenceId, msgIn, msgSize, batchSize));
     }
 
     private boolean verifyChecksum(ByteBuf headersAndPayload) {
@@ -290,7 +305,7 @@ public class Producer {
                         producer.cnx.ctx().writeAndFlush(Commands.newSendError(producer.producerId, sequenceId,
                                 serverError, exception.getMessage()));
                     }
-                    producer.cnx.completedSendOperation(producer.isNonPersistentTopic);
+                    producer.cnx.completedSendOperation(producer.isNonPersistentTopic, msgSize);
                     producer.publishOperationCompleted();
                     recycle();
                 });
@@ -321,7 +336,7 @@ public class Producer {
             producer.cnx.ctx().writeAndFlush(
                     Commands.newSendReceipt(producer.producerId, sequenceId, ledgerId, entryId),
                     producer.cnx.ctx().voidPromise());
-            producer.cnx.completedSendOperation(producer.isNonPersistentTopic);
+            producer.cnx.completedSendOperation(producer.isNonPersistentTopic, msgSize);
             producer.publishOperationCompleted();
             recycle();
         }
@@ -367,6 +382,10 @@ public class Producer {
         return topic;
     }
 
+    public ServerCnx getCnx() {
+        return cnx;
+    }
+
     public String getProducerName() {
         return producerName;
     }
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+/**
+ * Tracks the publish rate of a topic against its publish-throttling limit.
+ *
+ * The publish path only records the published messages and reads whether the limit is exceeded: the rate is compared
+ * to the limit and reset by the broker publish-throttling timer, so that throttling doesn't add any lock on the
+ * publish path.
+ */
+public interface PublishRateLimiter {
+
+    /**
+     * Checks whether the messages published in the current period exceed the limit.
+     */
+    void checkPublishRate();
+
+    /**
+     * Records messages published on the topic.
+     *
+     * @param numOfMessages
+     * @param msgSizeInBytes
+     */
+    void incrementPublishCount(int numOfMessages, long msgSizeInBytes);
+
+    /**
+     * Resets the messages published for the next period.
+     *
+     * @return true if the limit was exceeded in the period which ended, ie. reads must be resumed on the connections
+     *         of the producers
+     */
+    boolean resetPublishCount();
+
+    /**
+     * @return whether the messages published in the current period exceeded the limit
+     */
+    boolean isPublishRateExceeded();
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.pulsar.common.policies.data.PublishRate;
+
+public class PublishRateLimiterImpl implements PublishRateLimiter {
+
+    private volatile int publishMaxMessageRate = 0;
+    private volatile long publishMaxByteRate = 0;
+    private volatile boolean publishRateExceeded = false;
+    // Counted by the publish path of every connection, and only summed up by the publish-throttling timer
+    private final LongAdder currentPublishMsgCount = new LongAdder();
+    private final LongAdder currentPublishByteCount = new LongAdder();
+
+    public PublishRateLimiterImpl(PublishRate maxPublishRate) {
+        update(maxPublishRate);
+    }
+
+    @Override
+    public void checkPublishRate() {
+        if (!publishRateExceeded) {
+            long maxMessageRate = publishMaxMessageRate;
+            long maxByteRate = publishMaxByteRate;
+            if ((maxMessageRate > 0 && currentPublishMsgCount.sum() > maxMessageRate)
+                    || (maxByteRate > 0 && currentPublishByteCount.sum() > maxByteRate)) {
+                publishRateExceeded = true;
+            }
+        }
+    }
+
+    @Override
+    public void incrementPublishCount(int numOfMessages, long msgSizeInBytes) {
+        currentPublishMsgCount.add(numOfMessages);
+        currentPublishByteCount.add(msgSizeInBytes);
+    }
+
+    @Override
+    public boolean resetPublishCount() {
+        currentPublishMsgCount.reset();
+        currentPublishByteCount.reset();
+        boolean wasExceeded = publishRateExceeded;
+        publishRateExceeded = false;
+        return wasExceeded;
+    }
+
+    @Override
+    public boolean isPublishRateExceeded() {
+        return publishRateExceeded;
+    }
+
+    public void update(PublishRate maxPublishRate) {
+        this.publishMaxMessageRate = Math.max(maxPublishRate.publishThrottlingRateInMsg, 0);
+        this.publishMaxByteRate = Math.max(maxPublishRate.publishThrottlingRateInByte, 0);
+    }
+
+    /**
+     * @return whether the publish rate limits messages or bytes
+     */
+    public static boolean isPublishRateEnabled(PublishRate maxPublishRate) {
+        return maxPublishRate != null
+                && (maxPublishRate.publishThrottlingRateInMsg > 0 || maxPublishRate.publishThrottlingRateInByte > 0);
+    }
+}
@@ -122,6 +122,10 @@ public class ServerCnx extends PulsarHandler {
     private static final int MaxPendingSendRequests = 1000;
     private static final int ResumeReadsThreshold = MaxPendingSendRequests / 2;
     private int pendingSendRequest = 0;
+    // Whether reading from socket is paused because a topic published to exceeded its publish rate
+    private boolean autoReadDisabledRateLimiting = false;
+    // Whether reading from socket is paused because the broker holds too many messages not persisted yet
+    private boolean autoReadDisabledPublishBufferLimiting = false;
     private final String replicatorPrefix;
     private String clientVersion = null;
     private int nonPersistentPendingMessages = 0;
@@ -516,6 +520,14 @@ public class ServerCnx extends PulsarHandler {
 
         final String subscriptionName = subscribe.getSubscription();
         final SubType subType = subscribe.getSubType();
+        if (subType == SubType.Key_Shared
+                && !Commands.peerSupportsKeySharedSubscription(remoteEndpointProtocolVersion)) {
+            final String msg = "Key_Shared subscriptions are not supported by the client protocol version "
+                    + remoteEndpointProtocolVersion;
+            log.warn("[{}] {} on topic {} / {}", remoteAddress, msg, topicName, subscriptionName);
+            ctx.writeAndFlush(Commands.newError(requestId, ServerError.UnsupportedVersionError, msg));
+            return;
+        }
         final String consumerName = subscribe.getConsumerName();
         final boolean isDurable = subscribe.getDurable();
         final MessageIdImpl startMessageId = subscribe.hasStartMessageId() ? new BatchMessageIdImpl(
@@ -963,10 +975,11 @@ public class ServerCnx extends PulsarHandler {
             }
         }
 
-        startSendOperation();
+        startSendOperation(producer, headersAndPayload.readableBytes());
 
         // Persist the message
-        producer.publishMessage(send.getProducerId(), send.getSequenceId(), headersAndPayload, send.getNumMessages());
+        producer.publishMessage(send.getProducerId(), send.getSequenceId(), headersAndPayload, send.getNumMessages(),
+                send.getIsDelayed());
     }
 
     private void printSendCommandDebug(CommandSend send, ByteBuf headersAndPayload) {
@@ -994,8 +1007,8 @@ public class ServerCnx extends PulsarHandler {
     protected void handleFlow(CommandFlow flow) {
         checkArgument(state == State.Connected);
         if (log.isDebugEnabled()) {
-            log.debug("[{}] Received flow from consumer {} permits: {}", remoteAddress, flow.getConsumerId(),
-                    flow.getMessagePermits());
+            log.debug("[{}] Received flow from consumer {} permits: {} bytes: {}", remoteAddress,
+                    flow.getConsumerId(), flow.getMessagePermits(), flow.getMessagePermitsBytes());
         }
 
         CompletableFuture<Consumer> consumerFuture = consumers.get(flow.getConsumerId());
@@ -1003,7 +1016,8 @@ public class ServerCnx extends PulsarHandler {
         if (consumerFuture != null && consumerFuture.isDone() && !consumerFuture.isCompletedExceptionally()) {
             Consumer consumer = consumerFuture.getNow(null);
             if (consumer != null) {
-                consumer.flowPermits(flow.getMessagePermits());
+                consumer.flowPermits(flow.getMessagePermits(),
+                        flow.hasMessagePermitsBytes() ? flow.getMessagePermitsBytes() : -1);
             } else {
                 log.info("[{}] Couldn't find consumer {}", remoteAddress, flow.getConsumerId());
             }
@@ -1021,8 +1035,12 @@ public class ServerCnx extends PulsarHandler {
 
         if (consumerFuture != null && consumerFuture.isDone() && !consumerFuture.isCompletedExceptionally()) {
             Consumer consumer = consumerFuture.getNow(null);
-            if (redeliver.getMessageIdsCount() > 0 && consumer.subType() == SubType.Shared) {
-                consumer.redeliverUnacknowledgedMessages(redeliver.getMessageIdsList());
+            if (redeliver.getMessageIdsCount() > 0 && Subscription.isIndividualAckMode(consumer.subType())) {
+                if (redeliver.getNegativeAck()) {
+                    consumer.negativeAcknowledge(redeliver.getMessageIdsList());
+                } else {
+                    consumer.redeliverUnacknowledgedMessages(redeliver.getMessageIdsList());
+                }
             } else {
                 consumer.redeliverUnacknowledgedMessages();
             }
@@ -1322,6 +1340,8 @@ public class ServerCnx extends PulsarHandler {
             log.debug("[{}] Removed producer: {}", remoteAddress, producer);
         }
         producers.remove(producer.getProducerId());
+        // A topic which throttled the connection doesn't resume its reads once the producer is gone
+        enableCnxAutoRead();
     }
 
     public boolean isActive() {
@@ -1332,24 +1352,71 @@ public class ServerCnx extends PulsarHandler {
         return ctx.channel().isWritable();
     }
 
-    public void startSendOperation() {
+    public void startSendOperation(Producer producer, int msgSize) {
+        service.incrementMessagePublishBufferSize(msgSize);
         if (++pendingSendRequest == MaxPendingSendRequests) {
             // When the quota of pending send requests is reached, stop reading from socket to cause backpressure on
             // client connection, possibly shared between multiple producers
             ctx.channel().config().setAutoRead(false);
         }
+        if (!autoReadDisabledRateLimiting && producer.getTopic().isPublishRateExceeded()) {
+            // The topic published more than its publish rate in the current period: stop reading from socket until
+            // the broker publish-throttling timer starts the next period
+            autoReadDisabledRateLimiting = true;
+            ctx.channel().config().setAutoRead(false);
+        }
+        if (!autoReadDisabledPublishBufferLimiting && service.isReachedMaxMessagePublishBuffer()) {
+            // The broker holds too many messages waiting to be persisted, across all its connections: stop reading
+            // from socket until enough of them are persisted
+            autoReadDisabledPublishBufferLimiting = true;
+            ctx.channel().config().setAutoRead(false);
+            service.pauseConnection(this);
+        }
     }
 
-    public void completedSendOperation(boolean isNonPersistentTopic) {
+    public void completedSendOperation(boolean isNonPersistentTopic, int msgSize) {
+        service.decrementMessagePublishBufferSize(msgSize);
         if (--pendingSendRequest == ResumeReadsThreshold) {
             // Resume reading from socket
-            ctx.channel().config().setAutoRead(true);
+            resumeReadsIfPossible();
         }
         if (isNonPersistentTopic) {
             nonPersistentPendingMessages--;
         }
     }
 
+    /**
+     * Resumes reading from socket once the topics that throttled the connection start a new publish-throttling period.
+     * If the quota of pending send requests is still reached, reads resume when enough send requests complete.
+     */
+    public void enableCnxAutoRead() {
+        ctx.channel().eventLoop().execute(() -> {
+            if (autoReadDisabledRateLimiting) {
+                autoReadDisabledRateLimiting = false;
+                resumeReadsIfPossible();
+            }
+        });
+    }
+
+    /**
+     * Resumes reading from socket once the broker persisted enough of the pending published messages.
+     */
+    public void resumeReadsAfterPublishBufferRelease() {
+        ctx.channel().eventLoop().execute(() -> {
+            if (autoReadDisabledPublishBufferLimiting) {
+                autoReadDisabledPublishBufferLimiting = false;
+                resumeReadsIfPossible();
+            }
+        });
+    }
+
+    private void resumeReadsIfPossible() {
+        if (pendingSendRequest <= ResumeReadsThreshold && !autoReadDisabledRateLimiting
+                && !autoReadDisabledPublishBufferLimiting) {
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
     private <T> ServerError getErrorCode(CompletableFuture<T> future) {
         ServerError error = ServerError.UnknownError;
         try {
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerBusyException;
+import org.apache.pulsar.client.impl.Murmur3_32Hash;
+
+/**
+ * Assigns the messages of a subscription to its consumers by the hash of the message key, so that all the messages
+ * with the same key are delivered to the same consumer as long as the set of consumers doesn't change.
+ */
+public interface StickyKeyConsumerSelector {
+
+    /**
+     * Key used for the messages that don't have a key.
+     */
+    String NONE_KEY = "";
+
+    /**
+     * Add a new consumer and give it a share of the keys.
+     *
+     * @param consumer
+     *            the new consumer
+     * @throws ConsumerBusyException
+     *             if no more keys can be assigned to a new consumer
+     */
+    void addConsumer(Consumer consumer) throws ConsumerBusyException;
+
+    /**
+     * Remove a consumer and reassign its keys to the remaining consumers.
+     *
+     * @param consumer
+     *            the consumer to remove
+     */
+    void removeConsumer(Consumer consumer);
+
+    /**
+     * Select the consumer that owns a key.
+     *
+     * @param keyHash
+     *            the hash of the key, as returned by {@link #makeStickyKeyHash(String)}
+     * @return the consumer owning the key, or null if there are no consumers
+     */
+    Consumer select(int keyHash);
+
+    static int makeStickyKeyHash(String stickyKey) {
+        return Murmur3_32Hash.getInstance().makeHash(stickyKey);
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.pulsar.broker.service;
 
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -42,6 +43,21 @@ public interface Subscription {
 
     void acknowledgeMessage(List<Position> positions, AckType ackType, Map<String,Long> properties);
 
+    /**
+     * Acknowledge some of the messages of a batched entry. The entry is acknowledged once all its messages are.
+     */
+    default void acknowledgeBatchIndexes(PositionImpl position, int batchSize, BitSet batchIndexes) {
+        // No-op
+    }
+
+    /**
+     * @return the bitset words of the indexes of the acknowledged messages of a partially acknowledged batched entry,
+     *         or null if none of them was acknowledged on its own
+     */
+    default long[] getAckedBatchIndexes(PositionImpl position) {
+        return null;
+    }
+
     String getTopicName();
 
     Dispatcher getDispatcher();
@@ -83,4 +99,12 @@ public interface Subscription {
     String getTypeString();
 
     void addUnAckedMessages(int unAckMessages);
+
+    /**
+     * Whether the consumers of this subscription type acknowledge the messages individually, in which case the broker
+     * keeps track of the messages pending acknowledgement on each consumer.
+     */
+    static boolean isIndividualAckMode(SubType subType) {
+        return SubType.Shared.equals(subType) || SubType.Key_Shared.equals(subType);
+    }
 }
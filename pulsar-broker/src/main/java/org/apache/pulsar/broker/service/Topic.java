@@ -111,6 +111,28 @@ public interface Topic {
 
     boolean isBacklogQuotaExceeded(String producerName);
 
+    /**
+     * Records messages published on the topic, for its publish-throttling.
+     */
+    void incrementPublishCount(int numOfMessages, long msgSizeInBytes);
+
+    /**
+     * Whether the topic exceeded its publish rate in the current period, in which case the connections of its
+     * producers stop being read until the period ends.
+     */
+    boolean isPublishRateExceeded();
+
+    /**
+     * Compares the messages published in the current period to the publish-throttling limit of the topic.
+     */
+    void checkPublishThrottlingRate();
+
+    /**
+     * Starts a new publish-throttling period, resuming the reads on the connections of the producers if the topic was
+     * throttled.
+     */
+    void resetPublishCountAndEnableReadIfRequired();
+
     boolean isEncryptionRequired();
 
     boolean isReplicated();
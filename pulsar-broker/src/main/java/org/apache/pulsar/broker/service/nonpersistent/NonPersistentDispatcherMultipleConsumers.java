@@ -107,7 +107,7 @@ public class NonPersistentDispatcherMultipleConsumers extends AbstractDispatcher
 
     @Override
     public synchronized void removeConsumer(Consumer consumer) throws BrokerServiceException {
-        if (consumerSet.removeAll(consumer) == 1) {
+        if (consumerSet.remove(consumer)) {
             consumerList.remove(consumer);
             log.info("Removed consumer {}", consumer);
             if (consumerList.isEmpty()) {
@@ -215,7 +215,8 @@ public class NonPersistentDispatcherMultipleConsumers extends AbstractDispatcher
 
     @Override
     public boolean isConsumerAvailable(Consumer consumer) {
-        return consumer != null && consumer.getAvailablePermits() > 0 && consumer.isWritable();
+        return consumer != null && consumer.getAvailablePermits() > 0 && consumer.getAvailablePermitsBytes() > 0
+                && consumer.isWritable();
     }
 
     private static final Logger log = LoggerFactory.getLogger(NonPersistentDispatcherMultipleConsumers.class);
@@ -59,6 +59,9 @@ import org.apache.pulsar.broker.service.BrokerServiceException.TopicFencedExcept
 import org.apache.pulsar.broker.service.BrokerServiceException.UnsupportedVersionException;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.Producer;
+import org.apache.pulsar.broker.service.PublishRateLimiter;
+import org.apache.pulsar.broker.service.PublishRateLimiterDisabled;
+import org.apache.pulsar.broker.service.PublishRateLimiterImpl;
 import org.apache.pulsar.broker.service.Replicator;
 import org.apache.pulsar.broker.service.ServerCnx;
 import org.apache.pulsar.broker.service.StreamingStats;
@@ -80,6 +83,7 @@ import org.apache.pulsar.common.policies.data.NonPersistentTopicStats;
 import org.apache.pulsar.common.policies.data.PersistentTopicInternalStats;
 import org.apache.pulsar.common.policies.data.PersistentTopicInternalStats.CursorStats;
 import org.apache.pulsar.common.policies.data.Policies;
+import org.apache.pulsar.common.policies.data.PublishRate;
 import org.apache.pulsar.common.policies.data.PublisherStats;
 import org.apache.pulsar.common.schema.SchemaData;
 import org.apache.pulsar.common.schema.SchemaVersion;
@@ -139,6 +143,7 @@ public class NonPersistentTopic implements Topic {
 
     // Whether messages published must be encrypted or not in this topic
     private volatile boolean isEncryptionRequired = false;
+    private volatile PublishRateLimiter publishRateLimiter = PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
     private volatile SchemaCompatibilityStrategy schemaCompatibilityStrategy =
         SchemaCompatibilityStrategy.FULL;
 
@@ -183,12 +188,14 @@ public class NonPersistentTopic implements Topic {
                     .get(AdminResource.path(POLICIES, TopicName.get(topic).getNamespace()))
                     .orElseThrow(() -> new KeeperException.NoNodeException());
             isEncryptionRequired = policies.encryption_required;
+            updatePublishRateLimiter(policies);
             schemaCompatibilityStrategy = SchemaCompatibilityStrategy.fromAutoUpdatePolicy(
                     policies.schema_auto_update_compatibility_strategy);
 
         } catch (Exception e) {
             log.warn("[{}] Error getting policies {} and isEncryptionRequired will be set to false", topic, e.getMessage());
             isEncryptionRequired = false;
+            updatePublishRateLimiter(null);
         }
     }
 
@@ -961,6 +968,7 @@ public class NonPersistentTopic implements Topic {
             producer.checkEncryption();
         });
         subscriptions.forEach((subName, sub) -> sub.getConsumers().forEach(Consumer::checkPermissions));
+        updatePublishRateLimiter(data);
         return checkReplicationAndRetryOnFailure();
     }
 
@@ -984,6 +992,50 @@ public class NonPersistentTopic implements Topic {
         return false;
     }
 
+    @Override
+    public void incrementPublishCount(int numOfMessages, long msgSizeInBytes) {
+        publishRateLimiter.incrementPublishCount(numOfMessages, msgSizeInBytes);
+    }
+
+    @Override
+    public boolean isPublishRateExceeded() {
+        return publishRateLimiter.isPublishRateExceeded();
+    }
+
+    @Override
+    public void checkPublishThrottlingRate() {
+        publishRateLimiter.checkPublishRate();
+    }
+
+    @Override
+    public void resetPublishCountAndEnableReadIfRequired() {
+        if (publishRateLimiter.resetPublishCount()) {
+            enableProducerReads();
+        }
+    }
+
+    private void enableProducerReads() {
+        producers.forEach(producer -> producer.getCnx().enableCnxAutoRead());
+    }
+
+    private void updatePublishRateLimiter(Policies policies) {
+        final PublishRate maxPublishRate = brokerService.getPublishRate(policies);
+        final PublishRateLimiter currentRateLimiter = publishRateLimiter;
+        if (PublishRateLimiterImpl.isPublishRateEnabled(maxPublishRate)) {
+            if (currentRateLimiter instanceof PublishRateLimiterImpl) {
+                ((PublishRateLimiterImpl) currentRateLimiter).update(maxPublishRate);
+            } else {
+                publishRateLimiter = new PublishRateLimiterImpl(maxPublishRate);
+            }
+        } else {
+            publishRateLimiter = PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
+            if (currentRateLimiter.isPublishRateExceeded()) {
+                // the producers would otherwise wait for a reset which isn't coming
+                enableProducerReads();
+            }
+        }
+    }
+
     @Override
     public boolean isEncryptionRequired() {
         return isEncryptionRequired;
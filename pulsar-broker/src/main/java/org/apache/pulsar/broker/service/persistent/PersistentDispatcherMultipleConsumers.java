@@ -18,14 +18,18 @@
  */
 package org.apache.pulsar.broker.service.persistent;
 
-import static java.util.stream.Collectors.toSet;
 import static org.apache.pulsar.broker.cache.ConfigurationCacheService.POLICIES;
 import static org.apache.pulsar.broker.service.persistent.PersistentTopic.MESSAGE_RATE_BACKOFF_MS;
 
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ReadEntriesCallback;
@@ -36,6 +40,7 @@ import org.apache.bookkeeper.mledger.ManagedLedgerException.NoMoreEntriesToReadE
 import org.apache.bookkeeper.mledger.ManagedLedgerException.TooManyRequestsException;
 import org.apache.bookkeeper.mledger.Position;
 import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.bookkeeper.mledger.util.SafeRun;
 import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.admin.AdminResource;
 import org.apache.pulsar.broker.service.AbstractDispatcherMultipleConsumers;
@@ -43,21 +48,27 @@ import org.apache.pulsar.broker.service.BrokerServiceException;
 import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerBusyException;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.Consumer.SendMessageInfo;
+import org.apache.pulsar.broker.service.ConsumerSelector;
+import org.apache.pulsar.broker.service.DelayedDeliveryTracker;
 import org.apache.pulsar.broker.service.Dispatcher;
+import org.apache.pulsar.broker.service.InMemoryDelayedDeliveryTracker;
 import org.apache.pulsar.broker.service.RedeliveryTracker;
 import org.apache.pulsar.broker.service.InMemoryRedeliveryTracker;
 import org.apache.pulsar.client.impl.Backoff;
+import org.apache.pulsar.common.api.Commands;
 import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
 import org.apache.pulsar.common.naming.TopicName;
 import org.apache.pulsar.common.policies.data.Policies;
 import org.apache.pulsar.common.util.Codec;
-import org.apache.pulsar.common.util.collections.ConcurrentLongPairSet;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenHashMap;
+import org.apache.pulsar.common.util.collections.SortedLongPairRangeSet;
 import org.apache.pulsar.utils.CopyOnWriteArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
 
 /**
  */
@@ -66,19 +77,30 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
     private static final int MaxReadBatchSize = 100;
     private static final int MaxRoundRobinBatchSize = 20;
 
-    private final PersistentTopic topic;
-    private final ManagedCursor cursor;
+    protected final PersistentTopic topic;
+    protected final ManagedCursor cursor;
 
     private CompletableFuture<Void> closeFuture = null;
-    private ConcurrentLongPairSet messagesToReplay;
+    protected SortedLongPairRangeSet messagesToReplay;
     private final RedeliveryTracker redeliveryTracker;
+    // Created when the first delayed message is read
+    private volatile DelayedDeliveryTracker delayedDeliveryTracker = null;
 
     private boolean havePendingRead = false;
     private boolean havePendingReplayRead = false;
     private boolean shouldRewindBeforeReadingOrReplaying = false;
-    private final String name;
-
-    private int totalAvailablePermits = 0;
+    protected final String name;
+
+    protected static final AtomicIntegerFieldUpdater<PersistentDispatcherMultipleConsumers> TOTAL_AVAILABLE_PERMITS_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(PersistentDispatcherMultipleConsumers.class, "totalAvailablePermits");
+    protected volatile int totalAvailablePermits = 0;
+    // Permits of each consumer counted in totalAvailablePermits. The counter of a removed consumer is closed, so that a
+    // flow racing with the removal cannot add permits that the removal did not subtract
+    private final ConcurrentOpenHashMap<Consumer, AtomicInteger> countedPermits = new ConcurrentOpenHashMap<>(16, 1);
+    private static final int REMOVED_CONSUMER_PERMITS = Integer.MIN_VALUE;
+    private static final AtomicIntegerFieldUpdater<PersistentDispatcherMultipleConsumers> READ_SCHEDULED_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(PersistentDispatcherMultipleConsumers.class, "readScheduled");
+    private volatile int readScheduled = FALSE;
     private int readBatchSize;
     private final Backoff readFailureBackoff = new Backoff(15, TimeUnit.SECONDS, 1, TimeUnit.MINUTES, 0, TimeUnit.MILLISECONDS);
     private static final AtomicIntegerFieldUpdater<PersistentDispatcherMultipleConsumers> TOTAL_UNACKED_MESSAGES_UPDATER =
@@ -99,13 +121,14 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
         this.cursor = cursor;
         this.name = topic.getName() + " / " + Codec.decode(cursor.getName());
         this.topic = topic;
-        this.messagesToReplay = new ConcurrentLongPairSet(512, 2);
+        this.messagesToReplay = new SortedLongPairRangeSet();
         this.redeliveryTracker = new InMemoryRedeliveryTracker();
         this.readBatchSize = MaxReadBatchSize;
         this.maxUnackedMessages = topic.getBrokerService().pulsar().getConfiguration()
                 .getMaxUnackedMessagesPerSubscription();
         this.serviceConfig = topic.getBrokerService().pulsar().getConfiguration();
         this.dispatchRateLimiter = null;
+        this.consumerSelector = ConsumerSelector.create(serviceConfig);
     }
 
     @Override
@@ -124,6 +147,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                 shouldRewindBeforeReadingOrReplaying = false;
             }
             messagesToReplay.clear();
+            clearDelayedMessages();
         }
 
         if (isConsumersExceededOnTopic()) {
@@ -136,6 +160,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             throw new ConsumerBusyException("Subscription reached max consumers limit");
         }
 
+        countedPermits.put(consumer, new AtomicInteger());
         consumerList.add(consumer);
         consumerList.sort((c1, c2) -> c1.getPriorityLevel() - c2.getPriorityLevel());
         consumerSet.add(consumer);
@@ -181,8 +206,12 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
     public synchronized void removeConsumer(Consumer consumer) throws BrokerServiceException {
         // decrement unack-message count for removed consumer
         addUnAckedMessages(-consumer.getUnackedMessages());
-        if (consumerSet.removeAll(consumer) == 1) {
+        if (consumerSet.remove(consumer)) {
             consumerList.remove(consumer);
+            AtomicInteger permits = countedPermits.remove(consumer);
+            if (permits != null) {
+                TOTAL_AVAILABLE_PERMITS_UPDATER.addAndGet(this, -permits.getAndSet(REMOVED_CONSUMER_PERMITS));
+            }
             log.info("Removed consumer {} with pending {} acks", consumer, consumer.getPendingAcks().size());
             if (consumerList.isEmpty()) {
                 if (havePendingRead && cursor.cancelPendingReadRequest()) {
@@ -190,11 +219,11 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                 }
 
                 messagesToReplay.clear();
+                clearDelayedMessages();
                 if (closeFuture != null) {
                     log.info("[{}] All consumers removed. Subscription is disconnected", name);
                     closeFuture.complete(null);
                 }
-                totalAvailablePermits = 0;
             } else {
                 if (log.isDebugEnabled()) {
                     log.debug("[{}] Consumer are left, reading more entries", name);
@@ -202,7 +231,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                 consumer.getPendingAcks().forEach((ledgerId, entryId, batchSize, none) -> {
                     messagesToReplay.add(ledgerId, entryId);
                 });
-                totalAvailablePermits -= consumer.getAvailablePermits();
+                rewindIfTooManyMessagesToReplay();
                 readMoreEntries();
             }
         } else {
@@ -212,26 +241,87 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
         }
     }
 
+    /**
+     * Flow control only updates the permits from the connection thread: the read is triggered on the dispatch thread
+     * of the subscription, so that flow commands of many consumers do not contend on the dispatcher.
+     */
     @Override
-    public synchronized void consumerFlow(Consumer consumer, int additionalNumberOfMessages) {
-        if (!consumerSet.contains(consumer)) {
+    public void consumerFlow(Consumer consumer, int additionalNumberOfMessages) {
+        if (!addCountedPermits(consumer, additionalNumberOfMessages)) {
             if (log.isDebugEnabled()) {
                 log.debug("[{}] Ignoring flow control from disconnected consumer {}", name, consumer);
             }
             return;
         }
 
-        totalAvailablePermits += additionalNumberOfMessages;
+        int permits = TOTAL_AVAILABLE_PERMITS_UPDATER.addAndGet(this, additionalNumberOfMessages);
         if (log.isDebugEnabled()) {
             log.debug("[{}-{}] Trigger new read after receiving flow control message with permits {}", name, consumer,
-                    totalAvailablePermits);
+                    permits);
+        }
+        scheduleReadMoreEntries();
+    }
+
+    /**
+     * @return false if the consumer was removed, in which case its permits must not be added to the total
+     */
+    private boolean addCountedPermits(Consumer consumer, int permits) {
+        AtomicInteger counted = countedPermits.get(consumer);
+        if (counted == null) {
+            return false;
+        }
+
+        int current;
+        do {
+            current = counted.get();
+            if (current == REMOVED_CONSUMER_PERMITS) {
+                return false;
+            }
+        } while (!counted.compareAndSet(current, current + permits));
+        return true;
+    }
+
+    /**
+     * Takes the permits used by the messages sent to a consumer off the available permits.
+     */
+    protected void consumePermits(Consumer consumer, int permits) {
+        AtomicInteger counted = countedPermits.get(consumer);
+        if (counted != null) {
+            // Consumers are only removed with the dispatcher lock held, as when sending messages
+            counted.addAndGet(-permits);
+        }
+        TOTAL_AVAILABLE_PERMITS_UPDATER.addAndGet(this, -permits);
+    }
+
+    /**
+     * Triggers {@link #readMoreEntries()} on the dispatch thread of the subscription. Requests made while a read is
+     * already scheduled are coalesced into it.
+     */
+    public void scheduleReadMoreEntries() {
+        if (readScheduled == FALSE && READ_SCHEDULED_UPDATER.compareAndSet(this, FALSE, TRUE)) {
+            topic.getBrokerService().getTopicOrderedExecutor().executeOrdered(name, SafeRun.safeRun(() -> {
+                READ_SCHEDULED_UPDATER.set(this, FALSE);
+                synchronized (this) {
+                    readMoreEntries();
+                }
+            }));
         }
-        readMoreEntries();
     }
 
     public void readMoreEntries() {
-        if (totalAvailablePermits > 0 && isAtleastOneConsumerAvailable()) {
-            int messagesToRead = Math.min(totalAvailablePermits, readBatchSize);
+        if (shouldRewindBeforeReadingOrReplaying) {
+            if (havePendingRead || havePendingReplayRead) {
+                // The completion of the pending read will trigger the rewind
+                return;
+            }
+            cursor.rewind();
+            clearDelayedMessages();
+            shouldRewindBeforeReadingOrReplaying = false;
+        }
+
+        int availablePermits = TOTAL_AVAILABLE_PERMITS_UPDATER.get(this);
+        if (availablePermits > 0 && isAtleastOneConsumerAvailable()) {
+            int messagesToRead = Math.min(availablePermits, readBatchSize);
 
             // throttle only if: (1) cursor is not active (or flag for throttle-nonBacklogConsumer is enabled) bcz
             // active-cursor reads message from cache rather from bookkeeper (2) if topic has reached message-rate
@@ -245,8 +335,8 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                                     topicRateLimiter.getDispatchRateOnMsg(), topicRateLimiter.getDispatchRateOnByte(),
                                     MESSAGE_RATE_BACKOFF_MS);
                         }
-                        topic.getBrokerService().executor().schedule(() -> readMoreEntries(), MESSAGE_RATE_BACKOFF_MS,
-                                TimeUnit.MILLISECONDS);
+                        topic.getBrokerService().executor().schedule(() -> scheduleReadMoreEntries(),
+                                MESSAGE_RATE_BACKOFF_MS, TimeUnit.MILLISECONDS);
                         return;
                     } else {
                         // if dispatch-rate is in msg then read only msg according to available permit
@@ -267,8 +357,8 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                                 dispatchRateLimiter.getDispatchRateOnMsg(), dispatchRateLimiter.getDispatchRateOnByte(),
                                 MESSAGE_RATE_BACKOFF_MS);
                         }
-                        topic.getBrokerService().executor().schedule(() -> readMoreEntries(), MESSAGE_RATE_BACKOFF_MS,
-                            TimeUnit.MILLISECONDS);
+                        topic.getBrokerService().executor().schedule(() -> scheduleReadMoreEntries(),
+                            MESSAGE_RATE_BACKOFF_MS, TimeUnit.MILLISECONDS);
                         return;
                     } else {
                         // if dispatch-rate is in msg then read only msg according to available permit
@@ -281,22 +371,42 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
 
             }
 
-            if (!messagesToReplay.isEmpty()) {
-                if (havePendingReplayRead) {
-                    log.debug("[{}] Skipping replay while awaiting previous read to complete", name);
-                    return;
+            if (delayedDeliveryTracker != null && delayedDeliveryTracker.hasMessageAvailable()) {
+                // The delayed messages that became due are read again through the replay
+                delayedDeliveryTracker.getScheduledMessages(messagesToRead).forEach(
+                        position -> messagesToReplay.add(position.getLedgerId(), position.getEntryId()));
+            }
+
+            if (delayedDeliveryTracker != null && delayedDeliveryTracker.isFull()) {
+                // Resumed by the tracker once some messages are due
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}] Pause reading while the delayed delivery tracker is full with {} messages", name,
+                            delayedDeliveryTracker.getNumberOfDelayedMessages());
                 }
+                return;
+            }
 
-                Set<PositionImpl> messagesToReplayNow = messagesToReplay.items(messagesToRead).stream()
-                        .map(pair -> new PositionImpl(pair.first, pair.second)).collect(toSet());
+            if (!messagesToReplay.isEmpty() && havePendingReplayRead) {
+                log.debug("[{}] Skipping replay while awaiting previous read to complete", name);
+                return;
+            }
 
+            List<Range<PositionImpl>> messagesToReplayNow = messagesToReplay.isEmpty() ? Collections.emptyList()
+                    : getMessagesToReplayNow(messagesToRead);
+
+            if (!messagesToReplayNow.isEmpty()) {
+                long messagesToReplayNowCount = 0;
+                for (Range<PositionImpl> range : messagesToReplayNow) {
+                    messagesToReplayNowCount += range.upperEndpoint().getEntryId()
+                            - range.lowerEndpoint().getEntryId() + 1;
+                }
                 if (log.isDebugEnabled()) {
-                    log.debug("[{}] Schedule replay of {} messages for {} consumers", name, messagesToReplayNow.size(),
-                            consumerList.size());
+                    log.debug("[{}] Schedule replay of {} messages in {} ranges for {} consumers", name,
+                            messagesToReplayNowCount, messagesToReplayNow.size(), consumerList.size());
                 }
 
                 havePendingReplayRead = true;
-                Set<? extends Position> deletedMessages = cursor.asyncReplayEntries(messagesToReplayNow, this,
+                Set<? extends Position> deletedMessages = cursor.asyncReplayEntryRanges(messagesToReplayNow, this,
                         ReadType.Replay);
                 // clear already acked positions from replay bucket
 
@@ -304,7 +414,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                         ((PositionImpl) position).getEntryId()));
                 // if all the entries are acked-entries and cleared up from messagesToReplay, try to read
                 // next entries as readCompletedEntries-callback was never called
-                if ((messagesToReplayNow.size() - deletedMessages.size()) == 0) {
+                if ((messagesToReplayNowCount - deletedMessages.size()) == 0) {
                     havePendingReplayRead = false;
                     readMoreEntries();
                 }
@@ -328,6 +438,51 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
         }
     }
 
+    /**
+     * Select the positions to replay in the next replay read.
+     *
+     * @param maxMessagesToRead
+     *            max number of positions to select
+     * @return the ranges of consecutive positions to replay in ascending order, or an empty list to read new entries
+     *         instead
+     */
+    protected List<Range<PositionImpl>> getMessagesToReplayNow(int maxMessagesToRead) {
+        // Replay from the oldest position, with a single read for each range of consecutive entries
+        List<Range<PositionImpl>> ranges = new ArrayList<>();
+        int[] remaining = { maxMessagesToRead };
+        messagesToReplay.forEachRange((ledgerId, firstEntryId, lastEntryId) -> {
+            long lastEntryIdNow = Math.min(lastEntryId, firstEntryId + remaining[0] - 1);
+            ranges.add(Range.closed(new PositionImpl(ledgerId, firstEntryId),
+                    new PositionImpl(ledgerId, lastEntryIdNow)));
+            remaining[0] -= (int) (lastEntryIdNow - firstEntryId + 1);
+            return remaining[0] > 0;
+        });
+        return ranges;
+    }
+
+    /**
+     * Rewind the cursor instead of keeping more positions to replay than allowed: the unacknowledged messages are
+     * then read again from the mark-delete position with sequential reads, at the cost of redelivering the messages
+     * that are still pending on the connected consumers.
+     */
+    protected void rewindIfTooManyMessagesToReplay() {
+        final long maxMessagesToReplay = serviceConfig.getDispatcherMaxMessagesToReplay();
+        if (maxMessagesToReplay <= 0 || messagesToReplay.size() <= maxMessagesToReplay) {
+            return;
+        }
+
+        log.info("[{}] {} messages to replay exceed the max of {}, rewinding the cursor", name,
+                messagesToReplay.size(), maxMessagesToReplay);
+        messagesToReplay.clear();
+        if (havePendingRead || havePendingReplayRead) {
+            // There is a pending read. We must wait for it to complete and then rewind
+            shouldRewindBeforeReadingOrReplaying = true;
+        } else {
+            cursor.rewind();
+            clearDelayedMessages();
+        }
+    }
+
     @Override
     public boolean isConsumerConnected() {
         return !consumerList.isEmpty();
@@ -346,6 +501,12 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
     @Override
     public CompletableFuture<Void> close() {
         IS_CLOSED_UPDATER.set(this, TRUE);
+        synchronized (this) {
+            if (delayedDeliveryTracker != null) {
+                delayedDeliveryTracker.close();
+                delayedDeliveryTracker = null;
+            }
+        }
         return disconnectAllConsumers();
     }
 
@@ -374,10 +535,14 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
     }
 
     @Override
-    public synchronized void readEntriesComplete(List<Entry> entries, Object ctx) {
+    public void readEntriesComplete(List<Entry> entries, Object ctx) {
+        topic.getBrokerService().getTopicOrderedExecutor().executeOrdered(name, SafeRun.safeRun(() -> {
+            internalReadEntriesComplete(entries, ctx);
+        }));
+    }
+
+    private synchronized void internalReadEntriesComplete(List<Entry> entries, Object ctx) {
         ReadType readType = (ReadType) ctx;
-        int start = 0;
-        int entriesToDispatch = entries.size();
 
         if (readType == ReadType.Normal) {
             havePendingRead = false;
@@ -396,33 +561,50 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
 
         readFailureBackoff.reduceToHalf();
 
-        if (shouldRewindBeforeReadingOrReplaying && readType == ReadType.Normal) {
-            // All consumers got disconnected before the completion of the read operation
+        if (shouldRewindBeforeReadingOrReplaying) {
+            // The cursor must be rewound after the read was issued: the entries of both normal and replay reads are
+            // stale, and the rewind happens once there is no more pending read
             entries.forEach(Entry::release);
-            cursor.rewind();
-            shouldRewindBeforeReadingOrReplaying = false;
             readMoreEntries();
             return;
         }
 
+        sendMessagesToConsumers(readType, entries);
+    }
+
+    /**
+     * Dispatch the entries that were read to the consumers, keep the ones that cannot be dispatched for a later replay
+     * and schedule the next read.
+     */
+    protected void sendMessagesToConsumers(ReadType readType, List<Entry> entries) {
+        if (serviceConfig.isDelayedDeliveryEnabled()) {
+            entries = trackDelayedMessages(readType, entries);
+        }
+
+        int start = 0;
+        int entriesToDispatch = entries.size();
+
         if (log.isDebugEnabled()) {
             log.debug("[{}] Distributing {} messages to {} consumers", name, entries.size(), consumerList.size());
         }
 
         long totalMessagesSent = 0;
         long totalBytesSent = 0;
-        while (entriesToDispatch > 0 && totalAvailablePermits > 0 && isAtleastOneConsumerAvailable()) {
+        while (entriesToDispatch > 0 && TOTAL_AVAILABLE_PERMITS_UPDATER.get(this) > 0
+                && isAtleastOneConsumerAvailable()) {
             Consumer c = getNextConsumer();
             if (c == null) {
                 // Do nothing, cursor will be rewind at reconnection
                 log.info("[{}] rewind because no available consumer found from total {}", name, consumerList.size());
                 entries.subList(start, entries.size()).forEach(Entry::release);
                 cursor.rewind();
+                clearDelayedMessages();
                 return;
             }
 
             // round-robin dispatch batch size for this consumer
             int messagesForC = Math.min(Math.min(entriesToDispatch, c.getAvailablePermits()), MaxRoundRobinBatchSize);
+            messagesForC = c.getEntriesWithinPermitsBytes(entries, start, messagesForC);
 
             if (messagesForC > 0) {
 
@@ -435,24 +617,15 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
 
                 SendMessageInfo sentMsgInfo = c.sendMessages(entries.subList(start, start + messagesForC));
 
-                long msgSent = sentMsgInfo.getTotalSentMessages();
                 start += messagesForC;
                 entriesToDispatch -= messagesForC;
-                totalAvailablePermits -= msgSent;
+                consumePermits(c, sentMsgInfo.getTotalSentMessages());
                 totalMessagesSent += sentMsgInfo.getTotalSentMessages();
                 totalBytesSent += sentMsgInfo.getTotalSentMessageBytes();
             }
         }
 
-        // acquire message-dispatch permits for already delivered messages
-        if (serviceConfig.isDispatchThrottlingOnNonBacklogConsumerEnabled() || !cursor.isActive()) {
-            topic.getDispatchRateLimiter().tryDispatchPermit(totalMessagesSent, totalBytesSent);
-
-            if (dispatchRateLimiter == null) {
-                dispatchRateLimiter = new DispatchRateLimiter(topic, name);
-            }
-            dispatchRateLimiter.tryDispatchPermit(totalMessagesSent, totalBytesSent);
-        }
+        acquireDispatchPermits(totalMessagesSent, totalBytesSent);
 
         if (entriesToDispatch > 0) {
             if (log.isDebugEnabled()) {
@@ -463,11 +636,105 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
                 messagesToReplay.add(entry.getLedgerId(), entry.getEntryId());
                 entry.release();
             });
+            rewindIfTooManyMessagesToReplay();
         }
 
         readMoreEntries();
     }
 
+    /**
+     * Hold the entries whose delivery time is not reached yet in the delayed delivery tracker. They are replayed once
+     * they are due. While the tracker is full, the entries with a delivery time are kept for a later replay instead.
+     *
+     * @return the entries that can be dispatched now
+     */
+    private List<Entry> trackDelayedMessages(ReadType readType, List<Entry> entries) {
+        List<Entry> entriesToDispatch = null;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            // Only parse the metadata of the entries that may have a delivery time
+            long deliverAtTime = topic.mayHaveDelayedMessage((PositionImpl) entry.getPosition())
+                    ? getDeliverAtTime(entry) : -1;
+            boolean held = false;
+            if (deliverAtTime > 0) {
+                DelayedDeliveryTracker tracker = getDelayedDeliveryTracker();
+                if (tracker.isFull()) {
+                    messagesToReplay.add(entry.getLedgerId(), entry.getEntryId());
+                    held = true;
+                } else if (tracker.addMessage(entry.getLedgerId(), entry.getEntryId(), deliverAtTime)) {
+                    if (readType == ReadType.Replay) {
+                        messagesToReplay.remove(entry.getLedgerId(), entry.getEntryId());
+                    }
+                    held = true;
+                }
+            }
+            if (held) {
+                if (entriesToDispatch == null) {
+                    entriesToDispatch = new ArrayList<>(entries.subList(0, i));
+                }
+                entry.release();
+            } else if (entriesToDispatch != null) {
+                entriesToDispatch.add(entry);
+            }
+        }
+        return entriesToDispatch != null ? entriesToDispatch : entries;
+    }
+
+    private long getDeliverAtTime(Entry entry) {
+        ByteBuf metadataAndPayload = entry.getDataBuffer();
+        long deliverAtTime = -1;
+        try {
+            // save the reader index and restore after parsing
+            metadataAndPayload.markReaderIndex();
+            MessageMetadata metadata = Commands.parseMessageMetadata(metadataAndPayload);
+            metadataAndPayload.resetReaderIndex();
+            if (metadata.hasDeliverAtTime()) {
+                deliverAtTime = metadata.getDeliverAtTime();
+            }
+            metadata.recycle();
+        } catch (Throwable t) {
+            // The consumer will discard the corrupted entry
+            metadataAndPayload.resetReaderIndex();
+            log.warn("[{}] Failed to parse message metadata at {}", name, entry.getPosition(), t);
+        }
+        return deliverAtTime;
+    }
+
+    private DelayedDeliveryTracker getDelayedDeliveryTracker() {
+        if (delayedDeliveryTracker == null) {
+            delayedDeliveryTracker = new InMemoryDelayedDeliveryTracker(topic.getBrokerService().executor(),
+                    this::scheduleReadMoreEntries, serviceConfig.getDelayedDeliveryTickTimeMillis(),
+                    serviceConfig.getDelayedDeliveryMaxMessagesPerSubscription());
+        }
+        return delayedDeliveryTracker;
+    }
+
+    private void clearDelayedMessages() {
+        if (delayedDeliveryTracker != null) {
+            delayedDeliveryTracker.clear();
+        }
+    }
+
+    @Override
+    public long getNumberOfDelayedMessages() {
+        DelayedDeliveryTracker tracker = delayedDeliveryTracker;
+        return tracker != null ? tracker.getNumberOfDelayedMessages() : 0;
+    }
+
+    /**
+     * Acquire message-dispatch permits for already delivered messages.
+     */
+    protected void acquireDispatchPermits(long totalMessagesSent, long totalBytesSent) {
+        if (serviceConfig.isDispatchThrottlingOnNonBacklogConsumerEnabled() || !cursor.isActive()) {
+            topic.getDispatchRateLimiter().tryDispatchPermit(totalMessagesSent, totalBytesSent);
+
+            if (dispatchRateLimiter == null) {
+                dispatchRateLimiter = new DispatchRateLimiter(topic, name);
+            }
+            dispatchRateLimiter.tryDispatchPermit(totalMessagesSent, totalBytesSent);
+        }
+    }
+
     @Override
     public synchronized void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
 
@@ -490,35 +757,29 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             }
         }
 
-        if (shouldRewindBeforeReadingOrReplaying) {
-            shouldRewindBeforeReadingOrReplaying = false;
-            cursor.rewind();
-        }
-
         if (readType == ReadType.Normal) {
             havePendingRead = false;
         } else {
             havePendingReplayRead = false;
             if (exception instanceof ManagedLedgerException.InvalidReplayPositionException) {
                 PositionImpl markDeletePosition = (PositionImpl) cursor.getMarkDeletedPosition();
-                messagesToReplay.removeIf((ledgerId, entryId) -> {
-                    return ComparisonChain.start().compare(ledgerId, markDeletePosition.getLedgerId())
-                            .compare(entryId, markDeletePosition.getEntryId()).result() <= 0;
-                });
+                messagesToReplay.removeUpTo(markDeletePosition.getLedgerId(), markDeletePosition.getEntryId());
             }
         }
 
         readBatchSize = 1;
 
         topic.getBrokerService().executor().schedule(() -> {
-            synchronized (PersistentDispatcherMultipleConsumers.this) {
-                if (!havePendingRead) {
-                    log.info("[{}] Retrying read operation", name);
-                    readMoreEntries();
-                } else {
-                    log.info("[{}] Skipping read retry: havePendingRead {}", name, havePendingRead, exception);
+            topic.getBrokerService().getTopicOrderedExecutor().executeOrdered(name, SafeRun.safeRun(() -> {
+                synchronized (PersistentDispatcherMultipleConsumers.this) {
+                    if (!havePendingRead) {
+                        log.info("[{}] Retrying read operation", name);
+                        readMoreEntries();
+                    } else {
+                        log.info("[{}] Skipping read retry: havePendingRead {}", name, havePendingRead, exception);
+                    }
                 }
-            }
+            }));
         }, waitTimeMillis, TimeUnit.MILLISECONDS);
 
     }
@@ -544,7 +805,8 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
 
     @Override
     public boolean isConsumerAvailable(Consumer consumer) {
-        return consumer != null && !consumer.isBlocked() && consumer.getAvailablePermits() > 0;
+        return consumer != null && !consumer.isBlocked() && consumer.getAvailablePermits() > 0
+                && consumer.getAvailablePermitsBytes() > 0;
     }
 
     @Override
@@ -552,6 +814,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
         consumer.getPendingAcks().forEach((ledgerId, entryId, batchSize, none) -> {
             messagesToReplay.add(ledgerId, entryId);
         });
+        rewindIfTooManyMessagesToReplay();
         if (log.isDebugEnabled()) {
             log.debug("[{}-{}] Redelivering unacknowledged messages for consumer {}", name, consumer, messagesToReplay);
         }
@@ -564,6 +827,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             messagesToReplay.add(position.getLedgerId(), position.getEntryId());
             redeliveryTracker.incrementAndGetRedeliveryCount(position);
         });
+        rewindIfTooManyMessagesToReplay();
         if (log.isDebugEnabled()) {
             log.debug("[{}-{}] Redelivering unacknowledged messages for consumer {}", name, consumer, positions);
         }
@@ -596,7 +860,7 @@ public class PersistentDispatcherMultipleConsumers  extends AbstractDispatcherMu
             // unblock dispatcher if it acks back enough messages
             if (BLOCKED_DISPATCHER_ON_UNACKMSG_UPDATER.compareAndSet(this, TRUE, FALSE)) {
                 log.info("[{}] Dispatcher is unblocked", name);
-                topic.getBrokerService().executor().execute(() -> readMoreEntries());
+                scheduleReadMoreEntries();
             }
         }
         // increment broker-level count
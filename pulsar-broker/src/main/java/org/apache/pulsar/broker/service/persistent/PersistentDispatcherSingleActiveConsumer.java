@@ -58,8 +58,12 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
 
     private volatile boolean havePendingRead = false;
 
-    private static final int MaxReadBatchSize = 100;
+    private final int maxReadBatchSize;
     private int readBatchSize;
+    // Moving average of the size of the entries read, used to size the reads in bytes
+    private long avgEntrySize = 0;
+    // Size of the entries handed to the consumer and not yet written to its connection, when reads are pipelined
+    private long pendingWriteBytes = 0;
     private final Backoff readFailureBackoff = new Backoff(15, TimeUnit.SECONDS, 1, TimeUnit.MINUTES, 0, TimeUnit.MILLISECONDS);
     private final ServiceConfiguration serviceConfig;
     private ScheduledFuture<?> readOnActiveConsumerTask = null;
@@ -73,8 +77,9 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
         this.name = topic.getName() + " / " + (cursor.getName() != null ? Codec.decode(cursor.getName())
                 : ""/* NonDurableCursor doesn't have name */);
         this.cursor = cursor;
-        this.readBatchSize = MaxReadBatchSize;
         this.serviceConfig = topic.getBrokerService().pulsar().getConfiguration();
+        this.maxReadBatchSize = Math.max(1, serviceConfig.getDispatcherMaxReadBatchSize());
+        this.readBatchSize = maxReadBatchSize;
         this.dispatchRateLimiter = null;
         this.redeliveryTracker = RedeliveryTrackerDisabled.REDELIVERY_TRACKER_DISABLED;
     }
@@ -181,8 +186,8 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
 
         havePendingRead = false;
 
-        if (readBatchSize < MaxReadBatchSize) {
-            int newReadBatchSize = Math.min(readBatchSize * 2, MaxReadBatchSize);
+        if (readBatchSize < maxReadBatchSize) {
+            int newReadBatchSize = Math.min(readBatchSize * 2, maxReadBatchSize);
             if (log.isDebugEnabled()) {
                 log.debug("[{}-{}] Increasing read batch size from {} to {}", name, readConsumer, readBatchSize,
                         newReadBatchSize);
@@ -193,6 +198,15 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
 
         readFailureBackoff.reduceToHalf();
 
+        long entriesSize = 0;
+        for (Entry entry : entries) {
+            entriesSize += entry.getLength();
+        }
+        if (!entries.isEmpty()) {
+            long readAvgEntrySize = entriesSize / entries.size();
+            avgEntrySize = avgEntrySize == 0 ? readAvgEntrySize : (3 * avgEntrySize + readAvgEntrySize) / 4;
+        }
+
         Consumer currentConsumer = ACTIVE_CONSUMER_UPDATER.get(this);
         if (currentConsumer == null || readConsumer != currentConsumer) {
             // Active consumer has changed since the read request has been issued. We need to rewind the cursor and
@@ -207,6 +221,8 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
                 readMoreEntries(currentConsumer);
             }
         } else {
+            final long pendingBytes = isReadPipeliningEnabled() ? entriesSize : 0;
+            pendingWriteBytes += pendingBytes;
             currentConsumer.sendMessages(entries, (future, sentMsgInfo) -> {
                 if (future.isSuccess()) {
                     // acquire message-dispatch permits for already delivered messages
@@ -220,10 +236,14 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
                         dispatchRateLimiter.tryDispatchPermit(sentMsgInfo.getTotalSentMessages(),
                                 sentMsgInfo.getTotalSentMessageBytes());
                     }
+                }
 
-                    // Schedule a new read batch operation only after the previous batch has been written to the socket
-                    topic.getBrokerService().getTopicOrderedExecutor().executeOrdered(topicName, SafeRun.safeRun(() -> {
-                        synchronized (PersistentDispatcherSingleActiveConsumer.this) {
+                // Schedule a new read batch operation only after the previous batch has been written to the socket, or
+                // once there is room for more pending writes when reads are pipelined
+                topic.getBrokerService().getTopicOrderedExecutor().executeOrdered(topicName, SafeRun.safeRun(() -> {
+                    synchronized (PersistentDispatcherSingleActiveConsumer.this) {
+                        pendingWriteBytes -= pendingBytes;
+                        if (future.isSuccess()) {
                             Consumer newConsumer = getActiveConsumer();
                             if (newConsumer != null && !havePendingRead) {
                                 readMoreEntries(newConsumer);
@@ -235,9 +255,14 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
                                 }
                             }
                         }
-                    }));
-                }
+                    }
+                }));
             });
+
+            if (pendingBytes > 0) {
+                // Read the next entries while these ones are being written to the consumer connection
+                readMoreEntries(currentConsumer);
+            }
         }
     }
 
@@ -324,7 +349,8 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
             return;
         }
 
-        int availablePermits = consumer.getAvailablePermits();
+        // the consumer buffer is full when either its message or its byte permits are exhausted
+        int availablePermits = consumer.getAvailablePermitsBytes() > 0 ? consumer.getAvailablePermits() : 0;
 
         if (availablePermits > 0) {
             if (!consumer.isWritable()) {
@@ -335,7 +361,17 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
                 availablePermits = 1;
             }
 
-            int messagesToRead = Math.min(availablePermits, readBatchSize);
+            long maxPendingWriteBytes = serviceConfig.getDispatcherMaxPendingWriteBytes();
+            if (maxPendingWriteBytes > 0 && pendingWriteBytes >= maxPendingWriteBytes) {
+                // The read is issued again once the pending writes complete
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}-{}] {} bytes are pending to be written to the consumer, pause reading", name,
+                            consumer, pendingWriteBytes);
+                }
+                return;
+            }
+
+            int messagesToRead = getMessagesToRead(consumer, availablePermits);
 
             // throttle only if: (1) cursor is not active (or flag for throttle-nonBacklogConsumer is enabled) bcz
             // active-cursor reads message from cache rather from bookkeeper (2) if topic has reached message-rate
@@ -419,6 +455,34 @@ public final class PersistentDispatcherSingleActiveConsumer extends AbstractDisp
         }
     }
 
+    /**
+     * Size the read on the average entry size, so that it exceeds neither the read size, the room left for pending
+     * writes nor the byte permits of the consumer.
+     */
+    private int getMessagesToRead(Consumer consumer, int availablePermits) {
+        int messagesToRead = Math.min(availablePermits, readBatchSize);
+        if (avgEntrySize > 0) {
+            long maxReadBytes = serviceConfig.getDispatcherMaxReadSizeBytes();
+            if (isReadPipeliningEnabled()) {
+                long availableWriteBytes = serviceConfig.getDispatcherMaxPendingWriteBytes() - pendingWriteBytes;
+                maxReadBytes = maxReadBytes > 0 ? Math.min(maxReadBytes, availableWriteBytes) : availableWriteBytes;
+            }
+            long availablePermitsBytes = consumer.getAvailablePermitsBytes();
+            if (availablePermitsBytes != Long.MAX_VALUE) {
+                maxReadBytes = maxReadBytes > 0 ? Math.min(maxReadBytes, availablePermitsBytes)
+                        : availablePermitsBytes;
+            }
+            if (maxReadBytes > 0) {
+                messagesToRead = (int) Math.max(1, Math.min(messagesToRead, maxReadBytes / avgEntrySize));
+            }
+        }
+        return messagesToRead;
+    }
+
+    private boolean isReadPipeliningEnabled() {
+        return serviceConfig.getDispatcherMaxPendingWriteBytes() > 0;
+    }
+
     @Override
     public void readEntriesFailed(ManagedLedgerException exception, Object ctx) {
         topic.getBrokerService().getTopicOrderedExecutor().executeOrdered(topicName, SafeRun.safeRun(() -> {
@@ -75,7 +75,7 @@ public class PersistentMessageFinder implements AsyncCallbacks.FindEntryCallback
                     }
                 }
                 return false;
-            }, this, callback);
+            }, timestamp, this, callback);
         } else {
             if (log.isDebugEnabled()) {
                 log.debug("[{}][{}] Ignore message position find scheduled task, last find is still running", topicName,
@@ -18,10 +18,14 @@
  */
 package org.apache.pulsar.broker.service.persistent;
 
+import static org.apache.pulsar.broker.service.persistent.PersistentTopic.MESSAGE_RATE_BACKOFF_MS;
+
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import org.apache.bookkeeper.mledger.AsyncCallbacks;
 import org.apache.bookkeeper.mledger.AsyncCallbacks.ClearBacklogCallback;
@@ -35,7 +39,9 @@ import org.apache.bookkeeper.mledger.ManagedLedgerException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.CursorAlreadyClosedException;
 import org.apache.bookkeeper.mledger.ManagedLedgerException.TooManyRequestsException;
 import org.apache.bookkeeper.mledger.Position;
+import org.apache.bookkeeper.mledger.impl.ManagedCursorImpl;
 import org.apache.bookkeeper.mledger.util.Rate;
+import org.apache.pulsar.broker.ServiceConfiguration;
 import org.apache.pulsar.broker.service.AbstractReplicator;
 import org.apache.pulsar.broker.service.BrokerService;
 import org.apache.pulsar.broker.service.BrokerServiceException.NamingException;
@@ -45,8 +51,11 @@ import org.apache.pulsar.client.impl.Backoff;
 import org.apache.pulsar.client.impl.MessageImpl;
 import org.apache.pulsar.client.impl.ProducerImpl;
 import org.apache.pulsar.client.impl.SendCallback;
+import org.apache.pulsar.common.api.Commands;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
 import org.apache.pulsar.common.policies.data.ReplicatorStats;
 import org.apache.pulsar.common.util.Codec;
+import org.apache.pulsar.common.util.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,6 +78,14 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
             .newUpdater(PersistentReplicator.class, "pendingMessages");
     private volatile int pendingMessages = 0;
 
+    private static final AtomicLongFieldUpdater<PersistentReplicator> PENDING_BYTES_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(PersistentReplicator.class, "pendingBytes");
+    // Size of the entries sent to the remote cluster and not yet persisted there
+    private volatile long pendingBytes = 0;
+    private final long maxPendingBytes;
+    // Moving average of the size of the entries read, used to size the reads in bytes
+    private volatile long avgEntrySize = 0;
+
     private static final int FALSE = 0;
     private static final int TRUE = 1;
 
@@ -76,6 +93,14 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
             .newUpdater(PersistentReplicator.class, "havePendingRead");
     private volatile int havePendingRead = FALSE;
 
+    private static final AtomicIntegerFieldUpdater<PersistentReplicator> HAVE_SCHEDULED_READ_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(PersistentReplicator.class, "haveScheduledRead");
+    // Whether a read is scheduled for when the replication rate limiter renews its permits
+    private volatile int haveScheduledRead = FALSE;
+
+    // Limits the bytes replicated to the remote cluster by all the replicators of the broker
+    private final Optional<RateLimiter> rateLimiter;
+
     private final Rate msgOut = new Rate();
     private final Rate msgExpired = new Rate();
 
@@ -100,6 +125,15 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
 
         readBatchSize = Math.min(producerQueueSize, MaxReadBatchSize);
         producerQueueThreshold = (int) (producerQueueSize * 0.9);
+        rateLimiter = brokerService.getReplicationRateLimiter(remoteCluster);
+
+        ServiceConfiguration serviceConfig = brokerService.pulsar().getConfiguration();
+        maxPendingBytes = serviceConfig.getReplicationProducerMaxPendingBytes();
+        if (serviceConfig.isReplicationReadAheadEnabled() && cursor instanceof ManagedCursorImpl) {
+            // Keep several reads of the backlog in flight while the replicator catches up
+            ((ManagedCursorImpl) cursor).enableReadAhead(serviceConfig.getManagedLedgerReadAheadMaxOutstandingReads(),
+                    serviceConfig.getManagedLedgerReadAheadMaxBufferSizeMB() * 1024L * 1024L);
+        }
 
         startProducer();
     }
@@ -151,7 +185,31 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
         int availablePermits = producerQueueSize - PENDING_MESSAGES_UPDATER.get(this);
 
         if (availablePermits > 0) {
-            int messagesToRead = Math.min(availablePermits, readBatchSize);
+            if (maxPendingBytes > 0 && PENDING_BYTES_UPDATER.get(this) >= maxPendingBytes) {
+                // The read is issued again once the pending messages are persisted on the remote cluster
+                if (log.isDebugEnabled()) {
+                    log.debug("[{}][{} -> {}] {} bytes are pending on the remote cluster, pause reading", topicName,
+                            localCluster, remoteCluster, PENDING_BYTES_UPDATER.get(this));
+                }
+                return;
+            }
+
+            if (rateLimiter.isPresent() && rateLimiter.get().getAvailablePermits() <= 0) {
+                // The replication to the remote cluster reached its byte rate: read again once the permits are renewed
+                if (HAVE_SCHEDULED_READ_UPDATER.compareAndSet(this, FALSE, TRUE)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("[{}][{} -> {}] Throttling replication traffic, reading again in {} ms", topicName,
+                                localCluster, remoteCluster, MESSAGE_RATE_BACKOFF_MS);
+                    }
+                    brokerService.executor().schedule(() -> {
+                        HAVE_SCHEDULED_READ_UPDATER.set(this, FALSE);
+                        readMoreEntries();
+                    }, MESSAGE_RATE_BACKOFF_MS, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+
+            int messagesToRead = getMessagesToRead(availablePermits);
             if (!isWritable()) {
                 if (log.isDebugEnabled()) {
                     log.debug("[{}][{} -> {}] Throttling replication traffic because producer is not writable",
@@ -182,6 +240,24 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
         }
     }
 
+    /**
+     * Size the read on the average entry size, so that it neither exceeds the room left for pending bytes nor the bytes
+     * the rate limiter still lets through in the current period.
+     */
+    private int getMessagesToRead(int availablePermits) {
+        int messagesToRead = Math.min(availablePermits, readBatchSize);
+        long maxReadBytes = maxPendingBytes > 0 ? maxPendingBytes - PENDING_BYTES_UPDATER.get(this) : Long.MAX_VALUE;
+        if (rateLimiter.isPresent()) {
+            maxReadBytes = Math.min(maxReadBytes, rateLimiter.get().getAvailablePermits());
+        }
+        if (maxReadBytes != Long.MAX_VALUE) {
+            long entrySize = avgEntrySize;
+            // Read a single entry until the size of the entries is known
+            messagesToRead = entrySize == 0 ? 1 : (int) Math.max(1, Math.min(messagesToRead, maxReadBytes / entrySize));
+        }
+        return messagesToRead;
+    }
+
     @Override
     public void readEntriesComplete(List<Entry> entries, Object ctx) {
         if (log.isDebugEnabled()) {
@@ -201,7 +277,17 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
 
         readFailureBackoff.reduceToHalf();
 
+        if (!entries.isEmpty()) {
+            long entriesSize = 0;
+            for (Entry entry : entries) {
+                entriesSize += entry.getLength();
+            }
+            long readAvgEntrySize = entriesSize / entries.size();
+            avgEntrySize = avgEntrySize == 0 ? readAvgEntrySize : (3 * avgEntrySize + readAvgEntrySize) / 4;
+        }
+
         boolean atLeastOneMessageSentForReplication = false;
+        long bytesSentForReplication = 0;
 
         try {
             // This flag is set to true when we skip atleast one local message,
@@ -211,9 +297,12 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
                 Entry entry = entries.get(i);
                 int length = entry.getLength();
                 ByteBuf headersAndPayload = entry.getDataBuffer();
-                MessageImpl msg;
+                // Only the metadata is parsed, the stored message is forwarded as it is
+                MessageMetadata msgMetadata;
+                int readerIndex = headersAndPayload.readerIndex();
                 try {
-                    msg = MessageImpl.deserialize(headersAndPayload);
+                    msgMetadata = Commands.parseMessageMetadata(headersAndPayload);
+                    headersAndPayload.readerIndex(readerIndex);
                 } catch (Throwable t) {
                     log.error("[{}][{} -> {}] Failed to deserialize message at {} (buffer size: {}): {}", topicName,
                             localCluster, remoteCluster, entry.getPosition(), length, t.getMessage(), t);
@@ -222,34 +311,36 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
                     continue;
                 }
 
-                if (msg.isReplicated()) {
+                if (msgMetadata.hasReplicatedFrom()) {
                     // Discard messages that were already replicated into this region
                     cursor.asyncDelete(entry.getPosition(), this, entry.getPosition());
                     entry.release();
-                    msg.recycle();
+                    msgMetadata.recycle();
                     continue;
                 }
 
-                if (msg.hasReplicateTo() && !msg.getReplicateTo().contains(remoteCluster)) {
+                if (msgMetadata.getReplicateToCount() > 0
+                        && !msgMetadata.getReplicateToList().contains(remoteCluster)) {
                     if (log.isDebugEnabled()) {
                         log.debug("[{}][{} -> {}] Skipping message at position {}, replicateTo {}", topicName,
-                                localCluster, remoteCluster, entry.getPosition(), msg.getReplicateTo());
+                                localCluster, remoteCluster, entry.getPosition(), msgMetadata.getReplicateToList());
                     }
                     cursor.asyncDelete(entry.getPosition(), this, entry.getPosition());
                     entry.release();
-                    msg.recycle();
+                    msgMetadata.recycle();
                     continue;
                 }
 
-                if (msg.isExpired(messageTTLInSeconds)) {
+                if (messageTTLInSeconds != 0 && System.currentTimeMillis() > msgMetadata.getPublishTime()
+                        + TimeUnit.SECONDS.toMillis(messageTTLInSeconds)) {
                     msgExpired.recordEvent(0 /* no value stat */);
                     if (log.isDebugEnabled()) {
                         log.debug("[{}][{} -> {}] Discarding expired message at position {}, replicateTo {}", topicName,
-                                localCluster, remoteCluster, entry.getPosition(), msg.getReplicateTo());
+                                localCluster, remoteCluster, entry.getPosition(), msgMetadata.getReplicateToList());
                     }
                     cursor.asyncDelete(entry.getPosition(), this, entry.getPosition());
                     entry.release();
-                    msg.recycle();
+                    msgMetadata.recycle();
                     continue;
                 }
 
@@ -262,20 +353,20 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
                     }
                     isLocalMessageSkippedOnce = true;
                     entry.release();
-                    msg.recycle();
+                    msgMetadata.recycle();
                     continue;
                 }
 
                 // Increment pending messages for messages produced locally
                 PENDING_MESSAGES_UPDATER.incrementAndGet(this);
+                PENDING_BYTES_UPDATER.addAndGet(this, length);
 
-                msgOut.recordEvent(headersAndPayload.readableBytes());
-
-                msg.setReplicatedFrom(localCluster);
-
-                headersAndPayload.retain();
+                msgOut.recordEvent(length);
+                bytesSentForReplication += length;
 
-                producer.sendAsync(msg, ProducerSendCallback.create(this, entry, msg));
+                producer.sendReplicatedAsync(msgMetadata, headersAndPayload, localCluster,
+                        ProducerSendCallback.create(this, entry, length));
+                msgMetadata.recycle();
                 atLeastOneMessageSentForReplication = true;
             }
         } catch (Exception e) {
@@ -283,6 +374,10 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
                     e);
         }
 
+        if (bytesSentForReplication > 0 && rateLimiter.isPresent()) {
+            rateLimiter.get().tryAcquire(bytesSentForReplication);
+        }
+
         HAVE_PENDING_READ_UPDATER.set(this, FALSE);
 
         if (atLeastOneMessageSentForReplication && !isWritable()) {
@@ -307,7 +402,7 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
     private static final class ProducerSendCallback implements SendCallback {
         private PersistentReplicator replicator;
         private Entry entry;
-        private MessageImpl msg;
+        private int length;
 
         @Override
         public void sendComplete(Exception exception) {
@@ -325,6 +420,7 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
             }
             entry.release();
 
+            PENDING_BYTES_UPDATER.addAndGet(replicator, -length);
             int pending = PENDING_MESSAGES_UPDATER.decrementAndGet(replicator);
 
             // In general, we schedule a new batch read operation when the occupied queue size gets smaller than half
@@ -355,21 +451,18 @@ public class PersistentReplicator extends AbstractReplicator implements Replicat
             this.recyclerHandle = recyclerHandle;
         }
 
-        static ProducerSendCallback create(PersistentReplicator replicator, Entry entry, MessageImpl msg) {
+        static ProducerSendCallback create(PersistentReplicator replicator, Entry entry, int length) {
             ProducerSendCallback sendCallback = RECYCLER.get();
             sendCallback.replicator = replicator;
             sendCallback.entry = entry;
-            sendCallback.msg = msg;
+            sendCallback.length = length;
             return sendCallback;
         }
 
         private void recycle() {
             replicator = null;
             entry = null; //already released and recycled on sendComplete
-            if (msg != null) {
-                msg.recycle();
-                msg = null;
-            }
+            length = 0;
             recyclerHandle.recycle(this);
         }
 
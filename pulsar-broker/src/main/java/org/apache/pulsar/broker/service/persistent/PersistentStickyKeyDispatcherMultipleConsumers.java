@@ -0,0 +1,425 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service.persistent;
+
+import com.google.common.collect.Range;
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.bookkeeper.mledger.Entry;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.broker.service.BrokerServiceException;
+import org.apache.pulsar.broker.service.Consumer;
+import org.apache.pulsar.broker.service.Consumer.SendMessageInfo;
+import org.apache.pulsar.broker.service.HashRangeStickyKeyConsumerSelector;
+import org.apache.pulsar.broker.service.StickyKeyConsumerSelector;
+import org.apache.pulsar.common.api.Commands;
+import org.apache.pulsar.common.api.proto.PulsarApi.CommandSubscribe.SubType;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
+import org.apache.pulsar.common.util.collections.SortedLongPairRangeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatcher for Key_Shared subscriptions: the messages are dispatched to the consumer owning the hash of their key,
+ * so that the messages with the same key are delivered in order to the same consumer.
+ *
+ * <p/>To preserve the per-key ordering:
+ * <ul>
+ * <li>An entry is never dispatched while an older entry with the same key is waiting to be replayed, eg: because its
+ * consumer had no permits. The positions to replay are always replayed from the oldest.</li>
+ * <li>A consumer that joins the subscription takes over keys that other consumers may still be processing. It only
+ * receives the entries read after it joined once all the entries read before are acknowledged.</li>
+ * </ul>
+ */
+public class PersistentStickyKeyDispatcherMultipleConsumers extends PersistentDispatcherMultipleConsumers {
+
+    private final StickyKeyConsumerSelector selector;
+
+    // Consumers that joined while other consumers were connected, with the last position read at that time
+    private final Map<Consumer, PositionImpl> recentlyJoinedConsumers = new ConcurrentHashMap<>();
+
+    // Replaces the replay set of the parent dispatcher, to index the positions of known key by key hash
+    private final HeldPositionsReplaySet heldPositions;
+
+    // Set when some entries could not be dispatched. Until the consumers get more permits, acknowledge messages or
+    // change, only the positions of unknown key are replayed, to avoid replaying the same entries in a loop
+    private volatile boolean stuckOnReplays = false;
+
+    private PositionImpl lastReadPosition = null;
+
+    public PersistentStickyKeyDispatcherMultipleConsumers(PersistentTopic topic, ManagedCursor cursor) {
+        this(topic, cursor, new HashRangeStickyKeyConsumerSelector());
+    }
+
+    public PersistentStickyKeyDispatcherMultipleConsumers(PersistentTopic topic, ManagedCursor cursor,
+            StickyKeyConsumerSelector selector) {
+        super(topic, cursor);
+        this.selector = selector;
+        this.heldPositions = new HeldPositionsReplaySet();
+        this.messagesToReplay = heldPositions;
+    }
+
+    @Override
+    public synchronized void addConsumer(Consumer consumer) throws BrokerServiceException {
+        boolean hadConsumers = !consumerList.isEmpty();
+        selector.addConsumer(consumer);
+        try {
+            super.addConsumer(consumer);
+        } catch (BrokerServiceException e) {
+            selector.removeConsumer(consumer);
+            throw e;
+        }
+
+        if (!consumerSet.contains(consumer)) {
+            // The dispatcher is closed
+            selector.removeConsumer(consumer);
+            return;
+        }
+
+        if (hadConsumers && lastReadPosition != null
+                && lastReadPosition.compareTo((PositionImpl) cursor.getMarkDeletedPosition()) > 0) {
+            recentlyJoinedConsumers.put(consumer, lastReadPosition);
+        }
+        stuckOnReplays = false;
+    }
+
+    @Override
+    public synchronized void removeConsumer(Consumer consumer) throws BrokerServiceException {
+        // Reassign the keys before the pending messages of the consumer are replayed to the other consumers
+        selector.removeConsumer(consumer);
+        recentlyJoinedConsumers.remove(consumer);
+        stuckOnReplays = false;
+        super.removeConsumer(consumer);
+        if (consumerList.isEmpty()) {
+            lastReadPosition = null;
+        }
+    }
+
+    @Override
+    public void consumerFlow(Consumer consumer, int additionalNumberOfMessages) {
+        stuckOnReplays = false;
+        super.consumerFlow(consumer, additionalNumberOfMessages);
+    }
+
+    @Override
+    public void acknowledgementWasProcessed() {
+        if (recentlyJoinedConsumers.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (removeSettledConsumers()) {
+                stuckOnReplays = false;
+                readMoreEntries();
+            }
+        }
+    }
+
+    @Override
+    public SubType getType() {
+        return SubType.Key_Shared;
+    }
+
+    @Override
+    protected List<Range<PositionImpl>> getMessagesToReplayNow(int maxMessagesToRead) {
+        if (!stuckOnReplays) {
+            return super.getMessagesToReplayNow(maxMessagesToRead);
+        }
+
+        // Replay from the oldest position, skipping the positions that are already known to be held while stuck
+        List<Range<PositionImpl>> ranges = new ArrayList<>();
+        int[] remaining = { maxMessagesToRead };
+        messagesToReplay.forEachRange((ledgerId, firstEntryId, lastEntryId) -> {
+            long rangeStart = -1;
+            for (long entryId = firstEntryId; entryId <= lastEntryId && remaining[0] > 0; entryId++) {
+                if (heldPositions.isHeld(new PositionImpl(ledgerId, entryId))) {
+                    if (rangeStart >= 0) {
+                        ranges.add(Range.closed(new PositionImpl(ledgerId, rangeStart),
+                                new PositionImpl(ledgerId, entryId - 1)));
+                        rangeStart = -1;
+                    }
+                } else {
+                    if (rangeStart < 0) {
+                        rangeStart = entryId;
+                    }
+                    --remaining[0];
+                    if (remaining[0] == 0 || entryId == lastEntryId) {
+                        ranges.add(Range.closed(new PositionImpl(ledgerId, rangeStart),
+                                new PositionImpl(ledgerId, entryId)));
+                        rangeStart = -1;
+                    }
+                }
+            }
+            return remaining[0] > 0;
+        });
+        return ranges;
+    }
+
+    @Override
+    protected void sendMessagesToConsumers(ReadType readType, List<Entry> entries) {
+        if (consumerList.isEmpty()) {
+            // Do nothing, cursor will be rewind at reconnection
+            log.info("[{}] rewind because no available consumer found", name);
+            entries.forEach(Entry::release);
+            cursor.rewind();
+            return;
+        }
+
+        if (readType == ReadType.Normal && !entries.isEmpty()) {
+            lastReadPosition = (PositionImpl) entries.get(entries.size() - 1).getPosition();
+        }
+        removeSettledConsumers();
+
+        if (readType == ReadType.Replay) {
+            // The replayed positions are held again if they still cannot be dispatched
+            entries.forEach(entry -> heldPositions.release((PositionImpl) entry.getPosition()));
+        }
+        // When some positions are replayed without knowing their key, no new entry can be dispatched before them
+        boolean holdAll = readType == ReadType.Normal && heldPositions.hasPositionsOfUnknownKey();
+
+        Map<Consumer, List<Entry>> entriesByConsumer = new LinkedHashMap<>();
+        Map<Consumer, ConsumerPermits> permitsByConsumer = new HashMap<>();
+        int heldEntries = 0;
+        for (Entry entry : entries) {
+            PositionImpl position = (PositionImpl) entry.getPosition();
+            int keyHash = getStickyKeyHash(entry);
+            Consumer consumer = selector.select(keyHash);
+            // The newer entries with the same key as a held position must be held as well
+            PositionImpl oldestHeldPosition = heldPositions.getOldestHeldPosition(keyHash);
+
+            boolean canDispatch = !holdAll && consumer != null
+                    && (oldestHeldPosition == null || oldestHeldPosition.compareTo(position) > 0)
+                    && isAllowedForConsumer(consumer, position);
+            if (canDispatch
+                    && permitsByConsumer.computeIfAbsent(consumer, this::newConsumerPermits).tryAcquire(entry)) {
+                entriesByConsumer.computeIfAbsent(consumer, c -> new ArrayList<>()).add(entry);
+                continue;
+            }
+
+            // Keep the entry for a later replay, the newer entries of its key are then held as well
+            heldPositions.hold(position, keyHash);
+            entry.release();
+            ++heldEntries;
+        }
+        if (heldEntries > 0) {
+            rewindIfTooManyMessagesToReplay();
+        }
+
+        long totalMessagesSent = 0;
+        long totalBytesSent = 0;
+        for (Map.Entry<Consumer, List<Entry>> consumerEntries : entriesByConsumer.entrySet()) {
+            List<Entry> entriesForConsumer = consumerEntries.getValue();
+            if (readType == ReadType.Replay) {
+                // remove positions first from replay list first : sendMessages recycles entries
+                entriesForConsumer.forEach(entry -> messagesToReplay.remove(entry.getLedgerId(), entry.getEntryId()));
+            }
+
+            SendMessageInfo sentMsgInfo = consumerEntries.getKey().sendMessages(entriesForConsumer);
+            consumePermits(consumerEntries.getKey(), sentMsgInfo.getTotalSentMessages());
+            totalMessagesSent += sentMsgInfo.getTotalSentMessages();
+            totalBytesSent += sentMsgInfo.getTotalSentMessageBytes();
+        }
+
+        acquireDispatchPermits(totalMessagesSent, totalBytesSent);
+
+        if (heldEntries > 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Could not dispatch {} entries to the consumers owning their keys, storing them for later"
+                        + " replay", name, heldEntries);
+            }
+            stuckOnReplays = true;
+        }
+
+        // Stop reading if nothing could be dispatched, unless some positions still need to be replayed to find their key
+        if (heldEntries == 0 || !entriesByConsumer.isEmpty() || heldPositions.hasPositionsOfUnknownKey()) {
+            readMoreEntries();
+        }
+    }
+
+    private ConsumerPermits newConsumerPermits(Consumer consumer) {
+        return isConsumerAvailable(consumer)
+                ? new ConsumerPermits(consumer.getAvailablePermits(), consumer.getAvailablePermitsBytes())
+                : new ConsumerPermits(0, 0);
+    }
+
+    /**
+     * Messages and bytes that can still be sent to a consumer while dispatching a read. As with
+     * {@link Consumer#getEntriesWithinPermitsBytes(List, int, int)}, the first entry always fits in the byte permits,
+     * so that an entry bigger than the byte permits of the consumer can still be delivered.
+     */
+    private static final class ConsumerPermits {
+        private int messages;
+        private long bytes;
+        private boolean acquired = false;
+
+        ConsumerPermits(int messages, long bytes) {
+            this.messages = messages;
+            this.bytes = bytes;
+        }
+
+        boolean tryAcquire(Entry entry) {
+            if (messages <= 0 || (acquired && bytes <= 0)) {
+                return false;
+            }
+            --messages;
+            bytes -= entry.getLength();
+            acquired = true;
+            return true;
+        }
+    }
+
+    /**
+     * A recently joined consumer can receive the entries read before it joined, but not the newer ones.
+     */
+    private boolean isAllowedForConsumer(Consumer consumer, PositionImpl position) {
+        PositionImpl maxPosition = recentlyJoinedConsumers.get(consumer);
+        return maxPosition == null || position.compareTo(maxPosition) <= 0;
+    }
+
+    /**
+     * Stop restricting the recently joined consumers once all the entries read before they joined are acknowledged.
+     *
+     * @return whether any consumer was removed from the recently joined consumers
+     */
+    private boolean removeSettledConsumers() {
+        if (recentlyJoinedConsumers.isEmpty()) {
+            return false;
+        }
+
+        PositionImpl markDeletePosition = (PositionImpl) cursor.getMarkDeletedPosition();
+        return recentlyJoinedConsumers.values().removeIf(position -> markDeletePosition.compareTo(position) >= 0);
+    }
+
+    /**
+     * Replay set that also indexes the positions held because they couldn't be dispatched, by key hash.
+     *
+     * <p/>The index is updated whenever a position leaves the replay set, whether it is replayed, acknowledged or
+     * dropped by a rewind, so that the oldest held position of a key is found without scanning the held positions.
+     */
+    static class HeldPositionsReplaySet extends SortedLongPairRangeSet {
+
+        // Key hash of the held positions, ordered to drop the positions up to the mark-delete position at once
+        private final NavigableMap<PositionImpl, Integer> keyHashByPosition = new TreeMap<>();
+        // Held positions of each key hash, the first one is the oldest
+        private final Map<Integer, NavigableSet<PositionImpl>> positionsByKeyHash = new HashMap<>();
+
+        synchronized void hold(PositionImpl position, int keyHash) {
+            add(position.getLedgerId(), position.getEntryId());
+            Integer previousKeyHash = keyHashByPosition.put(position, keyHash);
+            if (previousKeyHash != null) {
+                unindex(position, previousKeyHash);
+            }
+            positionsByKeyHash.computeIfAbsent(keyHash, k -> new TreeSet<>()).add(position);
+        }
+
+        /**
+         * Forgets the key of a position, which stays in the replay set.
+         */
+        synchronized void release(PositionImpl position) {
+            Integer keyHash = keyHashByPosition.remove(position);
+            if (keyHash != null) {
+                unindex(position, keyHash);
+            }
+        }
+
+        synchronized boolean isHeld(PositionImpl position) {
+            return keyHashByPosition.containsKey(position);
+        }
+
+        synchronized PositionImpl getOldestHeldPosition(int keyHash) {
+            NavigableSet<PositionImpl> positions = positionsByKeyHash.get(keyHash);
+            return positions != null ? positions.first() : null;
+        }
+
+        synchronized boolean hasPositionsOfUnknownKey() {
+            return keyHashByPosition.size() < size();
+        }
+
+        @Override
+        public synchronized boolean remove(long ledgerId, long entryId) {
+            if (!super.remove(ledgerId, entryId)) {
+                return false;
+            }
+            if (!keyHashByPosition.isEmpty()) {
+                release(new PositionImpl(ledgerId, entryId));
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized long removeUpTo(long ledgerId, long entryId) {
+            long removed = super.removeUpTo(ledgerId, entryId);
+            if (removed > 0 && !keyHashByPosition.isEmpty()) {
+                Map<PositionImpl, Integer> acknowledged = keyHashByPosition
+                        .headMap(new PositionImpl(ledgerId, entryId), true);
+                acknowledged.forEach((position, keyHash) -> unindex(position, keyHash));
+                acknowledged.clear();
+            }
+            return removed;
+        }
+
+        @Override
+        public synchronized void clear() {
+            super.clear();
+            keyHashByPosition.clear();
+            positionsByKeyHash.clear();
+        }
+
+        private void unindex(PositionImpl position, int keyHash) {
+            NavigableSet<PositionImpl> positions = positionsByKeyHash.get(keyHash);
+            if (positions != null && positions.remove(position) && positions.isEmpty()) {
+                positionsByKeyHash.remove(keyHash);
+            }
+        }
+    }
+
+    private int getStickyKeyHash(Entry entry) {
+        ByteBuf metadataAndPayload = entry.getDataBuffer();
+        String key = StickyKeyConsumerSelector.NONE_KEY;
+        try {
+            // save the reader index and restore after parsing
+            metadataAndPayload.markReaderIndex();
+            MessageMetadata metadata = Commands.parseMessageMetadata(metadataAndPayload);
+            metadataAndPayload.resetReaderIndex();
+            if (metadata.hasPartitionKey()) {
+                key = metadata.getPartitionKey();
+            }
+            metadata.recycle();
+        } catch (Throwable t) {
+            // The consumer will discard the corrupted entry
+            metadataAndPayload.resetReaderIndex();
+            log.warn("[{}] Failed to parse message metadata at {}", name, entry.getPosition(), t);
+        }
+        return StickyKeyConsumerSelector.makeStickyKeyHash(key);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentStickyKeyDispatcherMultipleConsumers.class);
+}
@@ -20,6 +20,7 @@ package org.apache.pulsar.broker.service.persistent;
 
 import com.google.common.base.MoreObjects;
 
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -115,6 +116,11 @@ public class PersistentSubscription implements Subscription {
                     dispatcher = new PersistentDispatcherMultipleConsumers(topic, cursor);
                 }
                 break;
+            case Key_Shared:
+                if (dispatcher == null || dispatcher.getType() != SubType.Key_Shared) {
+                    dispatcher = new PersistentStickyKeyDispatcherMultipleConsumers(topic, cursor);
+                }
+                break;
             case Failover:
                 int partitionIndex = TopicName.getPartitionIndex(topicName);
                 if (partitionIndex < 0) {
@@ -198,12 +204,30 @@ public class PersistentSubscription implements Subscription {
             dispatcher.getRedeliveryTracker().removeBatch(positions);
         }
 
+        if (dispatcher != null) {
+            dispatcher.acknowledgementWasProcessed();
+        }
+
         if (topic.getManagedLedger().isTerminated() && cursor.getNumberOfEntriesInBacklog() == 0) {
             // Notify all consumer that the end of topic was reached
             dispatcher.getConsumers().forEach(Consumer::reachedEndOfTopic);
         }
     }
 
+    @Override
+    public void acknowledgeBatchIndexes(PositionImpl position, int batchSize, BitSet batchIndexes) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Individual acks of batch indexes {} on {}", topicName, subName, batchIndexes,
+                    position);
+        }
+        cursor.asyncDeleteBatchIndexes(position, batchSize, batchIndexes, deleteCallback, position);
+    }
+
+    @Override
+    public long[] getAckedBatchIndexes(PositionImpl position) {
+        return cursor.getDeletedBatchIndexesAsLongArray(position);
+    }
+
     private final MarkDeleteCallback markDeleteCallback = new MarkDeleteCallback() {
         @Override
         public void markDeleteComplete(Object ctx) {
@@ -265,6 +289,8 @@ public class PersistentSubscription implements Subscription {
             return "Failover";
         case Shared:
             return "Shared";
+        case Key_Shared:
+            return "Key_Shared";
         }
 
         return "Null";
@@ -632,7 +658,7 @@ public class PersistentSubscription implements Subscription {
                 subStats.activeConsumerName = activeConsumer.consumerName();
             }
         }
-        if (SubType.Shared.equals(subStats.type)) {
+        if (Subscription.isIndividualAckMode(subStats.type)) {
             if (dispatcher instanceof PersistentDispatcherMultipleConsumers) {
                 subStats.unackedMessages = ((PersistentDispatcherMultipleConsumers) dispatcher)
                         .getTotalUnackedMessages();
@@ -641,6 +667,9 @@ public class PersistentSubscription implements Subscription {
             }
         }
         subStats.msgBacklog = getNumberOfEntriesInBacklog();
+        if (dispatcher != null) {
+            subStats.msgDelayed = dispatcher.getNumberOfDelayedMessages();
+        }
         subStats.msgRateExpired = expiryMonitor.getMessageExpiryRate();
 
         return subStats;
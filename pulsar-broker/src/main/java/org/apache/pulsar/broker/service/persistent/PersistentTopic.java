@@ -74,6 +74,9 @@ import org.apache.pulsar.broker.service.BrokerServiceException.TopicTerminatedEx
 import org.apache.pulsar.broker.service.BrokerServiceException.UnsupportedVersionException;
 import org.apache.pulsar.broker.service.Consumer;
 import org.apache.pulsar.broker.service.Producer;
+import org.apache.pulsar.broker.service.PublishRateLimiter;
+import org.apache.pulsar.broker.service.PublishRateLimiterDisabled;
+import org.apache.pulsar.broker.service.PublishRateLimiterImpl;
 import org.apache.pulsar.broker.service.Replicator;
 import org.apache.pulsar.broker.service.ServerCnx;
 import org.apache.pulsar.broker.service.StreamingStats;
@@ -99,6 +102,7 @@ import org.apache.pulsar.common.policies.data.PersistentTopicInternalStats.Curso
 import org.apache.pulsar.common.policies.data.PersistentTopicInternalStats.LedgerInfo;
 import org.apache.pulsar.common.policies.data.TopicStats;
 import org.apache.pulsar.common.policies.data.Policies;
+import org.apache.pulsar.common.policies.data.PublishRate;
 import org.apache.pulsar.common.policies.data.PublisherStats;
 import org.apache.pulsar.common.policies.data.ReplicatorStats;
 import org.apache.pulsar.common.policies.data.SubscriptionStats;
@@ -167,7 +171,12 @@ public class PersistentTopic implements Topic, AddEntryCallback {
     // Flag to signal that producer of this topic has published batch-message so, broker should not allow consumer which
     // doesn't support batch-message
     private volatile boolean hasBatchMessagePublished = false;
+    // Delayed messages can only be in the entries published before the topic was loaded, until a producer publishes
+    // one: the dispatchers don't look for the delivery time of the newer entries until then
+    private final PositionImpl lastPositionBeforeLoad;
+    private volatile boolean hasDelayedMessagePublished = false;
     private final DispatchRateLimiter dispatchRateLimiter;
+    private volatile PublishRateLimiter publishRateLimiter = PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
     public static final int MESSAGE_RATE_BACKOFF_MS = 1000;
 
     private final MessageDeduplication messageDeduplication;
@@ -223,6 +232,7 @@ public class PersistentTopic implements Topic, AddEntryCallback {
         this.replicators = new ConcurrentOpenHashMap<>(16, 1);
         this.isFenced = false;
         this.replicatorPrefix = brokerService.pulsar().getConfiguration().getReplicatorPrefix();
+        this.lastPositionBeforeLoad = (PositionImpl) ledger.getLastConfirmedEntry();
         USAGE_COUNT_UPDATER.set(this, 0);
 
         this.dispatchRateLimiter = new DispatchRateLimiter(this);
@@ -258,12 +268,14 @@ public class PersistentTopic implements Topic, AddEntryCallback {
                     .get(AdminResource.path(POLICIES, TopicName.get(topic).getNamespace()))
                     .orElseThrow(() -> new KeeperException.NoNodeException());
             isEncryptionRequired = policies.encryption_required;
+            updatePublishRateLimiter(policies);
 
             schemaCompatibilityStrategy = SchemaCompatibilityStrategy.fromAutoUpdatePolicy(
                     policies.schema_auto_update_compatibility_strategy);
         } catch (Exception e) {
             log.warn("[{}] Error getting policies {} and isEncryptionRequired will be set to false", topic, e.getMessage());
             isEncryptionRequired = false;
+            updatePublishRateLimiter(null);
         }
     }
 
@@ -1280,6 +1292,9 @@ public class PersistentTopic implements Topic, AddEntryCallback {
 
                 // Populate subscription specific stats here
                 topicStatsStream.writePair("msgBacklog", subscription.getNumberOfEntriesInBacklog());
+                if (subscription.getDispatcher() != null) {
+                    topicStatsStream.writePair("msgDelayed", subscription.getDispatcher().getNumberOfDelayedMessages());
+                }
                 topicStatsStream.writePair("msgRateExpired", subscription.getExpiredMessageRate());
                 topicStatsStream.writePair("msgRateOut", subMsgRateOut);
                 topicStatsStream.writePair("msgThroughputOut", subMsgThroughputOut);
@@ -1287,7 +1302,7 @@ public class PersistentTopic implements Topic, AddEntryCallback {
                 topicStatsStream.writePair("numberOfEntriesSinceFirstNotAckedMessage", subscription.getNumberOfEntriesSinceFirstNotAckedMessage());
                 topicStatsStream.writePair("totalNonContiguousDeletedMessagesRange", subscription.getTotalNonContiguousDeletedMessagesRange());
                 topicStatsStream.writePair("type", subscription.getTypeString());
-                if (SubType.Shared.equals(subscription.getType())) {
+                if (Subscription.isIndividualAckMode(subscription.getType())) {
                     if(subscription.getDispatcher() instanceof PersistentDispatcherMultipleConsumers) {
                         PersistentDispatcherMultipleConsumers dispatcher = (PersistentDispatcherMultipleConsumers)subscription.getDispatcher();
                         topicStatsStream.writePair("blockedSubscriptionOnUnackedMsgs",  dispatcher.isBlockedDispatcherOnUnackedMsgs());
@@ -1580,6 +1595,7 @@ public class PersistentTopic implements Topic, AddEntryCallback {
         CompletableFuture<Void> dedupFuture = checkDeduplicationStatus();
         CompletableFuture<Void> persistentPoliciesFuture = checkPersistencePolicies();
         dispatchRateLimiter.onPoliciesUpdate(data);
+        updatePublishRateLimiter(data);
         return CompletableFuture.allOf(replicationFuture, dedupFuture, persistentPoliciesFuture);
     }
 
@@ -1620,6 +1636,50 @@ public class PersistentTopic implements Topic, AddEntryCallback {
         return false;
     }
 
+    @Override
+    public void incrementPublishCount(int numOfMessages, long msgSizeInBytes) {
+        publishRateLimiter.incrementPublishCount(numOfMessages, msgSizeInBytes);
+    }
+
+    @Override
+    public boolean isPublishRateExceeded() {
+        return publishRateLimiter.isPublishRateExceeded();
+    }
+
+    @Override
+    public void checkPublishThrottlingRate() {
+        publishRateLimiter.checkPublishRate();
+    }
+
+    @Override
+    public void resetPublishCountAndEnableReadIfRequired() {
+        if (publishRateLimiter.resetPublishCount()) {
+            enableProducerReads();
+        }
+    }
+
+    private void enableProducerReads() {
+        producers.forEach(producer -> producer.getCnx().enableCnxAutoRead());
+    }
+
+    private void updatePublishRateLimiter(Policies policies) {
+        final PublishRate maxPublishRate = brokerService.getPublishRate(policies);
+        final PublishRateLimiter currentRateLimiter = publishRateLimiter;
+        if (PublishRateLimiterImpl.isPublishRateEnabled(maxPublishRate)) {
+            if (currentRateLimiter instanceof PublishRateLimiterImpl) {
+                ((PublishRateLimiterImpl) currentRateLimiter).update(maxPublishRate);
+            } else {
+                publishRateLimiter = new PublishRateLimiterImpl(maxPublishRate);
+            }
+        } else {
+            publishRateLimiter = PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
+            if (currentRateLimiter.isPublishRateExceeded()) {
+                // the producers would otherwise wait for a reset which isn't coming
+                enableProducerReads();
+            }
+        }
+    }
+
     @Override
     public boolean isEncryptionRequired() {
         return isEncryptionRequired;
@@ -1723,6 +1783,18 @@ public class PersistentTopic implements Topic, AddEntryCallback {
         this.hasBatchMessagePublished = true;
     }
 
+    public void markDelayedMessagePublished() {
+        this.hasDelayedMessagePublished = true;
+    }
+
+    /**
+     * @return whether the entry at the given position may have a delivery time
+     */
+    public boolean mayHaveDelayedMessage(PositionImpl position) {
+        return hasDelayedMessagePublished
+                || (lastPositionBeforeLoad != null && position.compareTo(lastPositionBeforeLoad) <= 0);
+    }
+
     public DispatchRateLimiter getDispatchRateLimiter() {
         return this.dispatchRateLimiter;
     }
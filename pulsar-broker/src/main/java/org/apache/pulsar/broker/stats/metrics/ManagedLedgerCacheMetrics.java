@@ -56,6 +56,16 @@ public class ManagedLedgerCacheMetrics extends AbstractMetrics {
         m.put("brk_ml_cache_misses_rate", mlCacheStats.getCacheMissesRate());
         m.put("brk_ml_cache_hits_throughput", mlCacheStats.getCacheHitsThroughput());
         m.put("brk_ml_cache_misses_throughput", mlCacheStats.getCacheMissesThroughput());
+        m.put("brk_ml_cache_coalesced_reads_rate", mlCacheStats.getCacheCoalescedReadsRate());
+        m.put("brk_ml_cache_coalesced_reads_throughput", mlCacheStats.getCacheCoalescedReadsThroughput());
+        m.put("brk_ml_cache_protected_hits_rate", mlCacheStats.getCacheProtectedHitsRate());
+        m.put("brk_ml_cache_probation_hits_rate", mlCacheStats.getCacheProbationHitsRate());
+        m.put("brk_ml_cache_backlog_reads_rate", mlCacheStats.getCacheBacklogReadsRate());
+        m.put("brk_ml_recovery_avg_latency_ms", mlCacheStats.getRecoveryAvgLatencyMs());
+        m.put("brk_ml_recovery_metadata_avg_latency_ms", mlCacheStats.getRecoveryMetadataAvgLatencyMs());
+        m.put("brk_ml_recovery_ledgers_avg_latency_ms", mlCacheStats.getRecoveryLedgersAvgLatencyMs());
+        m.put("brk_ml_recovery_cursors_avg_latency_ms", mlCacheStats.getRecoveryCursorsAvgLatencyMs());
+        m.put("brk_ml_recovery_pending_cursors", mlCacheStats.getPendingCursorRecoveries());
 
         PooledByteBufAllocator allocator = EntryCacheImpl.ALLOCATOR;
         long activeAllocations = 0;
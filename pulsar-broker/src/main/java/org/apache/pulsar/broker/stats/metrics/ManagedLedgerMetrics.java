@@ -85,7 +85,17 @@ public class ManagedLedgerMetrics extends AbstractMetrics {
 
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_NumberOfMessagesInBacklog",
                         (double) lStats.getNumberOfMessagesInBacklog());
-
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_IndividualAckSetMemorySize",
+                        (double) lStats.getIndividualAckSetMemorySize());
+
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadAheadHitsRate",
+                        lStats.getReadAheadHitsRate());
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadAheadMissesRate",
+                        lStats.getReadAheadMissesRate());
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadAheadBufferSize",
+                        (double) lStats.getReadAheadBufferSize());
+                populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_GroupCommitRate",
+                        lStats.getGroupCommitRate());
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadEntriesBytesRate",
                         lStats.getReadEntriesBytesRate());
                 populateAggregationMapWithSum(tempAggregatedMetricsMap, "brk_ml_ReadEntriesErrors",
@@ -31,4 +31,6 @@ public class AggregatedConsumerStats {
     public double msgThroughputOut;
 
     public long availablePermits;
+
+    public double avgAckLatencyMs;
 }
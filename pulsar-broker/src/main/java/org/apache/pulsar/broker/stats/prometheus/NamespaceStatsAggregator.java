@@ -20,6 +20,7 @@ package org.apache.pulsar.broker.stats.prometheus;
 
 import org.apache.bookkeeper.mledger.impl.ManagedLedgerMBeanImpl;
 import org.apache.pulsar.broker.PulsarService;
+import org.apache.pulsar.broker.service.BrokerService;
 import org.apache.pulsar.broker.service.Topic;
 import org.apache.pulsar.broker.service.persistent.PersistentTopic;
 import org.apache.pulsar.common.policies.data.ReplicatorStats;
@@ -49,6 +50,7 @@ public class NamespaceStatsAggregator {
         TopicStats topicStats = localTopicStats.get();
 
         printDefaultBrokerStats(stream, cluster);
+        printPublishBufferStats(stream, cluster, pulsar.getBrokerService());
 
         pulsar.getBrokerService().getMultiLayerTopicMap().forEach((namespace, bundlesMap) -> {
             namespaceStats.reset();
@@ -113,6 +115,9 @@ public class NamespaceStatsAggregator {
             AggregatedSubscriptionStats subsStats = stats.subscriptionStats
                     .computeIfAbsent(name, k -> new AggregatedSubscriptionStats());
             subsStats.msgBacklog = subscription.getNumberOfEntriesInBacklog();
+            if (subscription.getDispatcher() != null) {
+                subsStats.msgDelayed = subscription.getDispatcher().getNumberOfDelayedMessages();
+            }
 
             subscription.getConsumers().forEach(consumer -> {
 
@@ -125,6 +130,7 @@ public class NamespaceStatsAggregator {
                     consumerStats.msgRateOut = consumer.getStats().msgRateOut;
                     consumerStats.msgThroughputOut = consumer.getStats().msgThroughputOut;
                     consumerStats.availablePermits = consumer.getStats().availablePermits;
+                    consumerStats.avgAckLatencyMs = consumer.getStats().avgAckLatencyMs;
                     consumerStats.blockedSubscriptionOnUnackedMsgs = consumer.getStats().blockedConsumerOnUnackedMsgs;
                 }
 
@@ -170,6 +176,18 @@ public class NamespaceStatsAggregator {
         metric(stream, cluster, "pulsar_msg_backlog", 0);
     }
 
+    private static void printPublishBufferStats(SimpleTextOutputStream stream, String cluster,
+            BrokerService brokerService) {
+        metric(stream, cluster, "pulsar_broker_publish_buffer_size",
+                brokerService.getCurrentMessagePublishBufferSize());
+        metric(stream, cluster, "pulsar_broker_publish_buffer_max_size",
+                brokerService.getMaxMessagePublishBufferSize());
+        metric(stream, cluster, "pulsar_broker_publish_buffer_paused_connections",
+                brokerService.getPausedConnections());
+        metric(stream, cluster, "pulsar_broker_publish_buffer_paused_connections_total",
+                brokerService.getTotalPausedConnections());
+    }
+
     private static void printNamespaceStats(SimpleTextOutputStream stream, String cluster, String namespace,
                                             AggregatedNamespaceStats stats) {
         metric(stream, cluster, namespace, "pulsar_topics_count", stats.topicsCount);
@@ -63,8 +63,27 @@ public class PrometheusMetricsGenerator {
         }).register(CollectorRegistry.defaultRegistry);
     }
 
+    // Size of the previous generation, used to allocate the buffer of the next one at once instead of growing it
+    private static volatile int lastGeneratedSize = 0;
+
     public static void generate(PulsarService pulsar, boolean includeTopicMetrics, boolean includeConsumerMetrics, OutputStream out) throws IOException {
-        ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer();
+        ByteBuf buf = generate(pulsar, includeTopicMetrics, includeConsumerMetrics);
+        try {
+            buf.getBytes(buf.readerIndex(), out, buf.readableBytes());
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * Writes the metrics into a pooled buffer, walking the topics one at a time.
+     *
+     * @return the buffer holding the metrics, to be released by the caller
+     */
+    static ByteBuf generate(PulsarService pulsar, boolean includeTopicMetrics, boolean includeConsumerMetrics) {
+        int initialCapacity = lastGeneratedSize;
+        // Leave some room for the topics created since the previous generation
+        ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer(initialCapacity + initialCapacity / 8 + 256);
         try {
             SimpleTextOutputStream stream = new SimpleTextOutputStream(buf);
 
@@ -75,9 +94,11 @@ public class PrometheusMetricsGenerator {
             FunctionsStatsGenerator.generate(pulsar.getWorkerService(),
                     pulsar.getConfiguration().getClusterName(), stream);
 
-            out.write(buf.array(), buf.arrayOffset(), buf.readableBytes());
-        } finally {
+            lastGeneratedSize = buf.readableBytes();
+            return buf;
+        } catch (Throwable t) {
             buf.release();
+            throw t;
         }
     }
 
@@ -21,8 +21,10 @@ package org.apache.pulsar.broker.stats.prometheus;
 import static org.apache.bookkeeper.mledger.util.SafeRun.safeRun;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
@@ -31,10 +33,14 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.pulsar.broker.PulsarService;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 public class PrometheusMetricsServlet extends HttpServlet {
@@ -44,13 +50,18 @@ public class PrometheusMetricsServlet extends HttpServlet {
     private final PulsarService pulsar;
     private final boolean shouldExportTopicMetrics;
     private final boolean shouldExportConsumerMetrics;
+    private final long cacheTimeMillis;
 
     private ExecutorService executor = null;
 
+    // Last generated metrics, only accessed from the executor thread
+    private MetricsBuffer lastMetrics = null;
+
     public PrometheusMetricsServlet(PulsarService pulsar, boolean includeTopicMetrics, boolean includeConsumerMetrics) {
         this.pulsar = pulsar;
         this.shouldExportTopicMetrics = includeTopicMetrics;
         this.shouldExportConsumerMetrics = includeConsumerMetrics;
+        this.cacheTimeMillis = pulsar.getConfiguration().getPrometheusMetricsCacheTimeInMillis();
     }
 
     @Override
@@ -61,13 +72,22 @@ public class PrometheusMetricsServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        final long requestTime = System.currentTimeMillis();
+        final boolean gzip = acceptsGzip(request);
         AsyncContext context = request.startAsync();
         executor.execute(safeRun(() -> {
             HttpServletResponse res = (HttpServletResponse) context.getResponse();
             try {
+                MetricsBuffer metrics = getMetrics(requestTime);
+                ByteBuf buf = gzip ? metrics.getGzipped() : metrics.plain;
+
                 res.setStatus(HttpStatus.OK_200);
                 res.setContentType("text/plain");
-                PrometheusMetricsGenerator.generate(pulsar, shouldExportTopicMetrics, shouldExportConsumerMetrics, res.getOutputStream());
+                if (gzip) {
+                    res.setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+                }
+                res.setContentLength(buf.readableBytes());
+                buf.getBytes(buf.readerIndex(), res.getOutputStream(), buf.readableBytes());
                 context.complete();
 
             } catch (IOException e) {
@@ -78,10 +98,76 @@ public class PrometheusMetricsServlet extends HttpServlet {
         }));
     }
 
+    /**
+     * Gets the metrics to answer a scrape received at the given time. Scrapes are served one at a time: the scrapes
+     * queued while the metrics are generated share the next generation, which starts after they were received, and
+     * the following scrapes reuse it for up to {@code prometheusMetricsCacheTimeInMillis}.
+     */
+    private MetricsBuffer getMetrics(long requestTime) {
+        if (lastMetrics != null && lastMetrics.generationTime >= requestTime - cacheTimeMillis) {
+            return lastMetrics;
+        }
+
+        long generationTime = System.currentTimeMillis();
+        MetricsBuffer metrics = new MetricsBuffer(generationTime,
+                PrometheusMetricsGenerator.generate(pulsar, shouldExportTopicMetrics, shouldExportConsumerMetrics));
+        if (lastMetrics != null) {
+            lastMetrics.release();
+        }
+        lastMetrics = metrics;
+        return metrics;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeader.ACCEPT_ENCODING.asString());
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
     @Override
     public void destroy() {
         if (executor != null) {
-            executor.shutdownNow();
+            executor.execute(() -> {
+                if (lastMetrics != null) {
+                    lastMetrics.release();
+                    lastMetrics = null;
+                }
+            });
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Generated metrics, with their gzip encoding computed on the first scrape accepting it.
+     */
+    private static class MetricsBuffer {
+        final long generationTime;
+        final ByteBuf plain;
+        ByteBuf gzipped = null;
+
+        MetricsBuffer(long generationTime, ByteBuf plain) {
+            this.generationTime = generationTime;
+            this.plain = plain;
+        }
+
+        ByteBuf getGzipped() throws IOException {
+            if (gzipped == null) {
+                ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer(plain.readableBytes() / 4 + 64);
+                try (OutputStream out = new GZIPOutputStream(new ByteBufOutputStream(buf))) {
+                    plain.getBytes(plain.readerIndex(), out, plain.readableBytes());
+                } catch (IOException e) {
+                    buf.release();
+                    throw e;
+                }
+                gzipped = buf;
+            }
+            return gzipped;
+        }
+
+        void release() {
+            plain.release();
+            if (gzipped != null) {
+                gzipped.release();
+            }
         }
     }
 
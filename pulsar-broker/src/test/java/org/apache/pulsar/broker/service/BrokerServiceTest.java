@@ -24,7 +24,10 @@ import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -67,6 +70,7 @@ import org.apache.pulsar.common.policies.data.BundlesData;
 import org.apache.pulsar.common.policies.data.LocalPolicies;
 import org.apache.pulsar.common.policies.data.TopicStats;
 import org.apache.pulsar.common.policies.data.SubscriptionStats;
+import org.apache.pulsar.common.util.RateLimiter;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -880,4 +884,30 @@ public class BrokerServiceTest extends BrokerTestBase {
         assertEquals(policy.get().bundles.numBundles, totalBundle);
     }
 
+    /**
+     * Verifies that the replicators to a remote cluster share the same byte rate limiter, and that replication is not
+     * throttled by default.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReplicationRateLimiterPerRemoteCluster() throws Exception {
+        BrokerService service = pulsar.getBrokerService();
+        assertFalse(service.getReplicationRateLimiter("r-unthrottled").isPresent());
+
+        conf.setReplicationThrottlingRatePerRemoteClusterInByte(1000);
+        try {
+            Optional<RateLimiter> rateLimiter = service.getReplicationRateLimiter("r-throttled");
+            assertTrue(rateLimiter.isPresent());
+            assertEquals(rateLimiter.get().getRate(), 1000);
+            assertSame(service.getReplicationRateLimiter("r-throttled").get(), rateLimiter.get());
+            assertNotSame(service.getReplicationRateLimiter("r-throttled-other").get(), rateLimiter.get());
+
+            // The rate is shared by all the replicators to the cluster
+            assertTrue(rateLimiter.get().tryAcquire(800));
+            assertEquals(service.getReplicationRateLimiter("r-throttled").get().getAvailablePermits(), 200);
+        } finally {
+            conf.setReplicationThrottlingRatePerRemoteClusterInByte(0);
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pulsar.broker.service.BrokerServiceException.ConsumerBusyException;
+import org.testng.annotations.Test;
+
+public class HashRangeStickyKeyConsumerSelectorTest {
+
+    @Test
+    public void testConsumerSelect() throws Exception {
+        HashRangeStickyKeyConsumerSelector selector = new HashRangeStickyKeyConsumerSelector();
+        assertNull(selector.select(StickyKeyConsumerSelector.makeStickyKeyHash("key")));
+
+        Consumer consumer1 = mock(Consumer.class);
+        selector.addConsumer(consumer1);
+        assertEquals(selector.getConsumerRange().get(consumer1).intValue(),
+                HashRangeStickyKeyConsumerSelector.DEFAULT_RANGE_SIZE - 1);
+        assertEquals(selector.select(StickyKeyConsumerSelector.makeStickyKeyHash("key")), consumer1);
+
+        // Each new consumer takes half of the biggest range
+        Consumer consumer2 = mock(Consumer.class);
+        selector.addConsumer(consumer2);
+        assertEquals(selector.getConsumerRange().get(consumer2).intValue(),
+                HashRangeStickyKeyConsumerSelector.DEFAULT_RANGE_SIZE / 2 - 1);
+
+        Consumer consumer3 = mock(Consumer.class);
+        selector.addConsumer(consumer3);
+        assertEquals(selector.getConsumerRange().get(consumer3).intValue(),
+                HashRangeStickyKeyConsumerSelector.DEFAULT_RANGE_SIZE / 4 - 1);
+
+        Consumer consumer4 = mock(Consumer.class);
+        selector.addConsumer(consumer4);
+        assertEquals(selector.getConsumerRange().get(consumer4).intValue(),
+                HashRangeStickyKeyConsumerSelector.DEFAULT_RANGE_SIZE * 3 / 4 - 1);
+
+        Map<Consumer, Integer> selectedCount = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            Consumer consumer = selector.select(StickyKeyConsumerSelector.makeStickyKeyHash("key-" + i));
+            assertNotNull(consumer);
+            selectedCount.merge(consumer, 1, Integer::sum);
+        }
+        assertEquals(selectedCount.size(), 4);
+    }
+
+    @Test
+    public void testKeysStickToTheirConsumer() throws Exception {
+        HashRangeStickyKeyConsumerSelector selector = new HashRangeStickyKeyConsumerSelector();
+        List<Consumer> consumers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Consumer consumer = mock(Consumer.class);
+            consumers.add(consumer);
+            selector.addConsumer(consumer);
+        }
+
+        Map<String, Consumer> owners = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String key = "key-" + i;
+            owners.put(key, selector.select(StickyKeyConsumerSelector.makeStickyKeyHash(key)));
+        }
+
+        // Only the keys of the removed consumers move to another consumer
+        Consumer removed1 = consumers.get(2);
+        Consumer removed2 = consumers.get(0);
+        selector.removeConsumer(removed1);
+        selector.removeConsumer(removed2);
+        for (Map.Entry<String, Consumer> entry : owners.entrySet()) {
+            Consumer consumer = selector.select(StickyKeyConsumerSelector.makeStickyKeyHash(entry.getKey()));
+            assertNotNull(consumer);
+            if (entry.getValue() == removed1 || entry.getValue() == removed2) {
+                assertNotNull(selector.getConsumerRange().get(consumer));
+            } else {
+                assertEquals(consumer, entry.getValue());
+            }
+        }
+
+        for (Consumer consumer : consumers) {
+            selector.removeConsumer(consumer);
+        }
+        assertNull(selector.select(StickyKeyConsumerSelector.makeStickyKeyHash("key")));
+        assertEquals(selector.getConsumerRange().size(), 0);
+    }
+
+    @Test
+    public void testNoMoreRangesToAssign() throws Exception {
+        HashRangeStickyKeyConsumerSelector selector = new HashRangeStickyKeyConsumerSelector(4);
+        for (int i = 0; i < 4; i++) {
+            selector.addConsumer(mock(Consumer.class));
+        }
+
+        try {
+            selector.addConsumer(mock(Consumer.class));
+            fail("Should have failed");
+        } catch (ConsumerBusyException e) {
+            // Ok
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Clock;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+public class InMemoryDelayedDeliveryTrackerTest {
+
+    private ScheduledExecutorService executor;
+
+    @BeforeMethod
+    public void setup() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testScheduledMessagesAreReturnedInOrder() {
+        AtomicLong clockTime = new AtomicLong(10);
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(x -> clockTime.get());
+
+        InMemoryDelayedDeliveryTracker tracker = new InMemoryDelayedDeliveryTracker(executor, () -> {}, 1, 0, clock);
+
+        assertFalse(tracker.hasMessageAvailable());
+
+        // Messages that are already due are not tracked
+        assertFalse(tracker.addMessage(1, 1, 10));
+        assertFalse(tracker.addMessage(1, 1, 5));
+
+        assertTrue(tracker.addMessage(2, 2, 20));
+        assertTrue(tracker.addMessage(1, 3, 50));
+        assertTrue(tracker.addMessage(3, 1, 30));
+        assertTrue(tracker.addMessage(4, 5, 30));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 4);
+        assertFalse(tracker.hasMessageAvailable());
+
+        clockTime.set(30);
+        assertTrue(tracker.hasMessageAvailable());
+        Set<PositionImpl> scheduled = tracker.getScheduledMessages(10);
+        assertEquals(Lists.newArrayList(scheduled),
+                Lists.newArrayList(new PositionImpl(2, 2), new PositionImpl(3, 1), new PositionImpl(4, 5)));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 1);
+        assertFalse(tracker.hasMessageAvailable());
+
+        clockTime.set(60);
+        assertEquals(tracker.getScheduledMessages(0).size(), 0);
+        assertEquals(Lists.newArrayList(tracker.getScheduledMessages(10)),
+                Lists.newArrayList(new PositionImpl(1, 3)));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 0);
+
+        tracker.close();
+    }
+
+    @Test
+    public void testMaxMessages() {
+        AtomicLong clockTime = new AtomicLong(10);
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(x -> clockTime.get());
+
+        InMemoryDelayedDeliveryTracker tracker = new InMemoryDelayedDeliveryTracker(executor, () -> {}, 1, 0, clock);
+        for (int i = 0; i < 100; i++) {
+            tracker.addMessage(1, i, 20 + i);
+        }
+
+        clockTime.set(1000);
+        assertEquals(tracker.getScheduledMessages(30).size(), 30);
+        assertEquals(tracker.getScheduledMessages(30).iterator().next(), new PositionImpl(1, 30));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 40);
+
+        tracker.clear();
+        assertEquals(tracker.getNumberOfDelayedMessages(), 0);
+        assertFalse(tracker.hasMessageAvailable());
+        tracker.close();
+    }
+
+    @Test
+    public void testFullTracker() {
+        AtomicLong clockTime = new AtomicLong(10);
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(x -> clockTime.get());
+
+        InMemoryDelayedDeliveryTracker tracker = new InMemoryDelayedDeliveryTracker(executor, () -> {}, 1, 3, clock);
+        assertTrue(tracker.addMessage(1, 1, 20));
+        assertTrue(tracker.addMessage(1, 2, 30));
+        assertFalse(tracker.isFull());
+        assertTrue(tracker.addMessage(1, 3, 40));
+        assertTrue(tracker.isFull());
+
+        // Delivering the due messages makes room again
+        clockTime.set(25);
+        assertEquals(Lists.newArrayList(tracker.getScheduledMessages(10)),
+                Lists.newArrayList(new PositionImpl(1, 1)));
+        assertFalse(tracker.isFull());
+
+        tracker.clear();
+        assertFalse(tracker.isFull());
+        tracker.close();
+    }
+
+    @Test
+    public void testTimerNotifiesWhenMessagesAreDue() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        InMemoryDelayedDeliveryTracker tracker = new InMemoryDelayedDeliveryTracker(executor, latch::countDown, 10, 0);
+
+        long now = System.currentTimeMillis();
+        assertTrue(tracker.addMessage(1, 1, now + 200));
+        assertTrue(tracker.addMessage(1, 2, now + 100_000));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() >= now + 200);
+        assertTrue(tracker.hasMessageAvailable());
+        assertEquals(Lists.newArrayList(tracker.getScheduledMessages(10)),
+                Lists.newArrayList(new PositionImpl(1, 1)));
+        assertEquals(tracker.getNumberOfDelayedMessages(), 1);
+
+        tracker.close();
+    }
+}
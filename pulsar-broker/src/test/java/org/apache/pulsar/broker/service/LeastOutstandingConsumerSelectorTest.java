@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.testng.annotations.Test;
+
+public class LeastOutstandingConsumerSelectorTest {
+
+    private static Consumer consumer(int priorityLevel, int unackedMessages, double avgAckLatencyMs, boolean writable) {
+        Consumer consumer = mock(Consumer.class);
+        doReturn(priorityLevel).when(consumer).getPriorityLevel();
+        doReturn(unackedMessages).when(consumer).getUnackedMessages();
+        doReturn(avgAckLatencyMs).when(consumer).getAvgAckLatencyMs();
+        doReturn(writable).when(consumer).isWritable();
+        return consumer;
+    }
+
+    @Test
+    public void testSelectLeastOutstanding() {
+        LeastOutstandingConsumerSelector selector = new LeastOutstandingConsumerSelector();
+
+        Consumer busy = consumer(0, 100, 10, true);
+        Consumer idle = consumer(0, 10, 10, true);
+        assertEquals(selector.select(Lists.newArrayList(busy, idle), c -> true), idle);
+
+        // Fewer unacked messages but acknowledged much more slowly
+        Consumer slow = consumer(0, 10, 500, true);
+        assertEquals(selector.select(Lists.newArrayList(slow, busy), c -> true), busy);
+
+        // Consumers without acks yet are compared by unacked messages
+        Consumer new1 = consumer(0, 20, 0, true);
+        Consumer new2 = consumer(0, 5, 0, true);
+        assertEquals(selector.select(Lists.newArrayList(new1, new2), c -> true), new2);
+    }
+
+    @Test
+    public void testSkipUnavailableAndNotWritable() {
+        LeastOutstandingConsumerSelector selector = new LeastOutstandingConsumerSelector();
+
+        Consumer idle = consumer(0, 0, 1, true);
+        Consumer notWritable = consumer(0, 0, 1, false);
+        Consumer busy = consumer(0, 1000, 100, true);
+        List<Consumer> consumers = Lists.newArrayList(idle, notWritable, busy);
+
+        assertEquals(selector.select(consumers, c -> c != idle), busy);
+        // A consumer that is not writable is only used when no other consumer is available
+        assertEquals(selector.select(consumers, c -> c == notWritable), notWritable);
+        assertNull(selector.select(consumers, c -> false));
+    }
+
+    @Test
+    public void testPriorityLevels() {
+        LeastOutstandingConsumerSelector selector = new LeastOutstandingConsumerSelector();
+
+        Consumer highBusy = consumer(0, 1000, 100, true);
+        Consumer highFull = consumer(0, 0, 1, true);
+        Consumer lowIdle = consumer(1, 0, 1, true);
+        List<Consumer> consumers = Lists.newArrayList(highBusy, highFull, lowIdle);
+
+        // Lower priority consumers are only used when no higher priority consumer is available
+        assertEquals(selector.select(consumers, c -> c != highFull), highBusy);
+        assertEquals(selector.select(consumers, c -> c == lowIdle), lowIdle);
+    }
+}
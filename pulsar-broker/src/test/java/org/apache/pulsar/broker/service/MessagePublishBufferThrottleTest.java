@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ */
+public class MessagePublishBufferThrottleTest extends BrokerTestBase {
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        conf.setMaxMessagePublishBufferSizeInMB(1);
+        // the buffer is checked explicitly by the tests
+        conf.setMessagePublishBufferCheckIntervalInMillis(-1);
+        super.baseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @Test
+    public void testMessagePublishBufferAccounting() throws Exception {
+        final String topic = "persistent://prop/ns-abc/testMessagePublishBufferAccounting";
+        BrokerService brokerService = pulsar.getBrokerService();
+        assertEquals(brokerService.getMaxMessagePublishBufferSize(), 1024 * 1024);
+
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topic).enableBatching(false).create();
+        for (int i = 0; i < 10; i++) {
+            producer.send(new byte[1024]);
+        }
+
+        // Every message was persisted and released from the buffer
+        assertEquals(brokerService.getCurrentMessagePublishBufferSize(), 0);
+        assertFalse(brokerService.isReachedMaxMessagePublishBuffer());
+        producer.close();
+    }
+
+    @Test
+    public void testPauseAndResumeOnMessagePublishBuffer() throws Exception {
+        final String topic = "persistent://prop/ns-abc/testPauseAndResumeOnMessagePublishBuffer";
+        BrokerService brokerService = pulsar.getBrokerService();
+        final long maxSize = brokerService.getMaxMessagePublishBufferSize();
+
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topic).enableBatching(false).create();
+        producer.send(new byte[10]);
+
+        // Simulate messages pending on other connections until the buffer is full
+        brokerService.incrementMessagePublishBufferSize(maxSize);
+        brokerService.checkMessagePublishBuffer();
+        assertTrue(brokerService.isReachedMaxMessagePublishBuffer());
+
+        // The connection stops reading when it receives its next message, which is still persisted
+        producer.sendAsync(new byte[10]).get(10, TimeUnit.SECONDS);
+        assertEquals(brokerService.getPausedConnections(), 1);
+        assertEquals(brokerService.getTotalPausedConnections(), 1);
+
+        CompletableFuture<MessageId> pendingSend = producer.sendAsync(new byte[10]);
+        try {
+            pendingSend.get(1, TimeUnit.SECONDS);
+            throw new AssertionError("Message should not be persisted while the publish buffer is full");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        // Draining only a part of the buffer keeps the connection paused
+        brokerService.decrementMessagePublishBufferSize(maxSize / 4);
+        brokerService.checkMessagePublishBuffer();
+        assertTrue(brokerService.isReachedMaxMessagePublishBuffer());
+        assertFalse(pendingSend.isDone());
+
+        // Going below half of the limit resumes every paused connection
+        brokerService.decrementMessagePublishBufferSize(maxSize - maxSize / 4);
+        brokerService.checkMessagePublishBuffer();
+        assertFalse(brokerService.isReachedMaxMessagePublishBuffer());
+        pendingSend.get(10, TimeUnit.SECONDS);
+        assertEquals(brokerService.getPausedConnections(), 0);
+        assertEquals(brokerService.getCurrentMessagePublishBufferSize(), 0);
+        producer.close();
+    }
+}
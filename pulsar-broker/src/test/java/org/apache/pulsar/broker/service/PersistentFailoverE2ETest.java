@@ -592,4 +592,47 @@ public class PersistentFailoverE2ETest extends BrokerTestBase {
         resetConfig();
         restartBroker();
     }
+
+    @Test
+    public void testPipelinedReads() throws Exception {
+        final String topicName = "persistent://prop/use/ns-abc/failover-topic-pipelined";
+        final String subName = "sub1";
+        final int numMsgs = 1000;
+
+        // Small budgets to have many reads of a few entries in flight with the writes
+        conf.setDispatcherMaxPendingWriteBytes(4 * 1024);
+        conf.setDispatcherMaxReadSizeBytes(1024);
+        restartBroker();
+
+        Consumer<byte[]> consumer = pulsarClient.newConsumer().topic(topicName).subscriptionName(subName)
+                .subscriptionType(SubscriptionType.Failover).receiverQueueSize(100).subscribe();
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topicName)
+            .enableBatching(false)
+            .messageRoutingMode(MessageRoutingMode.SinglePartition)
+            .create();
+        List<CompletableFuture<MessageId>> futures = Lists.newArrayListWithCapacity(numMsgs);
+        for (int i = 0; i < numMsgs; i++) {
+            String message = "my-message-" + i;
+            futures.add(producer.sendAsync(message.getBytes()));
+        }
+        FutureUtil.waitForAll(futures).get();
+        producer.close();
+
+        // messages are delivered once and in order
+        for (int i = 0; i < numMsgs; i++) {
+            Message<byte[]> msg = consumer.receive(5, TimeUnit.SECONDS);
+            assertNotNull(msg);
+            assertEquals(new String(msg.getData()), "my-message-" + i);
+            consumer.acknowledge(msg);
+        }
+        assertNull(consumer.receive(100, TimeUnit.MILLISECONDS));
+
+        PersistentTopic topicRef = (PersistentTopic) pulsar.getBrokerService().getTopicReference(topicName).get();
+        assertEquals(topicRef.getSubscription(subName).getNumberOfEntriesInBacklog(), 0);
+
+        consumer.unsubscribe();
+        admin.topics().delete(topicName);
+        resetConfig();
+        restartBroker();
+    }
 }
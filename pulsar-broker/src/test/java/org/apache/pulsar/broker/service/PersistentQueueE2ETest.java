@@ -505,4 +505,47 @@ public class PersistentQueueE2ETest extends BrokerTestBase {
 
         deleteTopic(topicName);
     }
+
+    @Test
+    public void testRewindWhenTooManyMessagesToReplay() throws Exception {
+        final String topicName = "persistent://prop/use/ns-abc/testRewindWhenTooManyMessagesToReplay";
+        final String subName = "sub4";
+        final int numMsgs = 50;
+        conf.setDispatcherMaxMessagesToReplay(10);
+
+        try {
+            Producer<byte[]> producer = pulsarClient.newProducer().topic(topicName).enableBatching(false).create();
+
+            ConsumerBuilder<byte[]> consumerBuilder = pulsarClient.newConsumer().topic(topicName)
+                    .subscriptionName(subName).receiverQueueSize(100).subscriptionType(SubscriptionType.Shared);
+            Consumer<byte[]> consumer1 = consumerBuilder.subscribe();
+
+            for (int i = 0; i < numMsgs; i++) {
+                producer.send(("hello-" + i).getBytes());
+            }
+
+            // C-1 gets all messages but doesn't ack
+            for (int i = 0; i < numMsgs; i++) {
+                assertNotNull(consumer1.receive(5, TimeUnit.SECONDS));
+            }
+
+            // C-1 leaves with more unacked messages than can be replayed: they are read again from the cursor
+            Consumer<byte[]> consumer2 = consumerBuilder.subscribe();
+            consumer1.close();
+
+            Set<String> received = new HashSet<>();
+            Message<byte[]> msg;
+            while ((msg = consumer2.receive(2, TimeUnit.SECONDS)) != null) {
+                received.add(new String(msg.getData()));
+                consumer2.acknowledge(msg);
+            }
+            assertEquals(received.size(), numMsgs);
+
+            producer.close();
+            consumer2.close();
+        } finally {
+            conf.setDispatcherMaxMessagesToReplay(0);
+            deleteTopic(topicName);
+        }
+    }
 }
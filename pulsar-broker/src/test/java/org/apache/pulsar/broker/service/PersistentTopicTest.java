@@ -275,6 +275,20 @@ public class PersistentTopicTest {
         assertTrue(latch.await(1, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testDelayedMessagesOnlyLookedUpOnceMayBePublished() throws Exception {
+        // Entries published before the topic was loaded may have a delivery time
+        doReturn(new PositionImpl(1, 10)).when(ledgerMock).getLastConfirmedEntry();
+        PersistentTopic topic = new PersistentTopic(successTopicName, ledgerMock, brokerService);
+        assertTrue(topic.mayHaveDelayedMessage(new PositionImpl(1, 3)));
+        assertTrue(topic.mayHaveDelayedMessage(new PositionImpl(1, 10)));
+        assertFalse(topic.mayHaveDelayedMessage(new PositionImpl(1, 11)));
+        assertFalse(topic.mayHaveDelayedMessage(new PositionImpl(2, 0)));
+
+        topic.markDelayedMessagePublished();
+        assertTrue(topic.mayHaveDelayedMessage(new PositionImpl(2, 0)));
+    }
+
     @Test
     public void testDispatcherMultiConsumerReadFailed() throws Exception {
         PersistentTopic topic = spy(new PersistentTopic(successTopicName, ledgerMock, brokerService));
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.pulsar.common.policies.data.PublishRate;
+import org.testng.annotations.Test;
+
+public class PublishRateLimiterTest {
+
+    @Test
+    public void testPublishRateLimiterOnMessages() {
+        PublishRateLimiterImpl rateLimiter = new PublishRateLimiterImpl(new PublishRate(10, -1));
+
+        rateLimiter.incrementPublishCount(10, 1000);
+        rateLimiter.checkPublishRate();
+        assertFalse(rateLimiter.isPublishRateExceeded());
+
+        rateLimiter.incrementPublishCount(1, 100);
+        rateLimiter.checkPublishRate();
+        assertTrue(rateLimiter.isPublishRateExceeded());
+
+        // A new period starts from scratch, and reads must be resumed
+        assertTrue(rateLimiter.resetPublishCount());
+        assertFalse(rateLimiter.isPublishRateExceeded());
+        rateLimiter.incrementPublishCount(5, 500);
+        rateLimiter.checkPublishRate();
+        assertFalse(rateLimiter.isPublishRateExceeded());
+        assertFalse(rateLimiter.resetPublishCount());
+    }
+
+    @Test
+    public void testPublishRateLimiterOnBytes() {
+        PublishRateLimiterImpl rateLimiter = new PublishRateLimiterImpl(new PublishRate(-1, 1000));
+
+        rateLimiter.incrementPublishCount(100, 1000);
+        rateLimiter.checkPublishRate();
+        assertFalse(rateLimiter.isPublishRateExceeded());
+
+        rateLimiter.incrementPublishCount(1, 1);
+        rateLimiter.checkPublishRate();
+        assertTrue(rateLimiter.isPublishRateExceeded());
+
+        // A higher limit applies from the next check
+        rateLimiter.update(new PublishRate(-1, 2000));
+        assertTrue(rateLimiter.resetPublishCount());
+        rateLimiter.incrementPublishCount(1, 1500);
+        rateLimiter.checkPublishRate();
+        assertFalse(rateLimiter.isPublishRateExceeded());
+    }
+
+    @Test
+    public void testPublishRateLimiterDisabled() {
+        assertFalse(PublishRateLimiterImpl.isPublishRateEnabled(null));
+        assertFalse(PublishRateLimiterImpl.isPublishRateEnabled(new PublishRate()));
+        assertTrue(PublishRateLimiterImpl.isPublishRateEnabled(new PublishRate(-1, 1)));
+
+        PublishRateLimiter rateLimiter = PublishRateLimiterDisabled.DISABLED_RATE_LIMITER;
+        rateLimiter.incrementPublishCount(Integer.MAX_VALUE, Long.MAX_VALUE);
+        rateLimiter.checkPublishRate();
+        assertFalse(rateLimiter.isPublishRateExceeded());
+        assertFalse(rateLimiter.resetPublishCount());
+    }
+}
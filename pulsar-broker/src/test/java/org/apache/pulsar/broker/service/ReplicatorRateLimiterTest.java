@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.impl.MessageImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ReplicatorRateLimiterTest extends ReplicatorTestBase {
+
+    // Max number of bytes per second replicated from r1 to each remote cluster
+    private static final long REPLICATION_RATE = 10 * 1024;
+
+    @Override
+    @BeforeClass
+    void setup() throws Exception {
+        config1.setReplicationThrottlingRatePerRemoteClusterInByte(REPLICATION_RATE);
+        super.setup();
+    }
+
+    @Override
+    @AfterClass
+    void shutdown() throws Exception {
+        super.shutdown();
+    }
+
+    /**
+     * Verifies that the replication to a remote cluster slows down to the configured byte rate, and that the forwarded
+     * messages are marked as replicated from the local cluster.
+     *
+     * @throws Exception
+     */
+    @Test(timeOut = 30000)
+    public void testReplicationIsThrottledInBytes() throws Exception {
+        log.info("--- Starting ReplicatorRateLimiterTest::testReplicationIsThrottledInBytes ---");
+        final String topicName = "persistent://pulsar/ns/replication-rate-limit";
+        final int numMessages = 60;
+        final byte[] content = new byte[1024];
+        Arrays.fill(content, (byte) 7);
+
+        PulsarClient client1 = PulsarClient.builder().serviceUrl(url1.toString()).statsInterval(0, TimeUnit.SECONDS)
+                .build();
+        PulsarClient client2 = PulsarClient.builder().serviceUrl(url2.toString()).statsInterval(0, TimeUnit.SECONDS)
+                .build();
+        Consumer<byte[]> consumer2 = client2.newConsumer().topic(topicName).subscriptionName("sub").subscribe();
+        Producer<byte[]> producer1 = client1.newProducer().topic(topicName).enableBatching(false).create();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < numMessages; i++) {
+            producer1.sendAsync(content);
+        }
+        producer1.flush();
+
+        for (int i = 0; i < numMessages; i++) {
+            Message<byte[]> msg = consumer2.receive(10, TimeUnit.SECONDS);
+            assertNotNull(msg);
+            assertEquals(msg.getData(), content);
+            assertEquals(((MessageImpl<?>) msg).getReplicatedFrom(), "r1");
+            consumer2.acknowledge(msg);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // More than 60 KB at 10 KB/s take at least 5 s, minus the permits of the first and of a partial period
+        log.info("Replicated {} messages of {} bytes in {} ms", numMessages, content.length, elapsedMs);
+        assertTrue(elapsedMs >= 3000, "replicated in " + elapsedMs + " ms");
+
+        producer1.close();
+        consumer2.close();
+        client1.close();
+        client2.close();
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicatorRateLimiterTest.class);
+
+}
@@ -1163,6 +1163,38 @@ public class ServerCnxTest {
         channel.finish();
     }
 
+    @Test(timeOut = 30000)
+    public void testUnsupportedKeySharedSubscribeCommand() throws Exception {
+        resetChannel();
+        setChannelConnected();
+        setConnectionVersion(ProtocolVersion.v15.getNumber());
+        doReturn(false).when(brokerService).isAuthenticationEnabled();
+        doReturn(false).when(brokerService).isAuthorizationEnabled();
+
+        ByteBuf clientCommand = Commands.newSubscribe(successTopicName, successSubName, 1 /* consumer id */,
+                1 /* request id */, SubType.Key_Shared, 0 /* priority */, "test" /* consumer name */);
+        channel.writeInbound(clientCommand);
+        Object response = getResponse();
+        assertTrue(response instanceof CommandError);
+        assertEquals(((CommandError) response).getError(), ServerError.UnsupportedVersionError);
+
+        // The subscription was not created
+        Topic topic = brokerService.getTopicReference(successTopicName).orElse(null);
+        assertTrue(topic == null || topic.getSubscription(successSubName) == null);
+
+        // A client supporting Key_Shared can subscribe
+        setConnectionVersion(ProtocolVersion.v16.getNumber());
+        clientCommand = Commands.newSubscribe(successTopicName, successSubName, 2 /* consumer id */,
+                2 /* request id */, SubType.Key_Shared, 0 /* priority */, "test" /* consumer name */);
+        channel.writeInbound(clientCommand);
+        assertTrue(getResponse() instanceof CommandSuccess);
+
+        // Server will not close the connection
+        assertTrue(channel.isOpen());
+
+        channel.finish();
+    }
+
     @Test(timeOut = 30000)
     public void testSubscribeCommandWithAuthorizationPositive() throws Exception {
         AuthorizationService authorizationService = mock(AuthorizationService.class);
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service.persistent;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.pulsar.broker.PulsarService;
+import org.apache.pulsar.broker.ServiceConfiguration;
+import org.apache.pulsar.broker.service.BrokerService;
+import org.apache.pulsar.broker.service.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measure the flow commands per second that connection threads can deliver to a shared subscription with many
+ * consumers, with and without holding the dispatcher monitor as {@code consumerFlow} used to.
+ *
+ * <p/>The cursor read never completes, as for a subscription whose consumers are caught up, so the benchmark only
+ * measures the flow control path.
+ *
+ * <p/>Run with:
+ * <pre>
+ * mvn -pl pulsar-broker test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.apache.pulsar.broker.service.persistent.DispatcherFlowBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatcherFlowBenchmark {
+
+    @Param({ "10", "500" })
+    public int numConsumers;
+
+    @Param({ "false", "true" })
+    public boolean lockDispatcher;
+
+    private OrderedExecutor executor;
+    private PersistentDispatcherMultipleConsumers dispatcher;
+    private Consumer[] consumers;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        executor = OrderedExecutor.newBuilder().numThreads(1).name("dispatcher-benchmark").build();
+
+        ServiceConfiguration config = new ServiceConfiguration();
+        config.setDispatchThrottlingOnNonBacklogConsumerEnabled(false);
+        PulsarService pulsar = mock(PulsarService.class);
+        doReturn(config).when(pulsar).getConfiguration();
+        BrokerService brokerService = mock(BrokerService.class);
+        doReturn(pulsar).when(brokerService).pulsar();
+        doReturn(executor).when(brokerService).getTopicOrderedExecutor();
+        PersistentTopic topic = mock(PersistentTopic.class);
+        doReturn("persistent://prop/ns/benchmark").when(topic).getName();
+        doReturn(brokerService).when(topic).getBrokerService();
+        ManagedCursor cursor = mock(ManagedCursor.class, withSettings().stubOnly());
+        doReturn("sub").when(cursor).getName();
+        doReturn(true).when(cursor).isActive();
+
+        dispatcher = new PersistentDispatcherMultipleConsumers(topic, cursor);
+        consumers = new Consumer[numConsumers];
+        for (int i = 0; i < numConsumers; i++) {
+            // Stub only mocks do not record the invocations, which would dominate the measure
+            Consumer consumer = mock(Consumer.class, withSettings().stubOnly());
+            doReturn(1000).when(consumer).getAvailablePermits();
+            doReturn(Long.MAX_VALUE).when(consumer).getAvailablePermitsBytes();
+            consumers[i] = consumer;
+            dispatcher.addConsumer(consumer);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void consumerFlow() {
+        Consumer consumer = consumers[ThreadLocalRandom.current().nextInt(numConsumers)];
+        if (lockDispatcher) {
+            synchronized (dispatcher) {
+                dispatcher.consumerFlow(consumer, 1);
+            }
+        } else {
+            dispatcher.consumerFlow(consumer, 1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(DispatcherFlowBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service.persistent;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.mledger.ManagedCursor;
+import org.apache.pulsar.broker.PulsarService;
+import org.apache.pulsar.broker.ServiceConfiguration;
+import org.apache.pulsar.broker.service.BrokerService;
+import org.apache.pulsar.broker.service.Consumer;
+import org.apache.pulsar.common.util.collections.ConcurrentLongLongPairHashMap;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PersistentDispatcherMultipleConsumersTest {
+
+    private OrderedExecutor executor;
+    private PersistentTopic topic;
+    private ManagedCursor cursor;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        executor = OrderedExecutor.newBuilder().numThreads(1).name("dispatcher-test").build();
+
+        ServiceConfiguration config = new ServiceConfiguration();
+        config.setDispatchThrottlingOnNonBacklogConsumerEnabled(false);
+        PulsarService pulsar = mock(PulsarService.class);
+        doReturn(config).when(pulsar).getConfiguration();
+        BrokerService brokerService = mock(BrokerService.class);
+        doReturn(pulsar).when(brokerService).pulsar();
+        doReturn(executor).when(brokerService).getTopicOrderedExecutor();
+        topic = mock(PersistentTopic.class);
+        doReturn("persistent://prop/ns/dispatcher-test").when(topic).getName();
+        doReturn(brokerService).when(topic).getBrokerService();
+        // The reads never complete, only the permits are checked
+        cursor = mock(ManagedCursor.class);
+        doReturn("sub").when(cursor).getName();
+        doReturn(true).when(cursor).isActive();
+    }
+
+    @AfterMethod
+    public void cleanup() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test(timeOut = 60000)
+    public void testFlowRacingWithConsumerRemoval() throws Exception {
+        PersistentDispatcherMultipleConsumers dispatcher = new PersistentDispatcherMultipleConsumers(topic, cursor);
+        Consumer remainingConsumer = mockConsumer();
+        dispatcher.addConsumer(remainingConsumer);
+        dispatcher.consumerFlow(remainingConsumer, 100);
+
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        for (int i = 0; i < 200; i++) {
+            Consumer consumer = mockConsumer();
+            dispatcher.addConsumer(consumer);
+            Thread flows = new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                for (int j = 0; j < 100; j++) {
+                    dispatcher.consumerFlow(consumer, 1);
+                }
+            });
+            flows.start();
+            barrier.await();
+            dispatcher.removeConsumer(consumer);
+            flows.join();
+
+            // Only the permits of the remaining consumer are left, whatever flows were applied before the removal
+            assertEquals(dispatcher.totalAvailablePermits, 100);
+        }
+
+        dispatcher.removeConsumer(remainingConsumer);
+        assertEquals(dispatcher.totalAvailablePermits, 0);
+    }
+
+    private static Consumer mockConsumer() {
+        Consumer consumer = mock(Consumer.class);
+        doReturn(new ConcurrentLongLongPairHashMap()).when(consumer).getPendingAcks();
+        doReturn(1000).when(consumer).getAvailablePermits();
+        doReturn(Long.MAX_VALUE).when(consumer).getAvailablePermitsBytes();
+        return consumer;
+    }
+}
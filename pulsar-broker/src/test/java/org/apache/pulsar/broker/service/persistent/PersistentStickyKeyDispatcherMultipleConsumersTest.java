@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.service.persistent;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.bookkeeper.mledger.impl.PositionImpl;
+import org.apache.pulsar.broker.service.persistent.PersistentStickyKeyDispatcherMultipleConsumers.HeldPositionsReplaySet;
+import org.testng.annotations.Test;
+
+public class PersistentStickyKeyDispatcherMultipleConsumersTest {
+
+    @Test
+    public void testHeldPositionsIndex() {
+        HeldPositionsReplaySet set = new HeldPositionsReplaySet();
+        set.hold(new PositionImpl(1, 5), 10);
+        set.hold(new PositionImpl(1, 2), 10);
+        set.hold(new PositionImpl(1, 3), 20);
+        assertEquals(set.getOldestHeldPosition(10), new PositionImpl(1, 2));
+        assertEquals(set.getOldestHeldPosition(20), new PositionImpl(1, 3));
+        assertNull(set.getOldestHeldPosition(30));
+        assertFalse(set.hasPositionsOfUnknownKey());
+
+        // A redelivered position has no known key
+        set.add(1, 1);
+        assertTrue(set.hasPositionsOfUnknownKey());
+        set.remove(1, 1);
+        assertFalse(set.hasPositionsOfUnknownKey());
+
+        // Replayed position: it stays in the replay set but isn't held anymore
+        set.release(new PositionImpl(1, 2));
+        assertTrue(set.contains(1, 2));
+        assertFalse(set.isHeld(new PositionImpl(1, 2)));
+        assertEquals(set.getOldestHeldPosition(10), new PositionImpl(1, 5));
+        assertTrue(set.hasPositionsOfUnknownKey());
+
+        // Dispatched position
+        set.remove(1, 2);
+        set.remove(1, 3);
+        assertNull(set.getOldestHeldPosition(20));
+        assertEquals(set.size(), 1);
+        assertFalse(set.hasPositionsOfUnknownKey());
+    }
+
+    @Test
+    public void testHeldPositionsRemovedUpToMarkDelete() {
+        HeldPositionsReplaySet set = new HeldPositionsReplaySet();
+        for (int i = 0; i < 10; i++) {
+            set.hold(new PositionImpl(1, i), i % 2);
+        }
+        set.hold(new PositionImpl(2, 0), 0);
+
+        set.removeUpTo(1, 6);
+        assertEquals(set.size(), 4);
+        assertEquals(set.getOldestHeldPosition(0), new PositionImpl(1, 8));
+        assertEquals(set.getOldestHeldPosition(1), new PositionImpl(1, 7));
+        assertFalse(set.isHeld(new PositionImpl(1, 6)));
+        assertFalse(set.hasPositionsOfUnknownKey());
+
+        set.removeIf((ledgerId, entryId) -> ledgerId == 1);
+        assertEquals(set.getOldestHeldPosition(0), new PositionImpl(2, 0));
+        assertNull(set.getOldestHeldPosition(1));
+
+        set.clear();
+        assertNull(set.getOldestHeldPosition(0));
+        assertFalse(set.isHeld(new PositionImpl(2, 0)));
+        assertFalse(set.hasPositionsOfUnknownKey());
+    }
+}
@@ -20,13 +20,18 @@ package org.apache.pulsar.broker.stats;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.pulsar.broker.service.BrokerTestBase;
 import org.apache.pulsar.broker.stats.prometheus.PrometheusMetricsGenerator;
@@ -39,6 +44,7 @@ import com.google.common.base.MoreObjects;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.io.ByteStreams;
 
 public class PrometheusMetricsTest extends BrokerTestBase {
     @BeforeClass
@@ -135,6 +141,27 @@ public class PrometheusMetricsTest extends BrokerTestBase {
         p2.close();
     }
 
+    @Test
+    public void testGzipEncodedMetrics() throws Exception {
+        Producer<byte[]> p1 = pulsarClient.newProducer().topic("persistent://my-property/use/my-ns/my-topic1").create();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(brokerUrl, "/metrics").openConnection();
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals(connection.getResponseCode(), 200);
+        assertEquals(connection.getHeaderField("Content-Encoding"), "gzip");
+
+        String metricsStr;
+        try (InputStream in = new GZIPInputStream(connection.getInputStream())) {
+            metricsStr = new String(ByteStreams.toByteArray(in));
+        }
+
+        Multimap<String, Metric> metrics = parseMetrics(metricsStr);
+        assertTrue(metrics.containsKey("pulsar_producers_count"));
+        assertTrue(metrics.containsKey("pulsar_broker_publish_buffer_size"));
+
+        p1.close();
+    }
+
     /**
      * Hacky parsing of Prometheus text format. Sould be good enough for unit tests
      */
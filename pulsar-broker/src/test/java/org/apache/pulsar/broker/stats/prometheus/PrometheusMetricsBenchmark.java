@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.broker.stats.prometheus;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.mledger.ManagedLedger;
+import org.apache.bookkeeper.mledger.impl.ManagedLedgerMBeanImpl;
+import org.apache.bookkeeper.mledger.util.StatsBuckets;
+import org.apache.pulsar.broker.PulsarService;
+import org.apache.pulsar.broker.ServiceConfiguration;
+import org.apache.pulsar.broker.service.BrokerService;
+import org.apache.pulsar.broker.service.Consumer;
+import org.apache.pulsar.broker.service.Producer;
+import org.apache.pulsar.broker.service.Topic;
+import org.apache.pulsar.broker.service.persistent.PersistentSubscription;
+import org.apache.pulsar.broker.service.persistent.PersistentTopic;
+import org.apache.pulsar.common.policies.data.ConsumerStats;
+import org.apache.pulsar.common.policies.data.PublisherStats;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenHashMap;
+import org.apache.pulsar.common.util.collections.ConcurrentOpenHashSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measure the time to generate the Prometheus metrics of a broker depending on its number of topics, each with one
+ * producer and one subscription with one consumer.
+ *
+ * <p/>Run with:
+ * <pre>
+ * mvn -pl pulsar-broker test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.apache.pulsar.broker.stats.prometheus.PrometheusMetricsBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrometheusMetricsBenchmark {
+
+    @Param({ "1000", "10000", "50000" })
+    public int numTopics;
+
+    @Param({ "true", "false" })
+    public boolean includeTopicMetrics;
+
+    private PulsarService pulsar;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ServiceConfiguration config = new ServiceConfiguration();
+        config.setClusterName("benchmark");
+        pulsar = mock(PulsarService.class, withSettings().stubOnly());
+        doReturn(config).when(pulsar).getConfiguration();
+
+        ConcurrentOpenHashMap<String, Topic> topics = new ConcurrentOpenHashMap<>();
+        for (int i = 0; i < numTopics; i++) {
+            String name = "persistent://prop/ns/topic-" + i;
+            topics.put(name, newTopic(name));
+        }
+        ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, Topic>> bundles = new ConcurrentOpenHashMap<>();
+        bundles.put("prop/ns/0x00000000_0xffffffff", topics);
+        ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, ConcurrentOpenHashMap<String, Topic>>> namespaces =
+                new ConcurrentOpenHashMap<>();
+        namespaces.put("prop/ns", bundles);
+
+        BrokerService brokerService = mock(BrokerService.class, withSettings().stubOnly());
+        doReturn(namespaces).when(brokerService).getMultiLayerTopicMap();
+        doReturn(brokerService).when(pulsar).getBrokerService();
+    }
+
+    // Stub only mocks do not record the invocations, which would dominate the measure
+    private static Topic newTopic(String name) {
+        ManagedLedgerMBeanImpl mlStats = mock(ManagedLedgerMBeanImpl.class, withSettings().stubOnly());
+        doReturn(new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_LATENCY_BUCKETS_USEC)).when(mlStats)
+                .getInternalAddEntryLatencyBuckets();
+        doReturn(new StatsBuckets(ManagedLedgerMBeanImpl.ENTRY_SIZE_BUCKETS_BYTES)).when(mlStats)
+                .getInternalEntrySizeBuckets();
+        ManagedLedger ledger = mock(ManagedLedger.class, withSettings().stubOnly());
+        doReturn(mlStats).when(ledger).getStats();
+
+        Producer producer = mock(Producer.class, withSettings().stubOnly());
+        doReturn(new PublisherStats()).when(producer).getStats();
+        ConcurrentOpenHashSet<Producer> producers = new ConcurrentOpenHashSet<>();
+        producers.add(producer);
+
+        Consumer consumer = mock(Consumer.class, withSettings().stubOnly());
+        doReturn(new ConsumerStats()).when(consumer).getStats();
+        CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<>();
+        consumers.add(consumer);
+        PersistentSubscription subscription = mock(PersistentSubscription.class, withSettings().stubOnly());
+        doReturn(consumers).when(subscription).getConsumers();
+        ConcurrentOpenHashMap<String, PersistentSubscription> subscriptions = new ConcurrentOpenHashMap<>();
+        subscriptions.put("sub", subscription);
+
+        PersistentTopic topic = mock(PersistentTopic.class, withSettings().stubOnly());
+        doReturn(name).when(topic).getName();
+        doReturn(ledger).when(topic).getManagedLedger();
+        doReturn(producers).when(topic).getProducers();
+        doReturn(subscriptions).when(topic).getSubscriptions();
+        doReturn(new ConcurrentOpenHashMap<>()).when(topic).getReplicators();
+        return topic;
+    }
+
+    @Benchmark
+    public int generate() {
+        ByteBuf buf = PrometheusMetricsGenerator.generate(pulsar, includeTopicMetrics, false);
+        try {
+            return buf.readableBytes();
+        } finally {
+            buf.release();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(PrometheusMetricsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
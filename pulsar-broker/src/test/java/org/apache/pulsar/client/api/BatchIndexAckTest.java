@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BatchIndexAckTest extends ProducerConsumerBase {
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @Test
+    public void testAckedMessagesOfBatchAreNotRedelivered() throws Exception {
+        final String topic = "persistent://my-property/my-ns/batch-index-ack";
+        final int numMessages = 10;
+
+        Consumer<String> consumer1 = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared)
+                .enableBatchIndexAcknowledgment(true).subscribe();
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING).topic(topic)
+                .enableBatching(true).batchingMaxPublishDelay(1, TimeUnit.SECONDS)
+                .batchingMaxMessages(numMessages).create();
+
+        for (int i = 0; i < numMessages; i++) {
+            producer.sendAsync("msg-" + i);
+        }
+        producer.flush();
+
+        // Acknowledge the first half of the batch only
+        for (int i = 0; i < numMessages; i++) {
+            Message<String> msg = consumer1.receive(5, TimeUnit.SECONDS);
+            assertNotNull(msg);
+            if (i < numMessages / 2) {
+                consumer1.acknowledge(msg);
+            }
+        }
+
+        Consumer<String> consumer2 = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared)
+                .enableBatchIndexAcknowledgment(true).subscribe();
+        consumer1.close();
+
+        // The batch is redelivered without the acknowledged messages
+        List<String> received = new ArrayList<>();
+        for (int i = numMessages / 2; i < numMessages; i++) {
+            Message<String> msg = consumer2.receive(5, TimeUnit.SECONDS);
+            assertNotNull(msg);
+            received.add(msg.getValue());
+            consumer2.acknowledge(msg);
+        }
+        for (int i = 0; i < received.size(); i++) {
+            assertEquals(received.get(i), "msg-" + (numMessages / 2 + i));
+        }
+        assertNull(consumer2.receive(500, TimeUnit.MILLISECONDS));
+
+        producer.close();
+        consumer2.close();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pulsar.client.impl.ConsumerImpl;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ConsumerBytePermitsTest extends ProducerConsumerBase {
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @DataProvider(name = "subscriptionTypes")
+    public Object[][] subscriptionTypes() {
+        return new Object[][] { { SubscriptionType.Exclusive }, { SubscriptionType.Shared },
+                { SubscriptionType.Key_Shared } };
+    }
+
+    @Test(dataProvider = "subscriptionTypes")
+    public void testReceiverQueueBoundedInBytes(SubscriptionType subscriptionType) throws Exception {
+        final String topic = "persistent://my-property/my-ns/byte-permits-" + subscriptionType;
+        final int numMessages = 50;
+        final int messageSize = 10 * 1024;
+        final int receiverQueueSizeBytes = 5 * messageSize;
+
+        Consumer<byte[]> consumer = pulsarClient.newConsumer().topic(topic).subscriptionName("my-sub")
+                .subscriptionType(subscriptionType).receiverQueueSize(1000)
+                .receiverQueueSizeBytes(receiverQueueSizeBytes).subscribe();
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topic).enableBatching(false).create();
+
+        for (int i = 0; i < numMessages; i++) {
+            producer.send(new byte[messageSize]);
+        }
+
+        // The broker stops dispatching once the byte permits are exhausted, well before the message permits are
+        Thread.sleep(1000);
+        int queued = ((ConsumerImpl<byte[]>) consumer).numMessagesInQueue();
+        assertTrue(queued > 0 && queued <= receiverQueueSizeBytes / messageSize + 1, "queued: " + queued);
+
+        // Byte permits are granted back as the messages are consumed
+        for (int i = 0; i < numMessages; i++) {
+            Message<byte[]> msg = consumer.receive(5, TimeUnit.SECONDS);
+            assertNotNull(msg);
+            assertEquals(msg.getData().length, messageSize);
+            consumer.acknowledge(msg);
+        }
+        assertNull(consumer.receive(500, TimeUnit.MILLISECONDS));
+
+        producer.close();
+        consumer.close();
+    }
+
+    @Test
+    public void testKeySharedOverflowKeepsKeyOrder() throws Exception {
+        final String topic = "persistent://my-property/my-ns/byte-permits-key-shared-order";
+        final int numMessages = 40;
+        final int messageSize = 10 * 1024;
+
+        List<Consumer<byte[]>> consumers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            consumers.add(pulsarClient.newConsumer().topic(topic).subscriptionName("my-sub")
+                    .subscriptionType(SubscriptionType.Key_Shared).receiverQueueSize(1000)
+                    .receiverQueueSizeBytes(3 * messageSize).subscribe());
+        }
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topic).enableBatching(false).create();
+
+        for (int i = 0; i < numMessages; i++) {
+            byte[] payload = new byte[messageSize];
+            payload[0] = (byte) i;
+            producer.newMessage().key("key-" + (i % 4)).value(payload).send();
+        }
+
+        // The entries beyond the byte permits are replayed later, without any newer message of the same key being
+        // delivered before them
+        Map<String, Integer> lastIndexByKey = new HashMap<>();
+        int received = 0;
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (received < numMessages && System.currentTimeMillis() < deadline) {
+            for (Consumer<byte[]> consumer : consumers) {
+                Message<byte[]> msg = consumer.receive(100, TimeUnit.MILLISECONDS);
+                if (msg == null) {
+                    continue;
+                }
+                Integer lastIndex = lastIndexByKey.put(msg.getKey(), (int) msg.getData()[0]);
+                assertTrue(lastIndex == null || lastIndex < msg.getData()[0],
+                        msg.getKey() + ": " + lastIndex + " then " + msg.getData()[0]);
+                consumer.acknowledge(msg);
+                ++received;
+            }
+        }
+        assertEquals(received, numMessages);
+
+        producer.close();
+        for (Consumer<byte[]> consumer : consumers) {
+            consumer.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pulsar.common.policies.data.TopicStats;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class DelayedDeliveryTest extends ProducerConsumerBase {
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        conf.setDelayedDeliveryTickTimeMillis(100);
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @DataProvider(name = "batching")
+    public Object[][] batchingProvider() {
+        return new Object[][] { { false }, { true } };
+    }
+
+    @Test(dataProvider = "batching")
+    public void testDelayedDelivery(boolean batching) throws Exception {
+        final String topic = "persistent://my-property/my-ns/delayed-delivery-" + batching;
+
+        Consumer<String> failoverConsumer = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("failover-sub").subscriptionType(SubscriptionType.Failover).subscribe();
+        Consumer<String> sharedConsumer = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared).subscribe();
+
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING).topic(topic)
+                .enableBatching(batching).create();
+
+        final int numMessages = 10;
+        for (int i = 0; i < numMessages; i++) {
+            producer.newMessage().value("delayed-" + i).deliverAfter(3, TimeUnit.SECONDS).sendAsync();
+        }
+        producer.newMessage().value("not-delayed").send();
+
+        // The failover subscription gets all the messages right away
+        Set<String> received = new HashSet<>();
+        for (int i = 0; i < numMessages + 1; i++) {
+            Message<String> msg = failoverConsumer.receive(5, TimeUnit.SECONDS);
+            received.add(msg.getValue());
+        }
+        assertEquals(received.size(), numMessages + 1);
+
+        // The shared subscription only gets the message that is not delayed
+        Message<String> msg = sharedConsumer.receive(5, TimeUnit.SECONDS);
+        assertEquals(msg.getValue(), "not-delayed");
+        sharedConsumer.acknowledge(msg);
+        assertNull(sharedConsumer.receive(100, TimeUnit.MILLISECONDS));
+
+        TopicStats stats = admin.topics().getStats(topic);
+        assertEquals(stats.subscriptions.get("shared-sub").msgDelayed, numMessages);
+        assertEquals(stats.subscriptions.get("failover-sub").msgDelayed, 0);
+
+        received.clear();
+        for (int i = 0; i < numMessages; i++) {
+            msg = sharedConsumer.receive(10, TimeUnit.SECONDS);
+            assertTrue(msg.getValue().startsWith("delayed-"));
+            received.add(msg.getValue());
+            sharedConsumer.acknowledge(msg);
+        }
+        assertEquals(received.size(), numMessages);
+        assertEquals(admin.topics().getStats(topic).subscriptions.get("shared-sub").msgDelayed, 0);
+
+        producer.close();
+        failoverConsumer.close();
+        sharedConsumer.close();
+    }
+
+    @Test
+    public void testDelayedMessagesAreRedeliveredAfterConsumerRestart() throws Exception {
+        final String topic = "persistent://my-property/my-ns/delayed-delivery-restart";
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared).subscribe();
+
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING).topic(topic).create();
+        producer.newMessage().value("delayed").deliverAfter(2, TimeUnit.SECONDS).send();
+        assertNull(consumer.receive(100, TimeUnit.MILLISECONDS));
+
+        // The delayed message is read again when the subscription is resumed
+        consumer.close();
+        consumer = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared).subscribe();
+
+        Message<String> msg = consumer.receive(10, TimeUnit.SECONDS);
+        assertEquals(msg.getValue(), "delayed");
+        consumer.acknowledge(msg);
+        assertNull(consumer.receive(100, TimeUnit.MILLISECONDS));
+
+        producer.close();
+        consumer.close();
+    }
+}
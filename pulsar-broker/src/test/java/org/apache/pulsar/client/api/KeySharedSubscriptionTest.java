@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class KeySharedSubscriptionTest extends ProducerConsumerBase {
+
+    private static final int NUMBER_OF_KEYS = 20;
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @DataProvider(name = "batching")
+    public Object[][] batchingProvider() {
+        return new Object[][] { { false }, { true } };
+    }
+
+    @Test(dataProvider = "batching")
+    public void testMessagesOfSameKeyGoToSameConsumer(boolean batching) throws Exception {
+        final String topic = "persistent://my-property/my-ns/key-shared-" + batching;
+        List<Consumer<String>> consumers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            consumers.add(createConsumer(topic));
+        }
+
+        Producer<String> producer = createProducer(topic, batching);
+        final int numMessages = 1000;
+        final int messagesPerBatch = 10;
+        for (int i = 0; i < numMessages; i++) {
+            // Only batch messages with the same key, so that the batches can be dispatched by key
+            producer.newMessage().key(String.valueOf((i / messagesPerBatch) % NUMBER_OF_KEYS))
+                    .value(String.valueOf(i)).sendAsync();
+            if ((i + 1) % messagesPerBatch == 0) {
+                producer.flush();
+            }
+        }
+
+        Map<String, Consumer<String>> keyOwners = new HashMap<>();
+        Map<String, Integer> lastValues = new HashMap<>();
+        int received = receiveAndCheckOrdering(consumers, keyOwners, lastValues);
+        assertEquals(received, numMessages);
+        assertEquals(keyOwners.size(), NUMBER_OF_KEYS);
+        assertTrue(keyOwners.values().stream().distinct().count() > 1);
+
+        producer.close();
+        for (Consumer<String> consumer : consumers) {
+            consumer.close();
+        }
+    }
+
+    @Test
+    public void testKeysAreReassignedWhenConsumerLeaves() throws Exception {
+        final String topic = "persistent://my-property/my-ns/key-shared-consumer-leaves";
+        Consumer<String> consumer1 = createConsumer(topic);
+        Consumer<String> consumer2 = createConsumer(topic);
+
+        Producer<String> producer = createProducer(topic, false);
+        for (int i = 0; i < 100; i++) {
+            producer.newMessage().key(String.valueOf(i % NUMBER_OF_KEYS)).value(String.valueOf(i)).send();
+        }
+
+        // Close a consumer without acknowledging its messages, they must be delivered to the remaining consumer
+        consumer2.close();
+        for (int i = 100; i < 200; i++) {
+            producer.newMessage().key(String.valueOf(i % NUMBER_OF_KEYS)).value(String.valueOf(i)).send();
+        }
+
+        Map<String, Integer> lastValues = new HashMap<>();
+        int received = 0;
+        while (true) {
+            Message<String> message = consumer1.receive(1, TimeUnit.SECONDS);
+            if (message == null) {
+                break;
+            }
+
+            Integer lastValue = lastValues.put(message.getKey(), Integer.parseInt(message.getValue()));
+            if (lastValue != null) {
+                assertTrue(Integer.parseInt(message.getValue()) > lastValue);
+            }
+            consumer1.acknowledge(message);
+            ++received;
+        }
+        assertTrue(received >= 200);
+        assertEquals(lastValues.size(), NUMBER_OF_KEYS);
+
+        producer.close();
+        consumer1.close();
+    }
+
+    @Test
+    public void testConsumerJoiningDoesNotReorderKeys() throws Exception {
+        final String topic = "persistent://my-property/my-ns/key-shared-consumer-joins";
+        List<Consumer<String>> consumers = new ArrayList<>();
+        consumers.add(createConsumer(topic));
+
+        Producer<String> producer = createProducer(topic, false);
+        for (int i = 0; i < 100; i++) {
+            producer.newMessage().key(String.valueOf(i % NUMBER_OF_KEYS)).value(String.valueOf(i)).send();
+        }
+
+        Map<String, Consumer<String>> keyOwners = new HashMap<>();
+        Map<String, Integer> lastValues = new HashMap<>();
+        List<Message<String>> pendingMessages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Message<String> message = consumers.get(0).receive(1, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertEquals(Integer.parseInt(message.getValue()), i);
+            lastValues.put(message.getKey(), Integer.parseInt(message.getValue()));
+            pendingMessages.add(message);
+        }
+
+        // The new consumer takes over keys whose messages are still pending on the first consumer
+        consumers.add(createConsumer(topic));
+        for (int i = 100; i < 200; i++) {
+            producer.newMessage().key(String.valueOf(i % NUMBER_OF_KEYS)).value(String.valueOf(i)).send();
+        }
+
+        // The new consumer cannot receive anything until the first consumer acknowledges its messages
+        assertNull(consumers.get(1).receive(500, TimeUnit.MILLISECONDS));
+        for (Message<String> message : pendingMessages) {
+            consumers.get(0).acknowledge(message);
+        }
+        int received = pendingMessages.size();
+
+        // Once the messages read before it joined are acknowledged, the new consumer gets its share of the keys
+        received += receiveAndCheckOrdering(consumers, keyOwners, lastValues);
+        assertEquals(received, 200);
+        assertTrue(keyOwners.values().contains(consumers.get(1)));
+
+        producer.close();
+        for (Consumer<String> consumer : consumers) {
+            consumer.close();
+        }
+    }
+
+    private Consumer<String> createConsumer(String topic) throws PulsarClientException {
+        return pulsarClient.newConsumer(Schema.STRING)
+                .topic(topic)
+                .subscriptionName("key-shared")
+                .subscriptionType(SubscriptionType.Key_Shared)
+                .subscribe();
+    }
+
+    private Producer<String> createProducer(String topic, boolean batching) throws PulsarClientException {
+        return pulsarClient.newProducer(Schema.STRING)
+                .topic(topic)
+                .enableBatching(batching)
+                .batchingMaxPublishDelay(1, TimeUnit.MINUTES)
+                .create();
+    }
+
+    /**
+     * Receive the messages from all the consumers until there is nothing left, checking that each key is received by a
+     * single consumer and in order.
+     */
+    private int receiveAndCheckOrdering(List<Consumer<String>> consumers, Map<String, Consumer<String>> keyOwners,
+            Map<String, Integer> lastValues) throws PulsarClientException {
+        int received = 0;
+        boolean receivedAny = true;
+        while (receivedAny) {
+            receivedAny = false;
+            for (Consumer<String> consumer : consumers) {
+                Message<String> message;
+                while ((message = consumer.receive(100, TimeUnit.MILLISECONDS)) != null) {
+                    receivedAny = true;
+                    String key = message.getKey();
+                    Consumer<String> owner = keyOwners.putIfAbsent(key, consumer);
+                    if (owner != null && owner != consumer) {
+                        throw new AssertionError("Key " + key + " was received by more than one consumer");
+                    }
+
+                    Integer lastValue = lastValues.put(key, Integer.parseInt(message.getValue()));
+                    if (lastValue != null) {
+                        assertTrue(Integer.parseInt(message.getValue()) > lastValue,
+                                "Key " + key + " received " + message.getValue() + " after " + lastValue);
+                    }
+                    consumer.acknowledge(message);
+                    ++received;
+                }
+            }
+        }
+        return received;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import com.google.common.collect.Sets;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pulsar.common.policies.data.PublishRate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MessagePublishThrottlingTest extends ProducerConsumerBase {
+    private static final Logger log = LoggerFactory.getLogger(MessagePublishThrottlingTest.class);
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+        super.resetConfig();
+    }
+
+    /**
+     * verifies: a producer publishing faster than the namespace publish-rate is slowed down to the rate, without any
+     * of its messages being rejected
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNamespacePublishRate() throws Exception {
+        log.info("-- Starting {} test --", methodName);
+
+        final String namespace = "my-property/throttling_publish";
+        final String topicName = "persistent://" + namespace + "/throttlingPublish";
+        final int messageRate = 10;
+        final int numMessages = 3 * messageRate;
+
+        admin.namespaces().createNamespace(namespace, Sets.newHashSet("test"));
+        PublishRate publishRate = new PublishRate(messageRate, -1);
+        admin.namespaces().setPublishRate(namespace, publishRate);
+        Assert.assertEquals(admin.namespaces().getPublishRate(namespace), publishRate);
+
+        Consumer<byte[]> consumer = pulsarClient.newConsumer().topic(topicName).subscriptionName("my-subscriber-name")
+                .subscribe();
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topicName).enableBatching(false).create();
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < numMessages; i++) {
+            producer.send(("my-message-" + i).getBytes());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        // the producer has been paused at least until the rate was reset twice, one second apart
+        Assert.assertTrue(elapsedMillis >= 1000, "elapsed: " + elapsedMillis);
+
+        for (int i = 0; i < numMessages; i++) {
+            Message<byte[]> msg = consumer.receive(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(msg);
+            Assert.assertEquals(new String(msg.getData()), "my-message-" + i);
+        }
+
+        producer.close();
+        consumer.close();
+        log.info("-- Exiting {} test --", methodName);
+    }
+
+    /**
+     * verifies: the broker default publish-rate applies to the topics of the namespaces without publish-rate
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBrokerDefaultPublishRate() throws Exception {
+        log.info("-- Starting {} test --", methodName);
+
+        final String topicName = "persistent://my-property/my-ns/throttlingBrokerPublish";
+        final int messageRate = 10;
+        final int numMessages = 3 * messageRate;
+
+        cleanup();
+        conf.setMaxPublishRatePerTopicInMessages(messageRate);
+        setup();
+
+        Producer<byte[]> producer = pulsarClient.newProducer().topic(topicName).enableBatching(false).create();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < numMessages; i++) {
+            producer.send(("my-message-" + i).getBytes());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        Assert.assertTrue(elapsedMillis >= 1000, "elapsed: " + elapsedMillis);
+
+        producer.close();
+        log.info("-- Exiting {} test --", methodName);
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.client.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class NegativeAcksTest extends ProducerConsumerBase {
+
+    private static final long REDELIVERY_DELAY_MS = 500;
+
+    @BeforeMethod
+    @Override
+    protected void setup() throws Exception {
+        conf.setNegativeAckRedeliveryDelayMs(REDELIVERY_DELAY_MS);
+        conf.setNegativeAckMaxRedeliveryDelayMs(4 * REDELIVERY_DELAY_MS);
+        super.internalSetup();
+        super.producerBaseSetup();
+    }
+
+    @AfterMethod
+    @Override
+    protected void cleanup() throws Exception {
+        super.internalCleanup();
+    }
+
+    @Test
+    public void testNegativeAcksWithBackoff() throws Exception {
+        final String topic = "persistent://my-property/my-ns/negative-acks";
+
+        Consumer<String> consumer = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared).subscribe();
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING).topic(topic).create();
+
+        producer.send("poison");
+        producer.send("good");
+
+        Message<String> msg = consumer.receive(5, TimeUnit.SECONDS);
+        assertEquals(msg.getValue(), "poison");
+        consumer.negativeAcknowledge(msg);
+
+        // The other messages keep flowing while the rejected one is held back
+        msg = consumer.receive(5, TimeUnit.SECONDS);
+        assertEquals(msg.getValue(), "good");
+        consumer.acknowledge(msg);
+
+        // Each redelivery waits longer than the previous one
+        long previousDelayMs = 0;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            msg = consumer.receive(10, TimeUnit.SECONDS);
+            long delayMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertNotNull(msg);
+            assertEquals(msg.getValue(), "poison");
+            assertTrue(delayMs >= previousDelayMs, "redelivered after " + delayMs + " ms");
+            previousDelayMs = delayMs;
+            consumer.negativeAcknowledge(msg);
+        }
+        assertTrue(previousDelayMs >= 2 * REDELIVERY_DELAY_MS, "redelivered after " + previousDelayMs + " ms");
+
+        msg = consumer.receive(10, TimeUnit.SECONDS);
+        assertEquals(msg.getValue(), "poison");
+        consumer.acknowledge(msg);
+        assertNull(consumer.receive(REDELIVERY_DELAY_MS * 2, TimeUnit.MILLISECONDS));
+
+        producer.close();
+        consumer.close();
+    }
+
+    @Test
+    public void testNegativeAckedMessagesGoToOtherConsumerOnClose() throws Exception {
+        final String topic = "persistent://my-property/my-ns/negative-acks-close";
+
+        Consumer<String> consumer1 = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared).subscribe();
+        Producer<String> producer = pulsarClient.newProducer(Schema.STRING).topic(topic).create();
+        producer.send("rejected");
+
+        Message<String> msg = consumer1.receive(5, TimeUnit.SECONDS);
+        consumer1.negativeAcknowledge(msg);
+
+        Consumer<String> consumer2 = pulsarClient.newConsumer(Schema.STRING).topic(topic)
+                .subscriptionName("shared-sub").subscriptionType(SubscriptionType.Shared).subscribe();
+        consumer1.close();
+
+        // The message is handed over when the consumer goes away and is not delivered twice when the backoff expires
+        msg = consumer2.receive(5, TimeUnit.SECONDS);
+        assertEquals(msg.getValue(), "rejected");
+        consumer2.acknowledge(msg);
+        assertNull(consumer2.receive(REDELIVERY_DELAY_MS * 2, TimeUnit.MILLISECONDS));
+
+        producer.close();
+        consumer2.close();
+    }
+}
@@ -33,6 +33,7 @@ import org.apache.pulsar.common.policies.data.BundlesData;
 import org.apache.pulsar.common.policies.data.DispatchRate;
 import org.apache.pulsar.common.policies.data.PersistencePolicies;
 import org.apache.pulsar.common.policies.data.Policies;
+import org.apache.pulsar.common.policies.data.PublishRate;
 import org.apache.pulsar.common.policies.data.RetentionPolicies;
 import org.apache.pulsar.common.policies.data.SchemaAutoUpdateCompatibilityStrategy;
 import org.apache.pulsar.common.policies.data.SubscriptionAuthMode;
@@ -851,6 +852,28 @@ public interface Namespaces {
      */
     void splitNamespaceBundle(String namespace, String bundle, boolean unloadSplitBundles) throws PulsarAdminException;
 
+    /**
+     * Set message-publish-rate (topics under this namespace can publish this many messages per second)
+     *
+     * @param namespace
+     * @param publishMsgRate
+     *            number of messages and bytes per second that each topic of the namespace can publish
+     * @throws PulsarAdminException
+     *             Unexpected error
+     */
+    void setPublishRate(String namespace, PublishRate publishMsgRate) throws PulsarAdminException;
+
+    /**
+     * Get message-publish-rate (topics under this namespace can publish this many messages per second)
+     *
+     * @param namespace
+     * @returns publishRate
+     *            number of messages and bytes per second that each topic of the namespace can publish
+     * @throws PulsarAdminException
+     *             Unexpected error
+     */
+    PublishRate getPublishRate(String namespace) throws PulsarAdminException;
+
     /**
      * Set message-dispatch-rate (topics under this namespace can dispatch this many messages per second)
      *
@@ -120,6 +120,36 @@ public interface Consumer<T> extends Closeable {
      */
     void acknowledge(MessageId messageId) throws PulsarClientException;
 
+    /**
+     * Acknowledge the failure to process a single message.
+     * <p>
+     * The message will be redelivered by the broker after a backoff delay, which grows with the number of times the
+     * message was already redelivered. This avoids re-processing a message that can't be handled in a tight loop.
+     * <p>
+     * This call is not blocking. Negative acknowledgements are only honored individually in Shared and Key_Shared
+     * subscriptions: in other subscription types, all the unacknowledged messages are redelivered.
+     * <p>
+     * The default implementation redelivers all the unacknowledged messages, for the implementations that don't
+     * support individual negative acknowledgements.
+     *
+     * @param message
+     *            The {@code Message} to be negatively acknowledged
+     */
+    default void negativeAcknowledge(Message<?> message) {
+        negativeAcknowledge(message.getMessageId());
+    }
+
+    /**
+     * Acknowledge the failure to process a single message, identified by its MessageId.
+     *
+     * @param messageId
+     *            The {@code MessageId} to be negatively acknowledged
+     * @see #negativeAcknowledge(Message)
+     */
+    default void negativeAcknowledge(MessageId messageId) {
+        redeliverUnacknowledgedMessages();
+    }
+
     /**
      * Acknowledge the reception of all the messages in the stream up to (and including) the provided message.
      *
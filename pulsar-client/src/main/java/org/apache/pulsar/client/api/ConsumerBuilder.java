@@ -219,6 +219,22 @@ public interface ConsumerBuilder<T> extends Cloneable {
      */
     ConsumerBuilder<T> receiverQueueSize(int receiverQueueSize);
 
+    /**
+     * Sets the max size in bytes of the consumer receive queue, in addition to its size in messages.
+     * <p>
+     * The broker stops pushing messages to the consumer once the queue holds either {@link #receiverQueueSize(int)}
+     * messages or this number of bytes, so that the memory used by the queue stays bounded when message sizes vary
+     * widely. A single message bigger than this size is still delivered. The size of a message is its size on the
+     * wire, shared evenly between the messages of a batch.
+     * </p>
+     * Default value is {@code 0}, which only bounds the queue in number of messages. It has no effect when the
+     * receiver queue size is zero or when the broker doesn't support byte flow control.
+     *
+     * @param receiverQueueSizeBytes
+     *            the max size in bytes of the receiver queue
+     */
+    ConsumerBuilder<T> receiverQueueSizeBytes(long receiverQueueSizeBytes);
+
     /**
      * Group the consumer acknowledgments for the specified time.
      * <p>
@@ -367,4 +383,19 @@ public interface ConsumerBuilder<T> extends Cloneable {
      * </pre>
      */
     ConsumerBuilder<T> deadLetterPolicy(DeadLetterPolicy deadLetterPolicy);
+
+    /**
+     * Enable the individual acknowledgment of the messages of a batch (default: disabled).
+     *
+     * <p>By default, the broker only tracks the acknowledgment of whole batches: if a batch is redelivered after some
+     * of its messages were acknowledged, all of them are delivered again. When enabled, the acknowledgment of each
+     * message of a batch is sent to the broker and the already acknowledged messages are not dispatched again.
+     *
+     * <p>This requires a broker that supports batch index acknowledgment and only applies to {@link SubscriptionType#Shared}
+     * subscriptions.
+     *
+     * @param batchIndexAcknowledgmentEnabled
+     *            whether to acknowledge the single messages of a batch
+     */
+    ConsumerBuilder<T> enableBatchIndexAcknowledgment(boolean batchIndexAcknowledgmentEnabled);
 }
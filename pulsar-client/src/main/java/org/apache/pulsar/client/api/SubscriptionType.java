@@ -39,5 +39,16 @@ public enum SubscriptionType {
      * Multiple consumer will be able to use the same subscription name but only 1 consumer will receive the messages.
      * If that consumer disconnects, one of the other connected consumers will start receiving messages.
      */
-    Failover
+    Failover,
+
+    /**
+     * Multiple consumer will be able to use the same subscription name and the messages will be dispatched according to
+     * the message key. All the messages with the same key are delivered, in order, to the same consumer. The key range
+     * of each consumer is rebalanced when consumers join or leave the subscription.
+     *
+     * <p>Messages without a key, and batches mixing messages with different keys, are dispatched as if they all had
+     * the same empty key. To preserve the ordering of each key, producers should either disable batching or only batch
+     * messages with the same key.
+     */
+    Key_Shared
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Message builder that constructs a message to be published through a producer.
@@ -160,4 +161,32 @@ public interface TypedMessageBuilder<T> extends Serializable {
      * Disable replication for this message.
      */
     TypedMessageBuilder<T> disableReplication();
+
+    /**
+     * Request to deliver the message only after the specified relative delay.
+     * <p>
+     * Note: messages are only delivered with delay when a consumer is consuming through a
+     * {@link SubscriptionType#Shared} subscription. With other subscription types, the messages will still be delivered
+     * immediately.
+     *
+     * @param delay
+     *            the amount of delay before the message will be delivered
+     * @param unit
+     *            the time unit for the delay
+     */
+    TypedMessageBuilder<T> deliverAfter(long delay, TimeUnit unit);
+
+    /**
+     * Deliver the message only at or after the specified absolute timestamp.
+     * <p>
+     * The timestamp is milliseconds and based on UTC (eg: {@link System#currentTimeMillis()}.
+     * <p>
+     * Note: messages are only delivered with delay when a consumer is consuming through a
+     * {@link SubscriptionType#Shared} subscription. With other subscription types, the messages will still be delivered
+     * immediately.
+     *
+     * @param timestamp
+     *            absolute timestamp indicating when the message should be delivered to consumers
+     */
+    TypedMessageBuilder<T> deliverAt(long timestamp);
 }
@@ -102,12 +102,31 @@ class BatchMessageContainer {
 
         currentBatchSizeBytes += msg.getDataBuffer().readableBytes();
         PulsarApi.MessageMetadata.Builder msgBuilder = msg.getMessageBuilder();
+        updateBatchKey(msgBuilder);
         batchedMessageMetadataAndPayload = Commands.serializeSingleMessageInBatchWithPayload(msgBuilder,
                 msg.getDataBuffer(), batchedMessageMetadataAndPayload);
         messages.add(msg);
         msgBuilder.recycle();
     }
 
+    /**
+     * The batch carries the key of its messages only if they all have the same key, so that the broker can dispatch
+     * the batch by key without looking into it.
+     */
+    private void updateBatchKey(PulsarApi.MessageMetadata.Builder msgBuilder) {
+        if (numMessagesInBatch == 1) {
+            if (msgBuilder.hasPartitionKey()) {
+                messageMetadata.setPartitionKey(msgBuilder.getPartitionKey());
+                messageMetadata.setPartitionKeyB64Encoded(msgBuilder.getPartitionKeyB64Encoded());
+            }
+        } else if (messageMetadata.hasPartitionKey() && (!msgBuilder.hasPartitionKey()
+                || !messageMetadata.getPartitionKey().equals(msgBuilder.getPartitionKey())
+                || messageMetadata.getPartitionKeyB64Encoded() != msgBuilder.getPartitionKeyB64Encoded())) {
+            messageMetadata.clearPartitionKey();
+            messageMetadata.clearPartitionKeyB64Encoded();
+        }
+    }
+
     ByteBuf getCompressedBatchMetadataAndPayload() {
         int uncompressedSize = batchedMessageMetadataAndPayload.readableBytes();
         ByteBuf compressedPayload = compressor.encode(batchedMessageMetadataAndPayload);
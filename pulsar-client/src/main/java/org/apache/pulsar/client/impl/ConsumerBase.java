@@ -196,6 +196,14 @@ public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T
         }
     }
 
+    @Override
+    public void negativeAcknowledge(Message<?> message) {
+        negativeAcknowledge(message.getMessageId());
+    }
+
+    @Override
+    public abstract void negativeAcknowledge(MessageId messageId);
+
     @Override
     public void acknowledgeCumulative(Message<?> message) throws PulsarClientException {
         try {
@@ -299,7 +307,7 @@ public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T
     abstract public CompletableFuture<Void> closeAsync();
 
     private boolean isCumulativeAcknowledgementAllowed(SubscriptionType type) {
-        return SubscriptionType.Shared != type;
+        return SubscriptionType.Shared != type && SubscriptionType.Key_Shared != type;
     }
 
     protected SubType getSubType() {
@@ -313,6 +321,9 @@ public abstract class ConsumerBase<T> extends HandlerState implements Consumer<T
 
         case Failover:
             return SubType.Failover;
+
+        case Key_Shared:
+            return SubType.Key_Shared;
         }
 
         // Should not happen since we cover all cases above
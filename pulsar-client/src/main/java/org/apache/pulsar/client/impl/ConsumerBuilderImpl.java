@@ -194,6 +194,13 @@ public class ConsumerBuilderImpl<T> implements ConsumerBuilder<T> {
         return this;
     }
 
+    @Override
+    public ConsumerBuilder<T> receiverQueueSizeBytes(long receiverQueueSizeBytes) {
+        checkArgument(receiverQueueSizeBytes >= 0);
+        conf.setReceiverQueueSizeBytes(receiverQueueSizeBytes);
+        return this;
+    }
+
     @Override
     public ConsumerBuilder<T> acknowledgmentGroupTime(long delay, TimeUnit unit) {
         checkArgument(delay >= 0);
@@ -270,6 +277,12 @@ public class ConsumerBuilderImpl<T> implements ConsumerBuilder<T> {
         return this;
     }
 
+    @Override
+    public ConsumerBuilder<T> enableBatchIndexAcknowledgment(boolean batchIndexAcknowledgmentEnabled) {
+        conf.setBatchIndexAckEnabled(batchIndexAcknowledgmentEnabled);
+        return this;
+    }
+
     public ConsumerConfigurationData<T> getConf() {
         return conf;
     }
@@ -33,6 +33,7 @@ import io.netty.util.Timeout;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -101,6 +102,13 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             .newUpdater(ConsumerImpl.class, "availablePermits");
     @SuppressWarnings("unused")
     private volatile int availablePermits = 0;
+    // Size of the messages that have been delivered to the application, sent to the broker along with the message
+    // permits when the receiver queue is also bounded in bytes
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<ConsumerImpl> AVAILABLE_PERMITS_BYTES_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(ConsumerImpl.class, "availablePermitsBytes");
+    @SuppressWarnings("unused")
+    private volatile long availablePermitsBytes = 0;
 
     private MessageId lastDequeuedMessage = MessageId.earliest;
     private MessageId lastMessageIdInBroker = MessageId.earliest;
@@ -109,6 +117,9 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
     private final int partitionIndex;
 
     private final int receiverQueueRefillThreshold;
+    // 0 when the receiver queue is only bounded in number of messages
+    private final long receiverQueueSizeBytes;
+    private final long receiverQueueBytesRefillThreshold;
 
     private volatile boolean waitingOnReceiveForZeroQueueSize = false;
 
@@ -169,6 +180,8 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         this.subscribeTimeout = System.currentTimeMillis() + client.getConfiguration().getOperationTimeoutMs();
         this.partitionIndex = partitionIndex;
         this.receiverQueueRefillThreshold = conf.getReceiverQueueSize() / 2;
+        this.receiverQueueSizeBytes = conf.getReceiverQueueSize() > 0 ? conf.getReceiverQueueSizeBytes() : 0;
+        this.receiverQueueBytesRefillThreshold = receiverQueueSizeBytes / 2;
         this.priorityLevel = conf.getPriorityLevel();
         this.readCompacted = conf.isReadCompacted();
         this.subscriptionInitialPosition = conf.getSubscriptionInitialPosition();
@@ -462,6 +475,9 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                 }
             } else {
                 // other messages in batch are still pending ack.
+                if (ackType == AckType.Individual && conf.isBatchIndexAckEnabled()) {
+                    acknowledgmentsGroupingTracker.addBatchIndexAcknowledgment((BatchMessageIdImpl) messageId);
+                }
                 return CompletableFuture.completedFuture(null);
             }
         }
@@ -558,6 +574,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                             cnx.channel().remoteAddress(), consumerId);
 
                     AVAILABLE_PERMITS_UPDATER.set(this, 0);
+                    AVAILABLE_PERMITS_BYTES_UPDATER.set(this, 0);
                     // For zerosize queue : If the connection is reset and someone is waiting for the messages
                     // or queue was not empty: send a flow command
                     if (waitingOnReceiveForZeroQueueSize
@@ -580,7 +597,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             // if the consumer is not partitioned or is re-connected and is partitioned, we send the flow
             // command to receive messages
             if (!(firstTimeConnect && partitionIndex > -1) && conf.getReceiverQueueSize() != 0) {
-                sendFlowPermitsToBroker(cnx, conf.getReceiverQueueSize());
+                sendFlowPermitsToBroker(cnx, conf.getReceiverQueueSize(), getReceiverQueuePermitsBytes());
             }
         }).exceptionally((e) -> {
             cnx.removeConsumer(consumerId);
@@ -646,15 +663,41 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
      * send the flow command to have the broker start pushing messages
      */
     void sendFlowPermitsToBroker(ClientCnx cnx, int numMessages) {
+        sendFlowPermitsToBroker(cnx, numMessages, -1);
+    }
+
+    /**
+     * send the flow command to have the broker start pushing messages
+     *
+     * @param numBytes
+     *            byte permits to grant along with the message permits, or -1 to only grant message permits
+     */
+    void sendFlowPermitsToBroker(ClientCnx cnx, int numMessages, long numBytes) {
         if (cnx != null) {
+            if (numBytes >= 0 && !Commands.peerSupportsBytePermits(cnx.getRemoteEndpointProtocolVersion())) {
+                // The broker only understands message permits
+                numBytes = -1;
+            }
+            if (numMessages <= 0 && numBytes <= 0) {
+                return;
+            }
             if (log.isDebugEnabled()) {
-                log.debug("[{}] [{}] Adding {} additional permits", topic, subscription, numMessages);
+                log.debug("[{}] [{}] Adding {} additional permits and {} bytes", topic, subscription, numMessages,
+                        numBytes);
             }
 
-            cnx.ctx().writeAndFlush(Commands.newFlow(consumerId, numMessages), cnx.ctx().voidPromise());
+            cnx.ctx().writeAndFlush(Commands.newFlow(consumerId, numMessages, numBytes), cnx.ctx().voidPromise());
         }
     }
 
+    /**
+     * @return the byte permits matching a full receiver queue, or -1 when the receiver queue is only bounded in number
+     *         of messages
+     */
+    long getReceiverQueuePermitsBytes() {
+        return receiverQueueSizeBytes > 0 ? receiverQueueSizeBytes : -1;
+    }
+
     @Override
     public void connectionFailed(PulsarClientException exception) {
         if (System.currentTimeMillis() > subscribeTimeout && subscribeFuture.completeExceptionally(exception)) {
@@ -759,12 +802,16 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         });
     }
 
-    void messageReceived(MessageIdData messageId, int redeliveryCount, ByteBuf headersAndPayload, ClientCnx cnx) {
+    void messageReceived(MessageIdData messageId, int redeliveryCount, List<Long> ackSet, ByteBuf headersAndPayload,
+            ClientCnx cnx) {
         if (log.isDebugEnabled()) {
             log.debug("[{}][{}] Received message: {}/{}", topic, subscription, messageId.getLedgerId(),
                     messageId.getEntryId());
         }
 
+        // Size of the entry as dispatched by the broker, which is accounted against the byte permits
+        final int entrySize = headersAndPayload.readableBytes();
+
         MessageIdImpl msgId = new MessageIdImpl(messageId.getLedgerId(), messageId.getEntryId(), getPartitionIndex());
         if (acknowledgmentsGroupingTracker.isDuplicate(msgId)) {
             if (log.isDebugEnabled()) {
@@ -773,6 +820,8 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             }
             if (conf.getReceiverQueueSize() == 0) {
                 increaseAvailablePermits(cnx);
+            } else {
+                increaseAvailablePermits(cnx, 0, entrySize);
             }
             return;
         }
@@ -783,6 +832,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         if (!verifyChecksum(headersAndPayload, messageId)) {
             // discard message with checksum error
             discardCorruptedMessage(messageId, cnx, ValidationError.ChecksumMismatch);
+            increaseAvailablePermits(cnx, 0, entrySize);
             return;
         }
 
@@ -790,6 +840,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             msgMetadata = Commands.parseMessageMetadata(payload);
         } catch (Throwable t) {
             discardCorruptedMessage(messageId, cnx, ValidationError.ChecksumMismatch);
+            increaseAvailablePermits(cnx, 0, entrySize);
             return;
         }
 
@@ -799,6 +850,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
 
         if (decryptedPayload == null) {
             // Message was discarded or CryptoKeyReader isn't implemented
+            increaseAvailablePermits(cnx, 0, entrySize);
             return;
         }
 
@@ -808,6 +860,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         decryptedPayload.release();
         if (uncompressedPayload == null) {
             // Message was discarded on decompression error
+            increaseAvailablePermits(cnx, 0, entrySize);
             return;
         }
 
@@ -819,6 +872,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             final MessageImpl<T> message = new MessageImpl<>(topicName.toString(), msgId,
                                                              msgMetadata, uncompressedPayload,
                                                              createEncryptionContext(msgMetadata), cnx, schema);
+            message.setWireSize(entrySize);
             uncompressedPayload.release();
             msgMetadata.recycle();
 
@@ -857,7 +911,8 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                 });
             } else {
                 // handle batch message enqueuing; uncompressed payload has all messages in batch
-                receiveIndividualMessagesFromBatch(msgMetadata, redeliveryCount, uncompressedPayload, messageId, cnx);
+                receiveIndividualMessagesFromBatch(msgMetadata, redeliveryCount, ackSet, uncompressedPayload,
+                        entrySize, messageId, cnx);
             }
             uncompressedPayload.release();
             msgMetadata.recycle();
@@ -947,9 +1002,23 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         });
     }
 
-    void receiveIndividualMessagesFromBatch(MessageMetadata msgMetadata, int redeliveryCount, ByteBuf uncompressedPayload,
-            MessageIdData messageId, ClientCnx cnx) {
+    void receiveIndividualMessagesFromBatch(MessageMetadata msgMetadata, int redeliveryCount, List<Long> ackSet,
+            ByteBuf uncompressedPayload, int entrySize, MessageIdData messageId, ClientCnx cnx) {
         int batchSize = msgMetadata.getNumMessagesInBatch();
+        // the size of the entry is shared between its messages, the first one taking the remainder
+        int messageWireSize = entrySize / batchSize;
+        long unassignedWireSize = entrySize;
+        long skippedWireSize = 0;
+
+        // messages of the batch that were already acknowledged on their own
+        BitSet ackedBatchIndexes = null;
+        if (!ackSet.isEmpty()) {
+            long[] words = new long[ackSet.size()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = ackSet.get(i);
+            }
+            ackedBatchIndexes = BitSet.valueOf(words);
+        }
 
         // create ack tracker for entry aka batch
         MessageIdImpl batchMessage = new MessageIdImpl(messageId.getLedgerId(), messageId.getEntryId(),
@@ -970,6 +1039,8 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                         .newBuilder();
                 ByteBuf singleMessagePayload = Commands.deSerializeSingleMessageInBatch(uncompressedPayload,
                         singleMessageMetadataBuilder, i, batchSize);
+                int wireSize = i == 0 ? entrySize - messageWireSize * (batchSize - 1) : messageWireSize;
+                unassignedWireSize -= wireSize;
 
                 if (subscriptionMode == SubscriptionMode.NonDurable && startMessageId != null
                         && messageId.getLedgerId() == startMessageId.getLedgerId()
@@ -983,6 +1054,21 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                     }
 
                     ++skippedMessages;
+                    skippedWireSize += wireSize;
+                    continue;
+                }
+                if (ackedBatchIndexes != null && ackedBatchIndexes.get(i)) {
+                    // message was already acknowledged before the batch got redelivered
+                    if (log.isDebugEnabled()) {
+                        log.debug("[{}] [{}] Ignoring already acknowledged message {} in batch", subscription,
+                                consumerName, i);
+                    }
+                    singleMessagePayload.release();
+                    singleMessageMetadataBuilder.recycle();
+                    acker.ackIndividual(i);
+
+                    ++skippedMessages;
+                    skippedWireSize += wireSize;
                     continue;
                 }
                 if (singleMessageMetadataBuilder.getCompactedOut()) {
@@ -991,6 +1077,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                     singleMessageMetadataBuilder.recycle();
 
                     ++skippedMessages;
+                    skippedWireSize += wireSize;
                     continue;
                 }
 
@@ -999,6 +1086,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                 final MessageImpl<T> message = new MessageImpl<>(topicName.toString(), batchMessageIdImpl,
                         msgMetadata, singleMessageMetadataBuilder.build(), singleMessagePayload,
                         createEncryptionContext(msgMetadata), cnx, schema);
+                message.setWireSize(wireSize);
                 if (possibleToDeadLetter != null) {
                     possibleToDeadLetter.add(message);
                 }
@@ -1018,18 +1106,27 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         } catch (IOException e) {
             log.warn("[{}] [{}] unable to obtain message in batch", subscription, consumerName);
             discardCorruptedMessage(messageId, cnx, ValidationError.BatchDeSerializeError);
+            // the messages that could not be deserialized won't be processed
+            skippedWireSize += unassignedWireSize;
         }
         if (possibleToDeadLetter != null && possibleSendToDeadLetterTopicMessages != null) {
             possibleSendToDeadLetterTopicMessages.put(batchMessage, possibleToDeadLetter);
         }
 
+        if (ackedBatchIndexes != null && acker.getOutstandingAcks() == 0) {
+            // all the messages of the batch were already acknowledged, only the batch itself is left to ack
+            unAckedMessageTracker.remove(batchMessage);
+            acknowledgmentsGroupingTracker.addAcknowledgment(batchMessage, AckType.Individual,
+                    Collections.emptyMap());
+        }
+
         if (log.isDebugEnabled()) {
             log.debug("[{}] [{}] enqueued messages in batch. queue size - {}, available queue size - {}", subscription,
                     consumerName, incomingMessages.size(), incomingMessages.remainingCapacity());
         }
 
-        if (skippedMessages > 0) {
-            increaseAvailablePermits(cnx, skippedMessages);
+        if (skippedMessages > 0 || skippedWireSize > 0) {
+            increaseAvailablePermits(cnx, skippedMessages, skippedWireSize);
         }
     }
 
@@ -1048,7 +1145,7 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
             return;
         }
 
-        increaseAvailablePermits(currentCnx);
+        increaseAvailablePermits(currentCnx, 1, ((MessageImpl<?>) msg).getWireSize());
         stats.updateNumMsgsReceived(msg);
 
         if (conf.getAckTimeoutMillis() != 0) {
@@ -1071,14 +1168,33 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
     }
 
     private void increaseAvailablePermits(ClientCnx currentCnx, int delta) {
-        int available = AVAILABLE_PERMITS_UPDATER.addAndGet(this, delta);
+        increaseAvailablePermits(currentCnx, delta, 0);
+    }
 
-        while (available >= receiverQueueRefillThreshold) {
-            if (AVAILABLE_PERMITS_UPDATER.compareAndSet(this, available, 0)) {
-                sendFlowPermitsToBroker(currentCnx, available);
-                break;
-            } else {
-                available = AVAILABLE_PERMITS_UPDATER.get(this);
+    private void increaseAvailablePermits(ClientCnx currentCnx, int delta, long deltaBytes) {
+        if (receiverQueueSizeBytes <= 0) {
+            int available = AVAILABLE_PERMITS_UPDATER.addAndGet(this, delta);
+
+            while (available >= receiverQueueRefillThreshold) {
+                if (AVAILABLE_PERMITS_UPDATER.compareAndSet(this, available, 0)) {
+                    sendFlowPermitsToBroker(currentCnx, available);
+                    break;
+                } else {
+                    available = AVAILABLE_PERMITS_UPDATER.get(this);
+                }
+            }
+            return;
+        }
+
+        // The receiver queue is bounded both in messages and in bytes: refill as soon as either half is drained so
+        // that a few large messages cannot stall the consumer until enough message permits accumulate
+        int available = AVAILABLE_PERMITS_UPDATER.addAndGet(this, delta);
+        long availableBytes = AVAILABLE_PERMITS_BYTES_UPDATER.addAndGet(this, deltaBytes);
+        if (available >= receiverQueueRefillThreshold || availableBytes >= receiverQueueBytesRefillThreshold) {
+            available = AVAILABLE_PERMITS_UPDATER.getAndSet(this, 0);
+            availableBytes = AVAILABLE_PERMITS_BYTES_UPDATER.getAndSet(this, 0);
+            if (available > 0 || availableBytes > 0) {
+                sendFlowPermitsToBroker(currentCnx, available, availableBytes);
             }
         }
     }
@@ -1218,14 +1334,20 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         ClientCnx cnx = cnx();
         if (isConnected() && cnx.getRemoteEndpointProtocolVersion() >= ProtocolVersion.v2.getNumber()) {
             int currentSize = 0;
+            long currentSizeBytes = 0;
             synchronized (this) {
                 currentSize = incomingMessages.size();
+                if (receiverQueueSizeBytes > 0) {
+                    for (Message<T> message : incomingMessages) {
+                        currentSizeBytes += ((MessageImpl<?>) message).getWireSize();
+                    }
+                }
                 incomingMessages.clear();
                 unAckedMessageTracker.clear();
             }
             cnx.ctx().writeAndFlush(Commands.newRedeliverUnacknowledgedMessages(consumerId), cnx.ctx().voidPromise());
             if (currentSize > 0) {
-                increaseAvailablePermits(cnx, currentSize);
+                increaseAvailablePermits(cnx, currentSize, currentSizeBytes);
             }
             if (log.isDebugEnabled()) {
                 log.debug("[{}] [{}] [{}] Redeliver unacked messages and send {} permits", subscription, topic,
@@ -1241,18 +1363,34 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         }
     }
 
+    @Override
+    public void negativeAcknowledge(MessageId messageId) {
+        checkArgument(messageId instanceof MessageIdImpl);
+        MessageIdImpl msgId = (MessageIdImpl) messageId;
+        // The whole entry is redelivered, so stop tracking the ack timeout of the entry as a whole
+        unAckedMessageTracker.remove(new MessageIdImpl(msgId.getLedgerId(), msgId.getEntryId(),
+                msgId.getPartitionIndex()));
+        redeliverUnacknowledgedMessages(Collections.singleton(messageId), true);
+    }
+
     @Override
     public void redeliverUnacknowledgedMessages(Set<MessageId> messageIds) {
+        redeliverUnacknowledgedMessages(messageIds, false);
+    }
+
+    private void redeliverUnacknowledgedMessages(Set<MessageId> messageIds, boolean negativeAck) {
         checkArgument(messageIds.stream().findFirst().get() instanceof MessageIdImpl);
 
-        if (conf.getSubscriptionType() != SubscriptionType.Shared) {
-            // We cannot redeliver single messages if subscription type is not Shared
+        if (conf.getSubscriptionType() != SubscriptionType.Shared
+                && conf.getSubscriptionType() != SubscriptionType.Key_Shared) {
+            // We cannot redeliver single messages if subscription type is not Shared or Key_Shared
             redeliverUnacknowledgedMessages();
             return;
         }
         ClientCnx cnx = cnx();
         if (isConnected() && cnx.getRemoteEndpointProtocolVersion() >= ProtocolVersion.v2.getNumber()) {
-            int messagesFromQueue = removeExpiredMessagesFromQueue(messageIds);
+            List<Message<T>> expiredMessages = removeExpiredMessagesFromQueue(messageIds);
+            int messagesFromQueue = expiredMessages.size();
             Iterable<List<MessageIdImpl>> batches = Iterables.partition(
                 messageIds.stream()
                     .map(messageId -> (MessageIdImpl)messageId)
@@ -1268,12 +1406,17 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
                     builder.setEntryId(messageId.getEntryId());
                     return builder.build();
                 }).collect(Collectors.toList());
-                ByteBuf cmd = Commands.newRedeliverUnacknowledgedMessages(consumerId, messageIdDatas);
+                ByteBuf cmd = negativeAck ? Commands.newNegativeAck(consumerId, messageIdDatas)
+                        : Commands.newRedeliverUnacknowledgedMessages(consumerId, messageIdDatas);
                 cnx.ctx().writeAndFlush(cmd, cnx.ctx().voidPromise());
                 messageIdDatas.forEach(MessageIdData::recycle);
             });
             if (messagesFromQueue > 0) {
-                increaseAvailablePermits(cnx, messagesFromQueue);
+                long bytesFromQueue = 0;
+                for (Message<T> message : expiredMessages) {
+                    bytesFromQueue += ((MessageImpl<?>) message).getWireSize();
+                }
+                increaseAvailablePermits(cnx, messagesFromQueue, bytesFromQueue);
             }
             builder.recycle();
             if (log.isDebugEnabled()) {
@@ -1510,27 +1653,24 @@ public class ConsumerImpl<T> extends ConsumerBase<T> implements ConnectionHandle
         return Optional.ofNullable(encryptionCtx);
     }
 
-    private int removeExpiredMessagesFromQueue(Set<MessageId> messageIds) {
-        int messagesFromQueue = 0;
+    private List<Message<T>> removeExpiredMessagesFromQueue(Set<MessageId> messageIds) {
         Message<T> peek = incomingMessages.peek();
-        if (peek != null) {
-            MessageIdImpl messageId = getMessageIdImpl(peek);
-            if (!messageIds.contains(messageId)) {
-                // first message is not expired, then no message is expired in queue.
-                return 0;
-            }
-
-            // try not to remove elements that are added while we remove
-            Message<T> message = incomingMessages.poll();
-            while (message != null) {
-                messagesFromQueue++;
-                MessageIdImpl id = getMessageIdImpl(message);
-                if (!messageIds.contains(id)) {
-                    messageIds.add(id);
-                    break;
-                }
-                message = incomingMessages.poll();
+        if (peek == null || !messageIds.contains(getMessageIdImpl(peek))) {
+            // first message is not expired, then no message is expired in queue.
+            return Collections.emptyList();
+        }
+
+        List<Message<T>> messagesFromQueue = new ArrayList<>();
+        // try not to remove elements that are added while we remove
+        Message<T> message = incomingMessages.poll();
+        while (message != null) {
+            messagesFromQueue.add(message);
+            MessageIdImpl id = getMessageIdImpl(message);
+            if (!messageIds.contains(id)) {
+                messageIds.add(id);
+                break;
             }
+            message = incomingMessages.poll();
         }
         return messagesFromQueue;
     }
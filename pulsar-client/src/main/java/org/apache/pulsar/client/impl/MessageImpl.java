@@ -57,6 +57,7 @@ public class MessageImpl<T> implements Message<T> {
     private Optional<EncryptionContext> encryptionCtx = Optional.empty();
 
     private String topic; // only set for incoming messages
+    private int wireSize; // only set for incoming messages, size accounted against the consumer byte permits
     transient private Map<String, String> properties;
 
     // Constructor for out-going message
@@ -309,8 +310,17 @@ public class MessageImpl<T> implements Message<T> {
         return cnx;
     }
 
+    int getWireSize() {
+        return wireSize;
+    }
+
+    void setWireSize(int wireSize) {
+        this.wireSize = wireSize;
+    }
+
     public void recycle() {
         msgMetadataBuilder = null;
+        wireSize = 0;
         messageId = null;
         topic = null;
         payload = null;
@@ -33,6 +33,7 @@ import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.impl.conf.ConsumerConfigurationData;
 import org.apache.pulsar.common.api.Commands;
@@ -68,12 +69,18 @@ public class PersistentAcknowledgmentsGroupingTracker implements Acknowledgments
      */
     private final ConcurrentSkipListSet<MessageIdImpl> pendingIndividualAcks;
 
+    /**
+     * Acks of single messages of batches, sent along with the individual acks to the brokers that support them.
+     */
+    private final ConcurrentSkipListSet<BatchMessageIdImpl> pendingIndividualBatchIndexAcks;
+
     private final ScheduledFuture<?> scheduledTask;
 
     public PersistentAcknowledgmentsGroupingTracker(ConsumerImpl<?> consumer, ConsumerConfigurationData<?> conf,
                                                     EventLoopGroup eventLoopGroup) {
         this.consumer = consumer;
         this.pendingIndividualAcks = new ConcurrentSkipListSet<>();
+        this.pendingIndividualBatchIndexAcks = new ConcurrentSkipListSet<>();
         this.acknowledgementGroupTimeMicros = conf.getAcknowledgementsGroupTimeMicros();
 
         if (acknowledgementGroupTimeMicros > 0) {
@@ -113,6 +120,13 @@ public class PersistentAcknowledgmentsGroupingTracker implements Acknowledgments
         }
     }
 
+    public void addBatchIndexAcknowledgment(BatchMessageIdImpl msgId) {
+        pendingIndividualBatchIndexAcks.add(msgId);
+        if (acknowledgementGroupTimeMicros == 0 || pendingIndividualBatchIndexAcks.size() >= MAX_ACK_GROUP_SIZE) {
+            flush();
+        }
+    }
+
     private void doCumulativeAck(MessageIdImpl msgId) {
         // Handle concurrent updates from different threads
         while (true) {
@@ -199,6 +213,28 @@ public class PersistentAcknowledgmentsGroupingTracker implements Acknowledgments
             }
         }
 
+        // Flush the acks of single messages of batches, only understood by the brokers that track them
+        if (!pendingIndividualBatchIndexAcks.isEmpty()) {
+            if (Commands.peerSupportsBatchIndexAcknowledgment(cnx.getRemoteEndpointProtocolVersion())) {
+                List<Triple<Long, Long, Integer>> batchIndexesToAck = new ArrayList<>(
+                        pendingIndividualBatchIndexAcks.size());
+                while (true) {
+                    BatchMessageIdImpl msgId = pendingIndividualBatchIndexAcks.pollFirst();
+                    if (msgId == null) {
+                        break;
+                    }
+
+                    batchIndexesToAck.add(Triple.of(msgId.getLedgerId(), msgId.getEntryId(), msgId.getBatchIndex()));
+                }
+
+                cnx.ctx().write(Commands.newMultiMessageAck(consumer.consumerId, Collections.emptyList(),
+                        batchIndexesToAck), cnx.ctx().voidPromise());
+            } else {
+                // The whole batch is acknowledged once all its messages are
+                pendingIndividualBatchIndexAcks.clear();
+            }
+        }
+
         cnx.ctx().flush();
     }
 
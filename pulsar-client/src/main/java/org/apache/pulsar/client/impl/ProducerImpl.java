@@ -297,12 +297,14 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         MessageImpl<T> msg = (MessageImpl<T>) message;
         MessageMetadata.Builder msgMetadataBuilder = msg.getMessageBuilder();
         ByteBuf payload = msg.getDataBuffer();
+        // the delivery time is set on the metadata of the entry: delayed messages are sent on their own
+        boolean canAddToBatch = isBatchMessagingEnabled() && !msgMetadataBuilder.hasDeliverAtTime();
 
         // If compression is enabled, we are compressing, otherwise it will simply use the same buffer
         int uncompressedSize = payload.readableBytes();
         ByteBuf compressedPayload = payload;
         // batch will be compressed when closed
-        if (!isBatchMessagingEnabled()) {
+        if (!canAddToBatch) {
             compressedPayload = compressor.encode(payload);
             payload.release();
         }
@@ -312,7 +314,7 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         // batch)
         if (compressedSize > PulsarDecoder.MaxMessageSize) {
             compressedPayload.release();
-            String compressedStr = (!isBatchMessagingEnabled() && conf.getCompressionType() != CompressionType.NONE)
+            String compressedStr = (!canAddToBatch && conf.getCompressionType() != CompressionType.NONE)
                     ? "Compressed"
                     : "";
             PulsarClientException.InvalidMessageException invalidMessageException =
@@ -357,7 +359,7 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
                     msgMetadataBuilder.setUncompressedSize(uncompressedSize);
                 }
 
-                if (isBatchMessagingEnabled()) {
+                if (canAddToBatch) {
                     // handle boundary cases where message being added would exceed
                     // batch size and/or max message size
                     if (batchMessageContainer.hasSpaceInBatch(msg)) {
@@ -372,6 +374,10 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
                         doBatchSendAndAdd(msg, callback, payload);
                     }
                 } else {
+                    if (isBatchMessagingEnabled()) {
+                        // send the messages batched before this one first, to keep the publishing order
+                        batchMessageAndSend();
+                    }
                     ByteBuf encryptedPayload = encryptMessage(msgMetadataBuilder, compressedPayload);
 
                     MessageMetadata msgMetadata = msgMetadataBuilder.build();
@@ -416,6 +422,71 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         }
     }
 
+    /**
+     * Send a message as stored by a broker, marking it as replicated from the given cluster. Used by the replicators to
+     * forward the stored metadata and payload without compressing, batching or encrypting them again. The message keeps
+     * its sequence id.
+     *
+     * @param msgMetadata
+     *            the metadata parsed from the stored message
+     * @param headersAndPayload
+     *            the stored message, which is retained until the send completes
+     * @param replicatedFrom
+     *            the cluster the message is replicated from
+     * @param callback
+     *            the callback completed once the message is persisted, or the send failed
+     */
+    public void sendReplicatedAsync(MessageMetadata msgMetadata, ByteBuf headersAndPayload, String replicatedFrom,
+            SendCallback callback) {
+        if (!isValidProducerState(callback)) {
+            return;
+        }
+
+        if (!canEnqueueRequest(callback)) {
+            return;
+        }
+
+        try {
+            synchronized (this) {
+                if (isBatchMessagingEnabled()) {
+                    // send the messages batched before this one first, to keep the publishing order
+                    batchMessageAndSend();
+                }
+
+                long sequenceId = msgMetadata.getSequenceId();
+                ByteBufPair cmd = Commands.newSendReplicated(producerId, sequenceId,
+                        msgMetadata.getNumMessagesInBatch(), msgMetadata.hasDeliverAtTime(), getChecksumType(),
+                        headersAndPayload, replicatedFrom);
+
+                final OpSendMsg op = OpSendMsg.create(cmd, sequenceId, callback);
+                op.setNumMessagesInBatch(1);
+                op.setBatchSizeByte(headersAndPayload.readableBytes());
+                pendingMessages.put(op);
+                lastSendFuture = callback.getFuture();
+
+                // Read the connection before validating if it's still connected, so that we avoid reading a null value
+                ClientCnx cnx = cnx();
+                if (isConnected()) {
+                    cmd.retain();
+                    cnx.ctx().channel().eventLoop().execute(WriteInEventLoopCallback.create(this, cnx, op));
+                    stats.updateNumMsgsSent(op.numMessagesInBatch, op.batchSizeByte);
+                } else {
+                    if (log.isDebugEnabled()) {
+                        log.debug("[{}] [{}] Connection is not ready -- sequenceId {}", topic, producerName,
+                                sequenceId);
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            semaphore.release();
+            callback.sendComplete(new PulsarClientException(ie));
+        } catch (Throwable t) {
+            semaphore.release();
+            callback.sendComplete(new PulsarClientException(t));
+        }
+    }
+
     private ByteBuf encryptMessage(MessageMetadata.Builder msgMetadata, ByteBuf compressedPayload)
             throws PulsarClientException {
 
@@ -440,15 +511,16 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
 
     private ByteBufPair sendMessage(long producerId, long sequenceId, int numMessages, MessageMetadata msgMetadata,
             ByteBuf compressedPayload) throws IOException {
-        ChecksumType checksumType;
+        return Commands.newSend(producerId, sequenceId, numMessages, getChecksumType(), msgMetadata, compressedPayload);
+    }
 
+    private ChecksumType getChecksumType() {
         if (connectionHandler.getClientCnx() == null
                 || connectionHandler.getClientCnx().getRemoteEndpointProtocolVersion() >= brokerChecksumSupportedVersion()) {
-            checksumType = ChecksumType.Crc32c;
+            return ChecksumType.Crc32c;
         } else {
-            checksumType = ChecksumType.None;
+            return ChecksumType.None;
         }
-        return Commands.newSend(producerId, sequenceId, numMessages, checksumType, msgMetadata, compressedPayload);
     }
 
     private void doBatchSendAndAdd(MessageImpl<T> msg, SendCallback callback, ByteBuf payload) {
@@ -834,6 +906,15 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
             return op;
         }
 
+        static OpSendMsg create(ByteBufPair cmd, long sequenceId, SendCallback callback) {
+            OpSendMsg op = RECYCLER.get();
+            op.cmd = cmd;
+            op.callback = callback;
+            op.sequenceId = sequenceId;
+            op.createdAt = System.currentTimeMillis();
+            return op;
+        }
+
         void recycle() {
             msg = null;
             msgs = null;
@@ -855,7 +936,7 @@ public class ProducerImpl<T> extends ProducerBase<T> implements TimerTask, Conne
         void setMessageId(long ledgerId, long entryId, int partitionIndex) {
             if (msg != null) {
                 msg.setMessageId(new MessageIdImpl(ledgerId, entryId, partitionIndex));
-            } else {
+            } else if (msgs != null) {
                 for (int batchIndex = 0; batchIndex < msgs.size(); batchIndex++) {
                     msgs.get(batchIndex)
                             .setMessageId(new BatchMessageIdImpl(ledgerId, entryId, partitionIndex, batchIndex));
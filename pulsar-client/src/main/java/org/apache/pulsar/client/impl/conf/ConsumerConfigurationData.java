@@ -61,6 +61,8 @@ public class ConsumerConfigurationData<T> implements Serializable, Cloneable {
 
     private int receiverQueueSize = 1000;
 
+    private long receiverQueueSizeBytes = 0;
+
     private long acknowledgementsGroupTimeMicros = TimeUnit.MILLISECONDS.toMicros(100);
 
     private int maxTotalReceiverQueueSizeAcrossPartitions = 50000;
@@ -88,6 +90,8 @@ public class ConsumerConfigurationData<T> implements Serializable, Cloneable {
 
     private DeadLetterPolicy deadLetterPolicy;
 
+    private boolean batchIndexAckEnabled = false;
+
     @JsonIgnore
     public String getSingleTopic() {
         checkArgument(topicNames.size() == 1);
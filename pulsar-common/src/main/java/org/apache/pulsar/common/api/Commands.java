@@ -37,6 +37,7 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.apache.pulsar.common.api.proto.PulsarApi;
 import org.apache.pulsar.common.api.proto.PulsarApi.AuthMethod;
 import org.apache.pulsar.common.api.proto.PulsarApi.BaseCommand;
@@ -87,6 +88,8 @@ import org.apache.pulsar.common.schema.SchemaVersion;
 import org.apache.pulsar.common.util.protobuf.ByteBufCodedInputStream;
 import org.apache.pulsar.common.util.protobuf.ByteBufCodedOutputStream;
 import org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString;
+import org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream;
+import org.apache.pulsar.shaded.com.google.protobuf.v241.WireFormat;
 
 public class Commands {
 
@@ -302,6 +305,81 @@ public class Commands {
         return res;
     }
 
+    /**
+     * Same frame as {@link #newMessage(long, MessageIdData, int, ByteBuf)}, written directly from the message id fields.
+     * The dispatch path uses it to frame each entry without building and recycling the protobuf objects for every
+     * consumer.
+     */
+    public static ByteBufPair newMessage(long consumerId, long ledgerId, long entryId, int partition,
+            int redeliveryCount, ByteBuf metadataAndPayload) {
+        return newMessage(consumerId, ledgerId, entryId, partition, redeliveryCount, null, metadataAndPayload);
+    }
+
+    /**
+     * Same as {@link #newMessage(long, long, long, int, int, ByteBuf)}, for a batched entry of which some messages were
+     * already acknowledged.
+     *
+     * @param ackSet
+     *            bitset of the indexes of the acknowledged messages in the batch, or null if there is none
+     */
+    public static ByteBufPair newMessage(long consumerId, long ledgerId, long entryId, int partition,
+            int redeliveryCount, long[] ackSet, ByteBuf metadataAndPayload) {
+        int messageIdSize = CodedOutputStream.computeUInt64Size(1, ledgerId)
+                + CodedOutputStream.computeUInt64Size(2, entryId)
+                + CodedOutputStream.computeInt32Size(3, partition);
+        int messageSize = CodedOutputStream.computeUInt64Size(1, consumerId)
+                + CodedOutputStream.computeTagSize(2)
+                + CodedOutputStream.computeRawVarint32Size(messageIdSize) + messageIdSize;
+        if (redeliveryCount > 0) {
+            messageSize += CodedOutputStream.computeUInt32Size(3, redeliveryCount);
+        }
+        if (ackSet != null) {
+            for (long word : ackSet) {
+                messageSize += CodedOutputStream.computeInt64Size(4, word);
+            }
+        }
+        int cmdSize = CodedOutputStream.computeEnumSize(1, Type.MESSAGE_VALUE)
+                + CodedOutputStream.computeTagSize(9)
+                + CodedOutputStream.computeRawVarint32Size(messageSize) + messageSize;
+
+        // / Wire format
+        // [TOTAL_SIZE] [CMD_SIZE][CMD] [MAGIC_NUMBER][CHECKSUM] [METADATA_SIZE][METADATA] [PAYLOAD]
+        ByteBuf headers = PooledByteBufAllocator.DEFAULT.buffer(4 + 4 + cmdSize);
+        headers.writeInt(4 + cmdSize + metadataAndPayload.readableBytes());
+        headers.writeInt(cmdSize);
+
+        ByteBufCodedOutputStream outStream = ByteBufCodedOutputStream.get(headers);
+        try {
+            // BaseCommand
+            outStream.writeEnum(1, Type.MESSAGE_VALUE);
+            outStream.writeTag(9, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            outStream.writeRawVarint32(messageSize);
+            // CommandMessage
+            outStream.writeUInt64(1, consumerId);
+            outStream.writeTag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            outStream.writeRawVarint32(messageIdSize);
+            // MessageIdData
+            outStream.writeUInt64(1, ledgerId);
+            outStream.writeUInt64(2, entryId);
+            outStream.writeInt32(3, partition);
+            if (redeliveryCount > 0) {
+                outStream.writeUInt32(3, redeliveryCount);
+            }
+            if (ackSet != null) {
+                for (long word : ackSet) {
+                    outStream.writeInt64(4, word);
+                }
+            }
+        } catch (IOException e) {
+            // This is in-memory serialization, should not fail
+            throw new RuntimeException(e);
+        } finally {
+            outStream.recycle();
+        }
+
+        return ByteBufPair.get(headers, metadataAndPayload);
+    }
+
     public static ByteBufPair newSend(long producerId, long sequenceId, int numMessages, ChecksumType checksumType,
             MessageMetadata messageData, ByteBuf payload) {
         CommandSend.Builder sendBuilder = CommandSend.newBuilder();
@@ -310,6 +388,9 @@ public class Commands {
         if (numMessages > 1) {
             sendBuilder.setNumMessages(numMessages);
         }
+        if (messageData.hasDeliverAtTime()) {
+            sendBuilder.setIsDelayed(true);
+        }
         CommandSend send = sendBuilder.build();
 
         ByteBufPair res = serializeCommandSendWithSize(BaseCommand.newBuilder().setType(Type.SEND).setSend(send),
@@ -319,6 +400,103 @@ public class Commands {
         return res;
     }
 
+    /**
+     * Frame a send command for a message as stored by a broker, marking it as replicated from the given cluster.
+     *
+     * <p/>The stored metadata and payload are forwarded as they are. The <code>replicated_from</code> field is appended
+     * to the serialized metadata, where protobuf merges it into the message, so that the metadata is neither parsed
+     * nor serialized again. The message must not be already marked as replicated.
+     *
+     * @param headersAndPayload
+     *            the stored message, with or without checksum. Its reader index is left unchanged and the payload is
+     *            sent from a retained slice of it
+     */
+    public static ByteBufPair newSendReplicated(long producerId, long sequenceId, int numMessages, boolean isDelayed,
+            ChecksumType checksumType, ByteBuf headersAndPayload, String replicatedFrom) {
+        CommandSend.Builder sendBuilder = CommandSend.newBuilder();
+        sendBuilder.setProducerId(producerId);
+        sendBuilder.setSequenceId(sequenceId);
+        if (numMessages > 1) {
+            sendBuilder.setNumMessages(numMessages);
+        }
+        if (isDelayed) {
+            sendBuilder.setIsDelayed(true);
+        }
+        CommandSend send = sendBuilder.build();
+        BaseCommand.Builder cmdBuilder = BaseCommand.newBuilder().setType(Type.SEND).setSend(send);
+
+        // / Wire format
+        // [TOTAL_SIZE] [CMD_SIZE][CMD] [MAGIC_NUMBER][CHECKSUM] [METADATA_SIZE][METADATA][REPLICATED_FROM] [PAYLOAD]
+
+        int metadataSizeIndex = headersAndPayload.readerIndex();
+        if (hasChecksum(headersAndPayload)) {
+            metadataSizeIndex += 2 + checksumSize;
+        }
+        int storedMetadataSize = (int) headersAndPayload.getUnsignedInt(metadataSizeIndex);
+        int storedMetadataIndex = metadataSizeIndex + 4;
+        int payloadIndex = storedMetadataIndex + storedMetadataSize;
+        ByteString replicatedFromBytes = copyFromUtf8(replicatedFrom);
+
+        BaseCommand cmd = cmdBuilder.build();
+        int cmdSize = cmd.getSerializedSize();
+        int msgMetadataSize = storedMetadataSize
+                + CodedOutputStream.computeBytesSize(MessageMetadata.REPLICATED_FROM_FIELD_NUMBER, replicatedFromBytes);
+        int payloadSize = headersAndPayload.writerIndex() - payloadIndex;
+        int magicAndChecksumLength = ChecksumType.Crc32c.equals(checksumType) ? (2 + 4 /* magic + checksumLength*/) : 0;
+        boolean includeChecksum = magicAndChecksumLength > 0;
+        int headerContentSize = 4 + cmdSize + magicAndChecksumLength + 4 + msgMetadataSize;
+        int totalSize = headerContentSize + payloadSize;
+        int headersSize = 4 + headerContentSize;
+        int checksumReaderIndex = -1;
+
+        ByteBuf headers = PooledByteBufAllocator.DEFAULT.buffer(headersSize, headersSize);
+        headers.writeInt(totalSize); // External frame
+
+        try {
+            // Write cmd
+            headers.writeInt(cmdSize);
+
+            ByteBufCodedOutputStream outStream = ByteBufCodedOutputStream.get(headers);
+            cmd.writeTo(outStream);
+            cmd.recycle();
+            cmdBuilder.recycle();
+
+            //Create checksum placeholder
+            if (includeChecksum) {
+                headers.writeShort(magicCrc32c);
+                checksumReaderIndex = headers.writerIndex();
+                headers.writerIndex(headers.writerIndex() + checksumSize); //skip 4 bytes of checksum
+            }
+
+            // Write the stored metadata followed by the replicated_from field
+            headers.writeInt(msgMetadataSize);
+            headers.writeBytes(headersAndPayload, storedMetadataIndex, storedMetadataSize);
+            outStream.writeBytes(MessageMetadata.REPLICATED_FROM_FIELD_NUMBER, replicatedFromBytes);
+            outStream.recycle();
+        } catch (IOException e) {
+            // This is in-memory serialization, should not fail
+            throw new RuntimeException(e);
+        } finally {
+            send.recycle();
+            sendBuilder.recycle();
+        }
+
+        ByteBuf payload = headersAndPayload.retainedSlice(payloadIndex, payloadSize);
+        ByteBufPair command = ByteBufPair.get(headers, payload);
+
+        // write checksum at created checksum-placeholder
+        if (includeChecksum) {
+            headers.markReaderIndex();
+            headers.readerIndex(checksumReaderIndex + checksumSize);
+            int metadataChecksum = computeChecksum(headers);
+            int computedChecksum = resumeChecksum(metadataChecksum, payload);
+            // set computed checksum
+            headers.setInt(checksumReaderIndex, computedChecksum);
+            headers.resetReaderIndex();
+        }
+        return command;
+    }
+
     public static ByteBuf newSubscribe(String topic, String subscription, long consumerId, long requestId,
             SubType subType, int priorityLevel, String consumerName) {
         return newSubscribe(topic, subscription, consumerId, requestId, subType, priorityLevel, consumerName,
@@ -621,6 +799,17 @@ public class Commands {
     }
 
     public static ByteBuf newMultiMessageAck(long consumerId, List<Pair<Long, Long>> entries) {
+        return newMultiMessageAck(consumerId, entries, Collections.emptyList());
+    }
+
+    /**
+     * Individual acknowledgement of whole entries, and of single messages of batched entries.
+     *
+     * @param batchMessages
+     *            the ledger id, entry id and batch index of each acknowledged message of a batched entry
+     */
+    public static ByteBuf newMultiMessageAck(long consumerId, List<Pair<Long, Long>> entries,
+            List<Triple<Long, Long, Integer>> batchMessages) {
         CommandAck.Builder ackBuilder = CommandAck.newBuilder();
         ackBuilder.setConsumerId(consumerId);
         ackBuilder.setAckType(AckType.Individual);
@@ -639,11 +828,21 @@ public class Commands {
             messageIdDataBuilder.recycle();
         }
 
+        for (Triple<Long, Long, Integer> batchMessage : batchMessages) {
+            MessageIdData.Builder messageIdDataBuilder = MessageIdData.newBuilder();
+            messageIdDataBuilder.setLedgerId(batchMessage.getLeft());
+            messageIdDataBuilder.setEntryId(batchMessage.getMiddle());
+            messageIdDataBuilder.setBatchIndex(batchMessage.getRight());
+            ackBuilder.addMessageId(messageIdDataBuilder.build());
+
+            messageIdDataBuilder.recycle();
+        }
+
         CommandAck ack = ackBuilder.build();
 
         ByteBuf res = serializeWithSize(BaseCommand.newBuilder().setType(Type.ACK).setAck(ack));
 
-        for (int i = 0; i < entriesCount; i++) {
+        for (int i = 0; i < ack.getMessageIdCount(); i++) {
             ack.getMessageId(i).recycle();
         }
         ack.recycle();
@@ -679,9 +878,20 @@ public class Commands {
     }
 
     public static ByteBuf newFlow(long consumerId, int messagePermits) {
+        return newFlow(consumerId, messagePermits, -1);
+    }
+
+    /**
+     * @param messagePermitsBytes
+     *            additional byte permits, or -1 for a consumer that doesn't use byte flow control
+     */
+    public static ByteBuf newFlow(long consumerId, int messagePermits, long messagePermitsBytes) {
         CommandFlow.Builder flowBuilder = CommandFlow.newBuilder();
         flowBuilder.setConsumerId(consumerId);
         flowBuilder.setMessagePermits(messagePermits);
+        if (messagePermitsBytes >= 0) {
+            flowBuilder.setMessagePermitsBytes(messagePermitsBytes);
+        }
         CommandFlow flow = flowBuilder.build();
 
         ByteBuf res = serializeWithSize(BaseCommand.newBuilder().setType(Type.FLOW).setFlow(flowBuilder));
@@ -703,10 +913,22 @@ public class Commands {
     }
 
     public static ByteBuf newRedeliverUnacknowledgedMessages(long consumerId, List<MessageIdData> messageIds) {
+        return newRedeliverUnacknowledgedMessages(consumerId, messageIds, false);
+    }
+
+    public static ByteBuf newNegativeAck(long consumerId, List<MessageIdData> messageIds) {
+        return newRedeliverUnacknowledgedMessages(consumerId, messageIds, true);
+    }
+
+    private static ByteBuf newRedeliverUnacknowledgedMessages(long consumerId, List<MessageIdData> messageIds,
+            boolean negativeAck) {
         CommandRedeliverUnacknowledgedMessages.Builder redeliverBuilder = CommandRedeliverUnacknowledgedMessages
                 .newBuilder();
         redeliverBuilder.setConsumerId(consumerId);
         redeliverBuilder.addAllMessageIds(messageIds);
+        if (negativeAck) {
+            redeliverBuilder.setNegativeAck(true);
+        }
         CommandRedeliverUnacknowledgedMessages redeliver = redeliverBuilder.build();
         ByteBuf res = serializeWithSize(BaseCommand.newBuilder().setType(Type.REDELIVER_UNACKNOWLEDGED_MESSAGES)
                 .setRedeliverUnacknowledgedMessages(redeliverBuilder));
@@ -1141,4 +1363,16 @@ public class Commands {
     public static boolean peerSupportJsonSchemaAvroFormat(int peerVersion) {
         return peerVersion >= ProtocolVersion.v13.getNumber();
     }
+
+    public static boolean peerSupportsBatchIndexAcknowledgment(int peerVersion) {
+        return peerVersion >= ProtocolVersion.v14.getNumber();
+    }
+
+    public static boolean peerSupportsBytePermits(int peerVersion) {
+        return peerVersion >= ProtocolVersion.v15.getNumber();
+    }
+
+    public static boolean peerSupportsKeySharedSubscription(int peerVersion) {
+        return peerVersion >= ProtocolVersion.v16.getNumber();
+    }
 }
@@ -201,6 +201,9 @@ public final class PulsarApi {
     v11(11, 11),
     v12(12, 12),
     v13(13, 13),
+    v14(14, 14),
+    v15(15, 15),
+    v16(16, 16),
     ;
     
     public static final int v0_VALUE = 0;
@@ -217,6 +220,9 @@ public final class PulsarApi {
     public static final int v11_VALUE = 11;
     public static final int v12_VALUE = 12;
     public static final int v13_VALUE = 13;
+    public static final int v14_VALUE = 14;
+    public static final int v15_VALUE = 15;
+    public static final int v16_VALUE = 16;
     
     
     public final int getNumber() { return value; }
@@ -237,6 +243,9 @@ public final class PulsarApi {
         case 11: return v11;
         case 12: return v12;
         case 13: return v13;
+        case 14: return v14;
+        case 15: return v15;
+        case 16: return v16;
         default: return null;
       }
     }
@@ -3043,6 +3052,10 @@ public final class PulsarApi {
     // optional bool partition_key_b64_encoded = 17 [default = false];
     boolean hasPartitionKeyB64Encoded();
     boolean getPartitionKeyB64Encoded();
+    
+    // optional int64 deliver_at_time = 18;
+    boolean hasDeliverAtTime();
+    long getDeliverAtTime();
   }
   public static final class MessageMetadata extends
       org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
@@ -3353,6 +3366,16 @@ public final class PulsarApi {
       return partitionKeyB64Encoded_;
     }
     
+    // optional int64 deliver_at_time = 18;
+    public static final int DELIVER_AT_TIME_FIELD_NUMBER = 18;
+    private long deliverAtTime_;
+    public boolean hasDeliverAtTime() {
+      return ((bitField0_ & 0x00002000) == 0x00002000);
+    }
+    public long getDeliverAtTime() {
+      return deliverAtTime_;
+    }
+    
     private void initFields() {
       producerName_ = "";
       sequenceId_ = 0L;
@@ -3370,6 +3393,7 @@ public final class PulsarApi {
       encryptionParam_ = org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString.EMPTY;
       schemaVersion_ = org.apache.pulsar.shaded.com.google.protobuf.v241.ByteString.EMPTY;
       partitionKeyB64Encoded_ = false;
+      deliverAtTime_ = 0L;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -3460,6 +3484,9 @@ public final class PulsarApi {
       if (((bitField0_ & 0x00001000) == 0x00001000)) {
         output.writeBool(17, partitionKeyB64Encoded_);
       }
+      if (((bitField0_ & 0x00002000) == 0x00002000)) {
+        output.writeInt64(18, deliverAtTime_);
+      }
     }
     
     private int memoizedSerializedSize = -1;
@@ -3537,6 +3564,10 @@ public final class PulsarApi {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
           .computeBoolSize(17, partitionKeyB64Encoded_);
       }
+      if (((bitField0_ & 0x00002000) == 0x00002000)) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeInt64Size(18, deliverAtTime_);
+      }
       memoizedSerializedSize = size;
       return size;
     }
@@ -3682,6 +3713,8 @@ public final class PulsarApi {
         bitField0_ = (bitField0_ & ~0x00004000);
         partitionKeyB64Encoded_ = false;
         bitField0_ = (bitField0_ & ~0x00008000);
+        deliverAtTime_ = 0L;
+        bitField0_ = (bitField0_ & ~0x00010000);
         return this;
       }
       
@@ -3783,6 +3816,10 @@ public final class PulsarApi {
           to_bitField0_ |= 0x00001000;
         }
         result.partitionKeyB64Encoded_ = partitionKeyB64Encoded_;
+        if (((from_bitField0_ & 0x00010000) == 0x00010000)) {
+          to_bitField0_ |= 0x00002000;
+        }
+        result.deliverAtTime_ = deliverAtTime_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
@@ -3858,6 +3895,9 @@ public final class PulsarApi {
         if (other.hasPartitionKeyB64Encoded()) {
           setPartitionKeyB64Encoded(other.getPartitionKeyB64Encoded());
         }
+        if (other.hasDeliverAtTime()) {
+          setDeliverAtTime(other.getDeliverAtTime());
+        }
         return this;
       }
       
@@ -3997,6 +4037,11 @@ public final class PulsarApi {
               partitionKeyB64Encoded_ = input.readBool();
               break;
             }
+            case 144: {
+              bitField0_ |= 0x00010000;
+              deliverAtTime_ = input.readInt64();
+              break;
+            }
           }
         }
       }
@@ -4579,6 +4624,27 @@ public final class PulsarApi {
         return this;
       }
       
+      // optional int64 deliver_at_time = 18;
+      private long deliverAtTime_ ;
+      public boolean hasDeliverAtTime() {
+        return ((bitField0_ & 0x00010000) == 0x00010000);
+      }
+      public long getDeliverAtTime() {
+        return deliverAtTime_;
+      }
+      public Builder setDeliverAtTime(long value) {
+        bitField0_ |= 0x00010000;
+        deliverAtTime_ = value;
+        
+        return this;
+      }
+      public Builder clearDeliverAtTime() {
+        bitField0_ = (bitField0_ & ~0x00010000);
+        deliverAtTime_ = 0L;
+        
+        return this;
+      }
+      
       // @@protoc_insertion_point(builder_scope:pulsar.proto.MessageMetadata)
     }
     
@@ -6876,11 +6942,13 @@ public final class PulsarApi {
       Exclusive(0, 0),
       Shared(1, 1),
       Failover(2, 2),
+      Key_Shared(3, 3),
       ;
       
       public static final int Exclusive_VALUE = 0;
       public static final int Shared_VALUE = 1;
       public static final int Failover_VALUE = 2;
+      public static final int Key_Shared_VALUE = 3;
       
       
       public final int getNumber() { return value; }
@@ -6890,6 +6958,7 @@ public final class PulsarApi {
           case 0: return Exclusive;
           case 1: return Shared;
           case 2: return Failover;
+          case 3: return Key_Shared;
           default: return null;
         }
       }
@@ -12154,6 +12223,10 @@ public final class PulsarApi {
     // optional int32 num_messages = 3 [default = 1];
     boolean hasNumMessages();
     int getNumMessages();
+    
+    // optional bool is_delayed = 4 [default = false];
+    boolean hasIsDelayed();
+    boolean getIsDelayed();
   }
   public static final class CommandSend extends
       org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
@@ -12220,10 +12293,21 @@ public final class PulsarApi {
       return numMessages_;
     }
     
+    // optional bool is_delayed = 4 [default = false];
+    public static final int IS_DELAYED_FIELD_NUMBER = 4;
+    private boolean isDelayed_;
+    public boolean hasIsDelayed() {
+      return ((bitField0_ & 0x00000008) == 0x00000008);
+    }
+    public boolean getIsDelayed() {
+      return isDelayed_;
+    }
+    
     private void initFields() {
       producerId_ = 0L;
       sequenceId_ = 0L;
       numMessages_ = 1;
+      isDelayed_ = false;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -12259,6 +12343,9 @@ public final class PulsarApi {
       if (((bitField0_ & 0x00000004) == 0x00000004)) {
         output.writeInt32(3, numMessages_);
       }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        output.writeBool(4, isDelayed_);
+      }
     }
     
     private int memoizedSerializedSize = -1;
@@ -12279,6 +12366,10 @@ public final class PulsarApi {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
           .computeInt32Size(3, numMessages_);
       }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeBoolSize(4, isDelayed_);
+      }
       memoizedSerializedSize = size;
       return size;
     }
@@ -12398,6 +12489,8 @@ public final class PulsarApi {
         bitField0_ = (bitField0_ & ~0x00000002);
         numMessages_ = 1;
         bitField0_ = (bitField0_ & ~0x00000004);
+        isDelayed_ = false;
+        bitField0_ = (bitField0_ & ~0x00000008);
         return this;
       }
       
@@ -12443,6 +12536,10 @@ public final class PulsarApi {
           to_bitField0_ |= 0x00000004;
         }
         result.numMessages_ = numMessages_;
+        if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
+          to_bitField0_ |= 0x00000008;
+        }
+        result.isDelayed_ = isDelayed_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
@@ -12458,6 +12555,9 @@ public final class PulsarApi {
         if (other.hasNumMessages()) {
           setNumMessages(other.getNumMessages());
         }
+        if (other.hasIsDelayed()) {
+          setIsDelayed(other.getIsDelayed());
+        }
         return this;
       }
       
@@ -12510,6 +12610,11 @@ public final class PulsarApi {
               numMessages_ = input.readInt32();
               break;
             }
+            case 32: {
+              bitField0_ |= 0x00000008;
+              isDelayed_ = input.readBool();
+              break;
+            }
           }
         }
       }
@@ -12579,6 +12684,27 @@ public final class PulsarApi {
         return this;
       }
       
+      // optional bool is_delayed = 4 [default = false];
+      private boolean isDelayed_ ;
+      public boolean hasIsDelayed() {
+        return ((bitField0_ & 0x00000008) == 0x00000008);
+      }
+      public boolean getIsDelayed() {
+        return isDelayed_;
+      }
+      public Builder setIsDelayed(boolean value) {
+        bitField0_ |= 0x00000008;
+        isDelayed_ = value;
+        
+        return this;
+      }
+      public Builder clearIsDelayed() {
+        bitField0_ = (bitField0_ & ~0x00000008);
+        isDelayed_ = false;
+        
+        return this;
+      }
+      
       // @@protoc_insertion_point(builder_scope:pulsar.proto.CommandSend)
     }
     
@@ -13660,6 +13786,11 @@ public final class PulsarApi {
     // optional uint32 redelivery_count = 3 [default = 0];
     boolean hasRedeliveryCount();
     int getRedeliveryCount();
+    
+    // repeated int64 ack_set = 4;
+    java.util.List<java.lang.Long> getAckSetList();
+    int getAckSetCount();
+    long getAckSet(int index);
   }
   public static final class CommandMessage extends
       org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
@@ -13726,10 +13857,25 @@ public final class PulsarApi {
       return redeliveryCount_;
     }
     
+    // repeated int64 ack_set = 4;
+    public static final int ACK_SET_FIELD_NUMBER = 4;
+    private java.util.List<java.lang.Long> ackSet_;
+    public java.util.List<java.lang.Long>
+        getAckSetList() {
+      return ackSet_;
+    }
+    public int getAckSetCount() {
+      return ackSet_.size();
+    }
+    public long getAckSet(int index) {
+      return ackSet_.get(index);
+    }
+    
     private void initFields() {
       consumerId_ = 0L;
       messageId_ = org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData.getDefaultInstance();
       redeliveryCount_ = 0;
+      ackSet_ = java.util.Collections.emptyList();;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -13769,6 +13915,9 @@ public final class PulsarApi {
       if (((bitField0_ & 0x00000004) == 0x00000004)) {
         output.writeUInt32(3, redeliveryCount_);
       }
+      for (int i = 0; i < ackSet_.size(); i++) {
+        output.writeInt64(4, ackSet_.get(i));
+      }
     }
     
     private int memoizedSerializedSize = -1;
@@ -13789,6 +13938,15 @@ public final class PulsarApi {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
           .computeUInt32Size(3, redeliveryCount_);
       }
+      {
+        int dataSize = 0;
+        for (int i = 0; i < ackSet_.size(); i++) {
+          dataSize += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+            .computeInt64SizeNoTag(ackSet_.get(i));
+        }
+        size += dataSize;
+        size += 1 * getAckSetList().size();
+      }
       memoizedSerializedSize = size;
       return size;
     }
@@ -13908,6 +14066,8 @@ public final class PulsarApi {
         bitField0_ = (bitField0_ & ~0x00000002);
         redeliveryCount_ = 0;
         bitField0_ = (bitField0_ & ~0x00000004);
+        ackSet_ = java.util.Collections.emptyList();;
+        bitField0_ = (bitField0_ & ~0x00000008);
         return this;
       }
       
@@ -13953,6 +14113,11 @@ public final class PulsarApi {
           to_bitField0_ |= 0x00000004;
         }
         result.redeliveryCount_ = redeliveryCount_;
+        if (((bitField0_ & 0x00000008) == 0x00000008)) {
+          ackSet_ = java.util.Collections.unmodifiableList(ackSet_);
+          bitField0_ = (bitField0_ & ~0x00000008);
+        }
+        result.ackSet_ = ackSet_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
@@ -13968,6 +14133,16 @@ public final class PulsarApi {
         if (other.hasRedeliveryCount()) {
           setRedeliveryCount(other.getRedeliveryCount());
         }
+        if (!other.ackSet_.isEmpty()) {
+          if (ackSet_.isEmpty()) {
+            ackSet_ = other.ackSet_;
+            bitField0_ = (bitField0_ & ~0x00000008);
+          } else {
+            ensureAckSetIsMutable();
+            ackSet_.addAll(other.ackSet_);
+          }
+          
+        }
         return this;
       }
       
@@ -14029,6 +14204,11 @@ public final class PulsarApi {
               redeliveryCount_ = input.readUInt32();
               break;
             }
+            case 32: {
+              ensureAckSetIsMutable();
+              ackSet_.add(input.readInt64());
+              break;
+            }
           }
         }
       }
@@ -14120,6 +14300,51 @@ public final class PulsarApi {
         return this;
       }
       
+      // repeated int64 ack_set = 4;
+      private java.util.List<java.lang.Long> ackSet_ = java.util.Collections.emptyList();;
+      private void ensureAckSetIsMutable() {
+        if (!((bitField0_ & 0x00000008) == 0x00000008)) {
+          ackSet_ = new java.util.ArrayList<java.lang.Long>(ackSet_);
+          bitField0_ |= 0x00000008;
+         }
+      }
+      public java.util.List<java.lang.Long>
+          getAckSetList() {
+        return java.util.Collections.unmodifiableList(ackSet_);
+      }
+      public int getAckSetCount() {
+        return ackSet_.size();
+      }
+      public long getAckSet(int index) {
+        return ackSet_.get(index);
+      }
+      public Builder setAckSet(
+          int index, long value) {
+        ensureAckSetIsMutable();
+        ackSet_.set(index, value);
+        
+        return this;
+      }
+      public Builder addAckSet(long value) {
+        ensureAckSetIsMutable();
+        ackSet_.add(value);
+        
+        return this;
+      }
+      public Builder addAllAckSet(
+          java.lang.Iterable<? extends java.lang.Long> values) {
+        ensureAckSetIsMutable();
+        super.addAll(values, ackSet_);
+        
+        return this;
+      }
+      public Builder clearAckSet() {
+        ackSet_ = java.util.Collections.emptyList();;
+        bitField0_ = (bitField0_ & ~0x00000008);
+        
+        return this;
+      }
+      
       // @@protoc_insertion_point(builder_scope:pulsar.proto.CommandMessage)
     }
     
@@ -15399,6 +15624,10 @@ public final class PulsarApi {
     // required uint32 messagePermits = 2;
     boolean hasMessagePermits();
     int getMessagePermits();
+    
+    // optional uint64 messagePermitsBytes = 3;
+    boolean hasMessagePermitsBytes();
+    long getMessagePermitsBytes();
   }
   public static final class CommandFlow extends
       org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
@@ -15455,9 +15684,20 @@ public final class PulsarApi {
       return messagePermits_;
     }
     
+    // optional uint64 messagePermitsBytes = 3;
+    public static final int MESSAGEPERMITSBYTES_FIELD_NUMBER = 3;
+    private long messagePermitsBytes_;
+    public boolean hasMessagePermitsBytes() {
+      return ((bitField0_ & 0x00000004) == 0x00000004);
+    }
+    public long getMessagePermitsBytes() {
+      return messagePermitsBytes_;
+    }
+    
     private void initFields() {
       consumerId_ = 0L;
       messagePermits_ = 0;
+      messagePermitsBytes_ = 0L;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -15490,6 +15730,9 @@ public final class PulsarApi {
       if (((bitField0_ & 0x00000002) == 0x00000002)) {
         output.writeUInt32(2, messagePermits_);
       }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        output.writeUInt64(3, messagePermitsBytes_);
+      }
     }
     
     private int memoizedSerializedSize = -1;
@@ -15506,6 +15749,10 @@ public final class PulsarApi {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
           .computeUInt32Size(2, messagePermits_);
       }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeUInt64Size(3, messagePermitsBytes_);
+      }
       memoizedSerializedSize = size;
       return size;
     }
@@ -15623,6 +15870,8 @@ public final class PulsarApi {
         bitField0_ = (bitField0_ & ~0x00000001);
         messagePermits_ = 0;
         bitField0_ = (bitField0_ & ~0x00000002);
+        messagePermitsBytes_ = 0L;
+        bitField0_ = (bitField0_ & ~0x00000004);
         return this;
       }
       
@@ -15664,6 +15913,10 @@ public final class PulsarApi {
           to_bitField0_ |= 0x00000002;
         }
         result.messagePermits_ = messagePermits_;
+        if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          to_bitField0_ |= 0x00000004;
+        }
+        result.messagePermitsBytes_ = messagePermitsBytes_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
@@ -15676,6 +15929,9 @@ public final class PulsarApi {
         if (other.hasMessagePermits()) {
           setMessagePermits(other.getMessagePermits());
         }
+        if (other.hasMessagePermitsBytes()) {
+          setMessagePermitsBytes(other.getMessagePermitsBytes());
+        }
         return this;
       }
       
@@ -15723,6 +15979,11 @@ public final class PulsarApi {
               messagePermits_ = input.readUInt32();
               break;
             }
+            case 24: {
+              bitField0_ |= 0x00000004;
+              messagePermitsBytes_ = input.readUInt64();
+              break;
+            }
           }
         }
       }
@@ -15771,6 +16032,27 @@ public final class PulsarApi {
         return this;
       }
       
+      // optional uint64 messagePermitsBytes = 3;
+      private long messagePermitsBytes_ ;
+      public boolean hasMessagePermitsBytes() {
+        return ((bitField0_ & 0x00000004) == 0x00000004);
+      }
+      public long getMessagePermitsBytes() {
+        return messagePermitsBytes_;
+      }
+      public Builder setMessagePermitsBytes(long value) {
+        bitField0_ |= 0x00000004;
+        messagePermitsBytes_ = value;
+        
+        return this;
+      }
+      public Builder clearMessagePermitsBytes() {
+        bitField0_ = (bitField0_ & ~0x00000004);
+        messagePermitsBytes_ = 0L;
+        
+        return this;
+      }
+      
       // @@protoc_insertion_point(builder_scope:pulsar.proto.CommandFlow)
     }
     
@@ -17790,6 +18072,10 @@ public final class PulsarApi {
         getMessageIdsList();
     org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData getMessageIds(int index);
     int getMessageIdsCount();
+    
+    // optional bool negative_ack = 3 [default = false];
+    boolean hasNegativeAck();
+    boolean getNegativeAck();
   }
   public static final class CommandRedeliverUnacknowledgedMessages extends
       org.apache.pulsar.shaded.com.google.protobuf.v241.GeneratedMessageLite
@@ -17857,9 +18143,20 @@ public final class PulsarApi {
       return messageIds_.get(index);
     }
     
+    // optional bool negative_ack = 3 [default = false];
+    public static final int NEGATIVE_ACK_FIELD_NUMBER = 3;
+    private boolean negativeAck_;
+    public boolean hasNegativeAck() {
+      return ((bitField0_ & 0x00000002) == 0x00000002);
+    }
+    public boolean getNegativeAck() {
+      return negativeAck_;
+    }
+    
     private void initFields() {
       consumerId_ = 0L;
       messageIds_ = java.util.Collections.emptyList();
+      negativeAck_ = false;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -17894,6 +18191,9 @@ public final class PulsarApi {
       for (int i = 0; i < messageIds_.size(); i++) {
         output.writeMessage(2, messageIds_.get(i));
       }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        output.writeBool(3, negativeAck_);
+      }
     }
     
     private int memoizedSerializedSize = -1;
@@ -17910,6 +18210,10 @@ public final class PulsarApi {
         size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
           .computeMessageSize(2, messageIds_.get(i));
       }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        size += org.apache.pulsar.shaded.com.google.protobuf.v241.CodedOutputStream
+          .computeBoolSize(3, negativeAck_);
+      }
       memoizedSerializedSize = size;
       return size;
     }
@@ -18027,6 +18331,8 @@ public final class PulsarApi {
         bitField0_ = (bitField0_ & ~0x00000001);
         messageIds_ = java.util.Collections.emptyList();
         bitField0_ = (bitField0_ & ~0x00000002);
+        negativeAck_ = false;
+        bitField0_ = (bitField0_ & ~0x00000004);
         return this;
       }
       
@@ -18069,6 +18375,10 @@ public final class PulsarApi {
           bitField0_ = (bitField0_ & ~0x00000002);
         }
         result.messageIds_ = messageIds_;
+        if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          to_bitField0_ |= 0x00000002;
+        }
+        result.negativeAck_ = negativeAck_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
@@ -18088,6 +18398,9 @@ public final class PulsarApi {
           }
           
         }
+        if (other.hasNegativeAck()) {
+          setNegativeAck(other.getNegativeAck());
+        }
         return this;
       }
       
@@ -18138,6 +18451,11 @@ public final class PulsarApi {
               addMessageIds(subBuilder.buildPartial());
               break;
             }
+            case 24: {
+              bitField0_ |= 0x00000004;
+              negativeAck_ = input.readBool();
+              break;
+            }
           }
         }
       }
@@ -18254,6 +18572,27 @@ public final class PulsarApi {
         return this;
       }
       
+      // optional bool negative_ack = 3 [default = false];
+      private boolean negativeAck_ ;
+      public boolean hasNegativeAck() {
+        return ((bitField0_ & 0x00000004) == 0x00000004);
+      }
+      public boolean getNegativeAck() {
+        return negativeAck_;
+      }
+      public Builder setNegativeAck(boolean value) {
+        bitField0_ |= 0x00000004;
+        negativeAck_ = value;
+        
+        return this;
+      }
+      public Builder clearNegativeAck() {
+        bitField0_ = (bitField0_ & ~0x00000004);
+        negativeAck_ = false;
+        
+        return this;
+      }
+      
       // @@protoc_insertion_point(builder_scope:pulsar.proto.CommandRedeliverUnacknowledgedMessages)
     }
     
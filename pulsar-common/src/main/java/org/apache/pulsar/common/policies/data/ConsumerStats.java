@@ -46,6 +46,9 @@ public class ConsumerStats {
     /** Flag to verify if consumer is blocked due to reaching threshold of unacked messages */
     public boolean blockedConsumerOnUnackedMsgs;
 
+    /** Average time between the dispatch of a message to the consumer and its acknowledgement. ms */
+    public double avgAckLatencyMs;
+
     /** Address of this consumer */
     private int addressOffset = -1;
     private int addressLength;
@@ -75,6 +78,7 @@ public class ConsumerStats {
         this.availablePermits += stats.availablePermits;
         this.unackedMessages += stats.unackedMessages;
         this.blockedConsumerOnUnackedMsgs = stats.blockedConsumerOnUnackedMsgs;
+        this.avgAckLatencyMs = Math.max(this.avgAckLatencyMs, stats.avgAckLatencyMs);
         return this;
     }
 
@@ -0,0 +1,352 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A sorted set of pairs of longs, where the pairs with the same first item and consecutive second items are stored as
+ * a single range.
+ *
+ * The ranges of each first item are kept in a sorted array of primitive longs, so a set holding millions of mostly
+ * contiguous pairs only takes a few bytes per range, and the pairs can be iterated in order without sorting them.
+ *
+ * <b>Negative second items are not supported.</b>
+ * <p>
+ * (long,long)
+ * <p>
+ *
+ */
+public class SortedLongPairRangeSet {
+
+    private final NavigableMap<Long, Ranges> ranges = new TreeMap<>();
+    private long size = 0;
+
+    public interface LongPairPredicate {
+        boolean test(long v1, long v2);
+    }
+
+    /**
+     * Visits the pairs of the set, in order.
+     */
+    public interface LongPairVisitor {
+        /**
+         * @return true to visit the next pair, false to stop
+         */
+        boolean visit(long v1, long v2);
+    }
+
+    public interface LongPairRangeVisitor {
+        /**
+         * Visits the pairs (v1, first) to (v1, last), both included.
+         *
+         * @return true to visit the next range, false to stop
+         */
+        boolean visit(long v1, long first, long last);
+    }
+
+    public synchronized boolean add(long item1, long item2) {
+        Ranges r = ranges.computeIfAbsent(item1, k -> new Ranges());
+        if (r.add(item2)) {
+            ++size;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized boolean remove(long item1, long item2) {
+        Ranges r = ranges.get(item1);
+        if (r == null || !r.remove(item2)) {
+            return false;
+        }
+
+        --size;
+        if (r.isEmpty()) {
+            ranges.remove(item1);
+        }
+        return true;
+    }
+
+    public synchronized boolean contains(long item1, long item2) {
+        Ranges r = ranges.get(item1);
+        return r != null && r.contains(item2);
+    }
+
+    /**
+     * Removes all the pairs lower or equal to the given pair.
+     *
+     * @return number of removed pairs
+     */
+    public synchronized long removeUpTo(long item1, long item2) {
+        long removed = 0;
+        Iterator<Ranges> iterator = ranges.headMap(item1, false).values().iterator();
+        while (iterator.hasNext()) {
+            removed += iterator.next().size();
+            iterator.remove();
+        }
+
+        Ranges r = ranges.get(item1);
+        if (r != null) {
+            removed += r.removeUpTo(item2);
+            if (r.isEmpty()) {
+                ranges.remove(item1);
+            }
+        }
+
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * Removes all of the elements of this collection that satisfy the given predicate.
+     *
+     * @return number of removed pairs
+     */
+    public synchronized long removeIf(LongPairPredicate filter) {
+        SortedLongPairRangeSet toRemove = new SortedLongPairRangeSet();
+        forEach((v1, v2) -> {
+            if (filter.test(v1, v2)) {
+                toRemove.add(v1, v2);
+            }
+            return true;
+        });
+        toRemove.forEach((v1, v2) -> {
+            remove(v1, v2);
+            return true;
+        });
+        return toRemove.size();
+    }
+
+    /**
+     * Visits the pairs in ascending order, until the visitor returns false.
+     */
+    public synchronized void forEach(LongPairVisitor visitor) {
+        for (Map.Entry<Long, Ranges> e : ranges.entrySet()) {
+            long item1 = e.getKey();
+            Ranges r = e.getValue();
+            for (int i = 0; i < r.count; i++) {
+                for (long item2 = r.start(i); item2 <= r.end(i); item2++) {
+                    if (!visitor.visit(item1, item2)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits the ranges of consecutive pairs in ascending order, until the visitor returns false.
+     */
+    public synchronized void forEachRange(LongPairRangeVisitor visitor) {
+        for (Map.Entry<Long, Ranges> e : ranges.entrySet()) {
+            long item1 = e.getKey();
+            Ranges r = e.getValue();
+            for (int i = 0; i < r.count; i++) {
+                if (!visitor.visit(item1, r.start(i), r.end(i))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        ranges.clear();
+        size = 0;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of ranges of consecutive pairs held by the set
+     */
+    public synchronized long rangeCount() {
+        long count = 0;
+        for (Ranges r : ranges.values()) {
+            count += r.count;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEachRange((v1, first, last) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append('[').append(v1).append(':').append(first);
+            if (last != first) {
+                sb.append("..").append(v1).append(':').append(last);
+            }
+            sb.append(']');
+            return true;
+        });
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Sorted and disjoint ranges of values, stored as (start, end) pairs, both included. Adjacent ranges are always
+     * merged.
+     */
+    private static class Ranges {
+        private long[] bounds = new long[4];
+        private int count = 0;
+
+        long start(int index) {
+            return bounds[2 * index];
+        }
+
+        long end(int index) {
+            return bounds[2 * index + 1];
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        long size() {
+            long size = 0;
+            for (int i = 0; i < count; i++) {
+                size += end(i) - start(i) + 1;
+            }
+            return size;
+        }
+
+        /**
+         * @return the index of the last range starting at or before the value, or -1
+         */
+        int floor(long value) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (start(mid) <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        boolean contains(long value) {
+            int i = floor(value);
+            return i >= 0 && end(i) >= value;
+        }
+
+        boolean add(long value) {
+            int i = floor(value);
+            if (i >= 0 && end(i) >= value) {
+                return false;
+            }
+
+            boolean mergeWithPrevious = i >= 0 && end(i) == value - 1;
+            boolean mergeWithNext = i + 1 < count && start(i + 1) == value + 1;
+            if (mergeWithPrevious && mergeWithNext) {
+                bounds[2 * i + 1] = end(i + 1);
+                delete(i + 1);
+            } else if (mergeWithPrevious) {
+                bounds[2 * i + 1] = value;
+            } else if (mergeWithNext) {
+                bounds[2 * (i + 1)] = value;
+            } else {
+                insert(i + 1, value, value);
+            }
+            return true;
+        }
+
+        boolean remove(long value) {
+            int i = floor(value);
+            if (i < 0 || end(i) < value) {
+                return false;
+            }
+
+            long start = start(i);
+            long end = end(i);
+            if (start == end) {
+                delete(i);
+            } else if (value == start) {
+                bounds[2 * i] = value + 1;
+            } else if (value == end) {
+                bounds[2 * i + 1] = value - 1;
+            } else {
+                bounds[2 * i + 1] = value - 1;
+                insert(i + 1, value + 1, end);
+            }
+            return true;
+        }
+
+        long removeUpTo(long value) {
+            int i = floor(value);
+            if (i < 0) {
+                return 0;
+            }
+
+            long removed = 0;
+            for (int j = 0; j < i; j++) {
+                removed += end(j) - start(j) + 1;
+            }
+
+            int firstKept;
+            if (end(i) > value) {
+                removed += value - start(i) + 1;
+                bounds[2 * i] = value + 1;
+                firstKept = i;
+            } else {
+                removed += end(i) - start(i) + 1;
+                firstKept = i + 1;
+            }
+
+            System.arraycopy(bounds, 2 * firstKept, bounds, 0, 2 * (count - firstKept));
+            count -= firstKept;
+            return removed;
+        }
+
+        private void insert(int index, long start, long end) {
+            if (2 * (count + 1) > bounds.length) {
+                long[] newBounds = new long[bounds.length * 2];
+                System.arraycopy(bounds, 0, newBounds, 0, 2 * count);
+                bounds = newBounds;
+            }
+            System.arraycopy(bounds, 2 * index, bounds, 2 * (index + 1), 2 * (count - index));
+            bounds[2 * index] = start;
+            bounds[2 * index + 1] = end;
+            ++count;
+        }
+
+        private void delete(int index) {
+            System.arraycopy(bounds, 2 * (index + 1), bounds, 2 * index, 2 * (count - index - 1));
+            --count;
+            if (bounds.length > 16 && 2 * count < bounds.length / 4) {
+                long[] newBounds = new long[bounds.length / 2];
+                System.arraycopy(bounds, 0, newBounds, 0, 2 * count);
+                bounds = newBounds;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.internal.MathUtil;
+
+/**
+ * A priority queue based on a min heap where values are composed of triples of longs, compared on the first, then the
+ * second and then the third value.
+ *
+ * The heap is stored in a direct buffer, so that it can hold millions of items without putting any pressure on the
+ * GC. Each item takes 24 bytes. When the capacity is reached, data is moved to a buffer twice as big, and it is
+ * moved back to a smaller buffer once the queue is mostly drained.
+ *
+ * <b>This class is not thread safe</b> and it needs to be released with {@link #close()}.
+ * <p>
+ * (long,long,long)
+ * <p>
+ *
+ */
+public class TripleLongPriorityQueue implements AutoCloseable {
+
+    private static final int ITEMS_SIZE = 3;
+    private static final int ITEM_BYTES = ITEMS_SIZE * Long.BYTES;
+
+    private final int initialCapacity;
+    private ByteBuf buffer;
+    private int capacity;
+    private int size = 0;
+
+    public TripleLongPriorityQueue() {
+        this(64);
+    }
+
+    public TripleLongPriorityQueue(int initialCapacity) {
+        checkArgument(initialCapacity > 0);
+        this.initialCapacity = MathUtil.findNextPositivePowerOfTwo(initialCapacity);
+        this.capacity = this.initialCapacity;
+        this.buffer = PooledByteBufAllocator.DEFAULT.directBuffer(capacity * ITEM_BYTES, capacity * ITEM_BYTES);
+    }
+
+    /**
+     * Add a tuple of 3 long items to the priority queue.
+     */
+    public void add(long n1, long n2, long n3) {
+        if (size == capacity) {
+            resize(capacity * 2);
+        }
+
+        int loc = size;
+        put(loc, n1, n2, n3);
+
+        // Swap with parent until parent not larger
+        while (loc > 0 && compare(loc, parent(loc)) < 0) {
+            swap(loc, parent(loc));
+            loc = parent(loc);
+        }
+
+        size++;
+    }
+
+    /**
+     * Read the 1st long item in the top tuple in the priority queue.
+     * <p>
+     * The tuple will not be extracted
+     */
+    public long peekN1() {
+        checkArgument(size != 0);
+        return buffer.getLong(0);
+    }
+
+    /**
+     * Read the 2nd long item in the top tuple in the priority queue.
+     * <p>
+     * The tuple will not be extracted
+     */
+    public long peekN2() {
+        checkArgument(size != 0);
+        return buffer.getLong(Long.BYTES);
+    }
+
+    /**
+     * Read the 3rd long item in the top tuple in the priority queue.
+     * <p>
+     * The tuple will not be extracted
+     */
+    public long peekN3() {
+        checkArgument(size != 0);
+        return buffer.getLong(2 * Long.BYTES);
+    }
+
+    /**
+     * Removes the first item from the queue.
+     */
+    public void pop() {
+        checkArgument(size != 0);
+        --size;
+        swap(0, size);
+        minHeapify(0, size - 1);
+
+        if (capacity > initialCapacity && size < capacity / 4) {
+            resize(capacity / 2);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of direct memory held by the queue
+     */
+    public long bytesCapacity() {
+        return (long) capacity * ITEM_BYTES;
+    }
+
+    public void clear() {
+        size = 0;
+        if (capacity > initialCapacity) {
+            resize(initialCapacity);
+        }
+    }
+
+    /**
+     * Release the memory of the queue. The queue cannot be used anymore after it was closed.
+     */
+    @Override
+    public void close() {
+        size = 0;
+        buffer.release();
+    }
+
+    private void resize(int newCapacity) {
+        ByteBuf newBuffer = PooledByteBufAllocator.DEFAULT.directBuffer(newCapacity * ITEM_BYTES,
+                newCapacity * ITEM_BYTES);
+        newBuffer.setBytes(0, buffer, 0, size * ITEM_BYTES);
+        buffer.release();
+        buffer = newBuffer;
+        capacity = newCapacity;
+    }
+
+    private void put(int index, long n1, long n2, long n3) {
+        int offset = index * ITEM_BYTES;
+        buffer.setLong(offset, n1);
+        buffer.setLong(offset + Long.BYTES, n2);
+        buffer.setLong(offset + 2 * Long.BYTES, n3);
+    }
+
+    private int compare(int index1, int index2) {
+        int offset1 = index1 * ITEM_BYTES;
+        int offset2 = index2 * ITEM_BYTES;
+        for (int i = 0; i < ITEMS_SIZE; i++) {
+            long v1 = buffer.getLong(offset1 + i * Long.BYTES);
+            long v2 = buffer.getLong(offset2 + i * Long.BYTES);
+            if (v1 != v2) {
+                return Long.compare(v1, v2);
+            }
+        }
+        return 0;
+    }
+
+    private void swap(int index1, int index2) {
+        if (index1 == index2) {
+            return;
+        }
+        int offset1 = index1 * ITEM_BYTES;
+        int offset2 = index2 * ITEM_BYTES;
+        for (int i = 0; i < ITEMS_SIZE; i++) {
+            long t = buffer.getLong(offset1 + i * Long.BYTES);
+            buffer.setLong(offset1 + i * Long.BYTES, buffer.getLong(offset2 + i * Long.BYTES));
+            buffer.setLong(offset2 + i * Long.BYTES, t);
+        }
+    }
+
+    private static int leftChild(int i) {
+        return 2 * i + 1;
+    }
+
+    private static int rightChild(int i) {
+        return 2 * i + 2;
+    }
+
+    private static int parent(int i) {
+        return (i - 1) / 2;
+    }
+
+    private void minHeapify(int index, int lastIndex) {
+        while (true) {
+            int left = leftChild(index);
+            int right = rightChild(index);
+            int smallest = index;
+
+            if (left <= lastIndex && compare(left, smallest) < 0) {
+                smallest = left;
+            }
+            if (right <= lastIndex && compare(right, smallest) < 0) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.api;
+
+import static org.testng.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.pulsar.common.api.Commands.ChecksumType;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageIdData;
+import org.apache.pulsar.common.api.proto.PulsarApi.MessageMetadata;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class CommandsTest {
+
+    @DataProvider(name = "messageFields")
+    public Object[][] messageFields() {
+        return new Object[][] {
+                // consumerId, ledgerId, entryId, partition, redeliveryCount
+                { 0L, 0L, 0L, -1, 0 },
+                { 1L, 3L, 10L, 0, 0 },
+                { 12345678901L, 987654321L, 1L << 40, 17, 3 },
+                { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE },
+        };
+    }
+
+    @Test(dataProvider = "messageFields")
+    public void testNewMessageFromFields(long consumerId, long ledgerId, long entryId, int partition,
+            int redeliveryCount) {
+        ByteBuf payload = Unpooled.wrappedBuffer(new byte[] { 1, 2, 3, 4, 5 });
+
+        MessageIdData.Builder messageIdBuilder = MessageIdData.newBuilder();
+        MessageIdData messageId = messageIdBuilder.setLedgerId(ledgerId).setEntryId(entryId).setPartition(partition)
+                .build();
+        ByteBufPair expected = Commands.newMessage(consumerId, messageId, redeliveryCount, payload.retain());
+        messageId.recycle();
+        messageIdBuilder.recycle();
+
+        ByteBufPair actual = Commands.newMessage(consumerId, ledgerId, entryId, partition, redeliveryCount,
+                payload.retain());
+
+        assertEquals(ByteBufPair.coalesce(actual), ByteBufPair.coalesce(expected));
+        expected.release();
+        actual.release();
+        payload.release();
+        assertEquals(payload.refCnt(), 0);
+    }
+
+    @Test
+    public void testNewSendReplicated() {
+        ByteBuf payload = Unpooled.wrappedBuffer(new byte[] { 1, 2, 3, 4, 5 });
+
+        MessageMetadata.Builder storedBuilder = MessageMetadata.newBuilder();
+        MessageMetadata stored = storedBuilder.setProducerName("producer").setSequenceId(7).setPublishTime(1234)
+                .build();
+        ByteBuf headersAndPayload = Commands.serializeMetadataAndPayload(ChecksumType.Crc32c, stored, payload);
+        stored.recycle();
+        storedBuilder.recycle();
+
+        // The stored fields have lower numbers than replicated_from, so the serialized metadata ends with it as well
+        MessageMetadata.Builder replicatedBuilder = MessageMetadata.newBuilder();
+        MessageMetadata replicated = replicatedBuilder.setProducerName("producer").setSequenceId(7)
+                .setPublishTime(1234).setReplicatedFrom("r1").build();
+        ByteBufPair expected = Commands.newSend(1, 7, 1, ChecksumType.Crc32c, replicated, payload.retain());
+        replicated.recycle();
+        replicatedBuilder.recycle();
+
+        int readerIndex = headersAndPayload.readerIndex();
+        ByteBufPair actual = Commands.newSendReplicated(1, 7, 1, false, ChecksumType.Crc32c, headersAndPayload, "r1");
+        assertEquals(headersAndPayload.readerIndex(), readerIndex);
+
+        assertEquals(ByteBufPair.coalesce(actual), ByteBufPair.coalesce(expected));
+        expected.release();
+        actual.release();
+        headersAndPayload.release();
+        assertEquals(headersAndPayload.refCnt(), 0);
+        payload.release();
+        assertEquals(payload.refCnt(), 0);
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class SortedLongPairRangeSetTest {
+
+    @Test
+    public void simpleInsertions() {
+        SortedLongPairRangeSet set = new SortedLongPairRangeSet();
+
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(1, 1));
+        assertFalse(set.isEmpty());
+        assertFalse(set.add(1, 1));
+
+        assertTrue(set.add(1, 3));
+        assertTrue(set.add(2, 2));
+        assertEquals(set.size(), 3);
+        assertEquals(set.rangeCount(), 3);
+
+        // Fill the hole: the two ranges of ledger 1 are merged
+        assertTrue(set.add(1, 2));
+        assertEquals(set.size(), 4);
+        assertEquals(set.rangeCount(), 2);
+        assertEquals(set.toString(), "{[1:1..1:3], [2:2]}");
+
+        assertTrue(set.contains(1, 2));
+        assertFalse(set.contains(1, 4));
+        assertFalse(set.contains(3, 2));
+    }
+
+    @Test
+    public void testRemove() {
+        SortedLongPairRangeSet set = new SortedLongPairRangeSet();
+        for (int i = 0; i < 10; i++) {
+            set.add(1, i);
+        }
+        assertEquals(set.rangeCount(), 1);
+
+        // Split the range
+        assertTrue(set.remove(1, 5));
+        assertFalse(set.remove(1, 5));
+        assertEquals(set.size(), 9);
+        assertEquals(set.toString(), "{[1:0..1:4], [1:6..1:9]}");
+
+        assertTrue(set.remove(1, 0));
+        assertTrue(set.remove(1, 9));
+        assertEquals(set.toString(), "{[1:1..1:4], [1:6..1:8]}");
+
+        for (int i = 0; i < 10; i++) {
+            set.remove(1, i);
+        }
+        assertTrue(set.isEmpty());
+        assertEquals(set.rangeCount(), 0);
+    }
+
+    @Test
+    public void testRemoveUpTo() {
+        SortedLongPairRangeSet set = new SortedLongPairRangeSet();
+        for (int i = 0; i < 10; i++) {
+            set.add(1, i);
+            set.add(2, i);
+            set.add(3, 2 * i);
+        }
+
+        assertEquals(set.removeUpTo(0, 100), 0);
+        assertEquals(set.removeUpTo(2, 4), 15);
+        assertEquals(set.size(), 15);
+        assertFalse(set.contains(2, 4));
+        assertTrue(set.contains(2, 5));
+
+        assertEquals(set.removeUpTo(3, 5), 8);
+        assertEquals(set.toString(), "{[3:6], [3:8], [3:10], [3:12], [3:14], [3:16], [3:18]}");
+
+        assertEquals(set.removeIf((v1, v2) -> v2 > 10), 4);
+        assertEquals(set.toString(), "{[3:6], [3:8], [3:10]}");
+    }
+
+    @Test
+    public void testIterationOrder() {
+        SortedLongPairRangeSet set = new SortedLongPairRangeSet();
+        set.add(3, 1);
+        set.add(1, 7);
+        set.add(2, 0);
+        set.add(1, 5);
+        set.add(1, 6);
+
+        List<String> items = new ArrayList<>();
+        set.forEach((v1, v2) -> {
+            items.add(v1 + ":" + v2);
+            return items.size() < 4;
+        });
+        assertEquals(items, Arrays.asList("1:5", "1:6", "1:7", "2:0"));
+
+        List<String> ranges = new ArrayList<>();
+        set.forEachRange((v1, first, last) -> {
+            ranges.add(v1 + ":" + first + "-" + last);
+            return true;
+        });
+        assertEquals(ranges, Arrays.asList("1:5-7", "2:0-0", "3:1-1"));
+    }
+
+    @Test
+    public void testContiguousPositionsAreCompact() {
+        SortedLongPairRangeSet set = new SortedLongPairRangeSet();
+        for (int i = 0; i < 1_000_000; i++) {
+            set.add(1, i);
+        }
+        assertEquals(set.size(), 1_000_000);
+        assertEquals(set.rangeCount(), 1);
+
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pulsar.common.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class TripleLongPriorityQueueTest {
+
+    @Test
+    public void testConstructor() {
+        try {
+            new TripleLongPriorityQueue(0);
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testQueue() {
+        TripleLongPriorityQueue pq = new TripleLongPriorityQueue();
+        assertTrue(pq.isEmpty());
+
+        pq.add(3, 1, 1);
+        pq.add(1, 2, 2);
+        pq.add(1, 1, 3);
+        pq.add(2, 0, 0);
+        assertFalse(pq.isEmpty());
+        assertEquals(pq.size(), 4);
+
+        assertEquals(pq.peekN1(), 1);
+        assertEquals(pq.peekN2(), 1);
+        assertEquals(pq.peekN3(), 3);
+        pq.pop();
+
+        assertEquals(pq.peekN1(), 1);
+        assertEquals(pq.peekN2(), 2);
+        assertEquals(pq.peekN3(), 2);
+        pq.pop();
+
+        assertEquals(pq.peekN1(), 2);
+        pq.pop();
+        assertEquals(pq.peekN1(), 3);
+        pq.pop();
+
+        assertTrue(pq.isEmpty());
+        pq.close();
+    }
+
+    @Test
+    public void testExpandAndShrink() {
+        TripleLongPriorityQueue pq = new TripleLongPriorityQueue(16);
+        long initialBytes = pq.bytesCapacity();
+
+        List<Long> values = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextInt(1_000_000);
+            values.add(value);
+            pq.add(value, i, -i);
+        }
+        assertEquals(pq.size(), 10_000);
+        assertTrue(pq.bytesCapacity() > initialBytes);
+
+        Collections.sort(values);
+        for (long value : values) {
+            assertEquals(pq.peekN1(), value);
+            pq.pop();
+        }
+
+        assertTrue(pq.isEmpty());
+        assertEquals(pq.bytesCapacity(), initialBytes);
+        pq.close();
+    }
+
+    @Test
+    public void testClear() {
+        TripleLongPriorityQueue pq = new TripleLongPriorityQueue(16);
+        long initialBytes = pq.bytesCapacity();
+        for (int i = 0; i < 100; i++) {
+            pq.add(i, i, i);
+        }
+
+        pq.clear();
+        assertTrue(pq.isEmpty());
+        assertEquals(pq.bytesCapacity(), initialBytes);
+
+        pq.add(5, 6, 7);
+        assertEquals(pq.peekN3(), 7);
+        pq.close();
+    }
+}
@@ -28,6 +28,7 @@ import java.text.DecimalFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
@@ -57,6 +58,7 @@ import com.google.common.util.concurrent.RateLimiter;
 public class PerformanceConsumer {
     private static final LongAdder messagesReceived = new LongAdder();
     private static final LongAdder bytesReceived = new LongAdder();
+    private static final LongAdder outOfOrderMessages = new LongAdder();
     private static final DecimalFormat dec = new DecimalFormat("0.000");
 
     private static Recorder recorder = new Recorder(TimeUnit.DAYS.toMillis(10), 5);
@@ -77,13 +79,19 @@ public class PerformanceConsumer {
         @Parameter(names = { "-t", "--num-topics" }, description = "Number of topics")
         public int numTopics = 1;
 
-        @Parameter(names = { "-n", "--num-consumers" }, description = "Number of consumers (per topic)")
+        @Parameter(names = { "-n", "--num-consumers" }, description = "Number of consumers (per topic). Each consumer "
+                + "uses its own subscription, except with the Key_Shared subscription type where they share it")
         public int numConsumers = 1;
 
+        @Parameter(names = { "-ns", "--num-subscriptions" }, description = "Number of subscriptions (per topic). "
+                + "When set, the consumers of each subscription share it, to measure the fan-out dispatch of the "
+                + "topics to many subscriptions")
+        public int numSubscriptions = 0;
+
         @Parameter(names = { "-s", "--subscriber-name" }, description = "Subscriber name prefix")
         public String subscriberName = "sub";
 
-        @Parameter(names = { "-st", "--subscription-type" }, description = "Subscriber name prefix")
+        @Parameter(names = { "-st", "--subscription-type" }, description = "Subscription type")
         public SubscriptionType subscriptionType = SubscriptionType.Exclusive;
 
         @Parameter(names = { "-r", "--rate" }, description = "Simulate a slow message consumer (rate in msg/s)")
@@ -196,10 +204,23 @@ public class PerformanceConsumer {
 
         final RateLimiter limiter = arguments.rate > 0 ? RateLimiter.create(arguments.rate) : null;
 
+        // With a Key_Shared subscription, check that the messages of each key are received in the order they were
+        // published by each producer
+        final boolean checkKeyOrdering = arguments.subscriptionType == SubscriptionType.Key_Shared;
+        final Map<String, Long> lastSequenceIdByKey = new ConcurrentHashMap<>();
+
         MessageListener<byte[]> listener = (consumer, msg) -> {
             messagesReceived.increment();
             bytesReceived.add(msg.getData().length);
 
+            if (checkKeyOrdering && msg.hasKey()) {
+                Long lastSequenceId = lastSequenceIdByKey.put(consumer.getTopic() + "/" + consumer.getSubscription()
+                        + "/" + msg.getProducerName() + "/" + msg.getKey(), msg.getSequenceId());
+                if (lastSequenceId != null && lastSequenceId > msg.getSequenceId()) {
+                    outOfOrderMessages.increment();
+                }
+            }
+
             if (limiter != null) {
                 limiter.acquire();
             }
@@ -264,11 +285,25 @@ public class PerformanceConsumer {
         for (int i = 0; i < arguments.numTopics; i++) {
             final TopicName topicName = (arguments.numTopics == 1) ? prefixTopicName
                     : TopicName.get(String.format("%s-%d", prefixTopicName, i));
+            if (arguments.numSubscriptions > 0) {
+                log.info("Adding {} subscriptions with {} consumers each on topic {}", arguments.numSubscriptions,
+                        arguments.numConsumers, topicName);
+
+                for (int k = 0; k < arguments.numSubscriptions; k++) {
+                    String subscriberName = String.format("%s-%d", arguments.subscriberName, k);
+                    for (int j = 0; j < arguments.numConsumers; j++) {
+                        futures.add(consumerBuilder.clone().topic(topicName.toString())
+                                .subscriptionName(subscriberName).subscribeAsync());
+                    }
+                }
+                continue;
+            }
+
             log.info("Adding {} consumers on topic {}", arguments.numConsumers, topicName);
 
             for (int j = 0; j < arguments.numConsumers; j++) {
                 String subscriberName;
-                if (arguments.numConsumers > 1) {
+                if (arguments.numConsumers > 1 && arguments.subscriptionType != SubscriptionType.Key_Shared) {
                     subscriberName = String.format("%s-%d", arguments.subscriberName, j);
                 } else {
                     subscriberName = arguments.subscriberName;
@@ -319,6 +354,10 @@ public class PerformanceConsumer {
                     (long) reportHistogram.getValueAtPercentile(99), (long) reportHistogram.getValueAtPercentile(99.9),
                     (long) reportHistogram.getValueAtPercentile(99.99), (long) reportHistogram.getMaxValue());
 
+            if (checkKeyOrdering) {
+                log.info("Out of order messages: {}", outOfOrderMessages.sum());
+            }
+
             reportHistogram.reset();
             oldTime = now;
         }
@@ -32,6 +32,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -46,6 +47,7 @@ import org.apache.pulsar.client.api.ClientBuilder;
 import org.apache.pulsar.client.api.CompressionType;
 import org.apache.pulsar.client.api.CryptoKeyReader;
 import org.apache.pulsar.client.api.EncryptionKeyInfo;
+import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.MessageRoutingMode;
 import org.apache.pulsar.client.api.Producer;
 import org.apache.pulsar.client.api.ProducerBuilder;
@@ -147,6 +149,10 @@ public class PerformanceProducer {
                 "--trust-cert-file" }, description = "Path for the trusted TLS certificate file")
         public String tlsTrustCertsFilePath = "";
 
+        @Parameter(names = { "-nk",
+                "--num-keys" }, description = "Number of distinct message keys, published in rotation (0 to publish without key)")
+        public int numKeys = 0;
+
         @Parameter(names = { "-k", "--encryption-key-name" }, description = "The public key name to encrypt payload")
         public String encKeyName = null;
 
@@ -326,6 +332,7 @@ public class PerformanceProducer {
 
                 // Send messages on all topics/producers
                 long totalSent = 0;
+                long keyIndex = 0;
                 while (true) {
                     for (Producer<byte[]> producer : producers) {
                         if (arguments.testTime > 0) {
@@ -351,7 +358,15 @@ public class PerformanceProducer {
 
                         final long sendTime = System.nanoTime();
 
-                        producer.sendAsync(payloadData).thenRun(() -> {
+                        CompletableFuture<MessageId> sendFuture;
+                        if (arguments.numKeys > 0) {
+                            sendFuture = producer.newMessage().key(String.valueOf(keyIndex++ % arguments.numKeys))
+                                    .value(payloadData).sendAsync();
+                        } else {
+                            sendFuture = producer.sendAsync(payloadData);
+                        }
+
+                        sendFuture.thenRun(() -> {
                             messagesSent.increment();
                             bytesSent.add(payloadData.length);
 